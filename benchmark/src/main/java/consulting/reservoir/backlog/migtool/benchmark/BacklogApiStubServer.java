@@ -0,0 +1,894 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * ベンチマーク用に Backlog API v2 を模擬する組み込みの HTTP スタブサーバ。
+ * 
+ * RsvrBacklogMigTool が使用するエンドポイント (課題、コメント、添付ファイル、Wiki、共有ファイル、マスタ類、
+ * postAttachment/createIssue/updateIssue など) のみを、それらしい JSON で応答します。
+ * 
+ * 2つのプロジェクトを持ちます。エクスポート元のプロジェクト ({@link #SOURCE_PROJECT_ID})
+ * は指定の件数のデータを決められた規則で生成して応答します。インポート先のプロジェクト ({@link #TARGET_PROJECT_ID})
+ * は空の状態から始まり、作成 API で登録されたデータをメモリ上に保持します。
+ * 
+ * 応答の遅延、429 (Too Many Requests) の注入、1分あたりの呼び出し回数の制限と X-RateLimit-* ヘッダを設定できます。
+ * 設定は {@link #start()} の前に実施してください。
+ */
+public class BacklogApiStubServer implements AutoCloseable {
+    /**
+     * エクスポート元のプロジェクトの Id。
+     */
+    public static final long SOURCE_PROJECT_ID = 1;
+
+    /**
+     * エクスポート元のプロジェクトのキー。
+     */
+    public static final String SOURCE_PROJECT_KEY = "BENCH";
+
+    /**
+     * インポート先のプロジェクトの Id。
+     */
+    public static final long TARGET_PROJECT_ID = 2;
+
+    /**
+     * インポート先のプロジェクトのキー。非本番モードでインポートできるよう MIGTEST で開始します。
+     */
+    public static final String TARGET_PROJECT_KEY = "MIGTEST_BENCH";
+
+    /**
+     * API のパスの接頭辞。
+     */
+    private static final String API_PREFIX = "/api/v2";
+
+    /**
+     * 生成するデータの日時の起点 (2022-09-01T00:00:00Z)。
+     */
+    private static final long BASE_TIME = 1661990400000L;
+
+    /**
+     * 添付ファイルおよび共有ファイルの大きさ (バイト)。
+     */
+    private static final int FILE_SIZE = 1024;
+
+    private HttpServer server = null;
+
+    private ExecutorService executor = null;
+
+    /**
+     * エクスポート元の課題の件数。
+     */
+    private int issueCount = 100;
+
+    /**
+     * 課題あたりのコメントの件数。
+     */
+    private int commentsPerIssue = 3;
+
+    /**
+     * 課題あたりの添付ファイルの件数。
+     */
+    private int attachmentsPerIssue = 1;
+
+    /**
+     * エクスポート元の Wiki の件数。
+     */
+    private int wikiCount = 10;
+
+    /**
+     * エクスポート元の共有ファイルの件数。
+     */
+    private int sharedFileCount = 10;
+
+    /**
+     * 応答の遅延 (ミリ秒)。
+     */
+    private long latencyMillis = 0;
+
+    /**
+     * 応答の遅延に加えるゆらぎの最大値 (ミリ秒)。
+     */
+    private long latencyJitterMillis = 0;
+
+    /**
+     * 1分あたりの呼び出し可能回数。0 以下の場合は制限しません。
+     */
+    private int rateLimitPerMinute = 0;
+
+    /**
+     * N 回に1回 429 を応答します。0 以下の場合は注入しません。
+     */
+    private int tooManyRequestsEvery = 0;
+
+    /**
+     * 受け付けた要求の件数。
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * 429 を応答した件数。
+     */
+    private final AtomicLong tooManyRequestsCount = new AtomicLong();
+
+    /**
+     * 呼び出し回数の制限の現在のウィンドウの開始時刻。
+     */
+    private long windowStartMillis = 0;
+
+    /**
+     * 呼び出し回数の制限の現在のウィンドウでの呼び出し回数。
+     */
+    private int windowCount = 0;
+
+    /**
+     * 作成 API で払い出す Id。
+     */
+    private final AtomicLong nextCreatedId = new AtomicLong(900000);
+
+    /**
+     * インポート先の課題の KeyId の採番。
+     */
+    private long nextTargetKeyId = 1;
+
+    /**
+     * インポート先のプロジェクトに登録されたデータ。種類ごとの JSON 文字列の一覧。
+     */
+    private final Map<String, List<String>> targetStore = new HashMap<>();
+
+    /**
+     * スタブサーバを作成します。
+     */
+    public BacklogApiStubServer() {
+        // インポート先のプロジェクトにも、作成直後のプロジェクトと同様に既定の状態があります。
+        final List<String> statusList = new ArrayList<>();
+        for (int index = 1; index <= 4; index++) {
+            statusList.add(statusJson(TARGET_PROJECT_ID, index));
+        }
+        targetStore.put("statuses", statusList);
+    }
+
+    /**
+     * スタブサーバを開始します。ポートは空いているものを自動で割り当てます。
+     * 
+     * @throws IOException IO例外が発生した場合。
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(API_PREFIX + "/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleExchange(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * スタブサーバを停止します。
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * RsvrBacklogMigToolConf#setBacklogApiBaseUrl に指定するベースURLを取得します。
+     * 
+     * @return ベースURL。
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 受け付けた要求の件数を取得します。
+     * 
+     * @return 要求の件数。
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * 429 を応答した件数を取得します。
+     * 
+     * @return 429 を応答した件数。
+     */
+    public long getTooManyRequestsCount() {
+        return tooManyRequestsCount.get();
+    }
+
+    public void setIssueCount(int issueCount) {
+        this.issueCount = issueCount;
+    }
+
+    public int getIssueCount() {
+        return issueCount;
+    }
+
+    public void setCommentsPerIssue(int commentsPerIssue) {
+        this.commentsPerIssue = commentsPerIssue;
+    }
+
+    public void setAttachmentsPerIssue(int attachmentsPerIssue) {
+        this.attachmentsPerIssue = attachmentsPerIssue;
+    }
+
+    public void setWikiCount(int wikiCount) {
+        this.wikiCount = wikiCount;
+    }
+
+    public void setSharedFileCount(int sharedFileCount) {
+        this.sharedFileCount = sharedFileCount;
+    }
+
+    /**
+     * 応答の遅延を設定します。
+     * 
+     * @param latencyMillis       応答の遅延 (ミリ秒)。
+     * @param latencyJitterMillis 遅延に加えるゆらぎの最大値 (ミリ秒)。
+     */
+    public void setLatency(long latencyMillis, long latencyJitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+    }
+
+    /**
+     * 1分あたりの呼び出し可能回数を設定します。超えた場合は 429 を応答します。
+     * 
+     * @param rateLimitPerMinute 1分あたりの呼び出し可能回数。0 以下の場合は制限しません。
+     */
+    public void setRateLimitPerMinute(int rateLimitPerMinute) {
+        this.rateLimitPerMinute = rateLimitPerMinute;
+    }
+
+    /**
+     * 429 を注入する間隔を設定します。
+     * 
+     * @param tooManyRequestsEvery N 回に1回 429 を応答します。0 以下の場合は注入しません。
+     */
+    public void setTooManyRequestsEvery(int tooManyRequestsEvery) {
+        this.tooManyRequestsEvery = tooManyRequestsEvery;
+    }
+
+    ////////////////////////////////////////////////////////////
+    // 要求の処理
+
+    private void handleExchange(HttpExchange exchange) throws IOException {
+        final long count = requestCount.incrementAndGet();
+        sleepLatency();
+
+        // 呼び出し回数の制限と 429 の注入。
+        final int[] rateLimit = consumeRateLimit();
+        if (rateLimitPerMinute > 0) {
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", String.valueOf(rateLimitPerMinute));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(Math.max(0, rateLimit[0])));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(rateLimit[1]));
+        }
+        if (rateLimit[0] < 0 || (tooManyRequestsEvery > 0 && count % tooManyRequestsEvery == 0)) {
+            tooManyRequestsCount.incrementAndGet();
+            sendJson(exchange, 429, "{\"errors\":[{\"message\":\"Too Many Requests.\",\"code\":0,\"moreInfo\":\"\"}]}");
+            return;
+        }
+
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getRawPath().substring(API_PREFIX.length());
+        final Map<String, List<String>> params = parseParams(exchange.getRequestURI().getRawQuery());
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        final byte[] body = readAll(exchange.getRequestBody());
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            params.putAll(parseParams(new String(body, StandardCharsets.UTF_8)));
+        }
+
+        final String[] seg = path.substring(1).split("/");
+        final Object result = route(method, seg, params, body.length);
+        if (result == null) {
+            sendJson(exchange, 404, "{\"errors\":[{\"message\":\"No such resource: " + escape(path)
+                    + "\",\"code\":6,\"moreInfo\":\"\"}]}");
+        } else if (result instanceof byte[]) {
+            final String filename = params.containsKey("_filename") ? params.get("_filename").get(0) : "file.bin";
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().add("Content-Disposition",
+                    "attachment; filename*=UTF-8''" + URLEncoder.encode(filename, "UTF-8"));
+            send(exchange, 200, (byte[]) result);
+        } else {
+            sendJson(exchange, 200, (String) result);
+        }
+    }
+
+    /**
+     * 要求を振り分けます。
+     * 
+     * @return JSON 文字列、ダウンロードの場合はバイト列。該当するものが無い場合は null。
+     */
+    private Object route(String method, String[] seg, Map<String, List<String>> params, int bodyLength) {
+        final String root = seg[0];
+        if ("space".equals(root)) {
+            if (seg.length == 1 && "GET".equals(method)) {
+                return "{\"spaceKey\":\"bench\",\"name\":\"Bench Space\",\"ownerId\":1,\"lang\":\"ja\"" //
+                        + ",\"timezone\":\"Asia/Tokyo\",\"reportSendTime\":\"08:00:00\"" //
+                        + ",\"textFormattingRule\":\"markdown\",\"created\":" + date(0) + ",\"updated\":" + date(0)
+                        + "}";
+            }
+            if (seg.length == 2 && "attachment".equals(seg[1]) && "POST".equals(method)) {
+                return "{\"id\":" + nextCreatedId.incrementAndGet() + ",\"name\":\"upload.bin\",\"size\":" + bodyLength
+                        + "}";
+            }
+        } else if ("priorities".equals(root)) {
+            return "[" + priorityJson(2) + "," + priorityJson(3) + "," + priorityJson(4) + "]";
+        } else if ("resolutions".equals(root)) {
+            final List<String> list = new ArrayList<>();
+            for (int index = 0; index <= 4; index++) {
+                list.add(resolutionJson(index));
+            }
+            return array(list);
+        } else if ("projects".equals(root) && seg.length >= 2) {
+            final long projectId = toProjectId(seg[1]);
+            if (projectId < 0) {
+                return null;
+            }
+            return routeProject(method, projectId, seg, params);
+        } else if ("issues".equals(root)) {
+            return routeIssue(method, seg, params);
+        } else if ("wikis".equals(root)) {
+            return routeWiki(method, seg, params);
+        }
+        return null;
+    }
+
+    private Object routeProject(String method, long projectId, String[] seg, Map<String, List<String>> params) {
+        if (seg.length == 2) {
+            return projectJson(projectId);
+        }
+        final String sub = seg[2];
+        if ("users".equals(sub)) {
+            return array(userList());
+        }
+        if ("GET".equals(method) && seg.length == 3 && projectId == TARGET_PROJECT_ID) {
+            if ("customFields".equals(sub)) {
+                return "[]";
+            }
+            return array(getTargetList(sub));
+        }
+        if ("POST".equals(method) && seg.length == 3) {
+            final long id = nextCreatedId.incrementAndGet();
+            final String name = first(params, "name", "created-" + id);
+            final String json;
+            if ("issueTypes".equals(sub)) {
+                json = "{\"id\":" + id + ",\"projectId\":" + projectId + ",\"name\":" + q(name)
+                        + ",\"color\":\"#e30000\",\"displayOrder\":" + id + "}";
+            } else if ("categories".equals(sub)) {
+                json = "{\"id\":" + id + ",\"name\":" + q(name) + ",\"displayOrder\":" + id + "}";
+            } else if ("versions".equals(sub)) {
+                json = "{\"id\":" + id + ",\"projectId\":" + projectId + ",\"name\":" + q(name)
+                        + ",\"description\":" + q(first(params, "description", "")) + ",\"startDate\":null"
+                        + ",\"releaseDueDate\":null,\"archived\":false,\"displayOrder\":" + id + "}";
+            } else if ("statuses".equals(sub)) {
+                json = "{\"id\":" + id + ",\"projectId\":" + projectId + ",\"name\":" + q(name)
+                        + ",\"color\":" + q(first(params, "color", "#ea2c00")) + ",\"displayOrder\":" + id + "}";
+            } else {
+                return null;
+            }
+            if (projectId == TARGET_PROJECT_ID) {
+                addTarget(sub, json);
+            }
+            return json;
+        }
+        if ("GET".equals(method)) {
+            if ("issueTypes".equals(sub)) {
+                return "[" + issueTypeJson(1) + "," + issueTypeJson(2) + "]";
+            }
+            if ("statuses".equals(sub)) {
+                final List<String> list = new ArrayList<>();
+                for (int index = 1; index <= 4; index++) {
+                    list.add(statusJson(projectId, index));
+                }
+                return array(list);
+            }
+            if ("categories".equals(sub)) {
+                return "[" + categoryJson(1) + "," + categoryJson(2) + "]";
+            }
+            if ("versions".equals(sub)) {
+                return "[" + versionJson(1) + "," + versionJson(2) + "]";
+            }
+            if ("customFields".equals(sub)) {
+                return "[]";
+            }
+            if ("files".equals(sub) && seg.length >= 4) {
+                if ("metadata".equals(seg[3])) {
+                    // ルートのディレクトリにのみファイルを置きます。
+                    final List<String> list = new ArrayList<>();
+                    if (seg.length == 4) {
+                        for (int index = 1; index <= sharedFileCount; index++) {
+                            list.add(sharedFileJson(index));
+                        }
+                    }
+                    return array(list);
+                }
+                final long fileId = Long.parseLong(seg[3]);
+                params.put("_filename", Collections.singletonList("shared" + fileId + ".txt"));
+                return content(fileId);
+            }
+        }
+        return null;
+    }
+
+    private Object routeIssue(String method, String[] seg, Map<String, List<String>> params) {
+        if (seg.length == 1) {
+            if ("POST".equals(method)) {
+                return createTargetIssue(params);
+            }
+            final List<String> projectIds = params.get("projectId[]");
+            if (projectIds != null && projectIds.contains(String.valueOf(TARGET_PROJECT_ID))) {
+                final List<String> list = getTargetList("issues");
+                return array(page(list, params));
+            }
+            final int offset = Integer.parseInt(first(params, "offset", "0"));
+            final int count = Integer.parseInt(first(params, "count", "20"));
+            final List<String> list = new ArrayList<>();
+            for (int keyId = offset + 1; keyId <= Math.min(issueCount, offset + count); keyId++) {
+                list.add(sourceIssueJson(keyId));
+            }
+            return array(list);
+        }
+
+        final long issueId = toIssueId(seg[1]);
+        if (seg.length == 2) {
+            if ("PATCH".equals(method)) {
+                return "{\"id\":" + issueId + ",\"projectId\":" + TARGET_PROJECT_ID + ",\"issueKey\":"
+                        + q(TARGET_PROJECT_KEY + "-" + issueId) + ",\"keyId\":" + issueId + ",\"summary\":"
+                        + q(first(params, "summary", "updated")) + ",\"issueType\":" + issueTypeJson(1)
+                        + ",\"priority\":" + priorityJson(3) + ",\"status\":" + statusJson(TARGET_PROJECT_ID, 1)
+                        + ",\"createdUser\":" + userJson(1) + ",\"created\":" + date(0) + ",\"updatedUser\":"
+                        + userJson(1) + ",\"updated\":" + date(0) + "}";
+            }
+            if (issueId > 0 && issueId <= issueCount) {
+                return sourceIssueJson((int) issueId);
+            }
+            return null;
+        }
+
+        final String sub = seg[2];
+        if ("comments".equals(sub)) {
+            if ("POST".equals(method)) {
+                return commentJson(nextCreatedId.incrementAndGet(), first(params, "content", ""));
+            }
+            if (seg.length == 4 && "count".equals(seg[3])) {
+                return "{\"count\":" + (isSourceIssue(issueId) ? commentsPerIssue : 0) + "}";
+            }
+            final List<String> list = new ArrayList<>();
+            if (isSourceIssue(issueId)) {
+                final long minId = Long.parseLong(first(params, "minId", "0"));
+                final int count = Integer.parseInt(first(params, "count", "20"));
+                for (int index = 1; index <= commentsPerIssue && list.size() < count; index++) {
+                    final long commentId = issueId * 1000 + index;
+                    if (commentId >= minId) {
+                        list.add(commentJson(commentId, "コメント " + index));
+                    }
+                }
+            }
+            return array(list);
+        }
+        if ("attachments".equals(sub)) {
+            if (seg.length == 4) {
+                final long attachmentId = Long.parseLong(seg[3]);
+                params.put("_filename", Collections.singletonList("attachment" + attachmentId + ".txt"));
+                return content(attachmentId);
+            }
+            return array(isSourceIssue(issueId) ? issueAttachmentList(issueId) : new ArrayList<String>());
+        }
+        return null;
+    }
+
+    private Object routeWiki(String method, String[] seg, Map<String, List<String>> params) {
+        if (seg.length == 1) {
+            if ("POST".equals(method)) {
+                final long id = nextCreatedId.incrementAndGet();
+                final String json = wikiJson(id, TARGET_PROJECT_ID, first(params, "name", "wiki" + id),
+                        first(params, "content", ""));
+                addTarget("wikis", json);
+                return json;
+            }
+            final long projectId = toProjectId(first(params, "projectIdOrKey", ""));
+            if (projectId == TARGET_PROJECT_ID) {
+                return array(getTargetList("wikis"));
+            }
+            final List<String> list = new ArrayList<>();
+            for (int index = 1; index <= wikiCount; index++) {
+                list.add(wikiJson(index, SOURCE_PROJECT_ID, "Wiki" + index, null));
+            }
+            return array(list);
+        }
+
+        final long wikiId = Long.parseLong(seg[1]);
+        if (seg.length == 2) {
+            return wikiJson(wikiId, SOURCE_PROJECT_ID, "Wiki" + wikiId, "Wiki の本文です。 " + wikiId);
+        }
+        if ("attachments".equals(seg[2])) {
+            if ("POST".equals(method)) {
+                return "[{\"id\":" + nextCreatedId.incrementAndGet() + ",\"name\":\"upload.bin\",\"size\":" + FILE_SIZE
+                        + ",\"createdUser\":" + userJson(1) + ",\"created\":" + date(0) + "}]";
+            }
+            if (seg.length == 4) {
+                final long attachmentId = Long.parseLong(seg[3]);
+                params.put("_filename", Collections.singletonList("wikiattachment" + attachmentId + ".txt"));
+                return content(attachmentId);
+            }
+            return "[]";
+        }
+        return null;
+    }
+
+    ////////////////////////////////////////////////////////////
+    // インポート先のプロジェクト
+
+    private synchronized void addTarget(String type, String json) {
+        List<String> list = targetStore.get(type);
+        if (list == null) {
+            list = new ArrayList<>();
+            targetStore.put(type, list);
+        }
+        list.add(json);
+    }
+
+    private synchronized List<String> getTargetList(String type) {
+        final List<String> list = targetStore.get(type);
+        return (list == null ? new ArrayList<String>() : new ArrayList<String>(list));
+    }
+
+    private String createTargetIssue(Map<String, List<String>> params) {
+        final long id = nextCreatedId.incrementAndGet();
+        final long keyId;
+        synchronized (this) {
+            keyId = nextTargetKeyId++;
+        }
+        final String json = "{\"id\":" + id + ",\"projectId\":" + TARGET_PROJECT_ID + ",\"issueKey\":"
+                + q(TARGET_PROJECT_KEY + "-" + keyId) + ",\"keyId\":" + keyId + ",\"issueType\":" + issueTypeJson(1)
+                + ",\"summary\":" + q(first(params, "summary", "")) + ",\"description\":"
+                + q(first(params, "description", "")) + ",\"resolution\":null,\"priority\":" + priorityJson(3)
+                + ",\"status\":" + statusJson(TARGET_PROJECT_ID, 1) + ",\"assignee\":null,\"category\":[]"
+                + ",\"versions\":[],\"milestone\":[],\"startDate\":null,\"dueDate\":null,\"estimatedHours\":null"
+                + ",\"actualHours\":null,\"parentIssueId\":null,\"createdUser\":" + userJson(1) + ",\"created\":"
+                + date(0) + ",\"updatedUser\":" + userJson(1) + ",\"updated\":" + date(0)
+                + ",\"customFields\":[],\"attachments\":[],\"sharedFiles\":[],\"stars\":[]}";
+        addTarget("issues", json);
+        return json;
+    }
+
+    ////////////////////////////////////////////////////////////
+    // エクスポート元のプロジェクトのデータ生成
+
+    private boolean isSourceIssue(long issueId) {
+        return issueId > 0 && issueId <= issueCount;
+    }
+
+    private String sourceIssueJson(int keyId) {
+        final StringBuilder buf = new StringBuilder();
+        buf.append("{\"id\":").append(keyId);
+        buf.append(",\"projectId\":").append(SOURCE_PROJECT_ID);
+        buf.append(",\"issueKey\":").append(q(SOURCE_PROJECT_KEY + "-" + keyId));
+        buf.append(",\"keyId\":").append(keyId);
+        buf.append(",\"issueType\":").append(issueTypeJson(1 + keyId % 2));
+        buf.append(",\"summary\":").append(q("課題の件名 " + keyId));
+        buf.append(",\"description\":").append(q("課題の詳細です。ベンチマークのためのダミーの本文です。 " + keyId));
+        buf.append(",\"resolution\":null");
+        buf.append(",\"priority\":").append(priorityJson(2 + keyId % 3));
+        buf.append(",\"status\":").append(statusJson(SOURCE_PROJECT_ID, 1 + keyId % 4));
+        buf.append(",\"assignee\":").append(userJson(1 + keyId % 3));
+        buf.append(",\"category\":[").append(categoryJson(1 + keyId % 2)).append("]");
+        buf.append(",\"versions\":[").append(versionJson(1)).append("]");
+        buf.append(",\"milestone\":[").append(versionJson(2)).append("]");
+        buf.append(",\"startDate\":null,\"dueDate\":null,\"estimatedHours\":null,\"actualHours\":null");
+        buf.append(",\"parentIssueId\":").append(keyId > 1 && keyId % 10 == 0 ? String.valueOf(keyId - 1) : "null");
+        buf.append(",\"createdUser\":").append(userJson(1));
+        buf.append(",\"created\":").append(date(keyId));
+        buf.append(",\"updatedUser\":").append(userJson(1));
+        buf.append(",\"updated\":").append(date(keyId));
+        buf.append(",\"customFields\":[]");
+        buf.append(",\"attachments\":").append(array(issueAttachmentList(keyId)));
+        buf.append(",\"sharedFiles\":[],\"stars\":[]}");
+        return buf.toString();
+    }
+
+    private List<String> issueAttachmentList(long issueId) {
+        final List<String> list = new ArrayList<>();
+        for (int index = 1; index <= attachmentsPerIssue; index++) {
+            final long attachmentId = issueId * 100 + index;
+            list.add("{\"id\":" + attachmentId + ",\"name\":\"attachment" + attachmentId + ".txt\",\"size\":"
+                    + FILE_SIZE + ",\"createdUser\":" + userJson(1) + ",\"created\":" + date(issueId) + "}");
+        }
+        return list;
+    }
+
+    private String commentJson(long commentId, String content) {
+        return "{\"id\":" + commentId + ",\"content\":" + q(content) //
+                + ",\"changeLog\":[{\"field\":\"status\",\"newValue\":\"処理中\",\"originalValue\":\"未対応\"" //
+                + ",\"attachmentInfo\":null,\"attributeInfo\":null,\"notificationInfo\":null}]" //
+                + ",\"createdUser\":" + userJson(1) + ",\"created\":" + date(commentId % 100000) + ",\"updated\":"
+                + date(commentId % 100000) + ",\"stars\":[],\"notifications\":[]}";
+    }
+
+    private String wikiJson(long wikiId, long projectId, String name, String content) {
+        return "{\"id\":" + wikiId + ",\"projectId\":" + projectId + ",\"name\":" + q(name)
+                + (content == null ? "" : ",\"content\":" + q(content)) + ",\"tags\":[],\"attachments\":[]"
+                + ",\"sharedFiles\":[],\"stars\":[],\"createdUser\":" + userJson(1) + ",\"created\":" + date(wikiId)
+                + ",\"updatedUser\":" + userJson(1) + ",\"updated\":" + date(wikiId) + "}";
+    }
+
+    private String sharedFileJson(long fileId) {
+        return "{\"id\":" + fileId + ",\"type\":\"file\",\"dir\":\"/\",\"name\":\"shared" + fileId + ".txt\"" //
+                + ",\"size\":" + FILE_SIZE + ",\"createdUser\":" + userJson(1) + ",\"created\":" + date(fileId)
+                + ",\"updatedUser\":" + userJson(1) + ",\"updated\":" + date(fileId) + "}";
+    }
+
+    private String projectJson(long projectId) {
+        final String key = (projectId == SOURCE_PROJECT_ID ? SOURCE_PROJECT_KEY : TARGET_PROJECT_KEY);
+        return "{\"id\":" + projectId + ",\"projectKey\":" + q(key) + ",\"name\":" + q(key)
+                + ",\"chartEnabled\":false,\"subtaskingEnabled\":true,\"projectLeaderCanEditProjectLeader\":false"
+                + ",\"textFormattingRule\":\"markdown\",\"archived\":false}";
+    }
+
+    private List<String> userList() {
+        final List<String> list = new ArrayList<>();
+        for (int index = 1; index <= 3; index++) {
+            list.add(userJson(index));
+        }
+        return list;
+    }
+
+    private static String userJson(long userId) {
+        return "{\"id\":" + userId + ",\"userId\":\"user" + userId + "\",\"name\":\"User " + userId
+                + "\",\"roleType\":1,\"lang\":\"ja\",\"mailAddress\":\"user" + userId + "@example.com\"}";
+    }
+
+    private static String issueTypeJson(long id) {
+        return "{\"id\":" + id + ",\"projectId\":" + SOURCE_PROJECT_ID + ",\"name\":\"" + (id == 1 ? "バグ" : "タスク")
+                + "\",\"color\":\"#990000\",\"displayOrder\":" + id + "}";
+    }
+
+    private static String statusJson(long projectId, int id) {
+        final String[] names = { "未対応", "処理中", "処理済み", "完了" };
+        return "{\"id\":" + id + ",\"projectId\":" + projectId + ",\"name\":" + q(names[id - 1])
+                + ",\"color\":\"#ed8077\",\"displayOrder\":" + (id * 1000) + "}";
+    }
+
+    private static String categoryJson(long id) {
+        return "{\"id\":" + id + ",\"name\":\"カテゴリ" + id + "\",\"displayOrder\":" + id + "}";
+    }
+
+    private static String versionJson(long id) {
+        return "{\"id\":" + id + ",\"projectId\":" + SOURCE_PROJECT_ID + ",\"name\":\""
+                + (id == 1 ? "バージョン1" : "マイルストーン1") + "\",\"description\":\"\",\"startDate\":null"
+                + ",\"releaseDueDate\":null,\"archived\":false,\"displayOrder\":" + id + "}";
+    }
+
+    private static String priorityJson(int id) {
+        final String[] names = { "", "", "高", "中", "低" };
+        return "{\"id\":" + id + ",\"name\":" + q(names[id]) + "}";
+    }
+
+    private static String resolutionJson(int id) {
+        final String[] names = { "対応済み", "対応しない", "無効", "重複", "再現しない" };
+        return "{\"id\":" + id + ",\"name\":" + q(names[id]) + "}";
+    }
+
+    /**
+     * ダウンロードの内容を生成します。内容は Id ごとに異なります。
+     */
+    private static byte[] content(long id) {
+        final byte[] data = new byte[FILE_SIZE];
+        for (int index = 0; index < data.length; index++) {
+            data[index] = (byte) ('a' + (id + index) % 26);
+        }
+        return data;
+    }
+
+    ////////////////////////////////////////////////////////////
+    // 共通
+
+    private long toProjectId(String idOrKey) {
+        if (String.valueOf(SOURCE_PROJECT_ID).equals(idOrKey) || SOURCE_PROJECT_KEY.equals(idOrKey)) {
+            return SOURCE_PROJECT_ID;
+        }
+        if (String.valueOf(TARGET_PROJECT_ID).equals(idOrKey) || TARGET_PROJECT_KEY.equals(idOrKey)) {
+            return TARGET_PROJECT_ID;
+        }
+        return -1;
+    }
+
+    private static long toIssueId(String idOrKey) {
+        final int pos = idOrKey.lastIndexOf('-');
+        return Long.parseLong(pos < 0 ? idOrKey : idOrKey.substring(pos + 1));
+    }
+
+    private static List<String> page(List<String> list, Map<String, List<String>> params) {
+        final int offset = Integer.parseInt(first(params, "offset", "0"));
+        final int count = Integer.parseInt(first(params, "count", "20"));
+        if (offset >= list.size()) {
+            return new ArrayList<>();
+        }
+        return list.subList(offset, Math.min(list.size(), offset + count));
+    }
+
+    private void sleepLatency() {
+        long millis = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+        }
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 呼び出し回数の制限の枠を消費します。
+     * 
+     * @return [0] 残りの回数 (超過した場合は負)、[1] ウィンドウがリセットされる時刻 (エポック秒)。
+     */
+    private synchronized int[] consumeRateLimit() {
+        final long now = System.currentTimeMillis();
+        if (now - windowStartMillis >= 60000) {
+            windowStartMillis = now;
+            windowCount = 0;
+        }
+        final int reset = (int) ((windowStartMillis + 60000) / 1000);
+        if (rateLimitPerMinute <= 0) {
+            return new int[] { Integer.MAX_VALUE, reset };
+        }
+        windowCount++;
+        return new int[] { rateLimitPerMinute - windowCount, reset };
+    }
+
+    private static Map<String, List<String>> parseParams(String query) throws UnsupportedEncodingException {
+        final Map<String, List<String>> params = new LinkedHashMap<>();
+        if (query == null || query.length() == 0) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            final int pos = pair.indexOf('=');
+            final String key = URLDecoder.decode(pos < 0 ? pair : pair.substring(0, pos), "UTF-8");
+            final String value = (pos < 0 ? "" : URLDecoder.decode(pair.substring(pos + 1), "UTF-8"));
+            List<String> values = params.get(key);
+            if (values == null) {
+                values = new ArrayList<>();
+                params.put(key, values);
+            }
+            values.add(value);
+        }
+        return params;
+    }
+
+    private static String first(Map<String, List<String>> params, String key, String defaultValue) {
+        final List<String> values = params.get(key);
+        return (values == null || values.isEmpty() ? defaultValue : values.get(0));
+    }
+
+    private static byte[] readAll(InputStream inStream) throws IOException {
+        final ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        final byte[] buf = new byte[8192];
+        for (int length; (length = inStream.read(buf)) > 0;) {
+            outStream.write(buf, 0, length);
+        }
+        return outStream.toByteArray();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        send(exchange, status, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] data) throws IOException {
+        exchange.sendResponseHeaders(status, data.length);
+        try (OutputStream outStream = exchange.getResponseBody()) {
+            outStream.write(data);
+        }
+    }
+
+    private static String array(List<String> list) {
+        final StringBuilder buf = new StringBuilder("[");
+        for (int index = 0; index < list.size(); index++) {
+            if (index > 0) {
+                buf.append(',');
+            }
+            buf.append(list.get(index));
+        }
+        return buf.append(']').toString();
+    }
+
+    private static String date(long offsetMinutes) {
+        final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return "\"" + sdf.format(new java.util.Date(BASE_TIME + offsetMinutes * 60000L)) + "\"";
+    }
+
+    private static String q(String value) {
+        return "\"" + escape(value) + "\"";
+    }
+
+    private static String escape(String value) {
+        final StringBuilder buf = new StringBuilder();
+        for (char ch : value.toCharArray()) {
+            switch (ch) {
+            case '"':
+                buf.append("\\\"");
+                break;
+            case '\\':
+                buf.append("\\\\");
+                break;
+            case '\n':
+                buf.append("\\n");
+                break;
+            case '\r':
+                buf.append("\\r");
+                break;
+            case '\t':
+                buf.append("\\t");
+                break;
+            default:
+                if (ch < 0x20) {
+                    buf.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    buf.append(ch);
+                }
+            }
+        }
+        return buf.toString();
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConnUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoUtil;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpCategory;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpCustomFieldSetting;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpFile;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpIssue;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpIssueAttachment;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpIssueComment;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpIssueStatusType;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpIssueType;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpMilestone;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpProject;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpUser;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpVersion;
+import consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpWiki;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpCategory;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpIssue;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpIssueParent;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpIssueStatusType;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpIssueType;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpMilestone;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpPrepare;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpVersion;
+import consulting.reservoir.backlog.migtool.core.imp.RsvrBacklogImpWiki;
+import consulting.reservoir.backlog.migtool.core.map.RsvrBacklogMapExpUser;
+import consulting.reservoir.backlog.migtool.core.map.RsvrBacklogMapImpUser;
+import consulting.reservoir.log.RsvrLog;
+
+/**
+ * {@link BacklogApiStubServer} に対してエクスポートとインポートのフェーズを一通り実行し、フェーズごとの所要時間と
+ * API 呼び出し回数/秒を表示するベンチマーク。
+ * 
+ * 作業用のディレクトリは一時ディレクトリに作成し、実行のたびに新しい h2 database を使用します。
+ * 
+ * <pre>
+java -cp target/benchmarks.jar consulting.reservoir.backlog.migtool.benchmark.MigrationThroughputBenchmark \
+    -issues 500 -comments 3 -attachments 1 -wikis 20 -files 20 -latency 20 -jitter 10 -ratelimit 0 -inject429 0 \
+    -bulkload false
+ * </pre>
+ * 
+ * -bulkload true の場合は、エクスポートのフェーズのみ h2 database を一括読み込みモードで使用し、インポートの前に一括読み込みモードを終了します。
+ */
+public class MigrationThroughputBenchmark {
+    /**
+     * フェーズの処理。
+     */
+    interface Phase {
+        void run() throws SQLException, IOException;
+    }
+
+    /**
+     * フェーズごとの計測結果。
+     */
+    static class PhaseResult {
+        final String name;
+        final long elapsedMillis;
+        final long callCount;
+
+        PhaseResult(String name, long elapsedMillis, long callCount) {
+            this.name = name;
+            this.elapsedMillis = elapsedMillis;
+            this.callCount = callCount;
+        }
+
+        double getCallsPerSecond() {
+            return (elapsedMillis <= 0 ? 0.0 : callCount * 1000.0 / elapsedMillis);
+        }
+    }
+
+    private final BacklogApiStubServer stub;
+
+    private final List<PhaseResult> resultList = new ArrayList<>();
+
+    private Connection conn = null;
+
+    private RsvrBacklogApiConn expConn = null;
+
+    private RsvrBacklogApiConn impConn = null;
+
+    MigrationThroughputBenchmark(BacklogApiStubServer stub) {
+        this.stub = stub;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parseOptions(args);
+
+        try (BacklogApiStubServer stub = new BacklogApiStubServer()) {
+            stub.setIssueCount(Integer.parseInt(option(options, "issues", "100")));
+            stub.setCommentsPerIssue(Integer.parseInt(option(options, "comments", "3")));
+            stub.setAttachmentsPerIssue(Integer.parseInt(option(options, "attachments", "1")));
+            stub.setWikiCount(Integer.parseInt(option(options, "wikis", "10")));
+            stub.setSharedFileCount(Integer.parseInt(option(options, "files", "10")));
+            stub.setLatency(Long.parseLong(option(options, "latency", "0")),
+                    Long.parseLong(option(options, "jitter", "0")));
+            stub.setRateLimitPerMinute(Integer.parseInt(option(options, "ratelimit", "0")));
+            stub.setTooManyRequestsEvery(Integer.parseInt(option(options, "inject429", "0")));
+            stub.start();
+
+            final File workDir = Files.createTempDirectory("rsvrbench").toFile();
+            new MigrationThroughputBenchmark(stub).run(workDir, options);
+        }
+        RsvrLog.shutdown();
+    }
+
+    /**
+     * エクスポートとインポートのフェーズを順に実行して、結果を表示します。
+     * 
+     * @param workDir 作業用のディレクトリ。
+     * @param options コマンドラインのオプション。
+     * @throws Exception 処理中に例外が発生した場合。
+     */
+    void run(final File workDir, Map<String, String> options) throws Exception {
+        final RsvrBacklogMigToolConf expConf = newConf(workDir, options, BacklogApiStubServer.SOURCE_PROJECT_ID,
+                BacklogApiStubServer.SOURCE_PROJECT_KEY);
+        final RsvrBacklogMigToolConf impConf = newConf(workDir, options, BacklogApiStubServer.TARGET_PROJECT_ID,
+                BacklogApiStubServer.TARGET_PROJECT_KEY);
+
+        conn = H2DaoUtil.getConnection(expConf, true);
+        try {
+            runPhase("login", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    expConn = RsvrBacklogApiConnUtil.login(expConf);
+                    impConn = RsvrBacklogApiConnUtil.login(impConf);
+                }
+            });
+
+            runPhase("exp: master", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpProject(conn, expConn).process();
+                    new RsvrBacklogExpUser(conn, expConn).process();
+                    new RsvrBacklogExpIssueType(conn, expConn).process();
+                    new RsvrBacklogExpIssueStatusType(conn, expConn).process();
+                    new RsvrBacklogExpCategory(conn, expConn).process();
+                    new RsvrBacklogExpMilestone(conn, expConn).process();
+                    new RsvrBacklogExpVersion(conn, expConn).process();
+                    new RsvrBacklogExpCustomFieldSetting(conn, expConn).process();
+                }
+            });
+            runPhase("exp: file", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpFile(conn, expConn).process(new File(expConf.getDirExpFile()));
+                }
+            });
+            runPhase("exp: wiki", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpWiki(conn, expConn).process(new File(expConf.getDirExpWikiAttachment()));
+                }
+            });
+            runPhase("exp: issue", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpIssue(conn, expConn).process();
+                }
+            });
+            runPhase("exp: issue comment", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpIssueComment(conn, expConn).process();
+                }
+            });
+            runPhase("exp: issue attachment", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogExpIssueAttachment(conn, expConn).process(new File(expConf.getDirExpAttachment()));
+                }
+            });
+            runPhase("exp: end bulk load", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    // エクスポートの終了時に一括読み込みモードを終了し、インポートは安全なモードの接続として実施します。
+                    H2DaoUtil.endBulkLoad(conn, expConf);
+                }
+            });
+
+            runPhase("imp: prepare and user mapping", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogMapExpUser(conn, expConn).process();
+                    new RsvrBacklogImpPrepare(conn, impConn).process(false);
+                    new RsvrBacklogMapImpUser(conn, impConn).process();
+                }
+            });
+            runPhase("imp: master", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogImpIssueType(conn, impConn).process(false);
+                    new RsvrBacklogImpIssueStatusType(conn, impConn).process(false);
+                    new RsvrBacklogImpCategory(conn, impConn).process(false);
+                    new RsvrBacklogImpMilestone(conn, impConn).process(false);
+                    new RsvrBacklogImpVersion(conn, impConn).process(false);
+                }
+            });
+            runPhase("imp: wiki", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogImpWiki(conn, impConn).process(false);
+                }
+            });
+            runPhase("imp: issue", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogImpIssue(conn, impConn).process(false, false, 0);
+                }
+            });
+            runPhase("imp: issue parent", new Phase() {
+                @Override
+                public void run() throws SQLException, IOException {
+                    new RsvrBacklogImpIssueParent(conn, impConn).process(false);
+                }
+            });
+        } finally {
+            conn.close();
+        }
+
+        report();
+    }
+
+    /**
+     * フェーズを実行して、所要時間とその間のスタブサーバへの要求の件数を記録します。
+     * 
+     * @param name  フェーズの名前。
+     * @param phase フェーズの処理。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void runPhase(String name, Phase phase) throws SQLException, IOException {
+        final long startCount = stub.getRequestCount();
+        final long startNanos = System.nanoTime();
+        phase.run();
+        final long elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+        resultList.add(new PhaseResult(name, elapsedMillis, stub.getRequestCount() - startCount));
+    }
+
+    private void report() {
+        long totalMillis = 0;
+        long totalCalls = 0;
+        System.out.println();
+        System.out.println(String.format("%-32s %12s %10s %12s", "phase", "wall(ms)", "calls", "calls/sec"));
+        for (PhaseResult look : resultList) {
+            System.out.println(String.format("%-32s %12d %10d %12.1f", look.name, look.elapsedMillis, look.callCount,
+                    look.getCallsPerSecond()));
+            totalMillis += look.elapsedMillis;
+            totalCalls += look.callCount;
+        }
+        System.out.println(String.format("%-32s %12d %10d %12.1f", "total", totalMillis, totalCalls,
+                new PhaseResult("total", totalMillis, totalCalls).getCallsPerSecond()));
+        System.out.println("429 responses: " + stub.getTooManyRequestsCount());
+    }
+
+    private RsvrBacklogMigToolConf newConf(File workDir, Map<String, String> options, long projectId,
+            String projectKey) {
+        final RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setBacklogApiBaseUrl(stub.getBaseUrl());
+        conf.setBacklogApiSpaceName("bench");
+        conf.setBacklogApiKey("benchapikey");
+        conf.setBacklogApiProjectId(projectId);
+        conf.setBacklogApiProjectKey(projectKey);
+        conf.setDirDb(new File(workDir, "db").getPath());
+        conf.setDirExpAttachment(new File(workDir, "res/attachment").getPath());
+        conf.setDirExpFile(new File(workDir, "res/file").getPath());
+        conf.setDirExpWikiAttachment(new File(workDir, "res/wikiattachment").getPath());
+        // クライアント側のレート制限は既定では実質的に無効とし、スタブサーバの性能を計測します。
+        conf.setApiRateLimitPerMinute(Integer.parseInt(option(options, "clientratelimit", "600000")));
+        conf.setApiRetryInitialBackoff(Long.parseLong(option(options, "retrybackoff", "100")));
+        conf.setH2BulkLoad(Boolean.parseBoolean(option(options, "bulkload", "false")));
+        return conf;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int index = 0; index + 1 < args.length; index += 2) {
+            if (args[index].startsWith("-") == false) {
+                throw new IllegalArgumentException("Unexpected option: " + args[index]);
+            }
+            options.put(args[index].substring(1), args[index + 1]);
+        }
+        return options;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        final String value = options.get(name);
+        return (value == null ? defaultValue : value);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+
+/**
+ * 課題を模した行のバッチ追加における、素の JDBC と RsvrPreparedStatement の比較。
+ * 
+ * 1回の呼び出しで BATCH_SIZE 件を追加します。呼び出しの前にテーブルを空にします。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+    /**
+     * 1回の呼び出しで追加する件数。
+     */
+    private static final int BATCH_SIZE = 100;
+
+    private Connection conn;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        conn = BenchmarkDatabase.open("batchInsert");
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("TRUNCATE TABLE BenchIssue");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public int[] raw() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(BenchmarkDatabase.INSERT_ISSUE_SQL)) {
+            for (long index = 1; index <= BATCH_SIZE; index++) {
+                BenchmarkDatabase.bindIssue(stmt, index);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        }
+    }
+
+    @Benchmark
+    public int[] rsvr() throws SQLException {
+        final java.sql.Date day = new java.sql.Date(1661990400000L);
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(BenchmarkDatabase.INSERT_ISSUE_SQL))) {
+            for (long index = 1; index <= BATCH_SIZE; index++) {
+                final java.sql.Timestamp now = new java.sql.Timestamp(1661990400000L + index * 1000L);
+                stmt.setLong(index);
+                stmt.setString("BENCH-" + index);
+                stmt.setLong(index);
+                stmt.setLong(1L);
+                stmt.setString("タスク");
+                stmt.setString("課題の件名 " + index);
+                stmt.setString("課題の詳細です。ベンチマークのためのダミーの本文です。");
+                stmt.setString("中");
+                stmt.setString("未対応");
+                stmt.setLong(100L + index % 10);
+                stmt.setDate(day);
+                stmt.setDate(day);
+                stmt.setString("1.5");
+                stmt.setLong(100L);
+                stmt.setTimestamp(now);
+                stmt.setLong(100L);
+                stmt.setTimestamp(now);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * ベンチマーク用のインメモリ h2 database を準備するクラス。
+ * 
+ * 課題を模した多項目のテーブル BenchIssue と、名称の引き当てを模した少項目のテーブル BenchLookup を作成します。
+ */
+final class BenchmarkDatabase {
+    /**
+     * 課題を模したテーブルにあらかじめ格納しておく件数。
+     */
+    static final int ISSUE_ROW_COUNT = 1000;
+
+    /**
+     * 引き当て用のテーブルにあらかじめ格納しておく件数。
+     */
+    static final int LOOKUP_ROW_COUNT = 1000;
+
+    /**
+     * 課題を模したテーブルへの追加の SQL 文。
+     */
+    static final String INSERT_ISSUE_SQL = "INSERT INTO BenchIssue (IssueId, IssueKey, KeyId, ProjectId, IssueType" //
+            + ", Summary, Description, Priority, Status, Assignee, StartDate, DueDate, EstimatedHours" //
+            + ", CreatedUser, Created, UpdatedUser, Updated) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+    /**
+     * 課題を模したテーブルの読み込みの SQL 文。
+     */
+    static final String SELECT_ISSUE_SQL = "SELECT IssueId, IssueKey, KeyId, ProjectId, IssueType" //
+            + ", Summary, Description, Priority, Status, Assignee, StartDate, DueDate, EstimatedHours" //
+            + ", CreatedUser, Created, UpdatedUser, Updated FROM BenchIssue ORDER BY IssueId";
+
+    /**
+     * 引き当て用のテーブルの読み込みの SQL 文。
+     */
+    static final String SELECT_LOOKUP_SQL = "SELECT Name FROM BenchLookup WHERE Id = ?";
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * インメモリ h2 database に接続して、テーブルとデータを準備します。
+     * 
+     * @param name データベース名。ベンチマークごとに別の名前を指定します。
+     * @return データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    static Connection open(String name) throws SQLException {
+        final Connection conn = DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DROP TABLE IF EXISTS BenchIssue");
+            stmt.executeUpdate("DROP TABLE IF EXISTS BenchLookup");
+        }
+        createIssueTable(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE BenchLookup (Id BIGINT NOT NULL, Name VARCHAR(80), PRIMARY KEY(Id))");
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_ISSUE_SQL)) {
+            for (long index = 1; index <= ISSUE_ROW_COUNT; index++) {
+                bindIssue(stmt, index);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO BenchLookup (Id, Name) VALUES (?,?)")) {
+            for (long index = 1; index <= LOOKUP_ROW_COUNT; index++) {
+                stmt.setLong(1, index);
+                stmt.setString(2, "name-" + index);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        return conn;
+    }
+
+    /**
+     * 課題を模したテーブルを作成します。項目の構成は BacklogIssue に倣います。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    static void createIssueTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS BenchIssue (" //
+                    + "IssueId BIGINT NOT NULL" //
+                    + ",IssueKey VARCHAR(80) NOT NULL" //
+                    + ",KeyId BIGINT NOT NULL" //
+                    + ",ProjectId BIGINT" //
+                    + ",IssueType VARCHAR(80)" //
+                    + ",Summary VARCHAR(8192)" //
+                    + ",Description VARCHAR(65535)" //
+                    + ",Priority VARCHAR(80)" //
+                    + ",Status VARCHAR(80)" //
+                    + ",Assignee BIGINT" //
+                    + ",StartDate DATE" //
+                    + ",DueDate DATE" //
+                    + ",EstimatedHours VARCHAR(80)" //
+                    + ",CreatedUser BIGINT" //
+                    + ",Created TIMESTAMP" //
+                    + ",UpdatedUser BIGINT" //
+                    + ",Updated TIMESTAMP" //
+                    + ",PRIMARY KEY(IssueId)" //
+                    + ")");
+        }
+    }
+
+    /**
+     * 課題を模した1行分の値を素の JDBC でバインドします。
+     * 
+     * @param stmt  INSERT_ISSUE_SQL のステートメント。
+     * @param index 行の番号。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    static void bindIssue(PreparedStatement stmt, long index) throws SQLException {
+        final java.sql.Timestamp now = new java.sql.Timestamp(1661990400000L + index * 1000L);
+        final java.sql.Date day = new java.sql.Date(1661990400000L);
+        int col = 1;
+        stmt.setLong(col++, index);
+        stmt.setString(col++, "BENCH-" + index);
+        stmt.setLong(col++, index);
+        stmt.setLong(col++, 1L);
+        stmt.setString(col++, "タスク");
+        stmt.setString(col++, "課題の件名 " + index);
+        stmt.setString(col++, "課題の詳細です。ベンチマークのためのダミーの本文です。");
+        stmt.setString(col++, "中");
+        stmt.setString(col++, "未対応");
+        stmt.setLong(col++, 100L + index % 10);
+        stmt.setDate(col++, day);
+        stmt.setDate(col++, day);
+        stmt.setString(col++, "1.5");
+        stmt.setLong(col++, 100L);
+        stmt.setTimestamp(col++, now);
+        stmt.setLong(col++, 100L);
+        stmt.setTimestamp(col++, now);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * 主キーによる1行1項目の引き当てにおける、素の JDBC と Rsvr ラッパーの比較。
+ * 
+ * DAO の getXxxByName のような、ステートメントを都度作成する典型的な使い方を模しています。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NarrowLookupBenchmark {
+    private Connection conn;
+
+    /**
+     * 引き当てる Id。呼び出しごとに進めます。
+     */
+    private long nextId = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        conn = BenchmarkDatabase.open("narrowLookup");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    private long nextId() {
+        nextId = (nextId % BenchmarkDatabase.LOOKUP_ROW_COUNT) + 1;
+        return nextId;
+    }
+
+    @Benchmark
+    public String raw() throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(BenchmarkDatabase.SELECT_LOOKUP_SQL)) {
+            stmt.setLong(1, nextId());
+            try (ResultSet rset = stmt.executeQuery()) {
+                if (rset.next()) {
+                    return rset.getString(1);
+                }
+                return null;
+            }
+        }
+    }
+
+    @Benchmark
+    public String rsvr() throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(BenchmarkDatabase.SELECT_LOOKUP_SQL))) {
+            stmt.setLong(nextId());
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next()) {
+                    return rset.getString();
+                }
+                return null;
+            }
+        }
+    }
+}
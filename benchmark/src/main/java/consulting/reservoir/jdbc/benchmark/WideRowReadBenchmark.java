@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.jdbc.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * 課題を模した多項目の行をまとめて読み込む場合の、素の JDBC と RsvrResultSet の比較。
+ * 
+ * RsvrResultSet は項目の番号を自動で進め、数値をボクシングした型で戻します。そのコストを計測します。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WideRowReadBenchmark {
+    private Connection conn;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        conn = BenchmarkDatabase.open("wideRowRead");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public void raw(Blackhole bh) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(BenchmarkDatabase.SELECT_ISSUE_SQL)) {
+            try (ResultSet rset = stmt.executeQuery()) {
+                while (rset.next()) {
+                    int col = 1;
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getDate(col++));
+                    bh.consume(rset.getDate(col++));
+                    bh.consume(rset.getString(col++));
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getTimestamp(col++));
+                    bh.consume(rset.getLong(col++));
+                    bh.consume(rset.getTimestamp(col++));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void rsvr(Blackhole bh) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(BenchmarkDatabase.SELECT_ISSUE_SQL))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                while (rset.next()) {
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getDate());
+                    bh.consume(rset.getDate());
+                    bh.consume(rset.getString());
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getTimestamp());
+                    bh.consume(rset.getLong());
+                    bh.consume(rset.getTimestamp());
+                }
+            }
+        }
+    }
+}
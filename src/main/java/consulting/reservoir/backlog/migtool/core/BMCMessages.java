@@ -31,6 +31,9 @@ public class BMCMessages {
     // [BMC1101] 期待したコメント数と、実際に取得できたコメント数とが異なる
     public static final String BMC1101 = "[BMC1101] 期待したコメント数と、実際に取得できたコメント数とが異なる";
 
+    // [BMC1102] 期待した課題数と、実際に取得できた課題数とが異なる
+    public static final String BMC1102 = "[BMC1102] 期待した課題数と、実際に取得できた課題数とが異なる";
+
     // TODO TBD 重要なメッセージをここにまとめていくこと。
 
     ////////////////////
@@ -59,6 +62,15 @@ public class BMCMessages {
     // 【削除済み】【欠番】この課題は削除済みのものです。データ移行の都合で作成された空チケット ※このメッセージにはIDを含まない。
     public static final String MBC5107 = "【削除済み】【欠番】この課題は削除済みのものです。データ移行の都合で作成された空チケット";
 
+    // [BMC5108] Import: Issue: ジャーナルの記録をもとに中断した課題インポートを再開します。記録済みの KeyId:
+    public static final String BMC5108 = "[BMC5108] Import: Issue: ジャーナルの記録をもとに中断した課題インポートを再開します。記録済みの KeyId: ";
+
+    // [BMC5109] Import: Issue: 前回の中断時に作成済みでジャーナル未記録の課題を引き継ぎます。
+    public static final String BMC5109 = "[BMC5109] Import: Issue: 前回の中断時に作成済みでジャーナル未記録の課題を引き継ぎます。";
+
+    // [BMC5110] Import: Issue: 前回の中断時に反映済みでジャーナル未記録のコメントを引き継ぎます。
+    public static final String BMC5110 = "[BMC5110] Import: Issue: 前回の中断時に反映済みでジャーナル未記録のコメントを引き継ぎます。";
+
     // [MBC5111] import: Mapping User: 新旧ユーザをメールアドレスをもとに引き当て:
     public static final String MBC5111 = "[MBC5111] import: Mapping User: 新旧ユーザをメールアドレスをもとに引き当て: ";
 
@@ -81,6 +93,9 @@ public class BMCMessages {
     // [MBC5117] マッピングはすべて割当済みです。Import Phase4 以降を実施が可能です。
     public static final String MBC5117 = "[MBC5117] マッピングはすべて割当済みです。Import Phase4 以降を実施が可能です。";
 
+    // [BMC5118] Import: Issue: 再利用したアップロード済みの添付ファイルが受け付けられなかったため、アップロードし直します。
+    public static final String BMC5118 = "[BMC5118] Import: Issue: 再利用したアップロード済みの添付ファイルが受け付けられなかったため、アップロードし直します。";
+
     public static final String BMC5202 = "[BMC5202] Import: Category: Import cannot proceed because category(s) already exists in the project. Processing will be aborted. category count: ";
 
     // これを生かして、他のものは除去します。
@@ -101,6 +116,12 @@ public class BMCMessages {
 
     public static final String BMC5504 = "[BMC5504] Import: IssueType: Warn: 非本番モードであるのに、ProjectKey が MIGTEST から始まる名前ではありません。非本番モードでは ProjectKey は MIGTEST で開始するようにしてください. 処理スキップします.";
 
+    // [BMC5511] Backlog API 呼び出しで一時的なエラーが発生したので待機後ふたたび挑戦します。
+    public static final String BMC5511 = "[BMC5511] Backlog API 呼び出しで一時的なエラーが発生したので待機後ふたたび挑戦します。";
+
+    // [BMC5512] Backlog API 呼び出しのリトライ回数が上限に達したため処理を中断します。
+    public static final String BMC5512 = "[BMC5512] Backlog API 呼び出しのリトライ回数が上限に達したため処理を中断します。";
+
     public static final String BMC5602 = "[BMC5602] Import: IssueStatusType: Import cannot proceed because issueType(s) seems already exists in the project. Processing will be aborted. issueStatusType count: ";
 
     public static final String BMC5604 = "[BMC5604] Import: IssueStatusType: Warn: 非本番モードであるのに、ProjectKey が MIGTEST から始まる名前ではありません。非本番モードでは ProjectKey は MIGTEST で開始するようにしてください. 処理スキップします.";
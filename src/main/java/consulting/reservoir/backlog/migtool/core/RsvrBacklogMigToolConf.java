@@ -25,8 +25,98 @@ public class RsvrBacklogMigToolConf {
     private long backlogApiProjectId = -1;
     private String backlogApiProjectKey = "nokeyname";
 
+    /**
+     * Backlog API の接続先のベースURL。指定した場合はスペース名と .com/.jp の指定より優先します。ローカルのスタブサーバなどに接続する際に使用。
+     */
+    private String backlogApiBaseUrl = null;
+
     private int apiInterval = 1000;
 
+    /**
+     * 1分あたりの Backlog API 呼び出し可能回数。0 以下の場合は apiInterval から算出。
+     */
+    private int apiRateLimitPerMinute = 0;
+
+    /**
+     * Backlog API 呼び出し失敗時の最大リトライ回数。
+     */
+    private int apiRetryMax = 10;
+
+    /**
+     * Backlog API 呼び出しの初回リトライ時の待機時間 (ミリ秒)。リトライごとに倍になります。
+     */
+    private long apiRetryInitialBackoff = 1000;
+
+    /**
+     * Backlog API 呼び出しのリトライ時の待機時間の上限 (ミリ秒)。
+     */
+    private long apiRetryMaxBackoff = 60000;
+
+    /**
+     * リトライ対象とする HTTP ステータスコード。カンマ区切りで指定。
+     */
+    private String apiRetryStatusCodes = "429,500,502,503,504";
+
+    /**
+     * タイムアウトや接続断などの IO 例外をリトライ対象とするかどうか。
+     */
+    private boolean apiRetryOnIoError = true;
+
+    /**
+     * エクスポート時に Backlog API を並列に呼び出すワーカーの数。
+     */
+    private int expParallelism = 1;
+
+    /**
+     * エクスポート時に添付ファイルを並列にダウンロードするワーカーの数。
+     */
+    private int expDownloadParallelism = 4;
+
+    /**
+     * 差分エクスポートを実施するかどうか。
+     */
+    private boolean expIncremental = false;
+
+    /**
+     * インポート時に添付ファイルを先行して並列にアップロードするワーカーの数。0 の場合は先行してアップロードしない。
+     */
+    private int impUploadParallelism = 4;
+
+    /**
+     * インポート時に添付ファイルを先行してアップロードする課題の件数。
+     */
+    private int impUploadAheadIssueCount = 8;
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、1回のバッチにまとめる行数。
+     */
+    private int h2BatchSize = 500;
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、コミットする単位の行数。
+     */
+    private int h2CommitChunkSize = 10000;
+
+    /**
+     * エクスポートで h2 database を一括読み込みモードで使用するかどうか。
+     */
+    private boolean h2BulkLoad = false;
+
+    /**
+     * 一括読み込みモードでの h2 database のキャッシュサイズ (KB)。
+     */
+    private int h2BulkLoadCacheSizeKb = 256 * 1024;
+
+    /**
+     * 一括読み込みモードでの、コミットする単位の行数。
+     */
+    private int h2BulkLoadCommitChunkSize = 200000;
+
+    /**
+     * 課題の説明・コメントの本文・Wiki の本文などの大きな文字列を h2 database に CLOB として格納するかどうか。
+     */
+    private boolean h2LargeTextAsClob = false;
+
     /**
      * DBファイル名はこれに /backlogDb を付与したもの。
      */
@@ -39,6 +129,11 @@ public class RsvrBacklogMigToolConf {
     // private String dirExpFile = "./src/main/resources/static/file";
     private String dirExpWikiAttachment = "./target/backlogmig/res/wikiattachment";
 
+    /**
+     * 添付ファイルの内容を SHA-256 ハッシュ値をキーに1つずつ格納するディレクトリ名。
+     */
+    private String dirExpBlob = "./target/backlogmig/res/blob";
+
     private boolean isDebug = false;
 
     /**
@@ -95,6 +190,28 @@ public class RsvrBacklogMigToolConf {
         this.backlogApiKey = backlogApiKey;
     }
 
+    /**
+     * Backlog API の接続先のベースURLを取得します。
+     * 
+     * 指定した場合はスペース名と .com/.jp の指定より優先します。ローカルのスタブサーバなどに接続する際に使用します。
+     * 
+     * @return ベースURL。例: http://localhost:8080 。未指定の場合は null。
+     */
+    public String getBacklogApiBaseUrl() {
+        return backlogApiBaseUrl;
+    }
+
+    /**
+     * Backlog API の接続先のベースURLを設定します。
+     * 
+     * 指定した場合はスペース名と .com/.jp の指定より優先します。ローカルのスタブサーバなどに接続する際に使用します。
+     * 
+     * @param backlogApiBaseUrl ベースURL。例: http://localhost:8080 。末尾の /api/v2 は不要。
+     */
+    public void setBacklogApiBaseUrl(String backlogApiBaseUrl) {
+        this.backlogApiBaseUrl = backlogApiBaseUrl;
+    }
+
     /**
      * Backlog API の接続先の ProjectId を取得します。
      * 
@@ -214,6 +331,339 @@ public class RsvrBacklogMigToolConf {
         this.apiInterval = apiInterval;
     }
 
+    /**
+     * 1分あたりの Backlog API 呼び出し可能回数を取得します。
+     * 
+     * 0 以下が設定されている場合は、呼び出し間隔 (apiInterval) から算出した値を戻します。
+     * 
+     * @return 1分あたりの呼び出し可能回数。
+     */
+    public int getApiRateLimitPerMinute() {
+        if (apiRateLimitPerMinute > 0) {
+            return apiRateLimitPerMinute;
+        }
+        if (apiInterval <= 0) {
+            // 呼び出し間隔が指定されていない場合は Backlog の標準的な上限を想定します。
+            return 600;
+        }
+        return Math.max(1, 60000 / apiInterval);
+    }
+
+    /**
+     * 1分あたりの Backlog API 呼び出し可能回数を設定します。
+     * 
+     * @param apiRateLimitPerMinute 1分あたりの呼び出し可能回数。0 以下の場合は apiInterval から算出。
+     */
+    public void setApiRateLimitPerMinute(int apiRateLimitPerMinute) {
+        this.apiRateLimitPerMinute = apiRateLimitPerMinute;
+    }
+
+    /**
+     * Backlog API 呼び出し失敗時の最大リトライ回数を取得します。
+     * 
+     * @return 最大リトライ回数。
+     */
+    public int getApiRetryMax() {
+        return apiRetryMax;
+    }
+
+    /**
+     * Backlog API 呼び出し失敗時の最大リトライ回数を設定します。
+     * 
+     * @param apiRetryMax 最大リトライ回数。
+     */
+    public void setApiRetryMax(int apiRetryMax) {
+        this.apiRetryMax = apiRetryMax;
+    }
+
+    /**
+     * Backlog API 呼び出しの初回リトライ時の待機時間を取得します。
+     * 
+     * @return 初回リトライ時の待機時間 (ミリ秒)。
+     */
+    public long getApiRetryInitialBackoff() {
+        return apiRetryInitialBackoff;
+    }
+
+    /**
+     * Backlog API 呼び出しの初回リトライ時の待機時間を設定します。リトライごとに倍になります。
+     * 
+     * @param apiRetryInitialBackoff 初回リトライ時の待機時間 (ミリ秒)。
+     */
+    public void setApiRetryInitialBackoff(long apiRetryInitialBackoff) {
+        this.apiRetryInitialBackoff = apiRetryInitialBackoff;
+    }
+
+    /**
+     * Backlog API 呼び出しのリトライ時の待機時間の上限を取得します。
+     * 
+     * @return 待機時間の上限 (ミリ秒)。
+     */
+    public long getApiRetryMaxBackoff() {
+        return apiRetryMaxBackoff;
+    }
+
+    /**
+     * Backlog API 呼び出しのリトライ時の待機時間の上限を設定します。
+     * 
+     * @param apiRetryMaxBackoff 待機時間の上限 (ミリ秒)。
+     */
+    public void setApiRetryMaxBackoff(long apiRetryMaxBackoff) {
+        this.apiRetryMaxBackoff = apiRetryMaxBackoff;
+    }
+
+    /**
+     * リトライ対象とする HTTP ステータスコードを取得します。
+     * 
+     * @return カンマ区切りの HTTP ステータスコード。
+     */
+    public String getApiRetryStatusCodes() {
+        return apiRetryStatusCodes;
+    }
+
+    /**
+     * リトライ対象とする HTTP ステータスコードを設定します。
+     * 
+     * @param apiRetryStatusCodes カンマ区切りの HTTP ステータスコード。例: 429,500,502,503,504
+     */
+    public void setApiRetryStatusCodes(String apiRetryStatusCodes) {
+        this.apiRetryStatusCodes = apiRetryStatusCodes;
+    }
+
+    /**
+     * タイムアウトや接続断などの IO 例外をリトライ対象とするかどうかを取得します。
+     * 
+     * @return リトライ対象とする場合は true。
+     */
+    public boolean isApiRetryOnIoError() {
+        return apiRetryOnIoError;
+    }
+
+    /**
+     * タイムアウトや接続断などの IO 例外をリトライ対象とするかどうかを設定します。
+     * 
+     * @param apiRetryOnIoError リトライ対象とする場合は true。
+     */
+    public void setApiRetryOnIoError(boolean apiRetryOnIoError) {
+        this.apiRetryOnIoError = apiRetryOnIoError;
+    }
+
+    /**
+     * エクスポート時に Backlog API を並列に呼び出すワーカーの数を取得します。
+     * 
+     * @return ワーカーの数。
+     */
+    public int getExpParallelism() {
+        return expParallelism;
+    }
+
+    /**
+     * エクスポート時に Backlog API を並列に呼び出すワーカーの数を設定します。
+     * 
+     * ワーカーはレート制限を共有するため、ワーカーの数を増やしても1分あたりの呼び出し回数の上限は変わりません。
+     * 
+     * @param expParallelism ワーカーの数。1 以上。
+     */
+    public void setExpParallelism(int expParallelism) {
+        this.expParallelism = expParallelism;
+    }
+
+    /**
+     * エクスポート時に添付ファイルを並列にダウンロードするワーカーの数を取得します。
+     * 
+     * @return ワーカーの数。
+     */
+    public int getExpDownloadParallelism() {
+        return expDownloadParallelism;
+    }
+
+    /**
+     * エクスポート時に添付ファイルを並列にダウンロードするワーカーの数を設定します。
+     * 
+     * @param expDownloadParallelism ワーカーの数。1 以上。
+     */
+    public void setExpDownloadParallelism(int expDownloadParallelism) {
+        this.expDownloadParallelism = expDownloadParallelism;
+    }
+
+    /**
+     * 差分エクスポートを実施するかどうかを取得します。
+     * 
+     * @return 差分エクスポートを実施する場合は true。
+     */
+    public boolean isExpIncremental() {
+        return expIncremental;
+    }
+
+    /**
+     * 差分エクスポートを実施するかどうかを設定します。
+     * 
+     * true の場合、課題は前回のエクスポート以降に更新されたもののみを取得し、コメントと添付ファイルは更新日時が変わった課題のみを再取得します。
+     * 削除された課題は検知しないため、必要に応じて false で全件のエクスポートを実施してください。
+     * 
+     * @param expIncremental 差分エクスポートを実施する場合は true。
+     */
+    public void setExpIncremental(boolean expIncremental) {
+        this.expIncremental = expIncremental;
+    }
+
+    /**
+     * インポート時に添付ファイルを先行して並列にアップロードするワーカーの数を取得します。
+     * 
+     * @return ワーカーの数。0 の場合は先行してアップロードしない。
+     */
+    public int getImpUploadParallelism() {
+        return impUploadParallelism;
+    }
+
+    /**
+     * インポート時に添付ファイルを先行して並列にアップロードするワーカーの数を設定します。
+     * 
+     * 0 を指定すると、添付ファイルは変更履歴の反映の段階で1件ずつアップロードします。
+     * 
+     * @param impUploadParallelism ワーカーの数。0 以上。
+     */
+    public void setImpUploadParallelism(int impUploadParallelism) {
+        this.impUploadParallelism = impUploadParallelism;
+    }
+
+    /**
+     * インポート時に添付ファイルを先行してアップロードする課題の件数を取得します。
+     * 
+     * @return 課題の件数。
+     */
+    public int getImpUploadAheadIssueCount() {
+        return impUploadAheadIssueCount;
+    }
+
+    /**
+     * インポート時に添付ファイルを先行してアップロードする課題の件数を設定します。
+     * 
+     * Backlog は課題に添付されないままのアップロード済みファイルを一定時間で削除するため、大きくしすぎないでください。
+     * 
+     * @param impUploadAheadIssueCount 課題の件数。1 以上。
+     */
+    public void setImpUploadAheadIssueCount(int impUploadAheadIssueCount) {
+        this.impUploadAheadIssueCount = impUploadAheadIssueCount;
+    }
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、1回のバッチにまとめる行数を取得します。
+     * 
+     * @return 1回のバッチにまとめる行数。
+     */
+    public int getH2BatchSize() {
+        return h2BatchSize;
+    }
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、1回のバッチにまとめる行数を設定します。
+     * 
+     * @param h2BatchSize 1回のバッチにまとめる行数。1 以上。
+     */
+    public void setH2BatchSize(int h2BatchSize) {
+        this.h2BatchSize = h2BatchSize;
+    }
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、コミットする単位の行数を取得します。
+     * 
+     * @return コミットする単位の行数。
+     */
+    public int getH2CommitChunkSize() {
+        return h2CommitChunkSize;
+    }
+
+    /**
+     * h2 database への書き込みをバッチ実行する際の、コミットする単位の行数を設定します。
+     * 
+     * 処理が中断した場合でも、コミット済みの行は h2 database に残ります。
+     * 
+     * @param h2CommitChunkSize コミットする単位の行数。1 以上。
+     */
+    public void setH2CommitChunkSize(int h2CommitChunkSize) {
+        this.h2CommitChunkSize = h2CommitChunkSize;
+    }
+
+    /**
+     * エクスポートで h2 database を一括読み込みモードで使用するかどうかを取得します。
+     * 
+     * @return 一括読み込みモードの場合は true。
+     */
+    public boolean isH2BulkLoad() {
+        return h2BulkLoad;
+    }
+
+    /**
+     * エクスポートで h2 database を一括読み込みモードで使用するかどうかを設定します。
+     * 
+     * 一括読み込みモードでは、大きな単位でコミットし、キャッシュを大きく取り、古いデータの保持を止めて書き込みを減らします。
+     * 処理が中断した場合は h2 database の内容が失われることがあるため、初回の全件エクスポートなど、やり直しのきく場合に限って使用してください。
+     * 既定は false (安全なモード) です。この設定は H2DaoUtil.getConnection(toolConf, true) で接続した場合に限って反映します。
+     * 
+     * @param h2BulkLoad 一括読み込みモードの場合は true。
+     */
+    public void setH2BulkLoad(boolean h2BulkLoad) {
+        this.h2BulkLoad = h2BulkLoad;
+    }
+
+    /**
+     * 一括読み込みモードでの h2 database のキャッシュサイズを取得します。
+     * 
+     * @return キャッシュサイズ (KB)。
+     */
+    public int getH2BulkLoadCacheSizeKb() {
+        return h2BulkLoadCacheSizeKb;
+    }
+
+    /**
+     * 一括読み込みモードでの h2 database のキャッシュサイズを設定します。
+     * 
+     * @param h2BulkLoadCacheSizeKb キャッシュサイズ (KB)。
+     */
+    public void setH2BulkLoadCacheSizeKb(int h2BulkLoadCacheSizeKb) {
+        this.h2BulkLoadCacheSizeKb = h2BulkLoadCacheSizeKb;
+    }
+
+    /**
+     * 一括読み込みモードでの、コミットする単位の行数を取得します。
+     * 
+     * @return コミットする単位の行数。
+     */
+    public int getH2BulkLoadCommitChunkSize() {
+        return h2BulkLoadCommitChunkSize;
+    }
+
+    /**
+     * 一括読み込みモードでの、コミットする単位の行数を設定します。h2CommitChunkSize の代わりに使用します。
+     * 
+     * @param h2BulkLoadCommitChunkSize コミットする単位の行数。1 以上。
+     */
+    public void setH2BulkLoadCommitChunkSize(int h2BulkLoadCommitChunkSize) {
+        this.h2BulkLoadCommitChunkSize = h2BulkLoadCommitChunkSize;
+    }
+
+    /**
+     * 大きな文字列を h2 database に CLOB として格納するかどうかを取得します。
+     * 
+     * @return CLOB として格納する場合は true。
+     */
+    public boolean isH2LargeTextAsClob() {
+        return h2LargeTextAsClob;
+    }
+
+    /**
+     * 大きな文字列を h2 database に CLOB として格納するかどうかを設定します。
+     * 
+     * true の場合、エクスポートで課題の説明・コメントの本文・変更履歴の値・Wiki の本文の列を CLOB に変更し、インポートではこれらの値を API
+     * 呼び出しの直前に Reader 経由で読み込みます。先読みした課題が大きな文字列を保持しなくなるため、ヒープの使用量を抑えられます。既定は false です。
+     * 
+     * @param h2LargeTextAsClob CLOB として格納する場合は true。
+     */
+    public void setH2LargeTextAsClob(boolean h2LargeTextAsClob) {
+        this.h2LargeTextAsClob = h2LargeTextAsClob;
+    }
+
     /**
      * エクスポートした Wiki添付ファイルの配置先ディレクトリ名を取得します。
      * 
@@ -232,6 +682,27 @@ public class RsvrBacklogMigToolConf {
         this.dirExpWikiAttachment = dirExpWikiAttachment;
     }
 
+    /**
+     * 添付ファイルの内容をハッシュ値をキーに格納するディレクトリ名を取得します。
+     * 
+     * @return 添付ファイルの内容を格納するディレクトリ名。
+     */
+    public String getDirExpBlob() {
+        return dirExpBlob;
+    }
+
+    /**
+     * 添付ファイルの内容をハッシュ値をキーに格納するディレクトリ名を設定します。
+     * 
+     * 課題・Wiki の添付ファイルは、同じ内容のものをこのディレクトリに1つだけ格納し、dirExpAttachment・dirExpWikiAttachment
+     * にはハードリンクを作成します。ハードリンクが作成できないファイルシステムの場合はコピーします。
+     * 
+     * @param dirExpBlob 添付ファイルの内容を格納するディレクトリ名。
+     */
+    public void setDirExpBlob(String dirExpBlob) {
+        this.dirExpBlob = dirExpBlob;
+    }
+
     public boolean isDebug() {
         return isDebug;
     }
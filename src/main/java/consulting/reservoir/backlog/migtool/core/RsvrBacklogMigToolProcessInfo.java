@@ -17,112 +17,363 @@ package consulting.reservoir.backlog.migtool.core;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * BacklogMigToolの動作結果情報を蓄えるクラス。何件レコード追加/更新したのかを保持します。
+ * 
+ * 処理件数はカウンタータイプごとの LongAdder で保持するため、複数のスレッドから同時にインクリメントできます。
+ * 集計や表示には {@link #snapshot()} で取得した読み取り専用の写しを使用します。
  */
 public class RsvrBacklogMigToolProcessInfo {
-    public static final String[] COUNTER_TYPE = { "User", "Project", "IssueType", "IssueStatusType", "Category",
-            "Milestone", "Version", "CustomFieldSetting", //
-            "File", "Wiki", "WikiAttachment", //
-            "Issue", "IssueComment", "IssueCustomField", "IssueAttachment", "IssueCommentChangeLog",
-            // TARGET
-            "TargetUser", "TargetProject", "TargetIssueType", "TargetCategory", "TargetMilestone", "TargetVersion", //
-            "TargetFile", "TargetWiki", "TargetWikiAttachment", //
-            "TargetIssue", "TargetIssuePriorityType", "TargetIssueResolutionType", "TargetIssueStatusType", //
-            // MAPPING
-            "MappingUser", //
-    };
+    /**
+     * カウンタータイプ。
+     */
+    public enum CounterType {
+        // SOURCE
+        USER("User"),
+        PROJECT("Project"),
+        ISSUE_TYPE("IssueType"),
+        ISSUE_STATUS_TYPE("IssueStatusType"),
+        CATEGORY("Category"),
+        MILESTONE("Milestone"),
+        VERSION("Version"),
+        CUSTOM_FIELD_SETTING("CustomFieldSetting"),
+        FILE("File"),
+        WIKI("Wiki"),
+        WIKI_ATTACHMENT("WikiAttachment"),
+        ISSUE("Issue"),
+        ISSUE_COMMENT("IssueComment"),
+        ISSUE_CUSTOM_FIELD("IssueCustomField"),
+        ISSUE_ATTACHMENT("IssueAttachment"),
+        ISSUE_COMMENT_CHANGE_LOG("IssueCommentChangeLog"),
+        // TARGET
+        TARGET_USER("TargetUser"),
+        TARGET_PROJECT("TargetProject"),
+        TARGET_ISSUE_TYPE("TargetIssueType"),
+        TARGET_CATEGORY("TargetCategory"),
+        TARGET_MILESTONE("TargetMilestone"),
+        TARGET_VERSION("TargetVersion"),
+        TARGET_FILE("TargetFile"),
+        TARGET_WIKI("TargetWiki"),
+        TARGET_WIKI_ATTACHMENT("TargetWikiAttachment"),
+        TARGET_ISSUE("TargetIssue"),
+        TARGET_ISSUE_PRIORITY_TYPE("TargetIssuePriorityType"),
+        TARGET_ISSUE_RESOLUTION_TYPE("TargetIssueResolutionType"),
+        TARGET_ISSUE_STATUS_TYPE("TargetIssueStatusType"),
+        // MAPPING
+        MAPPING_USER("MappingUser");
+
+        /**
+         * 表示用の名称。
+         */
+        private final String name;
+
+        CounterType(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 表示用の名称を取得します。
+         * 
+         * @return 表示用の名称。
+         */
+        public String getName() {
+            return name;
+        }
+    }
 
     /**
-     * 処理件数を記憶するマップ
+     * カウンタータイプの名称の一覧。
      */
-    private final Map<String, Integer> counter = new HashMap<String, Integer>();
+    public static final String[] COUNTER_TYPE;
+
+    /**
+     * 名称からカウンタータイプを引き当てるためのマップ。
+     */
+    private static final Map<String, CounterType> COUNTER_TYPE_MAP = new HashMap<>();
+
+    static {
+        final CounterType[] types = CounterType.values();
+        COUNTER_TYPE = new String[types.length];
+        for (int index = 0; index < types.length; index++) {
+            COUNTER_TYPE[index] = types[index].getName();
+            COUNTER_TYPE_MAP.put(types[index].getName(), types[index]);
+        }
+    }
+
+    /**
+     * 追加件数。カウンタータイプの ordinal で添字します。
+     */
+    private final LongAdder[] insCounter = newCounterArray();
+
+    /**
+     * 更新件数。カウンタータイプの ordinal で添字します。
+     */
+    private final LongAdder[] updCounter = newCounterArray();
+
+    /**
+     * 処理速度の算出の起点となる時刻 (System.nanoTime)。
+     */
+    private final long startNanos = System.nanoTime();
 
     /**
      * 処理件数の状況を文字列形式で取得。
      * 
-     * @param counterType
-     * @return
+     * @param counterType カウンタータイプ。
+     * @return 処理件数の状況。
+     */
+    public String getDisplayString(CounterType counterType) {
+        return "`" + counterType.getName() + "`: ins:" + getIns(counterType) + ", upd:" + getUpd(counterType);
+    }
+
+    /**
+     * 処理件数の状況を文字列形式で取得。
+     * 
+     * @param counterType カウンタータイプの名称。
+     * @return 処理件数の状況。
      */
     public String getDisplayString(String counterType) {
-        validateCounterType(counterType);
-        return "`" + counterType + "`: ins:" + getIns(counterType) + ", upd:" + getUpd(counterType);
+        return getDisplayString(toCounterType(counterType));
     }
 
     /**
      * すべての処理件数を標準エラー出力にダンプ。
      */
     public void dumpAllCounter() {
+        final Snapshot snapshot = snapshot();
         System.err.println("All counter:");
-        for (String look : COUNTER_TYPE) {
-            System.err.println("  " + getDisplayString(look));
+        for (CounterType look : CounterType.values()) {
+            System.err.println("  " + snapshot.getDisplayString(look));
         }
     }
 
     /**
      * 追加件数を取得。
      * 
-     * @param counterType
-     * @return
+     * @param counterType カウンタータイプ。
+     * @return 追加件数。
+     */
+    public long getIns(CounterType counterType) {
+        return insCounter[counterType.ordinal()].sum();
+    }
+
+    /**
+     * 追加件数を取得。
+     * 
+     * int の範囲を超える場合は Integer.MAX_VALUE を戻します。
+     * 
+     * @param counterType カウンタータイプの名称。
+     * @return 追加件数。
+     * @deprecated 件数が int の範囲を超える場合があります。{@link #getIns(CounterType)} を使用してください。
      */
+    @Deprecated
     public int getIns(String counterType) {
-        validateCounterType(counterType);
-        Integer lookup = counter.get(counterType + ":" + "Ins");
-        if (lookup == null) {
-            return 0;
-        }
-        return lookup;
+        return (int) Math.min(Integer.MAX_VALUE, getIns(toCounterType(counterType)));
+    }
+
+    /**
+     * 更新件数を取得。
+     * 
+     * @param counterType カウンタータイプ。
+     * @return 更新件数。
+     */
+    public long getUpd(CounterType counterType) {
+        return updCounter[counterType.ordinal()].sum();
     }
 
     /**
      * 更新件数を取得。
      * 
-     * @param counterType
-     * @return
+     * int の範囲を超える場合は Integer.MAX_VALUE を戻します。
+     * 
+     * @param counterType カウンタータイプの名称。
+     * @return 更新件数。
+     * @deprecated 件数が int の範囲を超える場合があります。{@link #getUpd(CounterType)} を使用してください。
      */
+    @Deprecated
     public int getUpd(String counterType) {
-        validateCounterType(counterType);
-        Integer lookup = counter.get(counterType + ":" + "Upd");
-        if (lookup == null) {
-            return 0;
-        }
-        return lookup;
+        return (int) Math.min(Integer.MAX_VALUE, getUpd(toCounterType(counterType)));
+    }
+
+    /**
+     * 追加件数をインクリメント。
+     * 
+     * @param counterType カウンタータイプ。
+     */
+    public void incrementIns(CounterType counterType) {
+        insCounter[counterType.ordinal()].increment();
     }
 
     /**
      * 追加件数をインクリメント。
      * 
-     * @param counterType
+     * @param counterType カウンタータイプの名称。
      */
     public void incrementIns(String counterType) {
-        validateCounterType(counterType);
-        int current = getIns(counterType);
-        counter.put(counterType + ":" + "Ins", ++current);
+        incrementIns(toCounterType(counterType));
+    }
+
+    /**
+     * 更新件数をインクリメント。
+     * 
+     * @param counterType カウンタータイプ。
+     */
+    public void incrementUpd(CounterType counterType) {
+        updCounter[counterType.ordinal()].increment();
     }
 
     /**
      * 更新件数をインクリメント。
      * 
-     * @param counterType
+     * @param counterType カウンタータイプの名称。
      */
     public void incrementUpd(String counterType) {
-        validateCounterType(counterType);
-        int current = getUpd(counterType);
-        counter.put(counterType + ":" + "Upd", ++current);
+        incrementUpd(toCounterType(counterType));
     }
 
     /**
-     * 与えられたカウンタータイプ名が正しいものかどうか判定。
+     * 現時点の処理件数の読み取り専用の写しを取得します。処理中に呼び出しても問題ありません。
      * 
-     * @param counterType
+     * @return 処理件数の写し。
      */
-    private static void validateCounterType(String counterType) {
-        for (String look : COUNTER_TYPE) {
-            if (look.equals(counterType)) {
-                return;
+    public Snapshot snapshot() {
+        final int size = CounterType.values().length;
+        final long[] ins = new long[size];
+        final long[] upd = new long[size];
+        for (int index = 0; index < size; index++) {
+            ins[index] = insCounter[index].sum();
+            upd[index] = updCounter[index].sum();
+        }
+        return new Snapshot(ins, upd, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 与えられたカウンタータイプ名に対応するカウンタータイプを取得。
+     * 
+     * @param counterType カウンタータイプの名称。
+     * @return カウンタータイプ。
+     */
+    private static CounterType toCounterType(String counterType) {
+        final CounterType lookup = COUNTER_TYPE_MAP.get(counterType);
+        if (lookup == null) {
+            throw new IllegalArgumentException("Unexpected: Unknown counterType: " + counterType);
+        }
+        return lookup;
+    }
+
+    private static LongAdder[] newCounterArray() {
+        final LongAdder[] counters = new LongAdder[CounterType.values().length];
+        for (int index = 0; index < counters.length; index++) {
+            counters[index] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * ある時点の処理件数の読み取り専用の写し。
+     * 
+     * 処理速度 (件/秒) は、追加件数と更新件数の合計を経過時間で割って算出します。
+     */
+    public static class Snapshot {
+        /**
+         * 追加件数。
+         */
+        private final long[] ins;
+
+        /**
+         * 更新件数。
+         */
+        private final long[] upd;
+
+        /**
+         * 処理開始からの経過時間 (ナノ秒)。
+         */
+        private final long elapsedNanos;
+
+        Snapshot(long[] ins, long[] upd, long elapsedNanos) {
+            this.ins = ins;
+            this.upd = upd;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * 追加件数を取得します。
+         * 
+         * @param counterType カウンタータイプ。
+         * @return 追加件数。
+         */
+        public long getIns(CounterType counterType) {
+            return ins[counterType.ordinal()];
+        }
+
+        /**
+         * 更新件数を取得します。
+         * 
+         * @param counterType カウンタータイプ。
+         * @return 更新件数。
+         */
+        public long getUpd(CounterType counterType) {
+            return upd[counterType.ordinal()];
+        }
+
+        /**
+         * 追加件数と更新件数の合計を取得します。
+         * 
+         * @param counterType カウンタータイプ。
+         * @return 追加件数と更新件数の合計。
+         */
+        public long getTotal(CounterType counterType) {
+            return ins[counterType.ordinal()] + upd[counterType.ordinal()];
+        }
+
+        /**
+         * 処理開始からの経過時間を取得します。
+         * 
+         * @return 経過時間 (ミリ秒)。
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1000000L;
+        }
+
+        /**
+         * 処理開始からの処理速度を取得します。
+         * 
+         * @param counterType カウンタータイプ。
+         * @return 処理速度 (件/秒)。経過時間が 0 の場合は 0。
+         */
+        public double getRate(CounterType counterType) {
+            return calcRate(getTotal(counterType), elapsedNanos);
+        }
+
+        /**
+         * 以前に取得した写しからの処理速度を取得します。処理中の直近の処理速度の表示に使用します。
+         * 
+         * @param previous    以前に取得した写し。
+         * @param counterType カウンタータイプ。
+         * @return 処理速度 (件/秒)。経過時間が 0 の場合は 0。
+         */
+        public double getRateSince(Snapshot previous, CounterType counterType) {
+            return calcRate(getTotal(counterType) - previous.getTotal(counterType),
+                    elapsedNanos - previous.elapsedNanos);
+        }
+
+        /**
+         * 処理件数と処理速度の状況を文字列形式で取得。
+         * 
+         * @param counterType カウンタータイプ。
+         * @return 処理件数と処理速度の状況。
+         */
+        public String getDisplayString(CounterType counterType) {
+            return "`" + counterType.getName() + "`: ins:" + getIns(counterType) + ", upd:" + getUpd(counterType)
+                    + ", rate:" + String.format("%.1f", getRate(counterType)) + "/s";
+        }
+
+        private static double calcRate(long count, long nanos) {
+            if (nanos <= 0) {
+                return 0.0;
             }
+            return count * 1000000000.0 / nanos;
         }
-        throw new IllegalArgumentException("Unexpected: Unknown counterType: " + counterType);
     }
 }
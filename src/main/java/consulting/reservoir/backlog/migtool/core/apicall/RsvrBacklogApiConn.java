@@ -39,6 +39,16 @@ public class RsvrBacklogApiConn {
      */
     private RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
 
+    /**
+     * Backlog API 呼び出しのレート制限。この接続を利用するすべての API 呼び出しで共有します。
+     */
+    private RsvrBacklogApiRateLimiter rateLimiter = null;
+
+    /**
+     * Backlog API 呼び出し失敗時のリトライ方針。リトライ回数や待機時間の合計もここに蓄積されます。
+     */
+    private RsvrBacklogApiRetryPolicy retryPolicy = null;
+
     public BacklogClient getClient() {
         return bklClient;
     }
@@ -59,6 +69,22 @@ public class RsvrBacklogApiConn {
         return processInfo;
     }
 
+    public RsvrBacklogApiRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public void setRateLimiter(RsvrBacklogApiRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public RsvrBacklogApiRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(RsvrBacklogApiRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     ////////////////////////////////////////////////
     // 利便性のための簡易メソッド
 
@@ -23,6 +23,7 @@ import com.nulabinc.backlog4j.Space;
 import com.nulabinc.backlog4j.conf.BacklogComConfigure;
 import com.nulabinc.backlog4j.conf.BacklogConfigure;
 import com.nulabinc.backlog4j.conf.BacklogJpConfigure;
+import com.nulabinc.backlog4j.conf.BacklogPackageConfigure;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
@@ -45,9 +46,17 @@ public class RsvrBacklogApiConnUtil {
         // このタイミングでtoolConfインスタンスを記憶。
         bklConn.setToolConf(toolConf);
 
-        // jp と com とで接続に利用する Configure クラスが異なります。
+        // API呼び出しで共有するレート制限を作成します。
+        bklConn.setRateLimiter(new RsvrBacklogApiRateLimiter(toolConf.getApiRateLimitPerMinute()));
+        // API呼び出し失敗時のリトライ方針を作成します。
+        bklConn.setRetryPolicy(new RsvrBacklogApiRetryPolicy(toolConf));
+
+        // jp と com とで接続に利用する Configure クラスが異なります。ベースURLが指定された場合はそちらを優先します。
         BacklogConfigure bklConfig;
-        if (toolConf.isBacklogApiIsSiteJp() == false) {
+        if (toolConf.getBacklogApiBaseUrl() != null && toolConf.getBacklogApiBaseUrl().trim().length() > 0) {
+            bklConfig = new BacklogPackageConfigure(toolConf.getBacklogApiBaseUrl().trim())
+                    .apiKey(toolConf.getBacklogApiKey());
+        } else if (toolConf.isBacklogApiIsSiteJp() == false) {
             bklConfig = new BacklogComConfigure(toolConf.getBacklogApiSpaceName()).apiKey(toolConf.getBacklogApiKey());
         } else {
             bklConfig = new BacklogJpConfigure(toolConf.getBacklogApiSpaceName()).apiKey(toolConf.getBacklogApiKey());
@@ -57,6 +66,7 @@ public class RsvrBacklogApiConnUtil {
         bklConn.setClient(new BacklogClientFactory(bklConfig).newClient());
 
         // Backlog API を経由してスペースを読み込めることを確認します。
+        bklConn.getRateLimiter().acquire();
         Space spc = bklConn.getClient().getSpace();
 
         // [BMC0001] Space Name:
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.apicall;
+
+/**
+ * Backlog API 呼び出しのためのトークンバケット方式のレート制限クラス。
+ * 
+ * API呼び出しの前に {@link #acquire()} を呼び出すことで、1分あたりの呼び出し枠を使い切るまでは待機なしで呼び出し、枠が尽きた場合にのみ枠が回復するまで待機します。
+ * 
+ * レート制限超え (429) が発生した場合には {@link #block(long)} で通知すると、指定の時間 (最大1分) はすべての呼び出しを待機させます。
+ * 
+ * 複数スレッドから共有して利用できます。
+ */
+public class RsvrBacklogApiRateLimiter {
+    /**
+     * レート制限の計測単位となる時間 (ミリ秒)。Backlog のレート制限は 1分あたりの回数で示されます。
+     */
+    private static final long WINDOW_MILLIS = 60000;
+
+    /**
+     * 排他制御のためのオブジェクト。
+     */
+    private final Object lockObj = new Object();
+
+    /**
+     * 1分あたりの呼び出し可能回数 (バケットの容量)。
+     */
+    private double capacity;
+
+    /**
+     * 現在利用可能な呼び出し枠の数。予約により負の値となる場合があります。
+     */
+    private double tokens;
+
+    /**
+     * 最後に枠を補充した時刻 (System.nanoTime)。
+     */
+    private long lastRefillNanos;
+
+    /**
+     * レート制限超えにより呼び出しを待機させる期限の時刻 (エポックミリ秒)。
+     */
+    private long blockedUntilMillis = 0;
+
+    /**
+     * {@link #acquire()} が呼び出された回数。
+     */
+    private long acquireCount = 0;
+
+    /**
+     * {@link #acquire()} で待機した合計時間 (ミリ秒)。
+     */
+    private long totalWaitMillis = 0;
+
+    /**
+     * レート制限クラスを作成します。
+     * 
+     * @param limitPerMinute 1分あたりの呼び出し可能回数。
+     */
+    public RsvrBacklogApiRateLimiter(int limitPerMinute) {
+        if (limitPerMinute <= 0) {
+            throw new IllegalArgumentException("limitPerMinute には 1 以上を指定してください: " + limitPerMinute);
+        }
+        this.capacity = limitPerMinute;
+        this.tokens = limitPerMinute;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * API呼び出し1回分の枠を確保します。枠が無い場合は枠が回復するまで待機します。
+     */
+    public void acquire() {
+        final long waitMillis;
+        synchronized (lockObj) {
+            refill();
+            acquireCount++;
+
+            // 枠を予約。枠が足りない場合は負の値となり、その分だけ待機します。
+            tokens -= 1.0;
+            long tokenWaitMillis = 0;
+            if (tokens < 0) {
+                tokenWaitMillis = (long) Math.ceil(-tokens * WINDOW_MILLIS / capacity);
+            }
+
+            // レート制限超えで呼び出しを止めている場合は期限まで待機します。
+            long blockedWaitMillis = blockedUntilMillis - System.currentTimeMillis();
+
+            waitMillis = Math.max(tokenWaitMillis, blockedWaitMillis);
+            if (waitMillis > 0) {
+                totalWaitMillis += waitMillis;
+            }
+        }
+
+        if (waitMillis > 0) {
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException ex) {
+                System.err.println("Unexpected case: " + ex.toString());
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * レート制限超えが発生したことを反映します。残りの枠を使い切ったものとし、指定の時間はすべての呼び出しを待機させます。
+     * 
+     * 待機させる時間はレート制限の計測単位である 1分を上限とします。既により長く待機させている場合はそちらを優先します。
+     * 
+     * @param blockMillis 呼び出しを待機させる時間 (ミリ秒)。
+     * @return 呼び出しを待機させる残り時間 (ミリ秒)。
+     */
+    public long block(long blockMillis) {
+        synchronized (lockObj) {
+            refill();
+            if (tokens > 0) {
+                tokens = 0;
+            }
+            final long nowMillis = System.currentTimeMillis();
+            blockedUntilMillis = Math.max(blockedUntilMillis,
+                    nowMillis + Math.max(0, Math.min(blockMillis, WINDOW_MILLIS)));
+            return blockedUntilMillis - nowMillis;
+        }
+    }
+
+    /**
+     * 1分あたりの呼び出し可能回数を取得します。
+     * 
+     * @return 1分あたりの呼び出し可能回数。
+     */
+    public int getLimitPerMinute() {
+        synchronized (lockObj) {
+            return (int) capacity;
+        }
+    }
+
+    /**
+     * {@link #acquire()} が呼び出された回数を取得します。
+     * 
+     * @return 呼び出し回数。
+     */
+    public long getAcquireCount() {
+        synchronized (lockObj) {
+            return acquireCount;
+        }
+    }
+
+    /**
+     * {@link #acquire()} で待機した合計時間を取得します。
+     * 
+     * @return 待機した合計時間 (ミリ秒)。
+     */
+    public long getTotalWaitMillis() {
+        synchronized (lockObj) {
+            return totalWaitMillis;
+        }
+    }
+
+    /**
+     * 経過時間に応じて枠を補充します。lockObj を取得した状態で呼び出します。
+     */
+    private void refill() {
+        final long nowNanos = System.nanoTime();
+        final double elapsedMillis = (nowNanos - lastRefillNanos) / 1000000.0;
+        lastRefillNanos = nowNanos;
+        tokens = Math.min(capacity, tokens + elapsedMillis * capacity / WINDOW_MILLIS);
+    }
+}
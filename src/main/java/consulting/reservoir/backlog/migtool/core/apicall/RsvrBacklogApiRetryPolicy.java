@@ -0,0 +1,203 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.apicall;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nulabinc.backlog4j.BacklogAPIException;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+
+/**
+ * Backlog API 呼び出しのリトライ方針をあらわすクラス。
+ * 
+ * ジッター付きの指数バックオフで待機時間を決定します。レート制限超えの場合は、レート制限を通じて他の呼び出しも同じ時間だけ待機させます。
+ * 
+ * 複数スレッドから共有して利用できます。
+ */
+public class RsvrBacklogApiRetryPolicy {
+    /**
+     * レート制限超えをあらわす HTTP ステータスコード。
+     */
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * 最大リトライ回数。
+     */
+    private final int maxRetry;
+
+    /**
+     * 初回リトライ時の待機時間 (ミリ秒)。以降リトライごとに倍になります。
+     */
+    private final long initialBackoffMillis;
+
+    /**
+     * リトライ時の待機時間の上限 (ミリ秒)。
+     */
+    private final long maxBackoffMillis;
+
+    /**
+     * リトライ対象とする HTTP ステータスコードの一覧。
+     */
+    private final Set<Integer> retryableStatusCodes = new HashSet<>();
+
+    /**
+     * タイムアウトなど通信上の IO 例外をリトライ対象とするかどうか。
+     */
+    private final boolean retryOnIoError;
+
+    /**
+     * リトライした回数の合計。
+     */
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * リトライのために待機した時間の合計 (ミリ秒)。
+     */
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    /**
+     * リトライ方針を作成します。
+     * 
+     * @param toolConf BacklogMigTool 構成情報。
+     */
+    public RsvrBacklogApiRetryPolicy(RsvrBacklogMigToolConf toolConf) {
+        this.maxRetry = toolConf.getApiRetryMax();
+        this.initialBackoffMillis = toolConf.getApiRetryInitialBackoff();
+        this.maxBackoffMillis = toolConf.getApiRetryMaxBackoff();
+        this.retryOnIoError = toolConf.isApiRetryOnIoError();
+        for (String look : toolConf.getApiRetryStatusCodes().split(",")) {
+            if (look.trim().length() == 0) {
+                continue;
+            }
+            retryableStatusCodes.add(Integer.parseInt(look.trim()));
+        }
+    }
+
+    /**
+     * 最大リトライ回数を取得します。
+     * 
+     * @return 最大リトライ回数。
+     */
+    public int getMaxRetry() {
+        return maxRetry;
+    }
+
+    /**
+     * 指定の例外がリトライ可能かどうかを判定します。
+     * 
+     * レート制限超え (429) はサーバで処理されていないため、どの呼び出しもリトライ可能とします。それ以外のステータスコードや通信上の IO
+     * 例外はサーバで処理済みの可能性があるため、冪等な呼び出しのみリトライ可能とします。
+     * 
+     * @param ex         API呼び出しで発生した例外。
+     * @param idempotent 冪等な呼び出しかどうか。課題やコメントの追加など、繰り返すと結果が変わる呼び出しの場合は false。
+     * @return リトライ可能であれば true。
+     */
+    public boolean isRetryable(Throwable ex, boolean idempotent) {
+        if (ex instanceof BacklogAPIException) {
+            final int statusCode = ((BacklogAPIException) ex).getStatusCode();
+            if (retryableStatusCodes.contains(statusCode)) {
+                return idempotent || statusCode == STATUS_TOO_MANY_REQUESTS;
+            }
+        }
+        if (retryOnIoError && idempotent) {
+            // 原因をたどって、タイムアウトや接続断であればリトライ可能とします。
+            for (Throwable look = ex; look != null; look = look.getCause()) {
+                if (look instanceof InterruptedIOException || look instanceof SocketException) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 指定の例外がレート制限超え (429) かどうかを判定します。
+     * 
+     * @param ex API呼び出しで発生した例外。
+     * @return レート制限超えであれば true。
+     */
+    public boolean isRateLimitExceeded(Throwable ex) {
+        return ex instanceof BacklogAPIException
+                && ((BacklogAPIException) ex).getStatusCode() == STATUS_TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * リトライまでの待機時間を算出します。
+     * 
+     * @param retry 何回目のリトライか (0 はじまり)。
+     * @return 待機時間 (ミリ秒)。
+     */
+    public long computeBackoffMillis(int retry) {
+        // 指数バックオフ。桁あふれしないよう上限で打ち切ります。
+        long backoff = initialBackoffMillis;
+        for (int index = 0; index < retry && backoff < maxBackoffMillis; index++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+
+        // 待機時間の後半分をジッターとして、複数の呼び出しが同時に再開しないようにします。
+        long half = backoff / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    /**
+     * リトライに先立って待機します。
+     * 
+     * @param retry       何回目のリトライか (0 はじまり)。
+     * @param rateLimiter レート制限超えの場合に指定するレート制限。待機する時間だけ他の呼び出しも待機させます。null の場合は自身のみ待機します。
+     * @return 待機した時間 (ミリ秒)。
+     */
+    public long sleepBeforeRetry(int retry, RsvrBacklogApiRateLimiter rateLimiter) {
+        long waitMillis = computeBackoffMillis(retry);
+        if (rateLimiter != null) {
+            // 既により長く呼び出しを止めている場合は、その期限まで待機します。
+            waitMillis = rateLimiter.block(waitMillis);
+        }
+        retryCount.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException ex) {
+            System.err.println("Unexpected case: " + ex.toString());
+            Thread.currentThread().interrupt();
+        }
+        return waitMillis;
+    }
+
+    /**
+     * リトライした回数の合計を取得します。
+     * 
+     * @return リトライ回数。
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * リトライのために待機した時間の合計を取得します。
+     * 
+     * @return 待機した時間の合計 (ミリ秒)。
+     */
+    public long getTotalWaitMillis() {
+        return totalWaitMillis.get();
+    }
+}
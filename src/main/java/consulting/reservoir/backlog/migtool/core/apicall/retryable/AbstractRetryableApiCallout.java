@@ -18,51 +18,105 @@ package consulting.reservoir.backlog.migtool.core.apicall.retryable;
 import java.io.IOException;
 import java.sql.SQLException;
 
-import com.nulabinc.backlog4j.BacklogAPIException;
 import com.nulabinc.backlog4j.BacklogException;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiRetryPolicy;
+import consulting.reservoir.log.RsvrLog;
 
 /**
  * リトライ可能なAPI呼び出しのための抽象クラス。
  */
 public abstract class AbstractRetryableApiCallout {
+    /**
+     * このインスタンスの API 呼び出しでリトライした回数。
+     */
+    private int retryCount = 0;
+
+    /**
+     * このインスタンスの API 呼び出しでリトライのために待機した時間の合計 (ミリ秒)。
+     */
+    private long retryWaitMillis = 0;
+
     /**
      * API呼び出しをリトライを含めて実施します。
      * 
+     * リトライの可否や待機時間は、接続情報に設定されたリトライ方針に従います。冪等でない呼び出しは、レート制限超えの場合のみリトライします。
+     * 
      * @param bklConn Backlog接続情報。
      * @throws BacklogException Backlog例外が発生した場合。
      * @throws SQLException     SQL例外が発生した場合。
      * @throws IOException      IO例外が発生した場合。
      */
     public void execute(RsvrBacklogApiConn bklConn) throws BacklogException, SQLException, IOException {
-        BacklogAPIException lastEx = null;
-        for (int retry = 0; retry < 10; retry++) {
+        final RsvrBacklogApiRetryPolicy retryPolicy = bklConn.getRetryPolicy();
+        for (int retry = 0;; retry++) {
             try {
+                // API呼び出しのレート制限の枠を確保します。
+                bklConn.getRateLimiter().acquire();
+
                 // 実際のAPI呼び出し処理を記述します。
                 processApiCallout(bklConn);
 
-                // API呼び出しインターバルをsleepします。
-                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
                 // 正常終了できたのでリトライループを離脱。
                 return;
-            } catch (BacklogAPIException ex) {
-                if (ex.getStatusCode() == 429) {
-                    // [BMC5501] Backlog API Rate Limit Exceed が出たので待機後ふたたび挑戦します。
-                    System.err.println(BMCMessages.BMC5501);
+            } catch (BacklogException ex) {
+                if (retryPolicy.isRetryable(ex, isIdempotent()) == false) {
+                    // リトライ対象外の例外です。そのままスローします。
+                    throw ex;
+                }
+                if (retry >= retryPolicy.getMaxRetry()) {
+                    // [BMC5512] Backlog API 呼び出しのリトライ回数が上限に達したため処理を中断します。
+                    RsvrLog.error(BMCMessages.BMC5512 + ": " + ex.toString());
+                    throw ex;
+                }
+
+                // レート制限超えの場合は、他の呼び出しも待機させるためレート制限を通じて呼び出しを止めます。
+                long waitMillis = retryPolicy.sleepBeforeRetry(retry,
+                        (retryPolicy.isRateLimitExceeded(ex) ? bklConn.getRateLimiter() : null));
+                retryCount++;
+                retryWaitMillis += waitMillis;
 
-                    RsvrBacklogMigToolUtil.sleepApiRateLimitExceedRetryInterval();
-                    lastEx = ex;
+                if (retryPolicy.isRateLimitExceeded(ex)) {
+                    // [BMC5501] Backlog API Rate Limit Exceed が出たので待機後ふたたび挑戦します。
+                    System.err.println(BMCMessages.BMC5501 + " (" + waitMillis + "ms)");
                 } else {
-                    // 429以外の場合はリトライできません。そのままスローします。
-                    throw ex;
+                    // [BMC5511] Backlog API 呼び出しで一時的なエラーが発生したので待機後ふたたび挑戦します。
+                    System.err.println(BMCMessages.BMC5511 + " (" + waitMillis + "ms): " + ex.toString());
                 }
             }
         }
-        throw lastEx;
+    }
+
+    /**
+     * このインスタンスの API 呼び出しでリトライした回数を取得します。
+     * 
+     * @return リトライ回数。
+     */
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * このインスタンスの API 呼び出しでリトライのために待機した時間の合計を取得します。
+     * 
+     * @return 待機した時間の合計 (ミリ秒)。
+     */
+    public long getRetryWaitMillis() {
+        return retryWaitMillis;
+    }
+
+    /**
+     * このAPI呼び出しが冪等かどうかを取得します。
+     * 
+     * 課題やコメントの追加など、サーバで処理済みのまま 5xx や通信エラーとなった場合に繰り返すと重複が発生する呼び出しは冪等ではありません。取得のみの呼び出しなど、
+     * 冪等な呼び出しの場合はオーバーライドして true を返します。
+     * 
+     * @return 冪等であれば true。既定は false。
+     */
+    protected boolean isIdempotent() {
+        return false;
     }
 
     /**
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.apicall.retryable;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import com.nulabinc.backlog4j.BacklogClient;
+import com.nulabinc.backlog4j.BacklogException;
+
+import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+
+/**
+ * 取得のみを行う冪等な Backlog API 呼び出しをリトライ付きで呼び出すことを可能にする抽象クラス。
+ * 
+ * 並列に動作するワーカーから取得系の API を呼び出す際に利用します。冪等な呼び出しとして、レート制限超えに加えて一時的なエラーや通信上の IO 例外もリトライ方針に従ってリトライします。
+ * 
+ * @param <T> API呼び出し結果の型。
+ */
+public abstract class AbstractRetryableQuery<T> extends AbstractRetryableApiCallout {
+    private T result;
+
+    /**
+     * 取得のみを行うため冪等です。
+     * 
+     * @return 常に true。
+     */
+    @Override
+    protected boolean isIdempotent() {
+        return true;
+    }
+
+    /**
+     * API呼び出しを処理します。
+     */
+    @Override
+    void processApiCallout(RsvrBacklogApiConn bklConn) throws BacklogException {
+        result = query(bklConn.getClient());
+    }
+
+    /**
+     * 実際の取得処理を記述。リトライの際は繰り返し呼び出されます。
+     * 
+     * @param client Backlog クライアント。
+     * @return API呼び出し結果。
+     * @throws BacklogException Backlog例外が発生した場合。
+     */
+    protected abstract T query(BacklogClient client) throws BacklogException;
+
+    /**
+     * API呼び出しをリトライを含めて実施し、その結果を取得します。
+     * 
+     * @param bklConn Backlog接続情報。
+     * @return API呼び出し結果。
+     * @throws BacklogException Backlog例外が発生した場合。
+     */
+    public T executeQuery(RsvrBacklogApiConn bklConn) throws BacklogException {
+        try {
+            execute(bklConn);
+        } catch (SQLException | IOException ex) {
+            // 取得処理は h2 database やファイルに触れないため発生しません。
+            throw new IllegalStateException("想定外: " + ex.toString(), ex);
+        }
+        return result;
+    }
+
+    /**
+     * API呼び出し結果を取得します。
+     * 
+     * @return API呼び出し結果。
+     */
+    public T getResult() {
+        return result;
+    }
+}
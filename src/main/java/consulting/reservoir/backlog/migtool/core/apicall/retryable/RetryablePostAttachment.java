@@ -17,9 +17,9 @@ package consulting.reservoir.backlog.migtool.core.apicall.retryable;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-
-import org.apache.commons.io.FileUtils;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import com.nulabinc.backlog4j.Attachment;
 import com.nulabinc.backlog4j.AttachmentData;
@@ -28,11 +28,15 @@ import com.nulabinc.backlog4j.BacklogException;
 import com.nulabinc.backlog4j.internal.file.AttachmentDataImpl;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.log.RsvrLog;
 
 /**
  * Backlog API の `postAttachment` をリトライ付きで呼び出すことを可能にするクラス。
  * 
  * InputStream の再オープンを実現するために、このクラスはたのリトライクラスに比べて記述が少し複雑です。
+ * 
+ * ファイルは呼び出しごとに FileChannel で開いてバッファを介さずに読み込み、呼び出しが終わったらリトライの有無にかかわらず必ず閉じます。
+ * アップロードが成功した場合は、ファイルごとのスループットをログに出力します。
  */
 public class RetryablePostAttachment extends AbstractRetryableApiCallout {
     private String name;
@@ -53,16 +57,36 @@ public class RetryablePostAttachment extends AbstractRetryableApiCallout {
     @Override
     void processApiCallout(RsvrBacklogApiConn bklConn) throws BacklogException {
         // リトライを想定し、これらパラメータはこの場所でインスタンス作成する必要があります。
-        // この inStreamはクローズしちゃダメ。クローズするのは Backlog APIのほうだよ。
-        InputStream inStream = null;
+        final FileChannel channel;
+        final long size;
         try {
-            inStream = FileUtils.openInputStream(localFile);
+            channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
         } catch (IOException ex) {
             throw new BacklogAPIException("想定しないIOエラーが発生: " + ex.toString(), ex);
         }
+        try {
+            try {
+                size = channel.size();
+            } catch (IOException ex) {
+                throw new BacklogAPIException("想定しないIOエラーが発生: " + ex.toString(), ex);
+            }
 
-        AttachmentData attachmentData = new AttachmentDataImpl(name, inStream);
-        result = bklConn.getClient().postAttachment(attachmentData);
+            final long startMillis = System.currentTimeMillis();
+            // Backlog API から戻った時点でストリームは読み終えているため、閉じるのはこちらで実施します。
+            AttachmentData attachmentData = new AttachmentDataImpl(name, Channels.newInputStream(channel));
+            result = bklConn.getClient().postAttachment(attachmentData);
+            final long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+
+            RsvrLog.trace("添付ファイルをアップロード: " + name + " (" + size + " bytes, " + elapsedMillis + "ms, "
+                    + String.format("%.1f", (size / 1024.0) / (elapsedMillis / 1000.0)) + " KB/s)");
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // アップロードの成否には影響しないため、ログに出力して処理を継続します。
+                RsvrLog.warn("添付ファイルのクローズに失敗: " + localFile + ": " + ex.toString());
+            }
+        }
     }
 
     /**
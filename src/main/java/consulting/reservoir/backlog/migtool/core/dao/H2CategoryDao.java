@@ -20,10 +20,10 @@ import java.sql.SQLException;
 
 import com.nulabinc.backlog4j.Category;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する `Category` (エクスポート後) に関する DAO クラス。
@@ -34,17 +34,12 @@ public class H2CategoryDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogCategory (" //
-                + "CategoryId BIGINT NOT NULL" //
-                + ",Name VARCHAR(1024)" //
-                + ",PRIMARY KEY(CategoryId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -57,32 +52,16 @@ public class H2CategoryDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Category source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT CategoryId FROM BacklogCategory WHERE CategoryId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogCategory (CategoryId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("Category");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("Category");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.CATEGORY, "BacklogCategory",
+                "CategoryId", source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogCategory SET " //
-                + "Name=?" //
-                + " WHERE CategoryId=?"))) {
-            stmtMod.setString(source.getName());
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogCategory (" //
+                + "CategoryId, Name" //
+                + ") KEY (CategoryId) VALUES (?,?)")) {
             stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            stmtMod.setString(source.getName());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
@@ -23,9 +23,9 @@ import com.nulabinc.backlog4j.CustomFieldListItemSetting;
 import com.nulabinc.backlog4j.CustomFieldSetting;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する `CustomFieldSetting` (エクスポート後) に関する DAO クラス。
@@ -36,23 +36,12 @@ public class H2CustomFieldSettingDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement( //
-                "CREATE TABLE IF NOT EXISTS " //
-                        + "BacklogCustomFieldSetting (" //
-                        + "CustomFieldSettingId BIGINT NOT NULL" //
-                        + ",Name VARCHAR(8192)" // 親から継承
-                        + ",FieldTypeId VARCHAR(80)" // APIがStringを戻す場合があるため。親から継承。
-                        + ",Description VARCHAR(8192)" // 親から継承
-                        + ",IsRequired BOOL" //
-                        + ",ApplicableIssueType VARCHAR(65535)" //
-                        + ",Items VARCHAR(65535)" //
-                        + ",PRIMARY KEY(CustomFieldSettingId)" //
-                        + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -66,69 +55,49 @@ public class H2CustomFieldSettingDao {
      */
     public static void store2Local(Connection conn, CustomFieldSetting source,
             RsvrBacklogMigToolProcessInfo processInfo) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT CustomFieldSettingId" //
-                + " FROM BacklogCustomFieldSetting" //
-                + " WHERE CustomFieldSettingId = " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(
-                        conn.prepareStatement("INSERT INTO BacklogCustomFieldSetting (CustomFieldSettingId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("CustomFieldSetting");
-            } else {
-                processInfo.incrementUpd("CustomFieldSetting");
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.CUSTOM_FIELD_SETTING, "BacklogCustomFieldSetting",
+                "CustomFieldSettingId", source.getId());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                    "UPDATE BacklogCustomFieldSetting SET " //
-                            + "Name=?, FieldTypeId=?" //
-                            + ", Description=?, IsRequired=?, ApplicableIssueType=?, Items=?" //
-                            + " WHERE CustomFieldSettingId = ?"))) {
-                stmtMod.setString(source.getName());
-                stmtMod.setInt(source.getFieldTypeId());
-                stmtMod.setString(source.getDescription());
-                stmtMod.setBoolean(source.isRequired());
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogCustomFieldSetting (" //
+                + "CustomFieldSettingId, Name, FieldTypeId" //
+                + ", Description, IsRequired, ApplicableIssueType, Items" //
+                + ") KEY (CustomFieldSettingId) VALUES (?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getName());
+            stmtMod.setInt(source.getFieldTypeId());
+            stmtMod.setString(source.getDescription());
+            stmtMod.setBoolean(source.isRequired());
 
-                // 一覧をカンマ区切り文字列化します。
-                if (source.getApplicableIssueTypes() == null) {
-                    stmtMod.setNull(Types.NVARCHAR);
-                } else {
-                    String applicableIssueTypeString = "";
-                    for (long look : source.getApplicableIssueTypes()) {
-                        if (applicableIssueTypeString.length() != 0) {
-                            applicableIssueTypeString += ",";
-                        }
-                        applicableIssueTypeString += look;
+            // 一覧をカンマ区切り文字列化します。
+            if (source.getApplicableIssueTypes() == null) {
+                stmtMod.setNull(Types.NVARCHAR);
+            } else {
+                String applicableIssueTypeString = "";
+                for (long look : source.getApplicableIssueTypes()) {
+                    if (applicableIssueTypeString.length() != 0) {
+                        applicableIssueTypeString += ",";
                     }
-                    stmtMod.setString(applicableIssueTypeString);
+                    applicableIssueTypeString += look;
                 }
+                stmtMod.setString(applicableIssueTypeString);
+            }
 
-                // 一覧をカンマ区切り文字列化します。
-                if (source.getItems() == null) {
-                    stmtMod.setNull(Types.NVARCHAR);
-                } else {
-                    String itemString = "";
-                    for (CustomFieldListItemSetting look : source.getItems()) {
-                        if (itemString.length() != 0) {
-                            itemString += ",";
-                        }
-                        itemString += look.getName();
+            // 一覧をカンマ区切り文字列化します。
+            if (source.getItems() == null) {
+                stmtMod.setNull(Types.NVARCHAR);
+            } else {
+                String itemString = "";
+                for (CustomFieldListItemSetting look : source.getItems()) {
+                    if (itemString.length() != 0) {
+                        itemString += ",";
                     }
-                    stmtMod.setString(itemString);
+                    itemString += look.getName();
                 }
-
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
+                stmtMod.setString(itemString);
             }
+
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
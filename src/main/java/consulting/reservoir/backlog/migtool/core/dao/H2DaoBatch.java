@@ -0,0 +1,565 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * h2 database への書き込みをバッチでまとめて実行するためのクラス。
+ * 
+ * {@link #begin(Connection, RsvrBacklogMigToolConf)} から {@link #close()} までの間 (バッチの範囲内)
+ * は、各 Dao の store2Local などが発行する MERGE 文・UPDATE 文を SQL 文ごとにキャッシュした PreparedStatement
+ * に蓄積し、h2BatchSize 行ごとにまとめて実行し、h2CommitChunkSize 行ごとにコミットします。 バッチの範囲外では1件ずつ即時に実行します。
+ * 
+ * 新規・更新の件数の計上
+ * ({@link #incrementInsOrUpd(Connection, RsvrBacklogMigToolProcessInfo, CounterType, String, String, Object...)})
+ * は、バッチの範囲内では主キーを蓄積しておき、蓄積中の行を実行する直前に、蓄積した主キーのみをテーブルごとに1回の SELECT
+ * で確認して計上します。そのため、バッチの範囲内では件数の計上は蓄積中の行の実行まで遅れます。
+ * 
+ * バッチの範囲内で、蓄積中の行を参照する SQL を直接実行する場合には、事前に {@link #flush(Connection)} を呼び出してください。
+ * また、バッチの実行時にはステートメントに設定途中のパラメータが上書きされるため、パラメータの設定中に他の Dao の store2Local
+ * を呼び出さないでください。
+ * 
+ * h2 database への書き込みは1つのスレッドのみから実施する前提です。
+ */
+public class H2DaoBatch implements AutoCloseable {
+    /**
+     * バッチの範囲内にあるデータベース接続と、そのバッチ。参照・更新ともに、このマップ自体で同期して実施します。
+     */
+    private static final Map<Connection, H2DaoBatch> activeBatchMap = new IdentityHashMap<Connection, H2DaoBatch>();
+
+    private final Connection conn;
+
+    /**
+     * 1回のバッチにまとめる行数。
+     */
+    private final int batchSize;
+
+    /**
+     * コミットする単位の行数。
+     */
+    private final int commitChunkSize;
+
+    /**
+     * 一括読み込みモードかどうか。バッチの終了時にチェックポイントを実施します。
+     */
+    private final boolean isBulkLoad;
+
+    /**
+     * バッチ開始前の自動コミットの設定。
+     */
+    private final boolean isOrgAutoCommit;
+
+    /**
+     * 入れ子で {@link #begin(Connection, RsvrBacklogMigToolConf)} された回数。
+     */
+    private int nestCount = 1;
+
+    /**
+     * SQL 文をキーとした、キャッシュ済みのステートメント。実行順を保つため登録順に保持します。
+     */
+    private final Map<String, BatchStatement> stmtMap = new LinkedHashMap<>();
+
+    /**
+     * テーブル名と主キー項目をキーとした、件数の計上を待っている主キー。
+     */
+    private final Map<String, KeyCheck> keyCheckMap = new LinkedHashMap<>();
+
+    /**
+     * 蓄積中でまだ実行していない行数。
+     */
+    private int pendingRowCount = 0;
+
+    /**
+     * 実行済みでまだコミットしていない行数。
+     */
+    private int uncommittedRowCount = 0;
+
+    private H2DaoBatch(Connection conn, int batchSize, int commitChunkSize, boolean isBulkLoad) throws SQLException {
+        this.conn = conn;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitChunkSize = Math.max(1, commitChunkSize);
+        this.isBulkLoad = isBulkLoad;
+        this.isOrgAutoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+    }
+
+    /**
+     * 指定のデータベース接続についてバッチを開始します。
+     * 
+     * すでにバッチの範囲内の場合は、そのバッチをそのまま利用します。
+     * 
+     * @param conn     データベース接続。
+     * @param toolConf BacklogMigTool 構成情報。
+     * @return バッチ。try-with-resources で close してください。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static H2DaoBatch begin(Connection conn, RsvrBacklogMigToolConf toolConf) throws SQLException {
+        synchronized (activeBatchMap) {
+            H2DaoBatch batch = activeBatchMap.get(conn);
+            if (batch != null) {
+                batch.nestCount++;
+                return batch;
+            }
+            if (H2DaoUtil.isBulkLoadConnection(conn)) {
+                // 一括読み込みモードで接続した場合は大きな単位でコミットします。
+                batch = new H2DaoBatch(conn, toolConf.getH2BatchSize(), toolConf.getH2BulkLoadCommitChunkSize(), true);
+            } else {
+                batch = new H2DaoBatch(conn, toolConf.getH2BatchSize(), toolConf.getH2CommitChunkSize(), false);
+            }
+            activeBatchMap.put(conn, batch);
+            return batch;
+        }
+    }
+
+    /**
+     * 指定のデータベース接続のバッチを取得します。
+     * 
+     * @param conn データベース接続。
+     * @return バッチ。バッチの範囲外の場合は null。
+     */
+    private static H2DaoBatch getActiveBatch(Connection conn) {
+        synchronized (activeBatchMap) {
+            return activeBatchMap.get(conn);
+        }
+    }
+
+    /**
+     * バッチ実行に対応したステートメントを取得します。
+     * 
+     * バッチの範囲内では SQL 文ごとにキャッシュしたステートメントを戻します。このステートメントの close は parameterIndex
+     * のリセットのみを実施し、実際のクローズはバッチの終了時に実施します。バッチの範囲外では新たにステートメントを作成します。
+     * 
+     * @param conn データベース接続。
+     * @param sql  MERGE INTO 文または UPDATE 文。1回の実行で1行を更新するものに限ります。
+     * @return ステートメント。try-with-resources で close してください。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static RsvrPreparedStatement prepare(Connection conn, String sql) throws SQLException {
+        final H2DaoBatch batch = getActiveBatch(conn);
+        if (batch == null) {
+            return RsvrJdbc.wrap(conn.prepareStatement(sql));
+        }
+        return batch.getStatement(sql);
+    }
+
+    /**
+     * パラメータを設定し終えたステートメントを実行対象に追加します。
+     * 
+     * バッチの範囲内では蓄積のみを実施し、h2BatchSize 行に達した時点でまとめて実行します。バッチの範囲外では即時に実行します。
+     * 
+     * @param conn データベース接続。
+     * @param stmt {@link #prepare(Connection, String)} で取得したステートメント。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void addBatch(Connection conn, RsvrPreparedStatement stmt) throws SQLException {
+        final H2DaoBatch batch = getActiveBatch(conn);
+        if (batch == null || stmt instanceof BatchStatement == false) {
+            stmt.executeUpdateSingleRow();
+            return;
+        }
+        batch.add((BatchStatement) stmt);
+    }
+
+    /**
+     * 指定の主キーの行が新規か更新かを判定し、新規・更新の件数を計上します。格納する行を蓄積する前に呼び出します。
+     * 
+     * バッチの範囲内では主キーを蓄積しておき、蓄積中の行を実行する直前に、蓄積した主キーのみをまとめて確認して計上します。
+     * 同じ主キーを複数回指定した場合は、2回目以降は更新として計上します。バッチの範囲外では即時に確認して計上します。
+     * 
+     * @param conn        データベース接続。
+     * @param processInfo 件数を計上する処理情報。
+     * @param counterType 件数の種類。
+     * @param tableName   テーブル名。
+     * @param keyColumns  主キー項目名。複数の場合はカンマ区切り。
+     * @param keyValues   主キーの値。主キー項目と同じ順に指定します。数値または文字列。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void incrementInsOrUpd(Connection conn, RsvrBacklogMigToolProcessInfo processInfo,
+            CounterType counterType, String tableName, String keyColumns, Object... keyValues) throws SQLException {
+        final H2DaoBatch batch = getActiveBatch(conn);
+        if (batch != null) {
+            batch.addKeyCheck(tableName, keyColumns, new PendingCount(keyValues, processInfo, counterType));
+            return;
+        }
+
+        if (isNewKey(conn, tableName, keyColumns, keyValues)) {
+            processInfo.incrementIns(counterType);
+        } else {
+            processInfo.incrementUpd(counterType);
+        }
+    }
+
+    /**
+     * 指定の主キーの行が新規かどうかを判定します。
+     * 
+     * 1件ずつデータベースを確認します。バッチの範囲内では、蓄積中の行を実行してから確認します。件数の計上には
+     * {@link #incrementInsOrUpd(Connection, RsvrBacklogMigToolProcessInfo, CounterType, String, String, Object...)}
+     * を使用してください。
+     * 
+     * @param conn       データベース接続。
+     * @param tableName  テーブル名。
+     * @param keyColumns 主キー項目名。複数の場合はカンマ区切り。
+     * @param keyValues  主キーの値。主キー項目と同じ順に指定します。数値または文字列。
+     * @return 新規であれば true。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static boolean isNewKey(Connection conn, String tableName, String keyColumns, Object... keyValues)
+            throws SQLException {
+        final H2DaoBatch batch = getActiveBatch(conn);
+        if (batch != null) {
+            batch.flush();
+        }
+
+        String sql = "SELECT " + keyColumns + " FROM " + tableName + " WHERE ";
+        final String[] columns = keyColumns.split(",");
+        for (int index = 0; index < columns.length; index++) {
+            sql += (index == 0 ? "" : " AND ") + columns[index].trim() + " = ?";
+        }
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            for (Object look : keyValues) {
+                stmt.setObject(look);
+            }
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                return (rset.next() == false);
+            }
+        }
+    }
+
+    /**
+     * 蓄積中の行をすべて実行します。バッチの範囲外では何もしません。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void flush(Connection conn) throws SQLException {
+        final H2DaoBatch batch = getActiveBatch(conn);
+        if (batch != null) {
+            batch.flush();
+        }
+    }
+
+    /**
+     * バッチを終了します。蓄積中の行をすべて実行してコミットし、キャッシュしたステートメントをクローズします。
+     * 
+     * 一括読み込みモードの場合は、コミットの後にチェックポイントを実施して、フェーズの終了時点の内容をファイルに確定させます。
+     * 
+     * 実行中に例外が発生した場合は、まだコミットしていない行はロールバックします。
+     * 
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    @Override
+    public void close() throws SQLException {
+        synchronized (activeBatchMap) {
+            if (--nestCount > 0) {
+                return;
+            }
+            activeBatchMap.remove(conn);
+        }
+
+        boolean isSuccess = false;
+        try {
+            flush();
+            conn.commit();
+            isSuccess = true;
+            if (isBulkLoad) {
+                try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CHECKPOINT SYNC"))) {
+                    stmt.executeUpdate();
+                }
+            }
+        } finally {
+            try {
+                if (isSuccess == false) {
+                    conn.rollback();
+                }
+                for (BatchStatement look : stmtMap.values()) {
+                    look.closeInternal();
+                }
+            } finally {
+                stmtMap.clear();
+                keyCheckMap.clear();
+                conn.setAutoCommit(isOrgAutoCommit);
+            }
+        }
+    }
+
+    private BatchStatement getStatement(String sql) throws SQLException {
+        BatchStatement stmt = stmtMap.get(sql);
+        if (stmt == null) {
+            stmt = new BatchStatement(conn.prepareStatement(sql), sql);
+            stmtMap.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    private void add(BatchStatement stmt) throws SQLException {
+        // 同じテーブルに対する別の SQL 文の行が蓄積中の場合は、実行順が入れ替わらないよう先に実行します。
+        for (BatchStatement look : stmtMap.values()) {
+            if (look != stmt && look.pendingCount > 0 && look.tableName.equals(stmt.tableName)) {
+                flush();
+                break;
+            }
+        }
+
+        stmt.addBatch();
+        stmt.pendingCount++;
+        pendingRowCount++;
+        if (pendingRowCount >= batchSize) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        // 蓄積中の行を実行する前に、新規か更新かを確認して件数を計上します。
+        resolveKeyChecks();
+        if (pendingRowCount == 0) {
+            return;
+        }
+        for (BatchStatement look : stmtMap.values()) {
+            if (look.pendingCount == 0) {
+                continue;
+            }
+            final int[] results = look.executeBatch();
+            look.pendingCount = 0;
+            for (int result : results) {
+                // executeUpdateSingleRow と同様に、1行の更新であることを確認します。
+                if (result != 1 && result != Statement.SUCCESS_NO_INFO) {
+                    throw new SQLException("Unexpected: バッチ実行の更新件数が1件ではありません: " + result + ": " + look.sql);
+                }
+            }
+        }
+        uncommittedRowCount += pendingRowCount;
+        pendingRowCount = 0;
+
+        if (uncommittedRowCount >= commitChunkSize) {
+            conn.commit();
+            uncommittedRowCount = 0;
+        }
+    }
+
+    private void addKeyCheck(String tableName, String keyColumns, PendingCount pendingCount) {
+        final String mapKey = tableName.toUpperCase() + ":" + keyColumns.toUpperCase();
+        KeyCheck keyCheck = keyCheckMap.get(mapKey);
+        if (keyCheck == null) {
+            keyCheck = new KeyCheck(tableName, keyColumns);
+            keyCheckMap.put(mapKey, keyCheck);
+        }
+        keyCheck.pendingList.add(pendingCount);
+    }
+
+    private void resolveKeyChecks() throws SQLException {
+        for (KeyCheck keyCheck : keyCheckMap.values()) {
+            if (keyCheck.pendingList.isEmpty()) {
+                continue;
+            }
+            final Set<Object> storedKeySet = getStoredKeySet(keyCheck);
+            for (PendingCount look : keyCheck.pendingList) {
+                // 確認の後は格納済みとして扱い、同じ主キーの2回目以降は更新として計上します。
+                if (storedKeySet.add(look.key)) {
+                    look.processInfo.incrementIns(look.counterType);
+                } else {
+                    look.processInfo.incrementUpd(look.counterType);
+                }
+            }
+            keyCheck.pendingList.clear();
+        }
+    }
+
+    /**
+     * 件数の計上を待っている主キーのうち、テーブルに格納済みのものを1回の SELECT で取得します。
+     * 
+     * @param keyCheck 件数の計上を待っている主キー。
+     * @return 格納済みの主キーの集合。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private Set<Object> getStoredKeySet(KeyCheck keyCheck) throws SQLException {
+        final Map<Object, Object[]> keyValuesMap = new LinkedHashMap<>();
+        for (PendingCount look : keyCheck.pendingList) {
+            keyValuesMap.put(look.key, look.keyValues);
+        }
+
+        final String[] columns = keyCheck.keyColumns.split(",");
+        final StringBuilder sql = new StringBuilder();
+        sql.append("SELECT " + keyCheck.keyColumns + " FROM " + keyCheck.tableName + " WHERE ");
+        sql.append(columns.length == 1 ? columns[0].trim() : "(" + keyCheck.keyColumns + ")").append(" IN (");
+        for (int index = 0; index < keyValuesMap.size(); index++) {
+            sql.append(index == 0 ? "" : ",");
+            if (columns.length == 1) {
+                sql.append("?");
+            } else {
+                sql.append("(");
+                for (int column = 0; column < columns.length; column++) {
+                    sql.append(column == 0 ? "?" : ",?");
+                }
+                sql.append(")");
+            }
+        }
+        sql.append(")");
+
+        final Set<Object> storedKeySet = new HashSet<>();
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql.toString()))) {
+            for (Object[] keyValues : keyValuesMap.values()) {
+                for (Object look : keyValues) {
+                    stmt.setObject(look);
+                }
+            }
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                final Object[] values = new Object[columns.length];
+                for (; rset.next();) {
+                    for (int index = 0; index < columns.length; index++) {
+                        values[index] = rset.getObject();
+                    }
+                    storedKeySet.add(toKey(values));
+                }
+            }
+        }
+        return storedKeySet;
+    }
+
+    /**
+     * 主キーの値を、集合に格納できる値に変換します。数値は型の違いを吸収するため Long に揃えます。
+     * 
+     * @param keyValues 主キーの値。
+     * @return 単一項目の場合はその値、複数項目の場合は値の List。
+     */
+    static Object toKey(Object... keyValues) {
+        if (keyValues.length == 1) {
+            return normalizeKeyValue(keyValues[0]);
+        }
+        final List<Object> key = new ArrayList<>(keyValues.length);
+        for (Object look : keyValues) {
+            key.add(normalizeKeyValue(look));
+        }
+        return key;
+    }
+
+    private static Object normalizeKeyValue(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    /**
+     * SQL 文から更新対象のテーブル名を取得します。
+     * 
+     * @param sql MERGE INTO 文または UPDATE 文。
+     * @return テーブル名 (大文字)。
+     */
+    static String getTableName(String sql) {
+        String work = sql.trim();
+        final String upper = work.toUpperCase();
+        if (upper.startsWith("MERGE INTO ")) {
+            work = work.substring("MERGE INTO ".length()).trim();
+        } else if (upper.startsWith("UPDATE ")) {
+            work = work.substring("UPDATE ".length()).trim();
+        } else {
+            throw new IllegalArgumentException("バッチ実行できるのは MERGE INTO 文および UPDATE 文のみです: " + sql);
+        }
+        int end = 0;
+        for (; end < work.length(); end++) {
+            final char ch = work.charAt(end);
+            if (Character.isLetterOrDigit(ch) == false && ch != '_') {
+                break;
+            }
+        }
+        return work.substring(0, end).toUpperCase();
+    }
+
+    /**
+     * テーブルごとの、件数の計上を待っている主キー。
+     */
+    private static class KeyCheck {
+        private final String tableName;
+        private final String keyColumns;
+        private final List<PendingCount> pendingList = new ArrayList<>();
+
+        KeyCheck(String tableName, String keyColumns) {
+            this.tableName = tableName;
+            this.keyColumns = keyColumns;
+        }
+    }
+
+    /**
+     * 件数の計上を待っている主キーと、その計上先。
+     */
+    private static class PendingCount {
+        private final Object[] keyValues;
+        private final Object key;
+        private final RsvrBacklogMigToolProcessInfo processInfo;
+        private final CounterType counterType;
+
+        PendingCount(Object[] keyValues, RsvrBacklogMigToolProcessInfo processInfo, CounterType counterType) {
+            this.keyValues = keyValues.clone();
+            this.key = toKey(keyValues);
+            this.processInfo = processInfo;
+            this.counterType = counterType;
+        }
+    }
+
+    /**
+     * バッチの範囲内でキャッシュして再利用するステートメント。
+     */
+    static class BatchStatement extends RsvrPreparedStatement {
+        private final String sql;
+        private final String tableName;
+
+        /**
+         * 蓄積中でまだ実行していない行数。
+         */
+        private int pendingCount = 0;
+
+        BatchStatement(PreparedStatement stmt, String sql) {
+            super(stmt);
+            this.sql = sql;
+            this.tableName = getTableName(sql);
+        }
+
+        /**
+         * キャッシュして再利用するため、parameterIndex のリセットのみを実施します。
+         */
+        @Override
+        public void close() {
+            resetParameterIndex();
+        }
+
+        /**
+         * 内包する PreparedStatement を実際にクローズします。
+         * 
+         * @throws SQLException SQL例外が発生した場合。
+         */
+        void closeInternal() throws SQLException {
+            getInternalPreparedStatement().close();
+        }
+    }
+}
@@ -22,15 +22,33 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.nulabinc.backlog4j.Attachment;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
 
 /**
  * h2 database に対する DAO の共通クラス。
  */
 public class H2DaoUtil {
     /**
-     * h2データベースの接続を取得します。
+     * h2 database の MVStore の古いデータを保持する時間 (ミリ秒) の既定値。一括読み込みモードの終了時に戻します。
+     */
+    private static final int DEFAULT_RETENTION_TIME = 45000;
+
+    /**
+     * 一括読み込みモードで接続し、まだ一括読み込みモードを終了していないデータベース接続。
+     */
+    private static final Map<Connection, Boolean> bulkLoadConnMap = Collections
+            .synchronizedMap(new WeakHashMap<Connection, Boolean>());
+
+    /**
+     * h2データベースの接続を取得します。一括読み込みモードの設定にかかわらず、安全なモードで接続します。
      * 
      * @param toolConf BacklogMigToolの構成情報を蓄えるクラス。Backlog API 接続情報や h2 database
      *                 格納フォルダなどを指定。
@@ -38,6 +56,23 @@ public class H2DaoUtil {
      * @throws IOException 入出力例外が発生した場合。
      */
     public static Connection getConnection(RsvrBacklogMigToolConf toolConf) throws IOException {
+        return getConnection(toolConf, false);
+    }
+
+    /**
+     * h2データベースの接続を取得します。
+     * 
+     * 一括読み込みモードで接続する場合は、キャッシュを大きく取り、古いデータの保持を止めた状態で接続します。エクスポートの接続に限って使用し、
+     * エクスポートの終了時には {@link #endBulkLoad(Connection, RsvrBacklogMigToolConf)} を呼び出してください。一括読み込みモードで接続したことは接続ごとに記録し、
+     * {@link H2DaoBatch} はその接続に限って大きな単位でコミットします。
+     * 
+     * @param toolConf   BacklogMigToolの構成情報を蓄えるクラス。Backlog API 接続情報や h2 database
+     *                   格納フォルダなどを指定。
+     * @param isBulkLoad エクスポートの接続として一括読み込みモードで接続する場合は true。構成情報で一括読み込みモードが有効な場合のみ反映します。
+     * @return データベース接続。
+     * @throws IOException 入出力例外が発生した場合。
+     */
+    public static Connection getConnection(RsvrBacklogMigToolConf toolConf, boolean isBulkLoad) throws IOException {
         Connection conn;
         try {
             Class.forName("org.h2.Driver");
@@ -48,8 +83,7 @@ public class H2DaoUtil {
 
         new File(toolConf.getDirDb()).mkdirs();
         final File dbFile = new File(toolConf.getDirDbPath());
-        final String jdbcConnStr = "jdbc:h2:file:" + dbFile.getCanonicalPath()
-                + ";DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+        final String jdbcConnStr = getJdbcConnStr(dbFile.getCanonicalPath(), toolConf, isBulkLoad);
         // System.err.println("TRACE: Connect: " + jdbcConnStr);
         try {
             conn = DriverManager.getConnection(jdbcConnStr, "sa", "");
@@ -57,9 +91,101 @@ public class H2DaoUtil {
             ex.printStackTrace();
             throw new IOException("Create db failed: " + ex.toString());
         }
+        if (isBulkLoad && toolConf.isH2BulkLoad()) {
+            bulkLoadConnMap.put(conn, Boolean.TRUE);
+        }
         return conn;
     }
 
+    /**
+     * h2データベースの接続文字列を取得します。
+     * 
+     * @param dbPath     データベースファイルのパス。
+     * @param toolConf   BacklogMigToolの構成情報。
+     * @param isBulkLoad 一括読み込みモードで接続する場合は true。
+     * @return 接続文字列。
+     */
+    static String getJdbcConnStr(String dbPath, RsvrBacklogMigToolConf toolConf, boolean isBulkLoad) {
+        String jdbcConnStr = "jdbc:h2:file:" + dbPath
+                + ";DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE";
+        if (isBulkLoad && toolConf.isH2BulkLoad()) {
+            // 一括読み込みモード。古いデータを保持しないことで、書き込みの量とファイルの肥大化を抑えます。
+            jdbcConnStr += ";CACHE_SIZE=" + toolConf.getH2BulkLoadCacheSizeKb() + ";RETENTION_TIME=0";
+        }
+        return jdbcConnStr;
+    }
+
+    /**
+     * 指定のデータベース接続が一括読み込みモードで接続したものかどうかを判定します。
+     * 
+     * @param conn データベース接続。
+     * @return 一括読み込みモードで接続し、まだ一括読み込みモードを終了していない場合は true。
+     */
+    public static boolean isBulkLoadConnection(Connection conn) {
+        return bulkLoadConnMap.containsKey(conn);
+    }
+
+    /**
+     * 一括読み込みモードを終了します。一括読み込みモードで接続したものでない場合は何もしません。
+     * 
+     * {@link #getConnection(RsvrBacklogMigToolConf, boolean)} で一括読み込みモードで取得したエクスポートの接続に対して、エクスポートの終了時に呼び出します。
+     * コミットの後、古いデータの保持の設定を既定に戻し、チェックポイントを実施して内容をファイルに確定させます。h2 database
+     * は閉じないため、同じ JVM 内の他の接続にも影響しません。以後、このデータベース接続は安全なモードの接続として引き続き使用できます。
+     * なお、接続時に指定したキャッシュの大きさは h2 database を閉じるまで維持します。
+     * 
+     * @param conn     データベース接続。
+     * @param toolConf BacklogMigToolの構成情報。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void endBulkLoad(Connection conn, RsvrBacklogMigToolConf toolConf) throws SQLException {
+        if (bulkLoadConnMap.remove(conn) == null) {
+            return;
+        }
+        if (conn.getAutoCommit() == false) {
+            conn.commit();
+        }
+        try (RsvrPreparedStatement stmt = RsvrJdbc
+                .wrap(conn.prepareStatement("SET RETENTION_TIME " + DEFAULT_RETENTION_TIME))) {
+            stmt.executeUpdate();
+        }
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CHECKPOINT SYNC"))) {
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 添付ファイルをローカルに格納する際のファイル名を取得します。
+     * 
+     * ファイル名は添付ファイルのIdとし、拡張子は元のファイル名のものを引き継ぎます。拡張子が無い場合は .bin とします。
+     * 
+     * @param source 添付ファイル。
+     * @return ローカルに格納する際のファイル名。
+     */
+    public static String getAttachmentLocalFilename(Attachment source) {
+        String localFilename = "" + source.getId();
+        if (source.getName().lastIndexOf('.') > 0) {
+            localFilename += source.getName().substring(source.getName().lastIndexOf('.'));
+        } else {
+            localFilename += ".bin";
+        }
+        return localFilename;
+    }
+
+    /**
+     * バイト列を小文字の16進数文字列に変換します。ハッシュ値の記録に利用します。
+     * 
+     * @param bytes バイト列。
+     * @return 16進数文字列。
+     */
+    public static String toHexString(byte[] bytes) {
+        final StringBuilder buf = new StringBuilder(bytes.length * 2);
+        for (byte look : bytes) {
+            buf.append(Character.forDigit((look >> 4) & 0x0F, 16));
+            buf.append(Character.forDigit(look & 0x0F, 16));
+        }
+        return buf.toString();
+    }
+
     public static String formatDatetime2String(java.util.Date arg) {
         if (arg == null) {
             return "";
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * h2 database に対する 差分エクスポートの基準日時 (ハイウォーターマーク) に関する DAO クラス。
+ * 
+ * BacklogMigTool が独自に追加したテーブルです。プロジェクトごと・対象ごとに、前回までにエクスポート済みのデータの最大の更新日時を保持します。
+ */
+public class H2ExpWatermarkDao {
+    /**
+     * 課題の差分エクスポートで利用する対象名。
+     */
+    public static final String TARGET_ISSUE = "Issue";
+
+    /**
+     * 記録済みの基準日時を取得します。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId プロジェクトId。
+     * @param target    対象名。
+     * @return 基準日時。記録が無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static java.util.Date getWatermark(Connection conn, long projectId, String target) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT Watermark" //
+                + " FROM BacklogExpWatermark" //
+                + " WHERE ProjectId = ? AND Target = ?"))) {
+            stmt.setLong(projectId);
+            stmt.setString(target);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                return rset.getTimestamp();
+            }
+        }
+    }
+
+    /**
+     * 基準日時を記録します。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId プロジェクトId。
+     * @param target    対象名。
+     * @param watermark 基準日時。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void storeWatermark(Connection conn, long projectId, String target, java.util.Date watermark)
+            throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("MERGE INTO BacklogExpWatermark" //
+                + " (ProjectId, Target, Watermark) KEY (ProjectId, Target) VALUES (?,?,?)"))) {
+            stmt.setLong(projectId);
+            stmt.setString(target);
+            stmt.setJavaUtilDate(watermark);
+            stmt.executeUpdateSingleRow();
+        }
+    }
+}
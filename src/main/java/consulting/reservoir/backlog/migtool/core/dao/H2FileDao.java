@@ -22,6 +22,7 @@ import java.sql.Types;
 import com.nulabinc.backlog4j.SharedFile;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -35,24 +36,12 @@ public class H2FileDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogFile (" //
-                + "FileId BIGINT NOT NULL" //
-                + ",Type VARCHAR(80)" //
-                + ",Dir VARCHAR(65535)" //
-                + ",Name VARCHAR(8192)" //
-                + ",Size BIGINT" //
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",Updated TIMESTAMP" //
-                + ",IsImage BOOL" //
-                + ",PRIMARY KEY(FileId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -64,52 +53,59 @@ public class H2FileDao {
      */
     public static void store2Local(Connection conn, SharedFile source, RsvrBacklogMigToolProcessInfo processInfo)
             throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT FileId FROM BacklogFile WHERE FileId =  " + source.getId() //
-                ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.FILE, "BacklogFile", "FileId", source.getId());
 
-            if (isNew) {
-                // 新規レコード
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogFile (FileId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("File");
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogFile (" //
+                + "FileId, Type, Name, Dir, Size" //
+                + ", CreatedUser, Created, Updated, IsImage" //
+                + ") KEY (FileId) VALUES (?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getType());
+            stmtMod.setString(source.getName());
+            stmtMod.setString(source.getDir());
+            stmtMod.setLong(source.getSize());
+            if (source.getCreatedUser() == null) {
+                stmtMod.setNull(Types.BIGINT);
             } else {
-                processInfo.incrementUpd("File");
+                stmtMod.setLong(source.getCreatedUser().getId());
             }
+            stmtMod.setJavaUtilDate(source.getCreated());
+            stmtMod.setJavaUtilDate(source.getUpdated());
+            stmtMod.setBoolean(source.isImage());
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogFile SET " //
-                    + "Type=?, Name=?, Dir=?, Size=?" //
-                    + ", CreatedUser=?, Created=?, Updated=?, IsImage=?" //
-                    + " WHERE FileId = ? " //
-            ))) {
-                stmtMod.setString(source.getType());
-                stmtMod.setString(source.getName());
-                stmtMod.setString(source.getDir());
-                stmtMod.setLong(source.getSize());
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+        }
+    }
 
-                if (source.getCreatedUser() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getCreatedUser().getId());
-                    H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+    /**
+     * 格納済みのファイルのサイズと更新日時が、与えられたファイルと一致するかどうかを取得します。
+     * 
+     * @param conn   データベース接続
+     * @param source 確認したいファイル。
+     * @return 格納済みでサイズと更新日時が一致する場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static boolean isUnchanged(Connection conn, SharedFile source) throws SQLException {
+        if (source.getUpdated() == null) {
+            return false;
+        }
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT Size, Updated" //
+                + " FROM BacklogFile" //
+                + " WHERE FileId = ?"))) {
+            stmt.setLong(source.getId());
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return false;
                 }
-
-                stmtMod.setJavaUtilDate(source.getCreated());
-                stmtMod.setJavaUtilDate(source.getUpdated());
-                stmtMod.setBoolean(source.isImage());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-
-                H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+                final Long size = rset.getLong();
+                final java.util.Date updated = rset.getJavaUtilDate();
+                return size != null && size == source.getSize() && updated != null
+                        && updated.getTime() == source.getUpdated().getTime();
             }
         }
     }
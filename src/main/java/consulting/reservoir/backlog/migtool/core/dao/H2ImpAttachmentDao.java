@@ -0,0 +1,122 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * h2 database に対する インポートでアップロードした添付ファイル に関する DAO クラス。
+ * 
+ * BacklogMigTool が独自に追加したテーブルです。インポート先プロジェクトごとに、インポート元の添付ファイルのIdと内容のハッシュ値から、アップロードした
+ * ターゲットの添付ファイルのIdを引き当てます。アップロード済みでまだ課題に添付していない添付ファイルを、中断からの再開やリトライの際に再利用するために使用します。
+ * 
+ * Backlog のアップロード済みの添付ファイルは課題に一度添付すると再利用できないため、添付した時点で再利用の対象外とします。
+ */
+public class H2ImpAttachmentDao {
+    /**
+     * アップロード済みで、まだ課題に添付していないことを表す状態。
+     */
+    public static final String STATUS_POSTED = "POSTED";
+
+    /**
+     * 課題に添付済みであることを表す状態。
+     */
+    public static final String STATUS_ATTACHED = "ATTACHED";
+
+    /**
+     * 再利用できるアップロード済みの添付ファイルのIdを取得します。
+     * 
+     * @param conn               データベース接続。
+     * @param projectId          インポート先のプロジェクトId。
+     * @param sourceAttachmentId インポート元の添付ファイルのId。
+     * @param contentHash        添付ファイルの SHA-256 ハッシュ値の16進数文字列。
+     * @param uploadedAfter      この日時以降にアップロードしたもののみを対象とします。
+     * @return ターゲットの添付ファイルのId。再利用できるものが無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static Long getReusableTargetAttachmentId(Connection conn, long projectId, long sourceAttachmentId,
+            String contentHash, Date uploadedAfter) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT TargetAttachmentId" //
+                + " FROM BacklogImpAttachment" //
+                + " WHERE ProjectId = ? AND SourceAttachmentId = ? AND ContentHash = ?" //
+                + " AND Status = ? AND Uploaded >= ?"))) {
+            stmt.setLong(projectId);
+            stmt.setLong(sourceAttachmentId);
+            stmt.setString(contentHash);
+            stmt.setString(STATUS_POSTED);
+            stmt.setJavaUtilDate(uploadedAfter);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                return rset.getLong();
+            }
+        }
+    }
+
+    /**
+     * アップロードした添付ファイルを、まだ課題に添付していない状態で記録します。既に記録がある場合は上書きします。
+     * 
+     * @param conn               データベース接続。
+     * @param projectId          インポート先のプロジェクトId。
+     * @param sourceAttachmentId インポート元の添付ファイルのId。
+     * @param contentHash        添付ファイルの SHA-256 ハッシュ値の16進数文字列。
+     * @param targetAttachmentId アップロードしたターゲットの添付ファイルのId。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void storePosted(Connection conn, long projectId, long sourceAttachmentId, String contentHash,
+            long targetAttachmentId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("MERGE INTO BacklogImpAttachment" //
+                + " (ProjectId, SourceAttachmentId, ContentHash, TargetAttachmentId, Status, Uploaded)" //
+                + " KEY (ProjectId, SourceAttachmentId, ContentHash) VALUES (?,?,?,?,?,?)"))) {
+            stmt.setLong(projectId);
+            stmt.setLong(sourceAttachmentId);
+            stmt.setString(contentHash);
+            stmt.setLong(targetAttachmentId);
+            stmt.setString(STATUS_POSTED);
+            stmt.setJavaUtilDate(new Date());
+            stmt.executeUpdateSingleRow();
+        }
+    }
+
+    /**
+     * 記録済みの添付ファイルを、課題に添付済みとして再利用の対象外にします。
+     * 
+     * @param conn               データベース接続。
+     * @param projectId          インポート先のプロジェクトId。
+     * @param sourceAttachmentId インポート元の添付ファイルのId。
+     * @param contentHash        添付ファイルの SHA-256 ハッシュ値の16進数文字列。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void markAttached(Connection conn, long projectId, long sourceAttachmentId, String contentHash)
+            throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogImpAttachment" //
+                + " SET Status = ?" //
+                + " WHERE ProjectId = ? AND SourceAttachmentId = ? AND ContentHash = ?"))) {
+            stmt.setString(STATUS_ATTACHED);
+            stmt.setLong(projectId);
+            stmt.setLong(sourceAttachmentId);
+            stmt.setString(contentHash);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * h2 database に対する 課題インポートのジャーナル に関する DAO クラス。
+ * 
+ * BacklogMigTool が独自に追加したテーブルです。インポート先プロジェクトごと・インポート元の KeyId ごとに、作成したターゲットの課題と、
+ * コメント・変更履歴の反映がどこまで完了したかを記録します。中断したインポートを再開する際に、作成済みの課題やコメントを重複して作成しないために使用します。
+ * 
+ * Backlog API の呼び出しが成功するたびに直ちに記録するため、自動コミットの接続で使用してください。
+ * 
+ * 課題の作成の前には {@link #STATUS_PENDING} の状態で記録します。課題の作成からジャーナルへの記録までの間で中断した場合に、再開時に作成済みの課題を探す目印とします。
+ */
+public class H2ImpIssueJournalDao {
+    /**
+     * 課題の作成を開始したが、作成した課題をまだ記録していないことを表す状態。
+     * 
+     * この状態では TargetIssueId は 0 とし、TargetKeyId には作成の前に既知であったターゲットの最大の KeyId を記録します。
+     */
+    public static final String STATUS_PENDING = "PENDING";
+
+    /**
+     * 課題を作成済みで、コメント・変更履歴の反映中であることを表す状態。
+     */
+    public static final String STATUS_CREATED = "CREATED";
+
+    /**
+     * 課題のコメント・変更履歴の反映まで完了したことを表す状態。
+     */
+    public static final String STATUS_COMPLETED = "COMPLETED";
+
+    /**
+     * ジャーナルに記録済みの最大の KeyId を取得します。課題の作成前 ({@link #STATUS_PENDING}) の記録は対象外です。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId インポート先のプロジェクトId。
+     * @return 記録済みの最大の KeyId。記録が無い場合は 0。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static long getLastKeyId(Connection conn, long projectId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT MAX(SourceKeyId)" //
+                + " FROM BacklogImpIssueJournal" //
+                + " WHERE ProjectId = ? AND Status <> ?"))) {
+            stmt.setLong(projectId);
+            stmt.setString(STATUS_PENDING);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return 0;
+                }
+                final Long lastKeyId = rset.getLong();
+                return (lastKeyId == null ? 0 : lastKeyId);
+            }
+        }
+    }
+
+    /**
+     * 課題を作成済みで反映が完了していない最小の KeyId を取得します。課題の作成前 ({@link #STATUS_PENDING}) の記録は対象外です。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId インポート先のプロジェクトId。
+     * @return 反映が完了していない最小の KeyId。すべて完了している場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static Long getFirstIncompleteKeyId(Connection conn, long projectId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT MIN(SourceKeyId)" //
+                + " FROM BacklogImpIssueJournal" //
+                + " WHERE ProjectId = ? AND Status <> ? AND Status <> ?"))) {
+            stmt.setLong(projectId);
+            stmt.setString(STATUS_COMPLETED);
+            stmt.setString(STATUS_PENDING);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                return rset.getLong();
+            }
+        }
+    }
+
+    /**
+     * 課題の作成前 ({@link #STATUS_PENDING}) の記録があるかどうかを確認します。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId インポート先のプロジェクトId。
+     * @return 課題の作成前の記録がある場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static boolean hasPendingEntry(Connection conn, long projectId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT SourceKeyId" //
+                + " FROM BacklogImpIssueJournal" //
+                + " WHERE ProjectId = ? AND Status = ?" //
+                + " LIMIT 1"))) {
+            stmt.setLong(projectId);
+            stmt.setString(STATUS_PENDING);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                return rset.next();
+            }
+        }
+    }
+
+    /**
+     * ジャーナルに記録済みのターゲットの最大の KeyId を取得します。
+     * 
+     * 課題の作成前 ({@link #STATUS_PENDING}) の記録については、作成の前に既知であったターゲットの最大の KeyId を対象とします。
+     * 
+     * @param conn      データベース接続。
+     * @param projectId インポート先のプロジェクトId。
+     * @return 記録済みのターゲットの最大の KeyId。記録が無い場合は 0。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static long getLastTargetKeyId(Connection conn, long projectId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT MAX(TargetKeyId)" //
+                + " FROM BacklogImpIssueJournal" //
+                + " WHERE ProjectId = ?"))) {
+            stmt.setLong(projectId);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return 0;
+                }
+                final Long lastTargetKeyId = rset.getLong();
+                return (lastTargetKeyId == null ? 0 : lastTargetKeyId);
+            }
+        }
+    }
+
+    /**
+     * 指定の KeyId のジャーナルを取得します。
+     * 
+     * @param conn        データベース接続。
+     * @param projectId   インポート先のプロジェクトId。
+     * @param sourceKeyId インポート元の KeyId。
+     * @return ジャーナル。記録が無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static Entry getEntry(Connection conn, long projectId, long sourceKeyId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
+                + " SourceIssueId, TargetIssueId, TargetKeyId, Status" //
+                + ", CommentIndex, CommentStep, TargetCommentCount, LastTargetCommentId" //
+                + " FROM BacklogImpIssueJournal" //
+                + " WHERE ProjectId = ? AND SourceKeyId = ?"))) {
+            stmt.setLong(projectId);
+            stmt.setLong(sourceKeyId);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                final Entry entry = new Entry(projectId, sourceKeyId);
+                entry.setSourceIssueId(rset.getLong());
+                entry.setTargetIssueId(rset.getLong());
+                entry.setTargetKeyId(rset.getLong());
+                entry.setStatus(rset.getString());
+                entry.setCommentIndex(rset.getInt());
+                entry.setCommentStep(rset.getInt());
+                entry.setTargetCommentCount(rset.getInt());
+                entry.setLastTargetCommentId(rset.getLong());
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * ジャーナルを記録します。既に記録がある場合は上書きします。
+     * 
+     * @param conn  データベース接続。
+     * @param entry 記録したいジャーナル。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void store2Local(Connection conn, Entry entry) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("MERGE INTO BacklogImpIssueJournal" //
+                + " (ProjectId, SourceKeyId, SourceIssueId, TargetIssueId, TargetKeyId, Status" //
+                + ", CommentIndex, CommentStep, TargetCommentCount, LastTargetCommentId, Updated)" //
+                + " KEY (ProjectId, SourceKeyId) VALUES (?,?,?,?,?,?,?,?,?,?,?)"))) {
+            stmt.setLong(entry.getProjectId());
+            stmt.setLong(entry.getSourceKeyId());
+            if (entry.getSourceIssueId() == null) {
+                stmt.setNull(Types.BIGINT);
+            } else {
+                stmt.setLong(entry.getSourceIssueId());
+            }
+            stmt.setLong(entry.getTargetIssueId());
+            if (entry.getTargetKeyId() == null) {
+                stmt.setNull(Types.BIGINT);
+            } else {
+                stmt.setLong(entry.getTargetKeyId());
+            }
+            stmt.setString(entry.getStatus());
+            stmt.setInt(entry.getCommentIndex());
+            stmt.setInt(entry.getCommentStep());
+            stmt.setInt(entry.getTargetCommentCount());
+            if (entry.getLastTargetCommentId() == null) {
+                stmt.setNull(Types.BIGINT);
+            } else {
+                stmt.setLong(entry.getLastTargetCommentId());
+            }
+            stmt.setJavaUtilDate(new java.util.Date());
+            stmt.executeUpdateSingleRow();
+        }
+    }
+
+    /**
+     * 課題インポートのジャーナル1件分。
+     */
+    public static class Entry {
+        private final long projectId;
+        private final long sourceKeyId;
+        private Long sourceIssueId = null;
+        private long targetIssueId = 0;
+        private Long targetKeyId = null;
+        private String status = STATUS_CREATED;
+        private int commentIndex = 0;
+        private int commentStep = 0;
+        private int targetCommentCount = 0;
+        private Long lastTargetCommentId = null;
+
+        /**
+         * ジャーナル1件分を作成します。
+         * 
+         * @param projectId   インポート先のプロジェクトId。
+         * @param sourceKeyId インポート元の KeyId。
+         */
+        public Entry(long projectId, long sourceKeyId) {
+            this.projectId = projectId;
+            this.sourceKeyId = sourceKeyId;
+        }
+
+        /**
+         * インポート先のプロジェクトIdを取得します。
+         * 
+         * @return インポート先のプロジェクトId。
+         */
+        public long getProjectId() {
+            return projectId;
+        }
+
+        /**
+         * インポート元の KeyId を取得します。
+         * 
+         * @return インポート元の KeyId。
+         */
+        public long getSourceKeyId() {
+            return sourceKeyId;
+        }
+
+        /**
+         * インポート元の IssueId を取得します。
+         * 
+         * @return インポート元の IssueId。欠番を埋めた課題の場合は null。
+         */
+        public Long getSourceIssueId() {
+            return sourceIssueId;
+        }
+
+        /**
+         * インポート元の IssueId を設定します。
+         * 
+         * @param sourceIssueId インポート元の IssueId。欠番を埋めた課題の場合は null。
+         */
+        public void setSourceIssueId(Long sourceIssueId) {
+            this.sourceIssueId = sourceIssueId;
+        }
+
+        /**
+         * 作成したターゲットの IssueId を取得します。
+         * 
+         * @return ターゲットの IssueId。
+         */
+        public long getTargetIssueId() {
+            return targetIssueId;
+        }
+
+        /**
+         * 作成したターゲットの IssueId を設定します。
+         * 
+         * @param targetIssueId ターゲットの IssueId。
+         */
+        public void setTargetIssueId(long targetIssueId) {
+            this.targetIssueId = targetIssueId;
+        }
+
+        /**
+         * 作成したターゲットの KeyId を取得します。
+         * 
+         * @return ターゲットの KeyId。
+         */
+        public Long getTargetKeyId() {
+            return targetKeyId;
+        }
+
+        /**
+         * 作成したターゲットの KeyId を設定します。
+         * 
+         * @param targetKeyId ターゲットの KeyId。
+         */
+        public void setTargetKeyId(Long targetKeyId) {
+            this.targetKeyId = targetKeyId;
+        }
+
+        /**
+         * 状態を取得します。
+         * 
+         * @return {@link H2ImpIssueJournalDao#STATUS_PENDING}、{@link H2ImpIssueJournalDao#STATUS_CREATED}
+         *         または {@link H2ImpIssueJournalDao#STATUS_COMPLETED}。
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * 状態を設定します。
+         * 
+         * @param status {@link H2ImpIssueJournalDao#STATUS_PENDING}、{@link H2ImpIssueJournalDao#STATUS_CREATED}
+         *               または {@link H2ImpIssueJournalDao#STATUS_COMPLETED}。
+         */
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        /**
+         * 反映が完了したかどうかを取得します。
+         * 
+         * @return 反映が完了した場合は true。
+         */
+        public boolean isCompleted() {
+            return STATUS_COMPLETED.equals(status);
+        }
+
+        /**
+         * 反映が完了したコメントの件数を取得します。
+         * 
+         * @return 反映が完了したコメントの件数。
+         */
+        public int getCommentIndex() {
+            return commentIndex;
+        }
+
+        /**
+         * 反映が完了したコメントの件数を設定します。
+         * 
+         * @param commentIndex 反映が完了したコメントの件数。
+         */
+        public void setCommentIndex(int commentIndex) {
+            this.commentIndex = commentIndex;
+        }
+
+        /**
+         * 反映中のコメントで完了した手順を取得します。
+         * 
+         * @return 0:未着手, 1:変更履歴を反映済み。
+         */
+        public int getCommentStep() {
+            return commentStep;
+        }
+
+        /**
+         * 反映中のコメントで完了した手順を設定します。
+         * 
+         * @param commentStep 0:未着手, 1:変更履歴を反映済み。
+         */
+        public void setCommentStep(int commentStep) {
+            this.commentStep = commentStep;
+        }
+
+        /**
+         * ターゲットの課題に作成されたコメントの件数を取得します。
+         * 
+         * @return ターゲットの課題に作成されたコメントの件数。
+         */
+        public int getTargetCommentCount() {
+            return targetCommentCount;
+        }
+
+        /**
+         * ターゲットの課題に作成されたコメントの件数を設定します。
+         * 
+         * @param targetCommentCount ターゲットの課題に作成されたコメントの件数。
+         */
+        public void setTargetCommentCount(int targetCommentCount) {
+            this.targetCommentCount = targetCommentCount;
+        }
+
+        /**
+         * 最後に作成したターゲットのコメントの Id を取得します。
+         * 
+         * @return ターゲットのコメントの Id。未作成の場合は null。
+         */
+        public Long getLastTargetCommentId() {
+            return lastTargetCommentId;
+        }
+
+        /**
+         * 最後に作成したターゲットのコメントの Id を設定します。
+         * 
+         * @param lastTargetCommentId ターゲットのコメントの Id。
+         */
+        public void setLastTargetCommentId(Long lastTargetCommentId) {
+            this.lastTargetCommentId = lastTargetCommentId;
+        }
+    }
+}
@@ -21,9 +21,9 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.ChangeLog;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する 課題の `Comment` の変更ログ に関する DAO クラス。
@@ -34,23 +34,12 @@ public class H2IssueCommentChangeLogDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssueCommentChangeLog (" //
-                + "IssueCommentChangeLogId VARCHAR(80) NOT NULL" //
-                + ",IssueCommentId BIGINT" //
-                + ",Field VARCHAR(8192)" //
-                + ",OriginalValue VARCHAR(65535)" //
-                + ",NewValue VARCHAR(65535)" //
-                + ",IssueAttachmentId BIGINT" //
-                + ",AttributeInfo VARCHAR(8192)" //
-                + ",NotificationInfo VARCHAR(8192)" //
-                + ",PRIMARY KEY(IssueCommentChangeLogId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -65,62 +54,41 @@ public class H2IssueCommentChangeLogDao {
      */
     public static void store2Local(Connection conn, ChangeLog source, RsvrBacklogMigToolProcessInfo processInfo,
             String issueCommentChangeLogId, long issueId, long issueCommentId) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT IssueCommentChangeLogId" //
-                + " FROM BacklogIssueCommentChangeLog" //
-                + " WHERE IssueCommentChangeLogId = ?"))) {
-            stmt.setString(issueCommentChangeLogId);
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE_COMMENT_CHANGE_LOG,
+                "BacklogIssueCommentChangeLog", "IssueCommentChangeLogId", issueCommentChangeLogId);
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
-                        "INSERT INTO BacklogIssueCommentChangeLog (IssueCommentChangeLogId) VALUES (?)" //
-                ))) {
-                    stmtMod.setString(issueCommentChangeLogId);
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("IssueCommentChangeLog");
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssueCommentChangeLog (" //
+                + "IssueCommentChangeLogId, IssueCommentId, Field" //
+                + ", OriginalValue, NewValue, IssueAttachmentId, AttributeInfo, NotificationInfo" //
+                + ") KEY (IssueCommentChangeLogId) VALUES (?,?,?,?,?,?,?,?)")) {
+            stmtMod.setString(issueCommentChangeLogId);
+            stmtMod.setLong(issueCommentId);
+            stmtMod.setString(source.getField());
+            stmtMod.setString(source.getOriginalValue());
+            stmtMod.setString(source.getNewValue());
+            if (source.getAttachmentInfo() == null) {
+                stmtMod.setNull(java.sql.Types.BIGINT);
             } else {
-                processInfo.incrementUpd("IssueCommentChangeLog");
+                stmtMod.setLong(source.getAttachmentInfo().getId());
             }
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogIssueCommentChangeLog SET " //
-                            + "IssueCommentId=?, Field=?" //
-                            + " , OriginalValue=?, NewValue=?, IssueAttachmentId=?, AttributeInfo=?, NotificationInfo=?" //
-                            + " WHERE IssueCommentChangeLogId = ?"))) {
-                stmtMod.setLong(issueCommentId);
-                stmtMod.setString(source.getField());
-                stmtMod.setString(source.getOriginalValue());
-                stmtMod.setString(source.getNewValue());
-                if (source.getAttachmentInfo() == null) {
-                    stmtMod.setNull(java.sql.Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getAttachmentInfo().getId());
-                }
-
-                if (source.getAttributeInfo() == null) {
-                    stmtMod.setNull(java.sql.Types.NVARCHAR);
-                } else {
-                    stmtMod.setString("Id:" + source.getAttributeInfo().getId() + ", type:"
-                            + source.getAttributeInfo().getTypeId());
-
-                }
-
-                stmtMod.setString((source.getNotificationInfo() == null ? "" : source.getNotificationInfo().getType()));
+            if (source.getAttributeInfo() == null) {
+                stmtMod.setNull(java.sql.Types.NVARCHAR);
+            } else {
+                stmtMod.setString("Id:" + source.getAttributeInfo().getId() + ", type:"
+                        + source.getAttributeInfo().getTypeId());
 
-                stmtMod.setString(issueCommentChangeLogId);
-                stmtMod.executeUpdateSingleRow();
             }
 
-            if (source.getAttributeInfo() != null) {
-                // カスタム項目を更新
-                H2IssueCustomFieldDao.store2Local(conn, processInfo, issueId, source.getAttributeInfo().getId(),
-                        source.getNewValue(), source.getAttributeInfo().getTypeId());
-            }
+            stmtMod.setString((source.getNotificationInfo() == null ? "" : source.getNotificationInfo().getType()));
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
+
+        if (source.getAttributeInfo() != null) {
+            // カスタム項目を更新
+            H2IssueCustomFieldDao.store2Local(conn, processInfo, issueId, source.getAttributeInfo().getId(),
+                    source.getNewValue(), source.getAttributeInfo().getTypeId());
         }
     }
 }
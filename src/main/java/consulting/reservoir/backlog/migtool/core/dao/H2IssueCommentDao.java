@@ -24,9 +24,9 @@ import com.nulabinc.backlog4j.IssueComment;
 import com.nulabinc.backlog4j.Notification;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する 課題の `Comment` に関する DAO クラス。
@@ -37,22 +37,12 @@ public class H2IssueCommentDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssueComment (" //
-                + "IssueCommentId BIGINT NOT NULL" //
-                + ",IssueId BIGINT" //
-                + ",Content VARCHAR(65535)" //
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",Updated TIMESTAMP" //
-                + ",Notification VARCHAR(65535)" //
-                + ",PRIMARY KEY(IssueCommentId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -67,67 +57,53 @@ public class H2IssueCommentDao {
      */
     public static void store2Local(Connection conn, IssueComment source, RsvrBacklogMigToolProcessInfo processInfo,
             long issueId) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT IssueCommentId" //
-                + " FROM BacklogIssueComment" //
-                + " WHERE IssueCommentId =  " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE_COMMENT, "BacklogIssueComment",
+                "IssueCommentId", source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogIssueComment (IssueCommentId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("IssueComment");
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssueComment (" //
+                + "IssueCommentId, IssueId, Content" //
+                + ", CreatedUser, Created, Updated, Notification" //
+                + ") KEY (IssueCommentId) VALUES (?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setLong(issueId);
+            stmtMod.setString(source.getContent());
+            if (source.getCreatedUser() == null) {
+                stmtMod.setNull(Types.BIGINT);
             } else {
-                processInfo.incrementUpd("IssueComment");
+                stmtMod.setLong(source.getCreatedUser().getId());
             }
+            stmtMod.setJavaUtilDate(source.getCreated());
+            stmtMod.setJavaUtilDate(source.getUpdated());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogIssueComment SET " //
-                    + "IssueId=?, Content=?" //
-                    + " , CreatedUser=?, Created=?, Updated=?, Notification=?" //
-                    + " WHERE IssueCommentId = ?"))) {
-                stmtMod.setLong(issueId);
-                stmtMod.setString(source.getContent());
-                if (source.getCreatedUser() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getCreatedUser().getId());
-                    H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
-                }
-                stmtMod.setJavaUtilDate(source.getCreated());
-                stmtMod.setJavaUtilDate(source.getUpdated());
-
-                {
-                    String buildString = "";
-                    for (Notification look : source.getNotifications()) {
-                        if (buildString.length() != 0) {
-                            buildString += ",";
-                        }
-
-                        buildString += look.getUser().getId();
-                        H2UserDao.store2Local(conn, look.getUser(), processInfo);
+            {
+                String buildString = "";
+                for (Notification look : source.getNotifications()) {
+                    if (buildString.length() != 0) {
+                        buildString += ",";
                     }
-                    stmtMod.setString(buildString);
 
+                    buildString += look.getUser().getId();
                 }
+                stmtMod.setString(buildString);
 
-                // ChangeLogのAPI結果にIdがないため、ここで人為的に1オリジンのキー項目を作成。
-                int changeLogSec = 1;
-                for (ChangeLog look : source.getChangeLog()) {
-                    H2IssueCommentChangeLogDao.store2Local(conn, look, processInfo,
-                            source.getId() + "-" + (changeLogSec++), issueId, source.getId());
-                }
-
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
             }
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
+
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+        }
+        for (Notification look : source.getNotifications()) {
+            H2UserDao.store2Local(conn, look.getUser(), processInfo);
+        }
+
+        // ChangeLogのAPI結果にIdがないため、ここで人為的に1オリジンのキー項目を作成。
+        int changeLogSec = 1;
+        for (ChangeLog look : source.getChangeLog()) {
+            H2IssueCommentChangeLogDao.store2Local(conn, look, processInfo, source.getId() + "-" + (changeLogSec++),
+                    issueId, source.getId());
         }
     }
 }
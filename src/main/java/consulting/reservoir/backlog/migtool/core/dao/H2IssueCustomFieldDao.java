@@ -21,9 +21,9 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.CustomField;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する 課題の `CustomField` に関する DAO クラス。
@@ -34,20 +34,12 @@ public class H2IssueCustomFieldDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssueCustomField (" //
-                + "IssueId BIGINT NOT NULL" // システム都合で追加。
-                + ",IssueCustomFieldId BIGINT NOT NULL" //
-                + ",Name VARCHAR(8192)" //
-                + ",CustomValue VARCHAR(65535)" // システム都合で追加
-                + ",FieldTypeId VARCHAR(80)" // APIがStringを戻す場合があるため。
-                + ",PRIMARY KEY(IssueId, IssueCustomFieldId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -62,40 +54,18 @@ public class H2IssueCustomFieldDao {
      */
     public static void store2Local(Connection conn, CustomField source, RsvrBacklogMigToolProcessInfo processInfo,
             long issueId) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement( //
-                "SELECT IssueCustomFieldId" //
-                        + " FROM BacklogIssueCustomField" //
-                        + " WHERE IssueId = " + issueId + " AND IssueCustomFieldId = " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
-                        "INSERT INTO BacklogIssueCustomField (IssueId, IssueCustomFieldId) VALUES (?,?)" //
-                ))) {
-                    stmtMod.setLong(issueId);
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("IssueCustomField");
-            } else {
-                processInfo.incrementUpd("IssueCustomField");
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE_CUSTOM_FIELD, "BacklogIssueCustomField",
+                "IssueId, IssueCustomFieldId", issueId, source.getId());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogIssueCustomField SET " //
-                            + "Name=?, FieldTypeId=?" //
-                            + " WHERE IssueCustomFieldId = ? AND IssueId = ?"))) {
-                stmtMod.setString(source.getName());
-                stmtMod.setInt(source.getFieldTypeId());
-                stmtMod.setLong(source.getId());
-                stmtMod.setLong(issueId);
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssueCustomField (" //
+                + "IssueId, IssueCustomFieldId, Name, FieldTypeId" //
+                + ") KEY (IssueId, IssueCustomFieldId) VALUES (?,?,?,?)")) {
+            stmtMod.setLong(issueId);
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getName());
+            stmtMod.setInt(source.getFieldTypeId());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
@@ -104,35 +74,18 @@ public class H2IssueCustomFieldDao {
 //        System.err.println("TRACE: H2IssueCustomFieldDao.store2Local(conn, processInfo, " + issueId + ", "
 //                + issueCustomFieldId + ", value:" + value);
 
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT IssueCustomFieldId" //
-                + " FROM BacklogIssueCustomField" //
-                + " WHERE IssueId = " + issueId + " AND IssueCustomFieldId = " + issueCustomFieldId //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                // 想定外
-                System.err.println("Unexpected case occured. カスタム項目の値更新において、想定しないルート。 issueId:" + issueId
-                        + ", issueCustomFieldId:" + issueCustomFieldId + ", value:" + value);
-                processInfo.incrementIns("IssueCustomField");
-            } else {
-                processInfo.incrementUpd("IssueCustomField");
-            }
+        // 格納済みの行の更新。行が無い場合 (想定外) は UPDATE の更新件数の確認で例外となる。
+        processInfo.incrementUpd(CounterType.ISSUE_CUSTOM_FIELD);
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogIssueCustomField SET " //
-                            + "CustomValue=?, FieldTypeId=?" //
-                            + " WHERE IssueId = ? AND IssueCustomFieldId = ?"))) {
-                stmtMod.setString(value);
-                stmtMod.setString(fieldTypeId);
-                stmtMod.setLong(issueId);
-                stmtMod.setLong(issueCustomFieldId);
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 他の項目は全てUPDATEで処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "UPDATE BacklogIssueCustomField SET " //
+                + "CustomValue=?, FieldTypeId=?" //
+                + " WHERE IssueId = ? AND IssueCustomFieldId = ?")) {
+            stmtMod.setString(value);
+            stmtMod.setString(fieldTypeId);
+            stmtMod.setLong(issueId);
+            stmtMod.setLong(issueCustomFieldId);
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
@@ -28,6 +28,7 @@ import com.nulabinc.backlog4j.SharedFile;
 import com.nulabinc.backlog4j.Version;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -45,39 +46,12 @@ public class H2IssueDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssue (" //
-                + "IssueId BIGINT NOT NULL" //
-                + ",IssueKey VARCHAR(80) NOT NULL" //
-                + ",KeyId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",IssueType VARCHAR(80)" //
-                + ",Summary VARCHAR(8192)" //
-                + ",Description VARCHAR(65535)" //
-                + ",Resolution VARCHAR(80)" //
-                + ",Priority VARCHAR(80)" //
-                + ",Status VARCHAR(80)" //
-                + ",Assignee BIGINT" //
-                + ",Category VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",Version VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",Milestone VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",StartDate DATE" //
-                + ",DueDate DATE" //
-                + ",EstimatedHours VARCHAR(80)" //
-                + ",ActualHours VARCHAR(80)" //
-                + ",ParentIssueId VARCHAR(80)" //
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",UpdatedUser BIGINT" //
-                + ",Updated TIMESTAMP"//
-                + ",SharedFile VARCHAR(65535)" // 文字列でカンマ区切り列挙
-                + ",PRIMARY KEY(IssueId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -91,140 +65,176 @@ public class H2IssueDao {
      */
     public static void store2Local(Connection conn, Issue source, RsvrBacklogMigToolProcessInfo processInfo,
             RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT IssueId, IssueKey, Summary FROM BacklogIssue WHERE IssueId =  " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE, "BacklogIssue", "IssueId", source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
-                        "INSERT INTO BacklogIssue (IssueId, IssueKey, Summary, KeyId) VALUES (?,?,?,?)" //
-                ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.setString(source.getIssueKey());
-                    stmtMod.setString(source.getSummary());
-                    stmtMod.setLong(source.getKeyId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("Issue");
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssue (" //
+                + "IssueId, IssueKey, Summary, KeyId" //
+                + ", ProjectId, IssueType, Description, Resolution, Priority, Status" //
+                + ", Assignee, Category, Version, Milestone, StartDate, DueDate, EstimatedHours, ActualHours" //
+                + ", ParentIssueId, CreatedUser, Created, UpdatedUser, Updated" //
+                + ", SharedFile" //
+                + ") KEY (IssueId) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getIssueKey());
+            stmtMod.setString(source.getSummary());
+            stmtMod.setLong(source.getKeyId());
+            stmtMod.setLong(bklConn.getProjectId());
+            stmtMod.setString(source.getIssueType().getName());
+            stmtMod.setString(source.getDescription());
+            stmtMod.setString((source.getResolution() == null ? null : source.getResolution().getName()));
+            stmtMod.setString((source.getPriority() == null ? null : source.getPriority().getName()));
+            stmtMod.setString((source.getStatus() == null ? null : source.getStatus().getName()));
+            if (source.getAssignee() == null) {
+                stmtMod.setNull(Types.BIGINT);
             } else {
-                processInfo.incrementUpd("Issue");
+                stmtMod.setLong(source.getAssignee().getId());
             }
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogIssue SET " //
-                    + "IssueKey=?, Summary=?, KeyId=?" //
-                    + ", ProjectId=?, IssueType=?, Description=?, Resolution=?, Priority=?, Status=?" //
-                    + ", Assignee=?, Category=?, Version=?, Milestone=?, StartDate=?, DueDate=?, EstimatedHours=?, ActualHours=?" //
-                    + ", ParentIssueId=?, CreatedUser=?, Created=?, UpdatedUser=?, Updated=?" //
-                    + ", SharedFile=?" //
-                    + " WHERE IssueId = ? " //
-            ))) {
-                stmtMod.setString(source.getIssueKey());
-                stmtMod.setString(source.getSummary());
-                stmtMod.setLong(source.getKeyId());
-                stmtMod.setLong(bklConn.getProjectId());
-                stmtMod.setString(source.getIssueType().getName());
-                stmtMod.setString(source.getDescription());
-                stmtMod.setString((source.getResolution() == null ? null : source.getResolution().getName()));
-                stmtMod.setString((source.getPriority() == null ? null : source.getPriority().getName()));
-                stmtMod.setString((source.getStatus() == null ? null : source.getStatus().getName()));
-                if (source.getAssignee() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getAssignee().getId());
-                    H2UserDao.store2Local(conn, source.getAssignee(), processInfo);
+            // Categoryの一覧をカンマ区切り文字列化します。
+            {
+                String categoryString = "";
+                for (Category look : source.getCategory()) {
+                    if (categoryString.length() != 0) {
+                        categoryString += ",";
+                    }
+                    categoryString += look.getName();
                 }
+                stmtMod.setString(categoryString);
+            }
 
-                // Categoryの一覧をカンマ区切り文字列化します。
-                {
-                    String categoryString = "";
-                    for (Category look : source.getCategory()) {
-                        if (categoryString.length() != 0) {
-                            categoryString += ",";
-                        }
-                        categoryString += look.getName();
+            // Versionの一覧をカンマ区切り文字列化します。
+            {
+                String versionString = "";
+                for (Version look : source.getVersions()) {
+                    if (versionString.length() != 0) {
+                        versionString += ",";
                     }
-                    stmtMod.setString(categoryString);
+                    versionString += look.getName();
                 }
+                stmtMod.setString(versionString);
+            }
 
-                // Versionの一覧をカンマ区切り文字列化します。
-                {
-                    String versionString = "";
-                    for (Version look : source.getVersions()) {
-                        if (versionString.length() != 0) {
-                            versionString += ",";
-                        }
-                        versionString += look.getName();
+            // Milestoneの一覧をカンマ区切り文字列化します。
+            {
+                String milestoneString = "";
+                for (Milestone look : source.getMilestone()) {
+                    if (milestoneString.length() != 0) {
+                        milestoneString += ",";
                     }
-                    stmtMod.setString(versionString);
+                    milestoneString += look.getName();
                 }
+                stmtMod.setString(milestoneString);
+            }
+            stmtMod.setJavaUtilDate(source.getStartDate());
+            stmtMod.setJavaUtilDate(source.getDueDate());
+            stmtMod.setBigDecimal(source.getEstimatedHours());
+            stmtMod.setBigDecimal(source.getActualHours());
+            stmtMod.setLong(source.getParentIssueId());
+            if (source.getCreatedUser() == null) {
+                stmtMod.setNull(Types.BIGINT);
+            } else {
+                stmtMod.setLong(source.getCreatedUser().getId());
+            }
+            stmtMod.setJavaUtilDate(source.getCreated());
+            if (source.getUpdatedUser() == null) {
+                stmtMod.setNull(Types.BIGINT);
+            } else {
+                stmtMod.setLong(source.getUpdatedUser().getId());
+            }
+            stmtMod.setJavaUtilDate(source.getUpdated());
 
-                // Milestoneの一覧をカンマ区切り文字列化します。
-                {
-                    String milestoneString = "";
-                    for (Milestone look : source.getMilestone()) {
-                        if (milestoneString.length() != 0) {
-                            milestoneString += ",";
-                        }
-                        milestoneString += look.getName();
+            // 一覧をカンマ区切り文字列化します。
+            {
+                String sharedFileString = "";
+                for (SharedFile look : source.getSharedFiles()) {
+                    if (sharedFileString.length() != 0) {
+                        sharedFileString += ",";
                     }
-                    stmtMod.setString(milestoneString);
+                    sharedFileString += look.getId();
                 }
-                stmtMod.setJavaUtilDate(source.getStartDate());
-                stmtMod.setJavaUtilDate(source.getDueDate());
-                stmtMod.setBigDecimal(source.getEstimatedHours());
-                stmtMod.setBigDecimal(source.getActualHours());
-                stmtMod.setLong(source.getParentIssueId());
-                if (source.getCreatedUser() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getCreatedUser().getId());
-                    H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
-                }
-                stmtMod.setJavaUtilDate(source.getCreated());
-                if (source.getUpdatedUser() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getUpdatedUser().getId());
-                    H2UserDao.store2Local(conn, source.getUpdatedUser(), processInfo);
-                }
-                stmtMod.setJavaUtilDate(source.getUpdated());
-
-                // 一覧をカンマ区切り文字列化します。
-                {
-                    String sharedFileString = "";
-                    for (SharedFile look : source.getSharedFiles()) {
-                        if (sharedFileString.length() != 0) {
-                            sharedFileString += ",";
-                        }
-                        sharedFileString += look.getId();
-                    }
-                    stmtMod.setString(sharedFileString);
-                    if (sharedFileString.length() > 0) {
-                        RsvrLog.warn("SharedFileの使用例を検知: " + sharedFileString);
-                    }
+                stmtMod.setString(sharedFileString);
+                if (sharedFileString.length() > 0) {
+                    RsvrLog.warn("SharedFileの使用例を検知: " + sharedFileString);
                 }
+            }
 
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-                if (source.getCreatedUser() != null) {
-                    H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
-                }
-                if (source.getUpdatedUser() != null) {
-                    H2UserDao.store2Local(conn, source.getUpdatedUser(), processInfo);
-                }
-            }
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getAssignee() != null) {
+            H2UserDao.store2Local(conn, source.getAssignee(), processInfo);
+        }
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+        }
+        if (source.getUpdatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getUpdatedUser(), processInfo);
+        }
 
-            // Issueに紐づくとマークされたカスタムフィールドをStore。
-            List<CustomField> fields = source.getCustomFields();
-            for (CustomField field : fields) {
-                H2IssueCustomFieldDao.store2Local(conn, field, processInfo, source.getId());
+        // Issueに紐づくとマークされたカスタムフィールドをStore。
+        List<CustomField> fields = source.getCustomFields();
+        for (CustomField field : fields) {
+            H2IssueCustomFieldDao.store2Local(conn, field, processInfo, source.getId());
+        }
+    }
+
+    /**
+     * 格納済みの課題の更新日時の最大値を取得します。差分エクスポートの基準日時として利用します。
+     * 
+     * @param conn      データベース接続
+     * @param projectId プロジェクトId。
+     * @return 更新日時の最大値。課題が無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static java.util.Date getMaxUpdated(Connection conn, long projectId) throws SQLException {
+        // バッチで未反映の書き込みがあれば先に反映します。
+        H2DaoBatch.flush(conn);
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT MAX(COALESCE(Updated, Created))" //
+                + " FROM BacklogIssue" //
+                + " WHERE ProjectId = ?"))) {
+            stmt.setLong(projectId);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getTimestamp();
             }
         }
     }
+
+    /**
+     * 課題のコメントを取得済みであることを記録します。
+     * 
+     * 取得した時点の課題の更新日時を記録し、以降の差分エクスポートでは更新日時が変わった課題のみを再取得の対象とします。
+     * 
+     * @param conn    データベース接続
+     * @param issueId 課題Id。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void markCommentSynced(Connection conn, long issueId) throws SQLException {
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn, "UPDATE BacklogIssue SET" //
+                + " CommentSynced = COALESCE(Updated, Created)" //
+                + " WHERE IssueId = ?")) {
+            stmt.setLong(issueId);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
+
+    /**
+     * 課題の添付ファイルを取得済みであることを記録します。
+     * 
+     * 取得した時点の課題の更新日時を記録し、以降の差分エクスポートでは更新日時が変わった課題のみを再取得の対象とします。
+     * 
+     * @param conn    データベース接続
+     * @param issueId 課題Id。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void markAttachmentSynced(Connection conn, long issueId) throws SQLException {
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn, "UPDATE BacklogIssue SET" //
+                + " AttachmentSynced = COALESCE(Updated, Created)" //
+                + " WHERE IssueId = ?")) {
+            stmt.setLong(issueId);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
 }
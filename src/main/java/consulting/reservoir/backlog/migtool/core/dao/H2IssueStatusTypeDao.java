@@ -21,10 +21,10 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.Status;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する 課題の `IssueStatusType` に関する DAO クラス。
@@ -35,18 +35,12 @@ public class H2IssueStatusTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssueStatusType (" //
-                + "IssueStatusTypeId INT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",DisplayOrder INT" //
-                + ",PRIMARY KEY(IssueStatusTypeId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -60,36 +54,18 @@ public class H2IssueStatusTypeDao {
      */
     public static void store2Local(Connection conn, Status source, RsvrBacklogMigToolProcessInfo processInfo,
             RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn
-                .prepareStatement("SELECT IssueStatusTypeId FROM BacklogIssueStatusType WHERE IssueStatusTypeId=?"))) {
-            stmt.setInt(source.getId());
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                        "INSERT INTO BacklogIssueStatusType (IssueStatusTypeId) VALUES (?)"))) {
-                    stmtMod.setInt(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("IssueStatusType");
-            } else {
-                processInfo.incrementUpd("IssueStatusType");
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE_STATUS_TYPE, "BacklogIssueStatusType",
+                "IssueStatusTypeId", source.getId());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogIssueStatusType SET" //
-                    + " ProjectId=?, Name=?, DisplayOrder=?" //
-                    + " WHERE IssueStatusTypeId = ?" //
-            ))) {
-                stmtMod.setLong(bklConn.getProjectId());
-                stmtMod.setString(source.getName());
-                stmtMod.setInt(source.getDisplayOrder());
-                stmtMod.setInt(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssueStatusType (" //
+                + "IssueStatusTypeId, ProjectId, Name, DisplayOrder" //
+                + ") KEY (IssueStatusTypeId) VALUES (?,?,?,?)")) {
+            stmtMod.setInt(source.getId());
+            stmtMod.setLong(bklConn.getProjectId());
+            stmtMod.setString(source.getName());
+            stmtMod.setInt(source.getDisplayOrder());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
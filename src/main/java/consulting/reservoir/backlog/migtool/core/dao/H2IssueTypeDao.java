@@ -21,6 +21,7 @@ import java.sql.SQLException;
 
 import com.nulabinc.backlog4j.IssueType;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -35,20 +36,12 @@ public class H2IssueTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogIssueType (" //
-                + "IssueTypeId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",TemplateSummary VARCHAR(1024)" //
-                + ",TemplateDescription VARCHAR(1024)" //
-                + ",PRIMARY KEY(IssueTypeId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -61,36 +54,19 @@ public class H2IssueTypeDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, IssueType source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT IssueTypeId FROM BacklogIssueType WHERE IssueTypeId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogIssueType (IssueTypeId) VALUES (?)" //
-                    ))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("IssueType");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("IssueType");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.ISSUE_TYPE, "BacklogIssueType",
+                "IssueTypeId", source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogIssueType SET " //
-                + "ProjectId=?, Name=?, TemplateSummary=?, TemplateDescription=?" //
-                + " WHERE IssueTypeId = ?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogIssueType (" //
+                + "IssueTypeId, ProjectId, Name, TemplateSummary, TemplateDescription" //
+                + ") KEY (IssueTypeId) VALUES (?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(bklConn.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getTemplateSummary());
             stmtMod.setString(source.getTemplateDescription());
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+/**
+ * h2 database に格納した大きな文字列を、必要になった時点で1件ずつ読み込む DAO クラス。
+ * 
+ * 課題の説明・コメントの本文・Wiki の本文などを、API 呼び出しの直前に Reader 経由で読み込みます。列が CLOB でも VARCHAR
+ * でも使用できます。
+ */
+public class H2LargeTextDao {
+    /**
+     * 課題の説明を取得します。
+     * 
+     * @param conn    データベース接続。
+     * @param issueId 課題のId。
+     * @return 課題の説明。課題が無い場合や説明が null の場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static String getIssueDescription(Connection conn, long issueId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT Description" //
+                + " FROM BacklogIssue" //
+                + " WHERE IssueId = ?"))) {
+            stmt.setLong(issueId);
+            return querySingleText(stmt);
+        }
+    }
+
+    /**
+     * 課題コメントの本文を取得します。
+     * 
+     * @param conn           データベース接続。
+     * @param issueCommentId 課題コメントのId。
+     * @return 課題コメントの本文。コメントが無い場合や本文が null の場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static String getIssueCommentContent(Connection conn, long issueCommentId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT Content" //
+                + " FROM BacklogIssueComment" //
+                + " WHERE IssueCommentId = ?"))) {
+            stmt.setLong(issueCommentId);
+            return querySingleText(stmt);
+        }
+    }
+
+    /**
+     * 課題コメントの変更履歴のうち、課題の説明の変更後の値を取得します。
+     * 
+     * 同じコメントに複数ある場合は、インポートでの反映順と同じく最後のものを取得します。
+     * 
+     * @param conn           データベース接続。
+     * @param issueCommentId 課題コメントのId。
+     * @return 変更後の課題の説明。変更履歴が無い場合や値が null の場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static String getIssueCommentDescriptionNewValue(Connection conn, long issueCommentId)
+            throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT NewValue" //
+                + " FROM BacklogIssueCommentChangeLog" //
+                + " WHERE IssueCommentId = ? AND Field = 'description'" //
+                + " ORDER BY IssueCommentChangeLogId DESC" //
+                + " LIMIT 1"))) {
+            stmt.setLong(issueCommentId);
+            return querySingleText(stmt);
+        }
+    }
+
+    /**
+     * Wiki の本文を取得します。
+     * 
+     * @param conn   データベース接続。
+     * @param wikiId WikiのId。
+     * @return Wiki の本文。Wiki が無い場合や本文が null の場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static String getWikiContent(Connection conn, long wikiId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT Content" //
+                + " FROM BacklogWiki" //
+                + " WHERE WikiId = ?"))) {
+            stmt.setLong(wikiId);
+            return querySingleText(stmt);
+        }
+    }
+
+    /**
+     * 1行1列の検索結果を Reader 経由で文字列として読み込みます。
+     * 
+     * @param stmt パラメータを設定済みの文。
+     * @return 読み込んだ文字列。該当行が無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static String querySingleText(RsvrPreparedStatement stmt) throws SQLException {
+        try (RsvrResultSet rset = stmt.executeQuery()) {
+            if (rset.next() == false) {
+                return null;
+            }
+            return rset.getStringFromCharacterStream();
+        }
+    }
+}
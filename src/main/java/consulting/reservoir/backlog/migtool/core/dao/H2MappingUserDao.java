@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -34,19 +35,12 @@ public class H2MappingUserDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogMappingUser (" //
-                + "SourceUserId BIGINT NOT NULL" //
-                + ",TargetUserId BIGINT" //
-                + ",Reviewed BOOL DEFAULT FALSE" //
-                + ",MappingResult VARCHAR(65535)" //
-                + ",Created TIMESTAMP DEFAULT CURRENT_TIMESTAMP" //
-                + ",PRIMARY KEY(SourceUserId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -80,7 +74,7 @@ public class H2MappingUserDao {
                                     stmtMod.setString("新規に検知されたUser");
                                     stmtMod.executeUpdateSingleRow();
                                 }
-                                bklConn.getProcessInfo().incrementIns("MappingUser");
+                                bklConn.getProcessInfo().incrementIns(CounterType.MAPPING_USER);
                             }
                         }
                     }
@@ -92,27 +86,30 @@ public class H2MappingUserDao {
     public static void autoMappingWithEmailAddress(Connection conn, RsvrBacklogApiConn bklConn) throws SQLException {
         // TargetUserId が0のひと(マッピングが決まっていない人)を対象に、メールアドレスでマップを試みます。
         RsvrLog.trace("Userマッピング: EMAILドレスによるユーザーマッピングを試行");
+        // 行ごとに実行する UPDATE 文はループの外で一度だけ作成して再利用します。
         try (RsvrPreparedStatement stmt = RsvrJdbc
                 .wrap(conn.prepareStatement("SELECT m.SourceUserId, u1.Name, u2.UserId AS TargetUserIdCandidate" //
                         + " FROM BacklogMappingUser m" //
                         + " INNER JOIN BacklogUser u1 ON m.SourceUserId = u1.UserId" //
                         + " LEFT OUTER JOIN BacklogTargetUser u2 ON u1.MailAddress = u2.MailAddress" //
                         + " WHERE m.TargetUserId = 0 AND u2.UserId IS NOT NULL" //
-                        + " ORDER BY m.SourceUserId"))) {
+                        + " ORDER BY m.SourceUserId"));
+                RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
+                        "UPDATE BacklogMappingUser SET TargetUserId=?,MappingResult=? WHERE SourceUserId=?"))) {
             try (RsvrResultSet rset = stmt.executeQuery()) {
                 for (; rset.next();) {
                     final Long sourceUserId = rset.getLong();
                     final String name = rset.getString();
                     final Long targetUserIdCandidate = rset.getLong();
 
-                    try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
-                            "UPDATE BacklogMappingUser SET TargetUserId=?,MappingResult=? WHERE SourceUserId=?"))) {
-                        stmtMod.setLong(targetUserIdCandidate);
-                        stmtMod.setString("MailAddress完全一致によりUserを引き当てました。");
-                        stmtMod.setLong(sourceUserId);
-                        stmtMod.executeUpdateSingleRow();
-                        bklConn.getProcessInfo().incrementUpd("MappingUser");
-                    }
+                    // 更新のパラメータをクリア。
+                    stmtMod.clearParameters();
+                    stmtMod.setLong(targetUserIdCandidate);
+                    stmtMod.setString("MailAddress完全一致によりUserを引き当てました。");
+                    stmtMod.setLong(sourceUserId);
+                    stmtMod.executeUpdateSingleRow();
+                    bklConn.getProcessInfo().incrementUpd(CounterType.MAPPING_USER);
+
                     // [MBC5111] import: Mapping User: 新旧ユーザをメールアドレスをもとに引き当て:
                     RsvrLog.info(BMCMessages.MBC5111 + name);
                 }
@@ -123,27 +120,30 @@ public class H2MappingUserDao {
     public static void autoMappingWithName(Connection conn, RsvrBacklogApiConn bklConn) throws SQLException {
         // TargetUserId が0のひと(マッピングが決まっていない人)を対象に、メールアドレスでマップを試みます。
         RsvrLog.trace("Userマッピング: 名前によるユーザーマッピングを試行");
+        // 行ごとに実行する UPDATE 文はループの外で一度だけ作成して再利用します。
         try (RsvrPreparedStatement stmt = RsvrJdbc
                 .wrap(conn.prepareStatement("SELECT m.SourceUserId, u1.Name, u2.UserId AS TargetUserIdCandidate" //
                         + " FROM BacklogMappingUser m" //
                         + " INNER JOIN BacklogUser u1 ON m.SourceUserId = u1.UserId" //
                         + " LEFT OUTER JOIN BacklogTargetUser u2 ON u1.Name = u2.Name" //
                         + " WHERE m.TargetUserId = 0 AND u2.UserId IS NOT NULL" //
-                        + " ORDER BY m.SourceUserId"))) {
+                        + " ORDER BY m.SourceUserId"));
+                RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
+                        "UPDATE BacklogMappingUser SET TargetUserId=?,MappingResult=? WHERE SourceUserId=?"))) {
             try (RsvrResultSet rset = stmt.executeQuery()) {
                 for (; rset.next();) {
                     final Long sourceUserId = rset.getLong();
                     final String name = rset.getString();
                     final Long targetUserIdCandidate = rset.getLong();
 
-                    try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement(
-                            "UPDATE BacklogMappingUser SET TargetUserId=?,MappingResult=? WHERE SourceUserId=?"))) {
-                        stmtMod.setLong(targetUserIdCandidate);
-                        stmtMod.setString("名前が一致によりUserを引き当てました。");
-                        stmtMod.setLong(sourceUserId);
-                        stmtMod.executeUpdateSingleRow();
-                        bklConn.getProcessInfo().incrementUpd("MappingUser");
-                    }
+                    // 更新のパラメータをクリア。
+                    stmtMod.clearParameters();
+                    stmtMod.setLong(targetUserIdCandidate);
+                    stmtMod.setString("名前が一致によりUserを引き当てました。");
+                    stmtMod.setLong(sourceUserId);
+                    stmtMod.executeUpdateSingleRow();
+                    bklConn.getProcessInfo().incrementUpd(CounterType.MAPPING_USER);
+
                     // [MBC5112] import: Mapping User: 新旧ユーザを名前をもとに引き当て:
                     RsvrLog.info(BMCMessages.MBC5112 + name);
                 }
@@ -21,6 +21,7 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.Project;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -36,29 +37,12 @@ public class H2ProjectDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogProject (" //
-                + "ProjectId BIGINT NOT NULL" //
-                + ",ProjectKey VARCHAR(80)" //
-                + ",Name VARCHAR(8192)" //
-                + ",IsChartEnabled BOOL" //
-                + ",IsSubtaskingEnabled BOOL" //
-                + ",TextFormattingRule VARCHAR(80)" //
-                + ",IsArchived BOOL" //
-                + ",DisplayOrder BIGINT" //
-                + ",UseWiki BOOL" //
-                + ",UseFileSharing BOOL" //
-                + ",UseDevAttributes BOOL" //
-                + ",UseResolvedForChart BOOL" //
-                + ",UseWikiTreeView BOOL" //
-                + ",UseOriginalImageSizeAtWiki BOOL" //
-                + ",PRIMARY KEY(ProjectId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -70,31 +54,16 @@ public class H2ProjectDao {
      */
     public static void store2Local(Connection conn, Project source, RsvrBacklogMigToolProcessInfo processInfo)
             throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT ProjectId FROM BacklogProject WHERE ProjectId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogProject (ProjectId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            processInfo.incrementIns("Project");
-        } else {
-            processInfo.incrementUpd("Project");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.PROJECT, "BacklogProject", "ProjectId",
+                source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogProject SET " //
-                + "ProjectKey=?, Name=?" //
-                + ", IsChartEnabled=?, IsSubtaskingEnabled=?, TextFormattingRule=?, IsArchived=?" //
-                + ", DisplayOrder=?, UseWiki=?, UseFileSharing=?, UseDevAttributes=?, UseResolvedForChart=?, UseWikiTreeView=?, UseOriginalImageSizeAtWiki=?"
-                + " WHERE ProjectId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogProject (" //
+                + "ProjectId, ProjectKey, Name" //
+                + ", IsChartEnabled, IsSubtaskingEnabled, TextFormattingRule, IsArchived" //
+                + ", DisplayOrder, UseWiki, UseFileSharing, UseDevAttributes, UseResolvedForChart, UseWikiTreeView, UseOriginalImageSizeAtWiki"
+                + ") KEY (ProjectId) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setString(source.getProjectKey());
             stmtMod.setString(source.getName());
             stmtMod.setBoolean(source.isChartEnabled());
@@ -108,8 +77,7 @@ public class H2ProjectDao {
             stmtMod.setBoolean(source.getUseResolvedForChart());
             stmtMod.setBoolean(source.getUseWikiTreeView());
             stmtMod.setBoolean(source.getUseOriginalImageSizeAtWiki());
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
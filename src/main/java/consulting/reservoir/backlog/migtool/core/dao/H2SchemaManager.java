@@ -0,0 +1,716 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+import consulting.reservoir.log.RsvrLog;
+
+/**
+ * h2 database のスキーマのバージョンを管理するクラス。
+ * 
+ * スキーマのバージョンを BacklogSchemaVersion テーブルに記録し、未適用の移行手順のみを一度だけ実行します。スキーマが最新の場合は DDL
+ * を一切実行しません。各フェーズの処理の開始時に {@link #ensureSchema(Connection)} を呼び出してください。
+ * 
+ * 移行手順は一度リリースしたら変更せず、スキーマの変更は新しいバージョンの手順として追加してください。そのため各手順の DDL は Dao
+ * を参照せず、このクラスに直接記述します。
+ */
+public class H2SchemaManager {
+    /**
+     * このクラスが扱うスキーマの最新バージョン。
+     */
+    public static final int CURRENT_VERSION = 7;
+
+    /**
+     * スキーマが最新であることを確認済みのデータベース接続。
+     */
+    private static final Map<Connection, Boolean> verifiedConnMap = new WeakHashMap<Connection, Boolean>();
+
+    /**
+     * 大きな文字列の列が CLOB であることを確認済みのデータベース接続。
+     */
+    private static final Map<Connection, Boolean> clobVerifiedConnMap = new WeakHashMap<Connection, Boolean>();
+
+    /**
+     * CLOB として格納する大きな文字列の列。テーブル名と列名の組。
+     */
+    private static final String[][] LARGE_TEXT_COLUMNS = { //
+            { "BacklogIssue", "Description" }, //
+            { "BacklogIssueComment", "Content" }, //
+            { "BacklogIssueCommentChangeLog", "OriginalValue" }, //
+            { "BacklogIssueCommentChangeLog", "NewValue" }, //
+            { "BacklogWiki", "Content" }, //
+    };
+
+    /**
+     * スキーマを最新のバージョンにします。同じデータベース接続で確認済みの場合は何もしません。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static synchronized void ensureSchema(Connection conn) throws SQLException {
+        if (verifiedConnMap.containsKey(conn)) {
+            return;
+        }
+
+        final int version = getSchemaVersion(conn);
+        if (version > CURRENT_VERSION) {
+            RsvrLog.warn("h2 database のスキーマのバージョンがこのツールより新しいものです: " + version + " > " + CURRENT_VERSION);
+        }
+        for (int nextVersion = version + 1; nextVersion <= CURRENT_VERSION; nextVersion++) {
+            RsvrLog.trace("h2 database のスキーマをバージョン " + nextVersion + " に移行します。");
+            applyStep(conn, nextVersion);
+            storeSchemaVersion(conn, nextVersion);
+        }
+
+        verifiedConnMap.put(conn, Boolean.TRUE);
+    }
+
+    /**
+     * 大きな文字列の列を CLOB に変更します。CLOB に変更済みの列はそのままとします。同じデータベース接続で確認済みの場合は何もしません。
+     * 
+     * 設定 h2LargeTextAsClob が true の場合に、{@link #ensureSchema(Connection)} の後に呼び出します。CLOB
+     * への変更は設定に依存するため、スキーマのバージョンには含めません。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static synchronized void ensureLargeTextAsClob(Connection conn) throws SQLException {
+        if (clobVerifiedConnMap.containsKey(conn)) {
+            return;
+        }
+
+        for (String[] look : LARGE_TEXT_COLUMNS) {
+            final String dataType = getColumnDataType(conn, look[0], look[1]);
+            if (dataType == null || "CHARACTER LARGE OBJECT".equals(dataType)) {
+                continue;
+            }
+            RsvrLog.trace("h2 database の列を CLOB に変更します: " + look[0] + "." + look[1]);
+            try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("ALTER TABLE " + look[0] //
+                    + " ALTER COLUMN " + look[1] + " SET DATA TYPE CLOB"))) {
+                stmt.executeUpdate();
+            }
+        }
+
+        clobVerifiedConnMap.put(conn, Boolean.TRUE);
+    }
+
+    /**
+     * 列のデータ型を取得します。
+     * 
+     * @param conn   データベース接続。
+     * @param table  テーブル名。
+     * @param column 列名。
+     * @return 列のデータ型。列が無い場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static String getColumnDataType(Connection conn, String table, String column) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT DATA_TYPE" //
+                + " FROM INFORMATION_SCHEMA.COLUMNS" //
+                + " WHERE TABLE_SCHEMA = 'PUBLIC' AND UPPER(TABLE_NAME) = ? AND UPPER(COLUMN_NAME) = ?"))) {
+            stmt.setString(table.toUpperCase());
+            stmt.setString(column.toUpperCase());
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                return rset.getString();
+            }
+        }
+    }
+
+    /**
+     * 記録済みのスキーマのバージョンを取得します。
+     * 
+     * @param conn データベース接続。
+     * @return スキーマのバージョン。記録が無い場合は 0。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static int getSchemaVersion(Connection conn) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT COUNT(*)" //
+                + " FROM INFORMATION_SCHEMA.TABLES" //
+                + " WHERE TABLE_SCHEMA = 'PUBLIC' AND UPPER(TABLE_NAME) = 'BACKLOGSCHEMAVERSION'"))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false || rset.getLong() == 0) {
+                    return 0;
+                }
+            }
+        }
+
+        try (RsvrPreparedStatement stmt = RsvrJdbc
+                .wrap(conn.prepareStatement("SELECT MAX(Version) FROM BacklogSchemaVersion"))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return 0;
+                }
+                final Integer version = rset.getInt();
+                return (version == null ? 0 : version);
+            }
+        }
+    }
+
+    /**
+     * 移行手順をひとつ実行します。
+     * 
+     * @param conn    データベース接続。
+     * @param version 移行先のバージョン。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void applyStep(Connection conn, int version) throws SQLException {
+        switch (version) {
+        case 1:
+            // バージョン管理の導入前に作成されたデータベースも対象とするため、既存のテーブルは残したまま不足分を作成します。
+            createTables(conn);
+            break;
+        case 2:
+            createIndexes(conn);
+            break;
+        case 3:
+            createImpAttachmentTable(conn);
+            break;
+        case 4:
+            addIssueSyncedColumns(conn);
+            break;
+        case 5:
+            addAttachmentContentColumns(conn);
+            break;
+        case 6:
+            createExpWatermarkTable(conn);
+            break;
+        case 7:
+            createImpIssueJournalTable(conn);
+            break;
+        default:
+            throw new IllegalArgumentException("想定外: 未定義のスキーマのバージョン: " + version);
+        }
+    }
+
+    /**
+     * [バージョン1] バージョン管理の導入時点のすべてのテーブルを作成します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createTables(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogSchemaVersion (" //
+                + "Version INT NOT NULL" //
+                + ",Applied TIMESTAMP" //
+                + ",PRIMARY KEY(Version)" //
+                + ")");
+
+        // エクスポート
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogProject (" //
+                + "ProjectId BIGINT NOT NULL" //
+                + ",ProjectKey VARCHAR(80)" //
+                + ",Name VARCHAR(8192)" //
+                + ",IsChartEnabled BOOL" //
+                + ",IsSubtaskingEnabled BOOL" //
+                + ",TextFormattingRule VARCHAR(80)" //
+                + ",IsArchived BOOL" //
+                + ",DisplayOrder BIGINT" //
+                + ",UseWiki BOOL" //
+                + ",UseFileSharing BOOL" //
+                + ",UseDevAttributes BOOL" //
+                + ",UseResolvedForChart BOOL" //
+                + ",UseWikiTreeView BOOL" //
+                + ",UseOriginalImageSizeAtWiki BOOL" //
+                + ",PRIMARY KEY(ProjectId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogUser (" //
+                + "UserId BIGINT NOT NULL" //
+                + ",Name VARCHAR(8192)" //
+                + ",BacklogUserId VARCHAR(8192)" //
+                + ",MailAddress VARCHAR(8192)" //
+                + ",RoleType INT" //
+                + ",Lang VARCHAR(256)" //
+                + ",PRIMARY KEY(UserId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueType (" //
+                + "IssueTypeId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",TemplateSummary VARCHAR(1024)" //
+                + ",TemplateDescription VARCHAR(1024)" //
+                + ",PRIMARY KEY(IssueTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueStatusType (" //
+                + "IssueStatusTypeId INT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",DisplayOrder INT" //
+                + ",PRIMARY KEY(IssueStatusTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogCategory (" //
+                + "CategoryId BIGINT NOT NULL" //
+                + ",Name VARCHAR(1024)" //
+                + ",PRIMARY KEY(CategoryId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogMilestone (" //
+                + "MilestoneId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",Description VARCHAR(65535)" //
+                + ",StartDate DATE" //
+                + ",ReleaseDueDate DATE" //
+                + ",Archived BOOL" //
+                + ",PRIMARY KEY(MilestoneId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogVersion (" //
+                + "VersionId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",Description VARCHAR(65535)" //
+                + ",StartDate DATE" //
+                + ",ReleaseDueDate DATE" //
+                + ",Archived BOOL" //
+                + ",PRIMARY KEY(VersionId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogCustomFieldSetting (" //
+                + "CustomFieldSettingId BIGINT NOT NULL" //
+                + ",Name VARCHAR(8192)" // 親から継承
+                + ",FieldTypeId VARCHAR(80)" // APIがStringを戻す場合があるため。親から継承。
+                + ",Description VARCHAR(8192)" // 親から継承
+                + ",IsRequired BOOL" //
+                + ",ApplicableIssueType VARCHAR(65535)" //
+                + ",Items VARCHAR(65535)" //
+                + ",PRIMARY KEY(CustomFieldSettingId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssue (" //
+                + "IssueId BIGINT NOT NULL" //
+                + ",IssueKey VARCHAR(80) NOT NULL" //
+                + ",KeyId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",IssueType VARCHAR(80)" //
+                + ",Summary VARCHAR(8192)" //
+                + ",Description VARCHAR(65535)" //
+                + ",Resolution VARCHAR(80)" //
+                + ",Priority VARCHAR(80)" //
+                + ",Status VARCHAR(80)" //
+                + ",Assignee BIGINT" //
+                + ",Category VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",Version VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",Milestone VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",StartDate DATE" //
+                + ",DueDate DATE" //
+                + ",EstimatedHours VARCHAR(80)" //
+                + ",ActualHours VARCHAR(80)" //
+                + ",ParentIssueId VARCHAR(80)" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",UpdatedUser BIGINT" //
+                + ",Updated TIMESTAMP" //
+                + ",SharedFile VARCHAR(65535)" // 文字列でカンマ区切り列挙
+                + ",PRIMARY KEY(IssueId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueCustomField (" //
+                + "IssueId BIGINT NOT NULL" // システム都合で追加。
+                + ",IssueCustomFieldId BIGINT NOT NULL" //
+                + ",Name VARCHAR(8192)" //
+                + ",CustomValue VARCHAR(65535)" // システム都合で追加
+                + ",FieldTypeId VARCHAR(80)" // APIがStringを戻す場合があるため。
+                + ",PRIMARY KEY(IssueId, IssueCustomFieldId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueComment (" //
+                + "IssueCommentId BIGINT NOT NULL" //
+                + ",IssueId BIGINT" //
+                + ",Content VARCHAR(65535)" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",Updated TIMESTAMP" //
+                + ",Notification VARCHAR(65535)" //
+                + ",PRIMARY KEY(IssueCommentId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueCommentChangeLog (" //
+                + "IssueCommentChangeLogId VARCHAR(80) NOT NULL" //
+                + ",IssueCommentId BIGINT" //
+                + ",Field VARCHAR(8192)" //
+                + ",OriginalValue VARCHAR(65535)" //
+                + ",NewValue VARCHAR(65535)" //
+                + ",IssueAttachmentId BIGINT" //
+                + ",AttributeInfo VARCHAR(8192)" //
+                + ",NotificationInfo VARCHAR(8192)" //
+                + ",PRIMARY KEY(IssueCommentChangeLogId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogIssueAttachment (" //
+                + "IssueAttachmentId BIGINT NOT NULL" //
+                + ",IssueId BIGINT" //
+                + ",Name VARCHAR(8192)" //
+                + ",Size BIGINT" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",IsImage BOOL" //
+                + ",LocalFilename VARCHAR(8192)" // BacklogMigTool が独自に追加した項目。
+                + ",PRIMARY KEY(IssueAttachmentId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogWiki (" //
+                + " WikiId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(8192)" //
+                + ",Content VARCHAR(65535)" //
+                + ",Tags VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",SharedFile BIGINT" // 文字列でカンマ区切り列挙
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",UpdatedUser BIGINT" //
+                + ",Updated TIMESTAMP" //
+                + ",PRIMARY KEY(WikiId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogWikiAttachment (" //
+                + "WikiAttachmentId BIGINT NOT NULL" //
+                + ",WikiId BIGINT" //
+                + ",Name VARCHAR(8192)" //
+                + ",Size BIGINT" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",IsImage BOOL" //
+                + ",LocalFilename VARCHAR(8192)" // BacklogMigTool が独自に追加した項目。
+                + ",PRIMARY KEY(WikiAttachmentId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogFile (" //
+                + "FileId BIGINT NOT NULL" //
+                + ",Type VARCHAR(80)" //
+                + ",Dir VARCHAR(65535)" //
+                + ",Name VARCHAR(8192)" //
+                + ",Size BIGINT" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",Updated TIMESTAMP" //
+                + ",IsImage BOOL" //
+                + ",PRIMARY KEY(FileId)" //
+                + ")");
+
+        // マッピング
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogMappingUser (" //
+                + "SourceUserId BIGINT NOT NULL" //
+                + ",TargetUserId BIGINT" //
+                + ",Reviewed BOOL DEFAULT FALSE" //
+                + ",MappingResult VARCHAR(65535)" //
+                + ",Created TIMESTAMP DEFAULT CURRENT_TIMESTAMP" //
+                + ",PRIMARY KEY(SourceUserId)" //
+                + ")");
+
+        // インポート
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetProject (" //
+                + "ProjectId BIGINT NOT NULL" //
+                + ",ProjectKey VARCHAR(80)" //
+                + ",Name VARCHAR(8192)" //
+                + ",IsChartEnabled BOOL" //
+                + ",IsSubtaskingEnabled BOOL" //
+                + ",TextFormattingRule VARCHAR(80)" //
+                + ",IsArchived BOOL" //
+                + ",DisplayOrder BIGINT" //
+                + ",UseWiki BOOL" //
+                + ",UseFileSharing BOOL" //
+                + ",UseDevAttributes BOOL" //
+                + ",UseResolvedForChart BOOL" //
+                + ",UseWikiTreeView BOOL" //
+                + ",UseOriginalImageSizeAtWiki BOOL" //
+                + ",PRIMARY KEY(ProjectId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetUser (" //
+                + "UserId BIGINT NOT NULL" //
+                + ",Name VARCHAR(8192)" //
+                + ",BacklogUserId VARCHAR(8192)" //
+                + ",MailAddress VARCHAR(8192)" //
+                + ",RoleType INT" //
+                + ",Lang VARCHAR(256)" //
+                + ",PRIMARY KEY(UserId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetIssueType (" //
+                + "IssueTypeId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",TemplateSummary VARCHAR(1024)" //
+                + ",TemplateDescription VARCHAR(1024)" //
+                + ",PRIMARY KEY(IssueTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetIssuePriorityType (" //
+                + "IssuePriorityTypeId BIGINT NOT NULL" //
+                + ",Name VARCHAR(1024)" //
+                + ",PRIMARY KEY(IssuePriorityTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetIssueResolutionType (" //
+                + "IssueResolutionTypeId BIGINT NOT NULL" //
+                + ",Name VARCHAR(1024)" //
+                + ",PRIMARY KEY(IssueResolutionTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetIssueStatusType (" //
+                + "IssueStatusTypeId INT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",DisplayOrder INT" //
+                + ",PRIMARY KEY(IssueStatusTypeId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetCategory (" //
+                + "CategoryId BIGINT NOT NULL" //
+                + ",Name VARCHAR(1024)" //
+                + ",PRIMARY KEY(CategoryId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetMilestone (" //
+                + "MilestoneId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",Description VARCHAR(65535)" //
+                + ",StartDate DATE" //
+                + ",ReleaseDueDate DATE" //
+                + ",Archived BOOL" //
+                + ",PRIMARY KEY(MilestoneId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetVersion (" //
+                + "VersionId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(1024)" //
+                + ",Description VARCHAR(65535)" //
+                + ",StartDate DATE" //
+                + ",ReleaseDueDate DATE" //
+                + ",Archived BOOL" //
+                + ",PRIMARY KEY(VersionId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetIssue (" //
+                + "TargetIssueId BIGINT NOT NULL" //
+                + ",SourceIssueId BIGINT" //
+                + ",IssueKey VARCHAR(80)" //
+                + ",KeyId BIGINT" //
+                + ",ProjectId BIGINT" //
+                + ",IssueType VARCHAR(80)" //
+                + ",Summary VARCHAR(8192)" //
+                + ",Description VARCHAR(65535)" //
+                + ",Resolution VARCHAR(80)" //
+                + ",Priority VARCHAR(80)" //
+                + ",Status VARCHAR(80)" //
+                + ",Assignee BIGINT" //
+                + ",Category VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",Version VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",Milestone VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",StartDate DATE" //
+                + ",DueDate DATE" //
+                + ",EstimatedHours VARCHAR(80)" //
+                + ",ActualHours VARCHAR(80)" //
+                + ",ParentIssueId VARCHAR(80)" //
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",UpdatedUser BIGINT" //
+                + ",Updated TIMESTAMP" //
+                + ",SharedFile VARCHAR(65535)" // 文字列でカンマ区切り列挙
+                + ",PRIMARY KEY(TargetIssueId)" //
+                + ")");
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogTargetWiki (" //
+                + " WikiId BIGINT NOT NULL" //
+                + ",ProjectId BIGINT" //
+                + ",Name VARCHAR(8192)" //
+                + ",Content VARCHAR(65535)" //
+                + ",Tags VARCHAR(8192)" // 文字列でカンマ区切り列挙
+                + ",SharedFile BIGINT" // 文字列でカンマ区切り列挙
+                + ",CreatedUser BIGINT" //
+                + ",Created TIMESTAMP" //
+                + ",UpdatedUser BIGINT" //
+                + ",Updated TIMESTAMP" //
+                + ",PRIMARY KEY(WikiId)" //
+                + ")");
+    }
+
+    /**
+     * [バージョン2] インポート・エクスポートのループ内の検索や結合で使用する列にインデックスを作成します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createIndexes(Connection conn) throws SQLException {
+        // 課題のインポートで KeyId の順に読み込む。
+        createIndex(conn, "BacklogIssue", "KeyId");
+        // 課題ごと・コメントごとの結合。
+        createIndex(conn, "BacklogIssueComment", "IssueId");
+        createIndex(conn, "BacklogIssueCommentChangeLog", "IssueCommentId");
+        createIndex(conn, "BacklogIssueAttachment", "IssueId");
+        createIndex(conn, "BacklogWikiAttachment", "WikiId");
+        // 親課題の設定で、もとの IssueId からターゲットの課題を引き当てる。
+        createIndex(conn, "BacklogTargetIssue", "SourceIssueId");
+        // ユーザマッピングでの名前・メールアドレスによる引き当て。
+        createIndex(conn, "BacklogUser", "Name");
+        createIndex(conn, "BacklogUser", "MailAddress");
+        createIndex(conn, "BacklogTargetUser", "Name");
+        createIndex(conn, "BacklogTargetUser", "MailAddress");
+        // マスタ情報のインポートでの名称による存在確認。
+        createIndex(conn, "BacklogIssueType", "Name");
+        createIndex(conn, "BacklogTargetIssueType", "Name");
+        createIndex(conn, "BacklogTargetIssuePriorityType", "Name");
+        createIndex(conn, "BacklogTargetIssueResolutionType", "Name");
+        createIndex(conn, "BacklogTargetIssueStatusType", "Name");
+        createIndex(conn, "BacklogTargetCategory", "Name");
+        createIndex(conn, "BacklogTargetMilestone", "Name");
+        createIndex(conn, "BacklogTargetVersion", "Name");
+        createIndex(conn, "BacklogTargetWiki", "Name");
+    }
+
+    /**
+     * [バージョン3] インポートでアップロードした添付ファイルを再利用するためのテーブルを作成します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createImpAttachmentTable(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogImpAttachment (" //
+                + "ProjectId BIGINT NOT NULL" // インポート先のプロジェクトId
+                + ",SourceAttachmentId BIGINT NOT NULL" //
+                + ",ContentHash VARCHAR(64) NOT NULL" // アップロードしたファイルの SHA-256
+                + ",TargetAttachmentId BIGINT NOT NULL" //
+                + ",Status VARCHAR(80) NOT NULL" //
+                + ",Uploaded TIMESTAMP NOT NULL" //
+                + ",PRIMARY KEY(ProjectId, SourceAttachmentId, ContentHash)" //
+                + ")");
+    }
+
+    /**
+     * [バージョン4] 課題のコメント・添付ファイルを取得した時点の Updated を記録する項目を追加します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void addIssueSyncedColumns(Connection conn) throws SQLException {
+        execute(conn, "ALTER TABLE BacklogIssue ADD COLUMN IF NOT EXISTS CommentSynced TIMESTAMP");
+        execute(conn, "ALTER TABLE BacklogIssue ADD COLUMN IF NOT EXISTS AttachmentSynced TIMESTAMP");
+    }
+
+    /**
+     * [バージョン5] ダウンロードした添付ファイルのサイズと SHA-256 を記録する項目を追加します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void addAttachmentContentColumns(Connection conn) throws SQLException {
+        for (String table : new String[] { "BacklogIssueAttachment", "BacklogWikiAttachment" }) {
+            execute(conn, "ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS ContentSize BIGINT");
+            execute(conn, "ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS ContentHash VARCHAR(64)");
+        }
+    }
+
+    /**
+     * [バージョン6] 差分エクスポートの基準日時を記録するテーブルを作成します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createExpWatermarkTable(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogExpWatermark (" //
+                + "ProjectId BIGINT NOT NULL" //
+                + ",Target VARCHAR(80) NOT NULL" //
+                + ",Watermark TIMESTAMP" //
+                + ",PRIMARY KEY(ProjectId, Target)" //
+                + ")");
+    }
+
+    /**
+     * [バージョン7] 課題のインポートの進捗を記録するジャーナルのテーブルを作成します。
+     * 
+     * @param conn データベース接続。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createImpIssueJournalTable(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS " //
+                + "BacklogImpIssueJournal (" //
+                + "ProjectId BIGINT NOT NULL" // インポート先のプロジェクトId
+                + ",SourceKeyId BIGINT NOT NULL" //
+                + ",SourceIssueId BIGINT" // 欠番を埋めた課題の場合は NULL
+                + ",TargetIssueId BIGINT NOT NULL" // 作成前 (PENDING) の場合は 0
+                + ",TargetKeyId BIGINT" // 作成前 (PENDING) の場合は作成の前に既知であったターゲットの最大の KeyId
+                + ",Status VARCHAR(80) NOT NULL" //
+                + ",CommentIndex INT NOT NULL" // 反映が完了したコメントの件数
+                + ",CommentStep INT NOT NULL" // 反映中のコメントで完了した手順 (0:未着手, 1:変更履歴を反映済み)
+                + ",TargetCommentCount INT NOT NULL" // ターゲットの課題に作成されたコメントの件数
+                + ",LastTargetCommentId BIGINT" //
+                + ",Updated TIMESTAMP" //
+                + ",PRIMARY KEY(ProjectId, SourceKeyId)" //
+                + ")");
+    }
+
+    /**
+     * 1列のインデックスを作成します。インデックス名は Idx + テーブル名 + 列名 とします。
+     * 
+     * @param conn   データベース接続。
+     * @param table  テーブル名。
+     * @param column 列名。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void createIndex(Connection conn, String table, String column) throws SQLException {
+        execute(conn, "CREATE INDEX IF NOT EXISTS Idx" + table + column + " ON " + table + " (" + column + ")");
+    }
+
+    /**
+     * DDL をひとつ実行します。
+     * 
+     * @param conn データベース接続。
+     * @param sql  実行する DDL。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 適用済みのバージョンを記録します。
+     * 
+     * @param conn    データベース接続。
+     * @param version 適用済みのバージョン。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static void storeSchemaVersion(Connection conn, int version) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("MERGE INTO BacklogSchemaVersion" //
+                + " (Version, Applied) KEY (Version) VALUES (?,?)"))) {
+            stmt.setInt(version);
+            stmt.setJavaUtilDate(new java.util.Date());
+            stmt.executeUpdateSingleRow();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.nulabinc.backlog4j.Category;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -37,17 +38,12 @@ public class H2TargetCategoryDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetCategory (" //
-                + "CategoryId BIGINT NOT NULL" //
-                + ",Name VARCHAR(1024)" //
-                + ",PRIMARY KEY(CategoryId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -59,32 +55,16 @@ public class H2TargetCategoryDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Category source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT CategoryId FROM BacklogTargetCategory WHERE CategoryId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogTargetCategory (CategoryId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("TargetCategory");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("TargetCategory");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.TARGET_CATEGORY,
+                "BacklogTargetCategory", "CategoryId", source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetCategory SET " //
-                + "Name=?" //
-                + " WHERE CategoryId=?"))) {
-            stmtMod.setString(source.getName());
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetCategory (" //
+                + "CategoryId, Name" //
+                + ") KEY (CategoryId) VALUES (?,?)")) {
             stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            stmtMod.setString(source.getName());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
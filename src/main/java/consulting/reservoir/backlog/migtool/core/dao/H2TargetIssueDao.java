@@ -27,10 +27,10 @@ import com.nulabinc.backlog4j.Milestone;
 import com.nulabinc.backlog4j.SharedFile;
 import com.nulabinc.backlog4j.Version;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 import consulting.reservoir.log.RsvrLog;
 
 /**
@@ -44,40 +44,12 @@ public class H2TargetIssueDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetIssue (" //
-                + "TargetIssueId BIGINT NOT NULL" //
-                + ",SourceIssueId BIGINT" //
-                + ",IssueKey VARCHAR(80)" //
-                + ",KeyId BIGINT" //
-                + ",ProjectId BIGINT" //
-                + ",IssueType VARCHAR(80)" //
-                + ",Summary VARCHAR(8192)" //
-                + ",Description VARCHAR(65535)" //
-                + ",Resolution VARCHAR(80)" //
-                + ",Priority VARCHAR(80)" //
-                + ",Status VARCHAR(80)" //
-                + ",Assignee BIGINT" //
-                + ",Category VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",Version VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",Milestone VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",StartDate DATE" //
-                + ",DueDate DATE" //
-                + ",EstimatedHours VARCHAR(80)" //
-                + ",ActualHours VARCHAR(80)" //
-                + ",ParentIssueId VARCHAR(80)" //
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",UpdatedUser BIGINT" //
-                + ",Updated TIMESTAMP"//
-                + ",SharedFile VARCHAR(65535)" // 文字列でカンマ区切り列挙
-                + ",PRIMARY KEY(TargetIssueId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -90,35 +62,19 @@ public class H2TargetIssueDao {
      */
     public static void store2Local(Connection conn, Issue source, long sourceIssueId, RsvrBacklogApiConn bklConn)
             throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT TargetIssueId FROM BacklogTargetIssue WHERE TargetIssueId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.ISSUE, "BacklogTargetIssue",
+                "TargetIssueId", source.getId());
 
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogTargetIssue (TargetIssueId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("Issue");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("Issue");
-        }
-
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetIssue SET " //
-                + "SourceIssueId=?, IssueKey=?, Summary=?, KeyId=?" //
-                + ", ProjectId=?, IssueType=?, Description=?, Resolution=?, Priority=?, Status=?" //
-                + ", Assignee=?, Category=?, Version=?, Milestone=?, StartDate=?, DueDate=?, EstimatedHours=?, ActualHours=?" //
-                + ", ParentIssueId=?, CreatedUser=?, Created=?, UpdatedUser=?, Updated=?" //
-                + ", SharedFile=?" //
-                + " WHERE TargetIssueId = ? " //
-        ))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetIssue (" //
+                + "TargetIssueId, SourceIssueId, IssueKey, Summary, KeyId" //
+                + ", ProjectId, IssueType, Description, Resolution, Priority, Status" //
+                + ", Assignee, Category, Version, Milestone, StartDate, DueDate, EstimatedHours, ActualHours" //
+                + ", ParentIssueId, CreatedUser, Created, UpdatedUser, Updated" //
+                + ", SharedFile" //
+                + ") KEY (TargetIssueId) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)" //
+        )) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(sourceIssueId);
             stmtMod.setString(source.getIssueKey());
             stmtMod.setString(source.getSummary());
@@ -133,7 +89,6 @@ public class H2TargetIssueDao {
                 stmtMod.setNull(Types.BIGINT);
             } else {
                 stmtMod.setLong(source.getAssignee().getId());
-                H2UserDao.store2Local(conn, source.getAssignee(), bklConn.getProcessInfo());
             }
 
             // Categoryの一覧をカンマ区切り文字列化します。
@@ -180,14 +135,12 @@ public class H2TargetIssueDao {
                 stmtMod.setNull(Types.BIGINT);
             } else {
                 stmtMod.setLong(source.getCreatedUser().getId());
-                H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
             }
             stmtMod.setJavaUtilDate(source.getCreated());
             if (source.getUpdatedUser() == null) {
                 stmtMod.setNull(Types.BIGINT);
             } else {
                 stmtMod.setLong(source.getUpdatedUser().getId());
-                H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
             }
             stmtMod.setJavaUtilDate(source.getUpdated());
 
@@ -206,15 +159,18 @@ public class H2TargetIssueDao {
                 }
             }
 
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-            if (source.getCreatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
-            }
-            if (source.getUpdatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
-            }
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getAssignee() != null) {
+            H2UserDao.store2Local(conn, source.getAssignee(), bklConn.getProcessInfo());
+        }
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
+        }
+        if (source.getUpdatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
         }
 
         // Issueに紐づくとマークされたカスタムフィールドをStore。
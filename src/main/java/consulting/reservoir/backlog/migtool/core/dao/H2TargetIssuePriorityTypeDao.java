@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.Priority;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -36,16 +37,12 @@ public class H2TargetIssuePriorityTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetIssuePriorityType (" //
-                + "IssuePriorityTypeId BIGINT NOT NULL" //
-                + ",Name VARCHAR(1024)" //
-                + ",PRIMARY KEY(IssuePriorityTypeId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -59,34 +56,16 @@ public class H2TargetIssuePriorityTypeDao {
      */
     public static void store2Local(Connection conn, Priority source, RsvrBacklogMigToolProcessInfo processInfo,
             RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement( //
-                "SELECT IssuePriorityTypeId FROM BacklogTargetIssuePriorityType WHERE IssuePriorityTypeId=?"))) {
-            stmt.setLong(source.getId());
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.TARGET_ISSUE_PRIORITY_TYPE,
+                "BacklogTargetIssuePriorityType", "IssuePriorityTypeId", source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                        "INSERT INTO BacklogTargetIssuePriorityType (IssuePriorityTypeId) VALUES (?)"))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("TargetIssuePriorityType");
-            } else {
-                processInfo.incrementUpd("TargetIssuePriorityType");
-            }
-
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogTargetIssuePriorityType SET" //
-                            + " Name=?" //
-                            + " WHERE IssuePriorityTypeId=?"))) {
-                stmtMod.setString(source.getName());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetIssuePriorityType (" //
+                + "IssuePriorityTypeId, Name" //
+                + ") KEY (IssuePriorityTypeId) VALUES (?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getName());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
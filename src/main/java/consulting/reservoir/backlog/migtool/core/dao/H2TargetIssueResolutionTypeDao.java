@@ -21,10 +21,10 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.Resolution;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する 課題の `Resolution` (インポート先ターゲット) に関する DAO クラス。
@@ -35,16 +35,12 @@ public class H2TargetIssueResolutionTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetIssueResolutionType (" //
-                + "IssueResolutionTypeId BIGINT NOT NULL" //
-                + ",Name VARCHAR(1024)" //
-                + ",PRIMARY KEY(IssueResolutionTypeId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -58,34 +54,16 @@ public class H2TargetIssueResolutionTypeDao {
      */
     public static void store2Local(Connection conn, Resolution source, RsvrBacklogMigToolProcessInfo processInfo,
             RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT IssueResolutionTypeId FROM BacklogTargetIssueResolutionType WHERE IssueResolutionTypeId=?"))) {
-            stmt.setLong(source.getId());
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                        "INSERT INTO BacklogTargetIssueResolutionType (IssueResolutionTypeId) VALUES (?)"))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("TargetIssueResolutionType");
-            } else {
-                processInfo.incrementUpd("TargetIssueResolutionType");
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.TARGET_ISSUE_RESOLUTION_TYPE,
+                "BacklogTargetIssueResolutionType", "IssueResolutionTypeId", source.getId());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                    "UPDATE BacklogTargetIssueResolutionType SET" //
-                            + " Name=?" //
-                            + " WHERE IssueResolutionTypeId = ?" //
-            ))) {
-                stmtMod.setString(source.getName());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetIssueResolutionType (" //
+                + "IssueResolutionTypeId, Name" //
+                + ") KEY (IssueResolutionTypeId) VALUES (?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getName());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
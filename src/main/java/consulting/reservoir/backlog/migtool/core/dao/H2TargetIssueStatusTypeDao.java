@@ -21,6 +21,7 @@ import java.sql.SQLException;
 
 import com.nulabinc.backlog4j.Status;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -35,18 +36,12 @@ public class H2TargetIssueStatusTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetIssueStatusType (" //
-                + "IssueStatusTypeId INT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",DisplayOrder INT" //
-                + ",PRIMARY KEY(IssueStatusTypeId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -59,37 +54,18 @@ public class H2TargetIssueStatusTypeDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Status source, RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT IssueStatusTypeId FROM BacklogTargetIssueStatusType WHERE IssueStatusTypeId=?"))) {
-            stmt.setInt(source.getId());
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.TARGET_ISSUE_STATUS_TYPE,
+                "BacklogTargetIssueStatusType", "IssueStatusTypeId", source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement( //
-                        "INSERT INTO BacklogTargetIssueStatusType (IssueStatusTypeId) VALUES (?)"))) {
-                    stmtMod.setInt(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                bklConn.getProcessInfo().incrementIns("TargetIssueStatusType");
-            } else {
-                bklConn.getProcessInfo().incrementUpd("TargetIssueStatusType");
-            }
-
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogTargetIssueStatusType SET" //
-                            + " ProjectId=?, Name=?, DisplayOrder=?" //
-                            + " WHERE IssueStatusTypeId = ?" //
-                    ))) {
-                stmtMod.setLong(bklConn.getProjectId());
-                stmtMod.setString(source.getName());
-                stmtMod.setInt(source.getDisplayOrder());
-                stmtMod.setInt(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetIssueStatusType (" //
+                + "IssueStatusTypeId, ProjectId, Name, DisplayOrder" //
+                + ") KEY (IssueStatusTypeId) VALUES (?,?,?,?)")) {
+            stmtMod.setInt(source.getId());
+            stmtMod.setLong(bklConn.getProjectId());
+            stmtMod.setString(source.getName());
+            stmtMod.setInt(source.getDisplayOrder());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
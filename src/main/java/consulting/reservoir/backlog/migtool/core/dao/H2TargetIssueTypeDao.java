@@ -21,6 +21,7 @@ import java.sql.SQLException;
 
 import com.nulabinc.backlog4j.IssueType;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -35,20 +36,12 @@ public class H2TargetIssueTypeDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetIssueType (" //
-                + "IssueTypeId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",TemplateSummary VARCHAR(1024)" //
-                + ",TemplateDescription VARCHAR(1024)" //
-                + ",PRIMARY KEY(IssueTypeId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -61,40 +54,19 @@ public class H2TargetIssueTypeDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, IssueType source, RsvrBacklogApiConn bklConn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT IssueTypeId FROM BacklogTargetIssueType WHERE IssueTypeId =  " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogTargetIssueType (IssueTypeId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.TARGET_ISSUE_TYPE,
+                "BacklogTargetIssueType", "IssueTypeId", source.getId());
 
-                }
-                bklConn.getProcessInfo().incrementIns("TargetIssueType");
-            } else {
-                bklConn.getProcessInfo().incrementUpd("TargetIssueType");
-            }
-
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("UPDATE BacklogTargetIssueType SET " //
-                            + "ProjectId=?, Name=?, TemplateSummary=?, TemplateDescription=?" //
-                            + " WHERE IssueTypeId = ?" //
-                    ))) {
-                stmtMod.setLong(bklConn.getProjectId());
-                stmtMod.setString(source.getName());
-                stmtMod.setString(source.getTemplateSummary());
-                stmtMod.setString(source.getTemplateDescription());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetIssueType (" //
+                + "IssueTypeId, ProjectId, Name, TemplateSummary, TemplateDescription" //
+                + ") KEY (IssueTypeId) VALUES (?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setLong(bklConn.getProjectId());
+            stmtMod.setString(source.getName());
+            stmtMod.setString(source.getTemplateSummary());
+            stmtMod.setString(source.getTemplateDescription());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+import consulting.reservoir.log.RsvrLog;
+
+/**
+ * インポート先 (ターゲット) のマスタ情報について、名称などから Id を引き当てるクラス。
+ * 
+ * 課題のインポートでは課題や変更履歴の1件ごとに種別・カテゴリ・マイルストーン・発生バージョン・状態・ユーザの Id
+ * を引き当てます。これらのマスタ情報は件数が少なく、課題のインポート中には変化しないため、最初に一度だけ h2 database
+ * から読み込んでメモリ上で引き当てます。
+ * 
+ * インスタンスは読み込み後に変更されません。マスタ情報をインポートする処理で行を追加した場合は
+ * {@link #invalidate(Connection)} を呼び出して、次回の {@link #getInstance(Connection)} で読み込み直してください。
+ */
+public class H2TargetMasterResolver {
+    /**
+     * データベース接続ごとの読み込み済みのインスタンス。
+     */
+    private static final Map<Connection, H2TargetMasterResolver> resolverMap = Collections
+            .synchronizedMap(new IdentityHashMap<Connection, H2TargetMasterResolver>());
+
+    private final Map<String, Long> issueTypeMap;
+    private final Map<String, Long> issuePriorityTypeMap;
+    private final Map<String, Long> issueResolutionTypeMap;
+    private final Map<String, Long> issueStatusTypeMap;
+    private final Map<String, Long> categoryMap;
+    private final Map<String, Long> milestoneMap;
+    private final Map<String, Long> versionMap;
+
+    /**
+     * source側の UserId から target側の UserId への対応。
+     */
+    private final LongLongMap userIdMap;
+
+    /**
+     * source側のユーザ名から target側の UserId への対応。
+     */
+    private final Map<String, Long> userNameMap;
+
+    /**
+     * マッピングが無いユーザの代わりに使用する代表ユーザの UserId。
+     */
+    private final Long representativeUserId;
+
+    private H2TargetMasterResolver(Connection conn) throws SQLException {
+        issueTypeMap = loadNameMap(conn, "SELECT Name, IssueTypeId FROM BacklogTargetIssueType");
+        issuePriorityTypeMap = loadNameMap(conn,
+                "SELECT Name, IssuePriorityTypeId FROM BacklogTargetIssuePriorityType");
+        issueResolutionTypeMap = loadNameMap(conn,
+                "SELECT Name, IssueResolutionTypeId FROM BacklogTargetIssueResolutionType");
+        issueStatusTypeMap = loadNameMap(conn, "SELECT Name, IssueStatusTypeId FROM BacklogTargetIssueStatusType");
+        categoryMap = loadNameMap(conn, "SELECT Name, CategoryId FROM BacklogTargetCategory");
+        milestoneMap = loadNameMap(conn, "SELECT Name, MilestoneId FROM BacklogTargetMilestone");
+        versionMap = loadNameMap(conn, "SELECT Name, VersionId FROM BacklogTargetVersion");
+
+        userIdMap = new LongLongMap();
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT m.SourceUserId, m.TargetUserId" //
+                + " FROM BacklogMappingUser m" //
+                + " WHERE m.TargetUserId<>0"))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                for (; rset.next();) {
+                    userIdMap.put(rset.getLong(), rset.getLong());
+                }
+            }
+        }
+        userNameMap = loadNameMap(conn, "SELECT u1.Name, m.TargetUserId" //
+                + " FROM BacklogMappingUser m" //
+                + " INNER JOIN BacklogUser u1 ON m.SourceUserId = u1.UserId" //
+                + " WHERE m.TargetUserId<>0");
+        representativeUserId = H2MappingUserDao.getRepresentativeUserId(conn);
+    }
+
+    /**
+     * 指定のデータベース接続について、読み込み済みのインスタンスを取得します。未読み込みの場合は h2 database から読み込みます。
+     * 
+     * @param conn データベース接続。
+     * @return 読み込み済みのインスタンス。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static H2TargetMasterResolver getInstance(Connection conn) throws SQLException {
+        synchronized (resolverMap) {
+            H2TargetMasterResolver resolver = resolverMap.get(conn);
+            if (resolver == null) {
+                RsvrLog.trace("ターゲットのマスタ情報を読み込み");
+                resolver = new H2TargetMasterResolver(conn);
+                resolverMap.put(conn, resolver);
+            }
+            return resolver;
+        }
+    }
+
+    /**
+     * 指定のデータベース接続について、読み込み済みのインスタンスを破棄します。マスタ情報を追加・更新した後に呼び出してください。
+     * 
+     * @param conn データベース接続。
+     */
+    public static void invalidate(Connection conn) {
+        resolverMap.remove(conn);
+    }
+
+    /**
+     * 与えられた名称をもとに IssueTypeId を取得します。
+     * 
+     * @param name 種別の名称。
+     * @return IssueTypeId。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public long getIssueTypeIdByName(String name) throws IOException {
+        final Long id = issueTypeMap.get(name);
+        if (id == null) {
+            throw new IOException("ERROR: 指定の名称のIssueTypeが発見できない: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * 与えられた名称をもとに IssuePriorityTypeId を取得します。
+     * 
+     * @param name 優先度の名称。
+     * @return IssuePriorityTypeId。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public long getIssuePriorityTypeIdByName(String name) throws IOException {
+        final Long id = issuePriorityTypeMap.get(name);
+        if (id == null) {
+            throw new IOException("ERROR: 指定の名称のPriorityが発見できない: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * 与えられた名称をもとに IssueResolutionTypeId を取得します。
+     * 
+     * @param name 完了理由の名称。
+     * @return IssueResolutionTypeId。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public long getIssueResolutionTypeIdByName(String name) throws IOException {
+        final Long id = issueResolutionTypeMap.get(name);
+        if (id == null) {
+            throw new IOException("ERROR: 指定の名称のResolutionが発見できない: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * 与えられた名称をもとに IssueStatusTypeId を取得します。
+     * 
+     * @param name 状態の名称。
+     * @return IssueStatusTypeId。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public long getIssueStatusTypeIdByName(String name) throws IOException {
+        final Long id = issueStatusTypeMap.get(name);
+        if (id == null) {
+            throw new IOException("ERROR: 指定の名称のIssueStatusTypeが発見できない: " + name);
+        }
+        return id;
+    }
+
+    /**
+     * カンマ区切りのカテゴリ名称をもとに CategoryId の一覧を取得します。
+     * 
+     * @param names カンマ区切りのカテゴリ名称。
+     * @return CategoryId の一覧。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public List<Long> getCategoryIdListByNames(String names) throws IOException {
+        return getIdListByNames(categoryMap, "Category", names);
+    }
+
+    /**
+     * カンマ区切りのマイルストーン名称をもとに MilestoneId の一覧を取得します。
+     * 
+     * @param names カンマ区切りのマイルストーン名称。
+     * @return MilestoneId の一覧。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public List<Long> getMilestoneIdListByNames(String names) throws IOException {
+        return getIdListByNames(milestoneMap, "Milestone", names);
+    }
+
+    /**
+     * カンマ区切りの発生バージョン名称をもとに VersionId の一覧を取得します。
+     * 
+     * @param names カンマ区切りの発生バージョン名称。
+     * @return VersionId の一覧。
+     * @throws IOException 指定の名称が見つからない場合。
+     */
+    public List<Long> getVersionIdListByNames(String names) throws IOException {
+        return getIdListByNames(versionMap, "Version", names);
+    }
+
+    /**
+     * source側の UserId をもとに、target側の UserId を取得します。マッピングが無い場合は代表ユーザの UserId を戻します。
+     * 
+     * @param sourceUserId source側の UserId。
+     * @return target側の UserId。
+     */
+    public Long getTargetUserIdBySourceUserId(long sourceUserId) {
+        if (userIdMap.containsKey(sourceUserId)) {
+            return userIdMap.get(sourceUserId);
+        }
+        RsvrLog.warn("指定のユーザには MappingUser 指定が見つかりませんでした。代わりに代表ユーザを指定します。: " + sourceUserId);
+        return representativeUserId;
+    }
+
+    /**
+     * source側のユーザ名をもとに、target側の UserId を取得します。マッピングが無い場合は代表ユーザの UserId を戻します。
+     * 
+     * @param sourceUserName source側のユーザ名。
+     * @return target側の UserId。
+     */
+    public Long getTargetUserIdBySourceUserName(String sourceUserName) {
+        final Long id = userNameMap.get(sourceUserName);
+        if (id != null) {
+            return id;
+        }
+        RsvrLog.warn("指定のユーザには MappingUser 指定が見つかりませんでした。代わりに代表ユーザを指定します。: " + sourceUserName);
+        return representativeUserId;
+    }
+
+    private static List<Long> getIdListByNames(Map<String, Long> map, String label, String names)
+            throws IOException {
+        final List<Long> idList = new ArrayList<Long>();
+        for (String look : names.split(",")) {
+            final Long id = map.get(look.trim());
+            if (id == null) {
+                throw new IOException("該当の" + label + "は発見できず:[" + look.trim() + "]");
+            }
+            idList.add(id);
+        }
+        return idList;
+    }
+
+    /**
+     * 名称と Id の2項目を戻す SQL を実行して、名称から Id への対応を読み込みます。同じ名称がある場合は最初の行を採用します。
+     * 
+     * @param conn データベース接続。
+     * @param sql  名称と Id を戻す SQL。
+     * @return 名称から Id への対応。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private static Map<String, Long> loadNameMap(Connection conn, String sql) throws SQLException {
+        final Map<String, Long> map = new HashMap<>();
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                for (; rset.next();) {
+                    final String name = rset.getString();
+                    final Long id = rset.getLong();
+                    if (name != null && id != null && map.containsKey(name) == false) {
+                        map.put(name, id);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * long をキー・値とするオープンアドレス法のマップ。ボクシングを避けるために使用します。
+     */
+    static class LongLongMap {
+        private long[] keys = new long[16];
+        private long[] values = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size = 0;
+
+        void put(long key, long value) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2);
+            }
+            final int index = findIndex(keys, used, key);
+            if (used[index] == false) {
+                used[index] = true;
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+        }
+
+        boolean containsKey(long key) {
+            return used[findIndex(keys, used, key)];
+        }
+
+        long get(long key) {
+            final int index = findIndex(keys, used, key);
+            if (used[index] == false) {
+                throw new IllegalArgumentException("Unexpected: key not found: " + key);
+            }
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void rehash(int newCapacity) {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            final boolean[] oldUsed = used;
+            keys = new long[newCapacity];
+            values = new long[newCapacity];
+            used = new boolean[newCapacity];
+            for (int index = 0; index < oldKeys.length; index++) {
+                if (oldUsed[index]) {
+                    final int newIndex = findIndex(keys, used, oldKeys[index]);
+                    used[newIndex] = true;
+                    keys[newIndex] = oldKeys[index];
+                    values[newIndex] = oldValues[index];
+                }
+            }
+        }
+
+        private static int findIndex(long[] keys, boolean[] used, long key) {
+            final int mask = keys.length - 1;
+            int index = (int) (key ^ (key >>> 32)) * 0x9E3779B9 & mask;
+            for (; used[index] && keys[index] != key;) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.nulabinc.backlog4j.Milestone;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -37,21 +38,12 @@ public class H2TargetMilestoneDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetMilestone (" //
-                + "MilestoneId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",Description VARCHAR(65535)" //
-                + ",StartDate DATE" //
-                + ",ReleaseDueDate DATE" //
-                + ",Archived BOOL" //
-                + ",PRIMARY KEY(MilestoneId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -63,37 +55,21 @@ public class H2TargetMilestoneDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Milestone source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT MilestoneId FROM BacklogTargetMilestone WHERE MilestoneId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogTargetMilestone (MilestoneId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("TargetMilestone");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("TargetMilestone");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.TARGET_MILESTONE,
+                "BacklogTargetMilestone", "MilestoneId", source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetMilestone SET" //
-                + " ProjectId=?, Name=?, Description=?, StartDate=?, ReleaseDueDate=?, Archived=?" //
-                + " WHERE MilestoneId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetMilestone (" //
+                + "MilestoneId, ProjectId, Name, Description, StartDate, ReleaseDueDate, Archived" //
+                + ") KEY (MilestoneId) VALUES (?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(bklConn.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getDescription());
             stmtMod.setJavaUtilDate(source.getStartDate());
             stmtMod.setJavaUtilDate(source.getReleaseDueDate());
             stmtMod.setBoolean(source.getArchived());
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
@@ -21,6 +21,7 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.Project;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -34,29 +35,12 @@ public class H2TargetProjectDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetProject (" //
-                + "ProjectId BIGINT NOT NULL" //
-                + ",ProjectKey VARCHAR(80)" //
-                + ",Name VARCHAR(8192)" //
-                + ",IsChartEnabled BOOL" //
-                + ",IsSubtaskingEnabled BOOL" //
-                + ",TextFormattingRule VARCHAR(80)" //
-                + ",IsArchived BOOL" //
-                + ",DisplayOrder BIGINT" //
-                + ",UseWiki BOOL" //
-                + ",UseFileSharing BOOL" //
-                + ",UseDevAttributes BOOL" //
-                + ",UseResolvedForChart BOOL" //
-                + ",UseWikiTreeView BOOL" //
-                + ",UseOriginalImageSizeAtWiki BOOL" //
-                + ",PRIMARY KEY(ProjectId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -68,49 +52,30 @@ public class H2TargetProjectDao {
      */
     public static void store2Local(Connection conn, Project source, RsvrBacklogMigToolProcessInfo processInfo)
             throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(
-                conn.prepareStatement("SELECT ProjectId FROM BacklogTargetProject WHERE ProjectId =  " + source.getId() //
-                ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.TARGET_PROJECT, "BacklogTargetProject", "ProjectId",
+                source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogTargetProject (ProjectId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("TargetProject");
-            } else {
-                processInfo.incrementUpd("TargetProject");
-            }
-
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetProject SET " //
-                    + "ProjectKey=?, Name=?" //
-                    + ", IsChartEnabled=?, IsSubtaskingEnabled=?, TextFormattingRule=?, IsArchived=?" //
-                    + ", DisplayOrder=?, UseWiki=?, UseFileSharing=?, UseDevAttributes=?, UseResolvedForChart=?, UseWikiTreeView=?, UseOriginalImageSizeAtWiki=?"
-                    + " WHERE ProjectId = ?" //
-            ))) {
-                stmtMod.setString(source.getProjectKey());
-                stmtMod.setString(source.getName());
-                stmtMod.setBoolean(source.isChartEnabled());
-                stmtMod.setBoolean(source.isSubtaskingEnabled());
-                stmtMod.setString(source.getTextFormattingRule().getStrValue());
-                stmtMod.setBoolean(source.isArchived());
-                stmtMod.setLong(source.getDisplayOrder());
-                stmtMod.setBoolean(source.getUseWiki());
-                stmtMod.setBoolean(source.getUseFileSharing());
-                stmtMod.setBoolean(source.getUseDevAttributes());
-                stmtMod.setBoolean(source.getUseResolvedForChart());
-                stmtMod.setBoolean(source.getUseWikiTreeView());
-                stmtMod.setBoolean(source.getUseOriginalImageSizeAtWiki());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetProject (" //
+                + "ProjectId, ProjectKey, Name" //
+                + ", IsChartEnabled, IsSubtaskingEnabled, TextFormattingRule, IsArchived" //
+                + ", DisplayOrder, UseWiki, UseFileSharing, UseDevAttributes, UseResolvedForChart, UseWikiTreeView, UseOriginalImageSizeAtWiki"
+                + ") KEY (ProjectId) VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getProjectKey());
+            stmtMod.setString(source.getName());
+            stmtMod.setBoolean(source.isChartEnabled());
+            stmtMod.setBoolean(source.isSubtaskingEnabled());
+            stmtMod.setString(source.getTextFormattingRule().getStrValue());
+            stmtMod.setBoolean(source.isArchived());
+            stmtMod.setLong(source.getDisplayOrder());
+            stmtMod.setBoolean(source.getUseWiki());
+            stmtMod.setBoolean(source.getUseFileSharing());
+            stmtMod.setBoolean(source.getUseDevAttributes());
+            stmtMod.setBoolean(source.getUseResolvedForChart());
+            stmtMod.setBoolean(source.getUseWikiTreeView());
+            stmtMod.setBoolean(source.getUseOriginalImageSizeAtWiki());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
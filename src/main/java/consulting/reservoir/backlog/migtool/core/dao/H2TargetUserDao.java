@@ -21,9 +21,9 @@ import java.sql.SQLException;
 import com.nulabinc.backlog4j.User;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する `User` (インポート先ターゲット) に関する DAO クラス。
@@ -36,21 +36,12 @@ public class H2TargetUserDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetUser (" //
-                + "UserId BIGINT NOT NULL" //
-                + ",Name VARCHAR(8192)" //
-                + ",BacklogUserId VARCHAR(8192)" //
-                + ",MailAddress VARCHAR(8192)" //
-                + ",RoleType INT" //
-                + ",Lang VARCHAR(256)" //
-                + ",PRIMARY KEY(UserId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -62,40 +53,20 @@ public class H2TargetUserDao {
      */
     public static void store2Local(Connection conn, User source, RsvrBacklogMigToolProcessInfo processInfo)
             throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT UserId FROM BacklogTargetUser WHERE UserId = ?"//
-                ))) {
-            stmt.setLong(source.getId());
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogTargetUser (UserId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("TargetUser");
-            } else {
-                processInfo.incrementUpd("TargetUser");
-            }
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.TARGET_USER, "BacklogTargetUser", "UserId",
+                source.getId());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetUser SET " //
-                    + "Name=?, BacklogUserId=?, MailAddress=?, RoleType=?, Lang=?" //
-                    + " WHERE UserId = ? " //
-            ))) {
-                stmtMod.setString(source.getName());
-                stmtMod.setString(source.getUserId());
-                stmtMod.setString(source.getMailAddress());
-                stmtMod.setInt(source.getRoleType().getIntValue());
-                stmtMod.setString(source.getLang());
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetUser (" //
+                + "UserId, Name, BacklogUserId, MailAddress, RoleType, Lang" //
+                + ") KEY (UserId) VALUES (?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setString(source.getName());
+            stmtMod.setString(source.getUserId());
+            stmtMod.setString(source.getMailAddress());
+            stmtMod.setInt(source.getRoleType().getIntValue());
+            stmtMod.setString(source.getLang());
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
@@ -23,6 +23,7 @@ import java.util.List;
 
 import com.nulabinc.backlog4j.Version;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -37,22 +38,12 @@ public class H2TargetVersionDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetVersion (" //
-                + "VersionId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",Description VARCHAR(65535)" //
-                + ",StartDate DATE" //
-                + ",ReleaseDueDate DATE" //
-                + ",Archived BOOL" //
-                + ",PRIMARY KEY(VersionId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -65,38 +56,21 @@ public class H2TargetVersionDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Version source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT VersionId FROM BacklogTargetVersion WHERE VersionId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogTargetVersion (VersionId) VALUES (?)" //
-                    ))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("TargetVersion");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("TargetVersion");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.TARGET_VERSION, "BacklogTargetVersion",
+                "VersionId", source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetVersion SET" //
-                + " ProjectId=?, Name=?, Description=?, StartDate=?, ReleaseDueDate=?, Archived=?" //
-                + " WHERE VersionId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetVersion (" //
+                + "VersionId, ProjectId, Name, Description, StartDate, ReleaseDueDate, Archived" //
+                + ") KEY (VersionId) VALUES (?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(bklConn.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getDescription());
             stmtMod.setJavaUtilDate(source.getStartDate());
             stmtMod.setJavaUtilDate(source.getReleaseDueDate());
             stmtMod.setBoolean(source.getArchived());
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 
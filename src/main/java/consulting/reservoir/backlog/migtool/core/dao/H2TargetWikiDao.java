@@ -23,10 +23,10 @@ import com.nulabinc.backlog4j.SharedFile;
 import com.nulabinc.backlog4j.Wiki;
 import com.nulabinc.backlog4j.WikiTag;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する `Wiki` (インポート先ターゲット) に関する DAO クラス。
@@ -37,24 +37,12 @@ public class H2TargetWikiDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogTargetWiki (" //
-                + " WikiId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(8192)" //
-                + ",Content VARCHAR(65535)" //
-                + ",Tags VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",SharedFile BIGINT" // 文字列でカンマ区切り列挙
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",UpdatedUser BIGINT" //
-                + ",Updated TIMESTAMP"//
-                + ",PRIMARY KEY(WikiId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -69,37 +57,23 @@ public class H2TargetWikiDao {
      */
     public static void store2Local(Connection conn, Wiki source, RsvrBacklogApiConn bklConn)
             throws SQLException, IOException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT WikiId FROM BacklogTargetWiki WHERE WikiId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogTargetWiki (WikiId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("Wiki");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("Wiki");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.WIKI, "BacklogTargetWiki", "WikiId",
+                source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogTargetWiki SET " //
-                + " ProjectId=?" //
-                + ",Name=?" //
-                + ",Content=?" //
-                + ",Tags=?" //
-                + ",SharedFile=?" //
-                + ",CreatedUser=?" //
-                + ",Created=?" //
-                + ",UpdatedUser=?" //
-                + ",Updated=?" //
-                + " WHERE WikiId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogTargetWiki (" //
+                + "WikiId" //
+                + ",ProjectId" //
+                + ",Name" //
+                + ",Content" //
+                + ",Tags" //
+                + ",SharedFile" //
+                + ",CreatedUser" //
+                + ",Created" //
+                + ",UpdatedUser" //
+                + ",Updated" //
+                + ") KEY (WikiId) VALUES (?,?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(source.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getContent());
@@ -137,19 +111,19 @@ public class H2TargetWikiDao {
             }
 
             stmtMod.setLong(source.getCreatedUser() == null ? null : source.getCreatedUser().getId());
-            if (source.getCreatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
-            }
             stmtMod.setJavaUtilDate(source.getCreated());
 
             stmtMod.setLong(source.getUpdatedUser() == null ? null : source.getUpdatedUser().getId());
-            if (source.getUpdatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
-            }
             stmtMod.setJavaUtilDate(source.getUpdated());
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
+        }
+        if (source.getUpdatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
         }
     }
 }
@@ -20,10 +20,10 @@ import java.sql.SQLException;
 
 import com.nulabinc.backlog4j.Version;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
-import consulting.reservoir.jdbc.RsvrResultSet;
 
 /**
  * h2 database に対する `Version` (エクスポート後) に関する DAO クラス。
@@ -34,22 +34,12 @@ public class H2VersionDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogVersion (" //
-                + "VersionId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(1024)" //
-                + ",Description VARCHAR(65535)" //
-                + ",StartDate DATE" //
-                + ",ReleaseDueDate DATE" //
-                + ",Archived BOOL" //
-                + ",PRIMARY KEY(VersionId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -62,38 +52,21 @@ public class H2VersionDao {
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Version source, RsvrBacklogApiConn bklConn) throws SQLException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT VersionId FROM BacklogVersion WHERE VersionId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogVersion (VersionId) VALUES (?)" //
-                    ))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("Version");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("Version");
-        }
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.VERSION, "BacklogVersion", "VersionId",
+                source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogVersion SET" //
-                + " ProjectId=?, Name=?, Description=?, StartDate=?, ReleaseDueDate=?, Archived=?" //
-                + " WHERE VersionId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogVersion (" //
+                + "VersionId, ProjectId, Name, Description, StartDate, ReleaseDueDate, Archived" //
+                + ") KEY (VersionId) VALUES (?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(bklConn.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getDescription());
             stmtMod.setJavaUtilDate(source.getStartDate());
             stmtMod.setJavaUtilDate(source.getReleaseDueDate());
             stmtMod.setBoolean(source.getArchived());
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+            H2DaoBatch.addBatch(conn, stmtMod);
         }
     }
 }
@@ -15,20 +15,14 @@
  */
 package consulting.reservoir.backlog.migtool.core.dao;
 
-import java.io.File;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Types;
 
-import org.apache.commons.io.FileUtils;
-
 import com.nulabinc.backlog4j.Attachment;
-import com.nulabinc.backlog4j.AttachmentData;
 
 import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
-import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -42,97 +36,102 @@ public class H2WikiAttachmentDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogWikiAttachment (" //
-                + "WikiAttachmentId BIGINT NOT NULL" //
-                + ",WikiId BIGINT" //
-                + ",Name VARCHAR(8192)" //
-                + ",Size BIGINT" //
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",IsImage BOOL" //
-                + ",LocalFilename VARCHAR(8192)" // BacklogMigTool が独自に追加した項目。
-                + ",PRIMARY KEY(WikiAttachmentId)" //
-                + ")" //
-        ))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
      * 与えられた情報を Dao 経由でデータベースに格納します。
      * 
-     * @param conn    データベース接続
-     * @param source  格納したいデータ。
-     * @param bklConn Backlog API 呼び出しのための接続情報をまとめたもの。
-     * @param baseDir 格納するデータのうち物理ファイルを格納するフォルダ。
+     * 添付ファイル本体のダウンロードは {@link consulting.reservoir.backlog.migtool.core.exp.RsvrBacklogExpAttachmentDownloader}
+     * で別途実施します。
+     * 
+     * @param conn        データベース接続
+     * @param source      格納したいデータ。
+     * @param processInfo 処理件数を記憶するクラス。
+     * @param wikiId      WikiId。
      * @throws SQLException SQL例外が発生した場合。
      */
     public static void store2Local(Connection conn, Attachment source, RsvrBacklogMigToolProcessInfo processInfo,
-            long issueId, RsvrBacklogApiConn bklConn, File baseDir) throws SQLException, IOException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT WikiAttachmentId FROM BacklogWikiAttachment WHERE WikiAttachmentId =  " + source.getId() //
-        ))) {
-            boolean isNew = false;
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
+            long wikiId) throws SQLException {
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.WIKI_ATTACHMENT, "BacklogWikiAttachment",
+                "WikiAttachmentId", source.getId());
 
-            if (isNew) {
-                try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                        .wrap(conn.prepareStatement("INSERT INTO BacklogWikiAttachment (WikiAttachmentId) VALUES (?)" //
-                        ))) {
-                    stmtMod.setLong(source.getId());
-                    stmtMod.executeUpdateSingleRow();
-                }
-                processInfo.incrementIns("WikiAttachment");
+        // 新規・更新ともに MERGE で処理する。ContentSize と ContentHash はダウンロード時に別途格納する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogWikiAttachment (" //
+                + "WikiAttachmentId, WikiId, Name, Size" //
+                + ", CreatedUser, Created, IsImage, LocalFilename" //
+                + ") KEY (WikiAttachmentId) VALUES (?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
+            stmtMod.setLong(wikiId);
+            stmtMod.setString(source.getName());
+            stmtMod.setLong(source.getSize());
+            if (source.getCreatedUser() == null) {
+                stmtMod.setNull(Types.BIGINT);
             } else {
-                processInfo.incrementUpd("WikiAttachment");
+                stmtMod.setLong(source.getCreatedUser().getId());
             }
+            stmtMod.setJavaUtilDate(source.getCreated());
+            stmtMod.setBoolean(source.isImage());
 
-            // 他の項目は全てUPDATEで処理する。
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogWikiAttachment SET " //
-                    + "WikiId=?, Name=?, Size=?" //
-                    + " , CreatedUser=?, Created=?, IsImage=?, LocalFilename=?" //
-                    + " WHERE WikiAttachmentId = ?"))) {
-                stmtMod.setLong(issueId);
-                stmtMod.setString(source.getName());
-                stmtMod.setLong(source.getSize());
-                if (source.getCreatedUser() == null) {
-                    stmtMod.setNull(Types.BIGINT);
-                } else {
-                    stmtMod.setLong(source.getCreatedUser().getId());
-                    H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
-                }
-                stmtMod.setJavaUtilDate(source.getCreated());
-                stmtMod.setBoolean(source.isImage());
-
-                String localFilename = null;
-                {
-                    // 拡張子は調整のうえ物理ファイルの拡張子として設定。
-                    localFilename = "" + source.getId();
-                    if (source.getName().lastIndexOf('.') > 0) {
-                        localFilename += source.getName().substring(source.getName().lastIndexOf('.'));
-                    } else {
-                        localFilename += ".bin";
-                    }
-                    stmtMod.setString(localFilename);
-                }
-
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-
-                /////////////////////////////////
-                // 課題の添付ファイル本体を Backlog から取得してローカル格納。
+            // 拡張子は調整のうえ物理ファイルの拡張子として設定。
+            stmtMod.setString(H2DaoUtil.getAttachmentLocalFilename(source));
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-                AttachmentData file = bklConn.getClient().downloadWikiAttachment(issueId, source.getId());
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), processInfo);
+        }
+    }
 
-                FileUtils.copyToFile(file.getContent(), new File(baseDir, localFilename));
+    /**
+     * ダウンロードした添付ファイルのサイズとハッシュ値を記録します。
+     * 
+     * @param conn         データベース接続
+     * @param attachmentId 添付ファイルのId。
+     * @param contentSize  ダウンロードしたファイルのサイズ。
+     * @param contentHash  ダウンロードしたファイルの SHA-256 (16進数文字列)。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void storeContentInfo(Connection conn, long attachmentId, long contentSize, String contentHash)
+            throws SQLException {
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn, "UPDATE BacklogWikiAttachment SET" //
+                + " ContentSize=?, ContentHash=?" //
+                + " WHERE WikiAttachmentId = ?")) {
+            stmt.setLong(contentSize);
+            stmt.setString(contentHash);
+            stmt.setLong(attachmentId);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
 
-                // API呼び出しインターバルをsleepします。
-                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+    /**
+     * 記録済みの添付ファイルのハッシュ値を取得します。
+     * 
+     * @param conn         データベース接続
+     * @param attachmentId 添付ファイルのId。
+     * @param contentSize  ファイルのサイズ。記録済みのサイズと異なる場合はハッシュ値は戻しません。
+     * @return 記録済みのハッシュ値。記録が無い場合やサイズが異なる場合は null。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static String getContentHash(Connection conn, long attachmentId, long contentSize) throws SQLException {
+        // バッチで未反映の書き込みがあれば先に反映します。
+        H2DaoBatch.flush(conn);
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT ContentHash" //
+                + " FROM BacklogWikiAttachment" //
+                + " WHERE WikiAttachmentId = ? AND ContentSize = ?"))) {
+            stmt.setLong(attachmentId);
+            stmt.setLong(contentSize);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return null;
+                }
+                return rset.getString();
             }
         }
     }
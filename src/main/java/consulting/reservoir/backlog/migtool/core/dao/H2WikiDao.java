@@ -15,8 +15,6 @@
  */
 package consulting.reservoir.backlog.migtool.core.dao;
 
-import java.io.File;
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -25,8 +23,8 @@ import com.nulabinc.backlog4j.SharedFile;
 import com.nulabinc.backlog4j.Wiki;
 import com.nulabinc.backlog4j.WikiTag;
 
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -40,24 +38,12 @@ public class H2WikiDao {
      * 
      * @param conn データベース接続。
      * @throws SQLException SQL例外が発生した場合。
+     * @deprecated テーブルはスキーマのバージョンとともに作成します。{@link H2SchemaManager#ensureSchema(Connection)}
+     *             を使用してください。
      */
+    @Deprecated
     public static void createTable(Connection conn) throws SQLException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE IF NOT EXISTS " //
-                + "BacklogWiki (" //
-                + " WikiId BIGINT NOT NULL" //
-                + ",ProjectId BIGINT" //
-                + ",Name VARCHAR(8192)" //
-                + ",Content VARCHAR(65535)" //
-                + ",Tags VARCHAR(8192)" // 文字列でカンマ区切り列挙
-                + ",SharedFile BIGINT" // 文字列でカンマ区切り列挙
-                + ",CreatedUser BIGINT" //
-                + ",Created TIMESTAMP" //
-                + ",UpdatedUser BIGINT" //
-                + ",Updated TIMESTAMP"//
-                + ",PRIMARY KEY(WikiId)" //
-                + ")"))) {
-            stmt.executeUpdate();
-        }
+        H2SchemaManager.ensureSchema(conn);
     }
 
     /**
@@ -68,41 +54,25 @@ public class H2WikiDao {
      * @param processInfo 処理情報。
      * @param bklConn     Backlog接続情報。
      * @throws SQLException SQL例外が発生した場合。
-     * @throws IOException
      */
-    public static void store2Local(Connection conn, Wiki source, RsvrBacklogApiConn bklConn, File baseDir)
-            throws SQLException, IOException {
-        boolean isNew = false;
-        try (RsvrPreparedStatement stmt = RsvrJdbc
-                .wrap(conn.prepareStatement("SELECT WikiId FROM BacklogWiki WHERE WikiId=?"))) {
-            stmt.setLong(source.getId());
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                isNew = (rset.next() == false);
-            }
-        }
-        if (isNew) {
-            try (RsvrPreparedStatement stmtMod = RsvrJdbc
-                    .wrap(conn.prepareStatement("INSERT INTO BacklogWiki (WikiId) VALUES (?)"))) {
-                stmtMod.setLong(source.getId());
-                stmtMod.executeUpdateSingleRow();
-            }
-            bklConn.getProcessInfo().incrementIns("Wiki");
-        } else {
-            bklConn.getProcessInfo().incrementUpd("Wiki");
-        }
+    public static void store2Local(Connection conn, Wiki source, RsvrBacklogApiConn bklConn) throws SQLException {
+        H2DaoBatch.incrementInsOrUpd(conn, bklConn.getProcessInfo(), CounterType.WIKI, "BacklogWiki", "WikiId",
+                source.getId());
 
-        // 他の項目は全てUPDATEで処理する。
-        try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE BacklogWiki SET " //
-                + " ProjectId=?" //
-                + ",Name=?" //
-                + ",Content=?" //
-                + ",Tags=?" //
-                + ",SharedFile=?" //
-                + ",CreatedUser=?" //
-                + ",Created=?" //
-                + ",UpdatedUser=?" //
-                + ",Updated=?" //
-                + " WHERE WikiId=?"))) {
+        // 新規・更新ともに MERGE で処理する。
+        try (RsvrPreparedStatement stmtMod = H2DaoBatch.prepare(conn, "MERGE INTO BacklogWiki (" //
+                + "WikiId" //
+                + ",ProjectId" //
+                + ",Name" //
+                + ",Content" //
+                + ",Tags" //
+                + ",SharedFile" //
+                + ",CreatedUser" //
+                + ",Created" //
+                + ",UpdatedUser" //
+                + ",Updated" //
+                + ") KEY (WikiId) VALUES (?,?,?,?,?,?,?,?,?,?)")) {
+            stmtMod.setLong(source.getId());
             stmtMod.setLong(source.getProjectId());
             stmtMod.setString(source.getName());
             stmtMod.setString(source.getContent());
@@ -122,17 +92,6 @@ public class H2WikiDao {
                 stmtMod.setString(buildString);
             }
 
-            // 一覧をカンマ区切り文字列化します。
-            {
-                for (Attachment look : source.getAttachments()) {
-                    H2WikiAttachmentDao.store2Local(conn, look, bklConn.getProcessInfo(), source.getId(), bklConn,
-                            baseDir);
-
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-                }
-            }
-
             // 一覧をカンマ区切り文字列化します。
             {
                 String buildString = "";
@@ -151,19 +110,53 @@ public class H2WikiDao {
             }
 
             stmtMod.setLong(source.getCreatedUser() == null ? null : source.getCreatedUser().getId());
-            if (source.getCreatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
-            }
             stmtMod.setJavaUtilDate(source.getCreated());
 
             stmtMod.setLong(source.getUpdatedUser() == null ? null : source.getUpdatedUser().getId());
-            if (source.getUpdatedUser() != null) {
-                H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
-            }
             stmtMod.setJavaUtilDate(source.getUpdated());
+            H2DaoBatch.addBatch(conn, stmtMod);
+        }
 
-            stmtMod.setLong(source.getId());
-            stmtMod.executeUpdateSingleRow();
+        for (Attachment look : source.getAttachments()) {
+            H2WikiAttachmentDao.store2Local(conn, look, bklConn.getProcessInfo(), source.getId());
+        }
+
+        // 関連するユーザーはパラメータの設定後に格納する。
+        if (source.getCreatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getCreatedUser(), bklConn.getProcessInfo());
+        }
+        if (source.getUpdatedUser() != null) {
+            H2UserDao.store2Local(conn, source.getUpdatedUser(), bklConn.getProcessInfo());
+        }
+    }
+
+    /**
+     * 格納済みの Wiki の更新日時が与えられた Wiki と一致し、その添付ファイルもすべてダウンロード済みかどうかを取得します。
+     * 
+     * @param conn   データベース接続
+     * @param source 確認したいデータ。一覧の取得結果で構いません。
+     * @return 格納済みで更新日時が一致し、添付ファイルがすべてダウンロード済みの場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static boolean isUnchanged(Connection conn, Wiki source) throws SQLException {
+        if (source.getUpdated() == null) {
+            return false;
+        }
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT w.Updated" //
+                + ", (SELECT COUNT(*) FROM BacklogWikiAttachment a" //
+                + " WHERE a.WikiId = w.WikiId AND a.ContentHash IS NULL)" //
+                + " FROM BacklogWiki w" //
+                + " WHERE w.WikiId = ?"))) {
+            stmt.setLong(source.getId());
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                if (rset.next() == false) {
+                    return false;
+                }
+                final java.util.Date updated = rset.getJavaUtilDate();
+                final Long notDownloadedCount = rset.getLong();
+                return updated != null && updated.getTime() == source.getUpdated().getTime()
+                        && notDownloadedCount != null && notDownloadedCount == 0;
+            }
         }
     }
 }
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.exp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.nulabinc.backlog4j.Attachment;
+import com.nulabinc.backlog4j.AttachmentData;
+import com.nulabinc.backlog4j.BacklogClient;
+
+import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2IssueAttachmentDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2WikiAttachmentDao;
+import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogBlobStore;
+import consulting.reservoir.log.RsvrLog;
+
+/**
+ * 課題および Wiki の添付ファイル本体を Backlog API から並列にダウンロードするクラス。
+ * 
+ * メタデータのエクスポート中に {@link #enqueue(long, Attachment)} でダウンロード対象を登録し、最後に {@link #finish()}
+ * ですべてのダウンロード完了を待ち合わせ、{@link #close()} でワーカースレッドを停止します。ダウンロードは一時ファイルに書き込んだ後に本来のファイル名に移動するため、途中で中断しても不完全なファイルが残りません。
+ * 
+ * ダウンロードしたファイルのサイズと SHA-256 ハッシュ値は h2 database に記録され、再実行時にはサイズとハッシュ値が一致するファイルのダウンロードをスキップします。
+ * 
+ * ファイルの内容は {@link RsvrBacklogBlobStore} にハッシュ値をキーに1つだけ格納し、添付ファイルごとのファイル名からはハードリンクで参照します。
+ * 
+ * h2 database への書き込みは呼び出し元スレッドのみで実施します。
+ */
+public class RsvrBacklogExpAttachmentDownloader implements AutoCloseable {
+    /**
+     * 添付ファイルの種類。
+     */
+    public enum AttachmentType {
+        /**
+         * 課題の添付ファイル。
+         */
+        ISSUE,
+        /**
+         * Wiki の添付ファイル。
+         */
+        WIKI
+    }
+
+    /**
+     * 一時ファイルに付与する拡張子。
+     */
+    private static final String TEMP_SUFFIX = ".part";
+
+    /**
+     * 一度の転送で扱うバイト数。
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    private final Connection conn;
+    private final RsvrBacklogApiConn bklConn;
+    private final AttachmentType attachmentType;
+    private final File baseDir;
+
+    private final ExecutorService executor;
+
+    /**
+     * 添付ファイルの内容をハッシュ値をキーに格納するもの。ワーカースレッドからも使用します。
+     */
+    private final RsvrBacklogBlobStore blobStore;
+
+    /**
+     * 同じ内容のファイルが格納済みだったため、ディスク上で共有した件数。
+     */
+    private int deduplicatedCount = 0;
+
+    /**
+     * ダウンロード中および未記録のダウンロード結果。
+     */
+    private final List<Future<DownloadResult>> pendingList = new ArrayList<>();
+
+    /**
+     * 添付ファイルのダウンロードクラスを作成します。
+     * 
+     * @param conn           データベース接続。
+     * @param bklConn        Backlog API 呼び出しのための接続情報をまとめたもの。
+     * @param attachmentType 添付ファイルの種類。
+     * @param baseDir        添付ファイルを格納するフォルダ。
+     */
+    public RsvrBacklogExpAttachmentDownloader(Connection conn, RsvrBacklogApiConn bklConn,
+            AttachmentType attachmentType, File baseDir) {
+        this.conn = conn;
+        this.bklConn = bklConn;
+        this.attachmentType = attachmentType;
+        this.baseDir = baseDir;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, bklConn.getToolConf().getExpDownloadParallelism()));
+        this.blobStore = new RsvrBacklogBlobStore(new File(bklConn.getToolConf().getDirExpBlob()));
+    }
+
+    /**
+     * 添付ファイルをダウンロード対象として登録します。
+     * 
+     * 添付ファイルのメタデータは事前に h2 database に格納されている必要があります。
+     * 
+     * @param parentId 課題Id または WikiId。
+     * @param source   添付ファイル。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    public void enqueue(long parentId, Attachment source) throws SQLException, IOException {
+        // 完了済みのダウンロード結果を先に記録しておきます。
+        drain(false);
+
+        final String localFilename = H2DaoUtil.getAttachmentLocalFilename(source);
+        final File targetFile = new File(baseDir, localFilename);
+        final String recordedHash = getContentHash(source.getId(), source.getSize());
+        if (recordedHash != null) {
+            if (targetFile.isFile() && targetFile.length() == source.getSize()) {
+                // サイズとハッシュ値が記録済みのファイルが既に存在します。ダウンロードをスキップします。
+                RsvrLog.trace("添付ファイルは取得済みのためスキップ: " + localFilename);
+                return;
+            }
+            if (blobStore.exists(recordedHash, source.getSize())) {
+                // 同じ内容のファイルが格納済みのため、ダウンロードせずに参照します。
+                blobStore.link(recordedHash, targetFile);
+                RsvrLog.trace("添付ファイルは同じ内容のファイルを参照: " + localFilename);
+                return;
+            }
+        }
+
+        pendingList.add(executor.submit(new DownloadTask(parentId, source.getId(), targetFile)));
+    }
+
+    /**
+     * すべてのダウンロードの完了を待ち合わせて、結果を h2 database に記録します。
+     * 
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    public void finish() throws SQLException, IOException {
+        drain(true);
+        if (deduplicatedCount > 0) {
+            RsvrLog.trace("添付ファイルのうち同じ内容のファイルをディスク上で共有した件数: " + deduplicatedCount);
+        }
+    }
+
+    /**
+     * ワーカースレッドを停止します。{@link #finish()} を呼び出さずに停止した場合は、未完了のダウンロードは中断されます。
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * ダウンロード結果を h2 database に記録します。
+     * 
+     * @param isWait 未完了のダウンロードの完了を待つ場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void drain(boolean isWait) throws SQLException, IOException {
+        for (Iterator<Future<DownloadResult>> ite = pendingList.iterator(); ite.hasNext();) {
+            final Future<DownloadResult> future = ite.next();
+            if (isWait == false && future.isDone() == false) {
+                continue;
+            }
+            ite.remove();
+
+            final DownloadResult result = waitFor(future);
+            storeContentInfo(result.attachmentId, result.size, result.contentHash);
+            if (result.isDeduplicated) {
+                deduplicatedCount++;
+            }
+        }
+    }
+
+    private String getContentHash(long attachmentId, long size) throws SQLException {
+        if (attachmentType == AttachmentType.ISSUE) {
+            return H2IssueAttachmentDao.getContentHash(conn, attachmentId, size);
+        } else {
+            return H2WikiAttachmentDao.getContentHash(conn, attachmentId, size);
+        }
+    }
+
+    private void storeContentInfo(long attachmentId, long size, String contentHash) throws SQLException {
+        if (attachmentType == AttachmentType.ISSUE) {
+            H2IssueAttachmentDao.storeContentInfo(conn, attachmentId, size, contentHash);
+        } else {
+            H2WikiAttachmentDao.storeContentInfo(conn, attachmentId, size, contentHash);
+        }
+    }
+
+    /**
+     * ワーカースレッドの処理結果を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ワーカースレッドの処理結果。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static DownloadResult waitFor(Future<DownloadResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("添付ファイルのダウンロード待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("添付ファイルのダウンロードで例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * ダウンロード結果。
+     */
+    static class DownloadResult {
+        private final long attachmentId;
+        private final long size;
+        private final String contentHash;
+
+        /**
+         * 同じ内容のファイルが格納済みだった場合は true。
+         */
+        private final boolean isDeduplicated;
+
+        DownloadResult(long attachmentId, long size, String contentHash, boolean isDeduplicated) {
+            this.attachmentId = attachmentId;
+            this.size = size;
+            this.contentHash = contentHash;
+            this.isDeduplicated = isDeduplicated;
+        }
+    }
+
+    /**
+     * 1件の添付ファイルをダウンロードするワーカー処理。h2 database には触れません。
+     */
+    class DownloadTask implements Callable<DownloadResult> {
+        private final long parentId;
+        private final long attachmentId;
+        private final File targetFile;
+
+        DownloadTask(long parentId, long attachmentId, File targetFile) {
+            this.parentId = parentId;
+            this.attachmentId = attachmentId;
+            this.targetFile = targetFile;
+        }
+
+        @Override
+        public DownloadResult call() throws IOException {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            final AttachmentData file = new AbstractRetryableQuery<AttachmentData>() {
+                @Override
+                protected AttachmentData query(BacklogClient client) {
+                    if (attachmentType == AttachmentType.ISSUE) {
+                        return client.downloadIssueAttachment(parentId, attachmentId);
+                    } else {
+                        return client.downloadWikiAttachment(parentId, attachmentId);
+                    }
+                }
+            }.executeQuery(bklConn);
+
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IOException("Unexpected: SHA-256 not found: " + ex.toString(), ex);
+            }
+
+            // 一時ファイルに書き込み、完了後にハッシュ値をキーに格納して本来のファイル名から参照します。
+            final File tempFile = new File(targetFile.getParentFile(), targetFile.getName() + TEMP_SUFFIX);
+            tempFile.getParentFile().mkdirs();
+            long size = 0;
+            try (InputStream inStream = new DigestInputStream(file.getContent(), digest);
+                    ReadableByteChannel inChannel = Channels.newChannel(inStream);
+                    FileChannel outChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (;;) {
+                    final long transferred = outChannel.transferFrom(inChannel, size, TRANSFER_CHUNK_SIZE);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    size += transferred;
+                }
+                outChannel.force(true);
+            }
+
+            final String contentHash = H2DaoUtil.toHexString(digest.digest());
+            final boolean isDeduplicated = blobStore.store(tempFile, contentHash, targetFile);
+
+            return new DownloadResult(attachmentId, size, contentHash, isDeduplicated);
+        }
+    }
+}
@@ -24,7 +24,8 @@ import com.nulabinc.backlog4j.ResponseList;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.dao.H2CategoryDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 
 /**
  * Backlog API を呼び出して `Category` 情報を取得して、ローカルの h2 database のテーブルにエクスポートします。
@@ -50,10 +51,13 @@ public class RsvrBacklogExpCategory {
         }
 
         // h2 にテーブルを作成します。
-        H2CategoryDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -64,6 +68,8 @@ public class RsvrBacklogExpCategory {
      * @throws IOException
      */
     private void toLocal() throws SQLException, IOException {
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Category> respList = bklConn.getClient().getCategories(bklConn.getProjectId());
         if (respList == null) {
             return;
@@ -71,8 +77,5 @@ public class RsvrBacklogExpCategory {
         for (Category look : respList) {
             H2CategoryDao.store2Local(conn, look, bklConn);
         }
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
@@ -25,7 +25,8 @@ import com.nulabinc.backlog4j.ResponseList;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.dao.H2CustomFieldSettingDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 
 /**
  * Backlog API を呼び出して `CustomFieldSetting` 情報を取得して、ローカルの h2 database
@@ -52,10 +53,13 @@ public class RsvrBacklogExpCustomFieldSetting {
         }
 
         // h2 にテーブルを作成します。
-        H2CustomFieldSettingDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -67,6 +71,8 @@ public class RsvrBacklogExpCustomFieldSetting {
      */
     private void toLocal() throws SQLException, IOException {
         try {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<CustomFieldSetting> settings = bklConn.getClient().getCustomFields(bklConn.getProjectId());
             if (settings == null) {
                 return;
@@ -75,9 +81,6 @@ public class RsvrBacklogExpCustomFieldSetting {
                 H2CustomFieldSettingDao.store2Local(conn, look, bklConn.getProcessInfo());
 
             }
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
         }
@@ -17,26 +17,66 @@ package consulting.reservoir.backlog.migtool.core.exp;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.FileUtils;
-
+import com.nulabinc.backlog4j.BacklogClient;
 import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.SharedFile;
 import com.nulabinc.backlog4j.SharedFileData;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2FileDao;
 import consulting.reservoir.backlog.migtool.core.dao.H2ProjectDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.log.RsvrLog;
 
 /**
  * Backlog API を呼び出して `File` 情報を取得して、ローカルの h2 database
  * のテーブルおよびローカルファイルシステムにエクスポートします。
+ * 
+ * ディレクトリの一覧は並列に取得し、ファイル本体は別のスレッドプールで並列にダウンロードします。変更の無いファイルのダウンロードはスキップします。
  */
 public class RsvrBacklogExpFile {
+    /**
+     * 一覧の取得待ちで、終了の確認のために待機する時間 (ミリ秒)。
+     */
+    private static final long POLL_MILLIS = 500;
+
+    /**
+     * 一時ファイルに付与する拡張子。
+     */
+    private static final String TEMP_SUFFIX = ".part";
+
+    /**
+     * 一度の転送で扱うバイト数。
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
     private Connection conn = null;
     private RsvrBacklogApiConn bklConn = null;
 
@@ -59,46 +99,255 @@ public class RsvrBacklogExpFile {
         File baseProjectDir = new File(baseDir, H2ProjectDao.getProjectKey(conn, bklConn.getProjectId()));
 
         // h2 に Fileテーブルを作成します。
-        H2FileDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // Fileをローカルに保管します。
-        toLocal(baseProjectDir, "");
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal(baseProjectDir, "");
+        }
     }
 
     /**
      * Fileの一覧をローカルに格納します。
      * 
-     * @param bklConn Backlog 接続。
-     * @throws SQLException
-     * @throws IOException
+     * ディレクトリの一覧の取得は ForkJoinPool で並列数 (expParallelism) の数だけ並列に実施し、ファイル本体のダウンロードは別の I/O
+     * 用のスレッドプール (expDownloadParallelism) で実施します。h2 database への書き込みは呼び出し元スレッドのみで実施します。
+     * 
+     * 前回のエクスポートから h2 database 上のサイズ・更新日時が変わっておらず、ローカルのファイルもサイズ・更新日時が一致するファイルはダウンロードをスキップします。
+     * 
+     * @param baseProjectDir ファイルを格納するプロジェクトのフォルダ。
+     * @param rootPath       一覧を取得するディレクトリのパス。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void toLocal(File baseProjectDir, String rootPath) throws SQLException, IOException {
+        final BlockingQueue<ListedFile> listedQueue = new LinkedBlockingQueue<>();
+        final ForkJoinPool listPool = new ForkJoinPool(Math.max(1, bklConn.getToolConf().getExpParallelism()));
+        final ExecutorService downloadExecutor = Executors
+                .newFixedThreadPool(Math.max(1, bklConn.getToolConf().getExpDownloadParallelism()));
+        try {
+            final ForkJoinTask<Void> listFuture = listPool.submit(new DirectoryListTask(rootPath, listedQueue));
+
+            final List<Future<File>> pendingList = new ArrayList<>();
+            int skipCount = 0;
+            for (;;) {
+                final ListedFile listed;
+                try {
+                    listed = listedQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Fileの一覧の取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+                }
+                if (listed == null) {
+                    // 一覧の取得がすべて終わり、取り出し残しも無い場合に終了します。
+                    if (listFuture.isDone() && listedQueue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                final SharedFile lookup = listed.sharedFile;
+                final String path = listed.path;
+                if ("directory".equals(lookup.getType())) {
+                    H2FileDao.store2Local(conn, lookup, bklConn.getProcessInfo());
+                    File dir = new File(baseProjectDir, path + (path.length() == 0 ? "" : "/") + lookup.getName());
+                    if (dir.exists() == false) {
+                        dir.mkdirs();
+                    }
+                } else if ("file".equals(lookup.getType())) {
+                    final File targetFile = new File(baseProjectDir, path + "/" + lookup.getName());
+                    // 格納済みの情報と比較するため、格納する前に確認します。
+                    final boolean isUnchanged = H2FileDao.isUnchanged(conn, lookup) && isSameOnDisk(targetFile, lookup);
+                    H2FileDao.store2Local(conn, lookup, bklConn.getProcessInfo());
+                    if (isUnchanged) {
+                        skipCount++;
+                        continue;
+                    }
+                    pendingList.add(downloadExecutor.submit(new FileDownloadTask(lookup, targetFile)));
+                    drain(pendingList, false);
+                } else {
+                    RsvrLog.error("ファイルをExport時に不明なタイプ: " + lookup.getType());
+                }
+            }
+
+            // 一覧の取得で発生した例外は、ここで再スローします。
+            waitFor(listFuture);
+            drain(pendingList, true);
+            if (skipCount > 0) {
+                RsvrLog.trace("Fileは変更が無いためダウンロードをスキップ: " + skipCount + " 件");
+            }
+        } finally {
+            listPool.shutdownNow();
+            downloadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * ローカルのファイルのサイズ・更新日時が、与えられたファイルと一致するかどうかを確認します。
+     * 
+     * @param targetFile ローカルのファイル。
+     * @param source     確認したいファイル。
+     * @return 一致する場合は true。
+     */
+    private static boolean isSameOnDisk(File targetFile, SharedFile source) {
+        if (targetFile.isFile() == false || targetFile.length() != source.getSize() || source.getUpdated() == null) {
+            return false;
+        }
+        // ファイルシステムによっては更新日時が秒単位となるため、秒単位で比較します。
+        return targetFile.lastModified() / 1000 == source.getUpdated().getTime() / 1000;
+    }
+
+    /**
+     * 完了済みのダウンロードの結果を確認します。ダウンロードで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param pendingList ダウンロード中の結果。
+     * @param isWait      未完了のダウンロードの完了を待つ場合は true。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static void drain(List<Future<File>> pendingList, boolean isWait) throws IOException {
+        for (Iterator<Future<File>> ite = pendingList.iterator(); ite.hasNext();) {
+            final Future<File> future = ite.next();
+            if (isWait == false && future.isDone() == false) {
+                continue;
+            }
+            ite.remove();
+            waitFor(future);
+        }
+    }
+
+    /**
+     * ワーカースレッドの処理結果を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ワーカースレッドの処理結果。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static <T> T waitFor(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Fileの取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Fileの取得で例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * 一覧で取得したファイルまたはディレクトリと、その親ディレクトリのパス。
+     */
+    static class ListedFile {
+        private final String path;
+        private final SharedFile sharedFile;
+
+        ListedFile(String path, SharedFile sharedFile) {
+            this.path = path;
+            this.sharedFile = sharedFile;
+        }
+    }
+
+    /**
+     * 1つのディレクトリの一覧を取得し、サブディレクトリの一覧の取得を分岐するワーカー処理。
+     * 
+     * 取得した一覧はキューに積み、h2 database には触れません。
      */
-    private void toLocal(File baseProjectDir, String path) throws SQLException, IOException {
-        ResponseList<SharedFile> fileList = bklConn.getClient().getSharedFiles(bklConn.getProjectId(), path);
+    class DirectoryListTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+        private final String path;
+        private final BlockingQueue<ListedFile> listedQueue;
 
-        for (SharedFile lookup : fileList) {
-            H2FileDao.store2Local(conn, lookup, bklConn.getProcessInfo());
+        DirectoryListTask(String path, BlockingQueue<ListedFile> listedQueue) {
+            this.path = path;
+            this.listedQueue = listedQueue;
+        }
 
-            if ("directory".equals(lookup.getType())) {
-                File dir = new File(baseProjectDir, path + (path.length() == 0 ? "" : "/") + lookup.getName());
-                if (dir.exists() == false) {
-                    dir.mkdirs();
+        @Override
+        protected void compute() {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            ResponseList<SharedFile> fileList = new AbstractRetryableQuery<ResponseList<SharedFile>>() {
+                @Override
+                protected ResponseList<SharedFile> query(BacklogClient client) {
+                    return client.getSharedFiles(bklConn.getProjectId(), path);
                 }
+            }.executeQuery(bklConn);
+
+            final List<DirectoryListTask> subTaskList = new ArrayList<>();
+            for (SharedFile lookup : fileList) {
+                listedQueue.add(new ListedFile(path, lookup));
+                if ("directory".equals(lookup.getType())) {
+                    subTaskList.add(new DirectoryListTask(
+                            (path.length() == 0 ? path + lookup.getName() : path + "/" + lookup.getName()),
+                            listedQueue));
+                }
+            }
+            invokeAll(subTaskList);
+        }
+    }
 
-                toLocal(baseProjectDir, (path.length() == 0 ? path + lookup.getName() : path + "/" + lookup.getName()));
-            } else if ("file".equals(lookup.getType())) {
-                SharedFileData fileData = bklConn.getClient().downloadSharedFile(bklConn.getProjectId(),
-                        lookup.getId());
-                FileUtils.copyToFile(fileData.getContent(),
-                        new File(baseProjectDir, path + "/" + fileData.getFilename()));
-
-                // API呼び出しインターバルをsleepします。
-                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-            } else {
-                RsvrLog.error("ファイルをExport時に不明なタイプ: " + lookup.getType());
+    /**
+     * 1件のファイル本体をダウンロードするワーカー処理。h2 database には触れません。
+     * 
+     * 一時ファイルに書き込んだ後に本来のファイル名に移動するため、途中で中断しても不完全なファイルが残りません。移動後のファイルの更新日時は
+     * Backlog 上の更新日時に合わせます。
+     */
+    class FileDownloadTask implements Callable<File> {
+        private final SharedFile source;
+        private final File targetFile;
+
+        FileDownloadTask(SharedFile source, File targetFile) {
+            this.source = source;
+            this.targetFile = targetFile;
+        }
+
+        @Override
+        public File call() throws IOException {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            SharedFileData fileData = new AbstractRetryableQuery<SharedFileData>() {
+                @Override
+                protected SharedFileData query(BacklogClient client) {
+                    return client.downloadSharedFile(bklConn.getProjectId(), source.getId());
+                }
+            }.executeQuery(bklConn);
+
+            final File tempFile = new File(targetFile.getParentFile(), targetFile.getName() + TEMP_SUFFIX);
+            tempFile.getParentFile().mkdirs();
+            long size = 0;
+            try (InputStream inStream = fileData.getContent();
+                    ReadableByteChannel inChannel = Channels.newChannel(inStream);
+                    FileChannel outChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (;;) {
+                    final long transferred = outChannel.transferFrom(inChannel, size, TRANSFER_CHUNK_SIZE);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    size += transferred;
+                }
+            }
+
+            try {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (source.getUpdated() != null) {
+                // 次回のエクスポートでの比較のため、Backlog 上の更新日時に合わせます。
+                targetFile.setLastModified(source.getUpdated().getTime());
             }
+            return targetFile;
         }
     }
 }
@@ -18,23 +18,75 @@ package consulting.reservoir.backlog.migtool.core.exp;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import com.nulabinc.backlog4j.BacklogClient;
 import com.nulabinc.backlog4j.Issue;
 import com.nulabinc.backlog4j.ResponseList;
+import com.nulabinc.backlog4j.api.option.GetIssuesCountParams;
 import com.nulabinc.backlog4j.api.option.GetIssuesParams;
 import com.nulabinc.backlog4j.api.option.GetIssuesParams.Order;
+import com.nulabinc.backlog4j.api.option.GetIssuesParams.SortKey;
 
+import consulting.reservoir.backlog.migtool.core.BMCMessages;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.dao.H2IssueCustomFieldDao;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
+import consulting.reservoir.backlog.migtool.core.dao.H2ExpWatermarkDao;
 import consulting.reservoir.backlog.migtool.core.dao.H2IssueDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
+import consulting.reservoir.log.RsvrLog;
 
 /**
  * Backlog API を呼び出して `Issue` 情報を取得して、ローカルの h2 database のテーブルにエクスポートします。
+ * 
+ * 差分エクスポート (expIncremental) が有効な場合は、前回のエクスポートで記録した更新日時の最大値 (ハイウォーターマーク) 以降に更新された課題のみを取得します。
+ * 
+ * 課題は作成日の範囲ごとに並列に取得し、範囲ごとに課題数を再確認します。範囲は日付単位より細かく分けられないため、1日に多数の課題が作成されている
+ * 範囲は、メモリ上に保持せずに取得したページから順に h2 database へ書き込みます。
  */
 public class RsvrBacklogExpIssue {
+    /**
+     * 1回の Backlog API 呼び出しで取得する課題数。
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * 1つの範囲に含める課題数の目安。範囲ごとの取得結果はメモリ上に保持するため、大きくしすぎないようにします。
+     * 
+     * 課題数がこれを超える範囲は、メモリ上に保持せずに取得したページから順に書き込み側へ渡します。
+     */
+    private static final int ISSUES_PER_RANGE = 1000;
+
+    /**
+     * 取得したページを書き込み側へ渡すキューに積んでおく最大ページ数。
+     */
+    private static final int PAGE_QUEUE_SIZE = 4;
+
+    /**
+     * 範囲の課題数が一致しない場合に、範囲を取得し直す最大回数。
+     */
+    private static final int RANGE_RETRY_MAX = 3;
+
     private Connection conn = null;
     private RsvrBacklogApiConn bklConn = null;
 
@@ -55,47 +107,445 @@ public class RsvrBacklogExpIssue {
         }
 
         // h2 にテーブルを作成します。
-        H2IssueDao.createTable(conn);
-        H2IssueCustomFieldDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
+        if (bklConn.getToolConf().isH2LargeTextAsClob()) {
+            // 大きな文字列の列を CLOB に変更します。
+            H2SchemaManager.ensureLargeTextAsClob(conn);
+        }
 
         // Issueをローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
      * Issue情報をローカルに格納します。
      * 
-     * @param bklConn Backlog 接続。
-     * @throws SQLException
+     * 課題の一覧を作成日の範囲に分け、Backlog API の呼び出しは並列数 (expParallelism) の数だけのワーカースレッドで範囲ごとに実施します。
+     * h2 database への書き込みは呼び出し元スレッドのみで、範囲の順 (作成日時の順) に実施します。
+     * 
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
      */
-    private void toLocal() throws SQLException {
+    private void toLocal() throws SQLException, IOException {
         List<Long> projectIds = new ArrayList<Long>();
         projectIds.add(bklConn.getProjectId());
 
-        int retryCount = 2;
-        long offset = 0;
-        for (;;) {
-            // System.err.println("trace: offset: " + offset);
-            GetIssuesParams params = new GetIssuesParams(projectIds);
-            params.offset(offset);
-            params.order(Order.Asc);
-            params.count(100);
-            ResponseList<Issue> issueList = bklConn.getClient().getIssues(params);
-            for (Issue lookup : issueList) {
-                H2IssueDao.store2Local(conn, lookup, bklConn.getProcessInfo(), bklConn);
+        // 差分エクスポートの場合は、前回の基準日時以降に更新された課題のみを対象とします。
+        String updatedSince = null;
+        if (bklConn.getToolConf().isExpIncremental()) {
+            Date watermark = H2ExpWatermarkDao.getWatermark(conn, bklConn.getProjectId(),
+                    H2ExpWatermarkDao.TARGET_ISSUE);
+            if (watermark != null) {
+                // updatedSince は日付単位の指定であり、タイムゾーンの差を考慮して1日前から取得します。重複して取得した課題は上書きされます。
+                updatedSince = new SimpleDateFormat("yyyy-MM-dd")
+                        .format(new Date(watermark.getTime() - 24L * 60 * 60 * 1000));
+                RsvrLog.info("差分エクスポート: " + updatedSince + " 以降に更新された課題を取得します。");
+            }
+        }
+
+        final int parallelism = Math.max(1, bklConn.getToolConf().getExpParallelism());
+        final List<IssueRangeFetcher> fetcherList = createRangeList(projectIds, updatedSince, parallelism);
+        RsvrLog.trace("課題のエクスポート: 作成日で " + fetcherList.size() + " 個の範囲に分けて取得します。");
+
+        boolean isComplete = true;
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            // 先行して取得する範囲の数はワーカー数の2倍までとし、メモリ上に保持する課題数を抑えます。
+            final int maxInFlight = parallelism * 2;
+            final Deque<Future<IssueRangeFetcher>> inFlight = new ArrayDeque<>();
+            int nextIndex = 0;
+            int writeIndex = 0;
+            for (;;) {
+                for (; inFlight.size() < maxInFlight && nextIndex < fetcherList.size(); nextIndex++) {
+                    inFlight.addLast(executor.submit(fetcherList.get(nextIndex)));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                // 投入順 (作成日時の順) に結果を受け取り、h2 database へ格納します。
+                // 課題数の多い範囲は、取得の完了を待たずに取得したページから順に格納します。
+                final IssueRangeFetcher fetcher = fetcherList.get(writeIndex++);
+                final Future<IssueRangeFetcher> future = inFlight.removeFirst();
+                for (;;) {
+                    final List<Issue> page = fetcher.pollPage();
+                    if (page == IssueRangeFetcher.END_OF_PAGES) {
+                        break;
+                    }
+                    if (page == null) {
+                        if (future.isDone()) {
+                            // 取得が失敗で終わっています。例外は waitFor で再スローします。
+                            break;
+                        }
+                        continue;
+                    }
+                    for (Issue lookup : page) {
+                        H2IssueDao.store2Local(conn, lookup, bklConn.getProcessInfo(), bklConn);
+                    }
+                }
+                final IssueRangeFetcher fetched = waitFor(future);
+                if (fetched.getIssueCount() != fetched.getFetchedCount()) {
+                    // [BMC1102] 期待した課題数と、実際に取得できた課題数とが異なる
+                    RsvrLog.error(BMCMessages.BMC1102 + ": [" + fetched.getDisplayName() + "] 期待:"
+                            + fetched.getIssueCount() + ", 実際:" + fetched.getFetchedCount());
+                    isComplete = false;
+                }
+                if (fetched.getFetchedCount() > 0) {
+                    // 処理中の件数と処理速度を表示します。
+                    RsvrLog.trace("課題のエクスポート: "
+                            + bklConn.getProcessInfo().snapshot().getDisplayString(CounterType.ISSUE));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 最後まで取得できた場合に限り、次回の差分エクスポートのための基準日時を記録します。
+        if (isComplete == false) {
+            RsvrLog.warn("課題数が一致しない範囲があったため、差分エクスポートの基準日時は更新しません。");
+            return;
+        }
+        Date maxUpdated = H2IssueDao.getMaxUpdated(conn, bklConn.getProjectId());
+        if (maxUpdated != null) {
+            H2ExpWatermarkDao.storeWatermark(conn, bklConn.getProjectId(), H2ExpWatermarkDao.TARGET_ISSUE, maxUpdated);
+        }
+    }
+
+    /**
+     * 対象の課題を作成日の範囲に分けます。
+     * 
+     * 範囲は日付単位で隙間も重なりも無く区切り、最初の範囲は開始日を、最後の範囲は終了日を指定しません。これにより、日付の解釈のタイムゾーンや取得中の課題の追加に関わらず、
+     * すべての課題がいずれか1つの範囲に含まれます。範囲の数はワーカー数の4倍を目安とし、課題数が多い場合は1範囲あたりの課題数が
+     * ISSUES_PER_RANGE 程度になるように増やします。ただし範囲の数は日数を上限とするため、ISSUES_PER_RANGE を超える範囲が生じることがあります。
+     * 
+     * @param projectIds   対象のプロジェクトIdのリスト。
+     * @param updatedSince 差分エクスポートの場合の更新日の下限。指定しない場合は null。
+     * @param parallelism  ワーカー数。
+     * @return 作成日の順に並んだ範囲のリスト。
+     */
+    private List<IssueRangeFetcher> createRangeList(List<Long> projectIds, String updatedSince, int parallelism) {
+        final List<IssueRangeFetcher> rangeList = new ArrayList<>();
+
+        final GetIssuesCountParams countParams = new GetIssuesCountParams(projectIds);
+        if (updatedSince != null) {
+            countParams.updatedSince(updatedSince);
+        }
+        // 取得系の API 呼び出しはリトライ付きで実施します。
+        final int totalCount = new AbstractRetryableQuery<Integer>() {
+            @Override
+            protected Integer query(BacklogClient client) {
+                return client.getIssuesCount(countParams);
+            }
+        }.executeQuery(bklConn);
+
+        final Date oldest = (totalCount == 0 ? null : getEdgeCreated(projectIds, updatedSince, Order.Asc));
+        final Date newest = (totalCount == 0 ? null : getEdgeCreated(projectIds, updatedSince, Order.Desc));
+        if (oldest == null || newest == null) {
+            // 範囲に分けずに全体を1つの範囲として取得します。課題数の再確認はそちらで実施します。
+            rangeList.add(new IssueRangeFetcher(bklConn, projectIds, updatedSince, null, null));
+            return rangeList;
+        }
+
+        final Calendar firstDay = toDay(oldest);
+        final Calendar lastDay = toDay(newest);
+        // 夏時間などで1日が24時間でない場合を考慮して丸めます。
+        final long dayCount = Math.round(
+                (lastDay.getTimeInMillis() - firstDay.getTimeInMillis()) / (24.0 * 60 * 60 * 1000)) + 1;
+
+        long rangeCount = Math.max(parallelism * 4L, (totalCount + ISSUES_PER_RANGE - 1) / ISSUES_PER_RANGE);
+        rangeCount = Math.max(1, Math.min(rangeCount, dayCount));
+
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        String createdSince = null;
+        for (long index = 0; index < rangeCount; index++) {
+            String createdUntil = null;
+            Calendar nextDay = null;
+            if (index < rangeCount - 1) {
+                nextDay = (Calendar) firstDay.clone();
+                nextDay.add(Calendar.DATE, (int) ((index + 1) * dayCount / rangeCount));
+                final Calendar untilDay = (Calendar) nextDay.clone();
+                untilDay.add(Calendar.DATE, -1);
+                createdUntil = dateFormat.format(untilDay.getTime());
+            }
+            rangeList.add(new IssueRangeFetcher(bklConn, projectIds, updatedSince, createdSince, createdUntil));
+            if (nextDay != null) {
+                createdSince = dateFormat.format(nextDay.getTime());
+            }
+        }
+        return rangeList;
+    }
+
+    /**
+     * 対象の課題のうち、最も古い、または最も新しい課題の作成日時を取得します。
+     * 
+     * @param projectIds   対象のプロジェクトIdのリスト。
+     * @param updatedSince 差分エクスポートの場合の更新日の下限。指定しない場合は null。
+     * @param order        Asc の場合は最も古いもの、Desc の場合は最も新しいもの。
+     * @return 作成日時。対象の課題が無い場合は null。
+     */
+    private Date getEdgeCreated(List<Long> projectIds, String updatedSince, Order order) {
+        final GetIssuesParams params = new GetIssuesParams(projectIds);
+        params.sort(SortKey.Created);
+        params.order(order);
+        params.count(1);
+        if (updatedSince != null) {
+            params.updatedSince(updatedSince);
+        }
+        // 取得系の API 呼び出しはリトライ付きで実施します。
+        final ResponseList<Issue> issueList = new AbstractRetryableQuery<ResponseList<Issue>>() {
+            @Override
+            protected ResponseList<Issue> query(BacklogClient client) {
+                return client.getIssues(params);
+            }
+        }.executeQuery(bklConn);
+        if (issueList.size() == 0) {
+            return null;
+        }
+        return issueList.get(0).getCreated();
+    }
+
+    /**
+     * 日時をその日の0時0分に切り捨てます。
+     * 
+     * @param date 日時。
+     * @return 切り捨てた日時。
+     */
+    private static Calendar toDay(Date date) {
+        final Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal;
+    }
+
+    /**
+     * ワーカースレッドの処理結果を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ワーカースレッドの処理結果。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static IssueRangeFetcher waitFor(Future<IssueRangeFetcher> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Issueの取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Issueの取得で例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * 作成日の範囲1つ分の課題を Backlog API から取得するワーカー処理。
+     * 
+     * 範囲内は作成日時の順で取得するため、取得中に課題が更新されても順序は変わりません。取得の前後で課題数を確認し、
+     * 取得中に課題が追加・削除されて一致しない場合は範囲を取得し直します。h2 database には触れず、取得結果はキューを通じて書き込み側へ渡します。
+     * 
+     * 課題数が ISSUES_PER_RANGE 以下の範囲は、取得結果をメモリ上に保持して取得の完了後にまとめて渡します。それを超える範囲は、取得したページから順に渡し、
+     * キューが一杯の場合は書き込み側が追いつくのを待ちます。取得し直した場合は同じ課題を再度渡しますが、h2 database への格納は上書きとなるため問題ありません。
+     */
+    static class IssueRangeFetcher implements Callable<IssueRangeFetcher> {
+        /**
+         * 範囲の取得が完了したことを表す目印。
+         */
+        static final List<Issue> END_OF_PAGES = new ArrayList<>();
+
+        private final RsvrBacklogApiConn bklConn;
+        private final List<Long> projectIds;
+        private final String updatedSince;
+
+        /**
+         * 作成日の下限。最初の範囲では null。
+         */
+        private final String createdSince;
+
+        /**
+         * 作成日の上限。最後の範囲では null。
+         */
+        private final String createdUntil;
+
+        private int issueCount = 0;
+
+        /**
+         * 取得した課題。ページの境界で重複して取得した場合に備えて IssueId で保持します。ページから順に渡す場合は使用しません。
+         */
+        private final Map<Long, Issue> issueMap = new LinkedHashMap<>();
+
+        /**
+         * 取得した課題の IssueId。課題数の確認に使用します。
+         */
+        private final Set<Long> fetchedIdSet = new HashSet<>();
+
+        /**
+         * 書き込み側へ渡すページのキュー。
+         */
+        private final BlockingQueue<List<Issue>> pageQueue = new ArrayBlockingQueue<>(PAGE_QUEUE_SIZE);
+
+        /**
+         * 取得したページから順に書き込み側へ渡すかどうか。
+         */
+        private boolean isStreaming = false;
+
+        IssueRangeFetcher(RsvrBacklogApiConn bklConn, List<Long> projectIds, String updatedSince,
+                String createdSince, String createdUntil) {
+            this.bklConn = bklConn;
+            this.projectIds = projectIds;
+            this.updatedSince = updatedSince;
+            this.createdSince = createdSince;
+            this.createdUntil = createdUntil;
+        }
+
+        @Override
+        public IssueRangeFetcher call() throws IOException {
+            for (int retryCount = 0;; retryCount++) {
+                final int countBefore = fetchCount();
+                // 課題数の多い範囲は、メモリ上に保持せずに取得したページから順に渡します。
+                isStreaming = (countBefore > ISSUES_PER_RANGE);
+                fetchIssues();
+                // 取得中に課題が追加・削除されていないか、課題数を再確認します。
+                issueCount = fetchCount();
+                if ((countBefore == issueCount && issueCount == fetchedIdSet.size())
+                        || retryCount >= RANGE_RETRY_MAX) {
+                    if (isStreaming == false) {
+                        putPage(new ArrayList<>(issueMap.values()));
+                    }
+                    putPage(END_OF_PAGES);
+                    return this;
+                }
+                RsvrLog.trace("課題のエクスポート: 課題数が変化したため範囲を取得し直します: [" + getDisplayName() + "] 期待:"
+                        + issueCount + ", 実際:" + fetchedIdSet.size());
+                issueMap.clear();
+                fetchedIdSet.clear();
+            }
+        }
+
+        /**
+         * 範囲内の課題数を取得します。
+         * 
+         * @return 課題数。
+         */
+        private int fetchCount() {
+            final GetIssuesCountParams params = new GetIssuesCountParams(projectIds);
+            if (updatedSince != null) {
+                params.updatedSince(updatedSince);
             }
-            if (issueList.size() == 0) {
-                // System.err.println("trace: 取得結果が0件.");
-                retryCount--;
-                if (retryCount == 0) {
-                    // 失敗が続くので、終端に到達したと判断。
+            if (createdSince != null) {
+                params.createdSince(createdSince);
+            }
+            if (createdUntil != null) {
+                params.createdUntil(createdUntil);
+            }
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            return new AbstractRetryableQuery<Integer>() {
+                @Override
+                protected Integer query(BacklogClient client) {
+                    return client.getIssuesCount(params);
+                }
+            }.executeQuery(bklConn);
+        }
+
+        /**
+         * 範囲内の課題を作成日時の順にすべて取得します。
+         * 
+         * @throws IOException 割り込みが発生した場合。
+         */
+        private void fetchIssues() throws IOException {
+            for (long offset = 0;; offset += PAGE_SIZE) {
+                final GetIssuesParams params = new GetIssuesParams(projectIds);
+                params.offset(offset);
+                params.count(PAGE_SIZE);
+                params.sort(SortKey.Created);
+                params.order(Order.Asc);
+                if (updatedSince != null) {
+                    params.updatedSince(updatedSince);
+                }
+                if (createdSince != null) {
+                    params.createdSince(createdSince);
+                }
+                if (createdUntil != null) {
+                    params.createdUntil(createdUntil);
+                }
+                // 取得系の API 呼び出しはリトライ付きで実施します。
+                final ResponseList<Issue> issueList = new AbstractRetryableQuery<ResponseList<Issue>>() {
+                    @Override
+                    protected ResponseList<Issue> query(BacklogClient client) {
+                        return client.getIssues(params);
+                    }
+                }.executeQuery(bklConn);
+                for (Issue look : issueList) {
+                    fetchedIdSet.add(look.getId());
+                    if (isStreaming == false) {
+                        issueMap.put(look.getId(), look);
+                    }
+                }
+                if (isStreaming && issueList.size() > 0) {
+                    putPage(new ArrayList<>(issueList));
+                }
+                if (issueList.size() < PAGE_SIZE) {
+                    // 範囲の終端に到達。
                     break;
                 }
             }
-            offset += issueList.size();
+        }
+
+        String getDisplayName() {
+            return (createdSince == null ? "" : createdSince) + "～" + (createdUntil == null ? "" : createdUntil);
+        }
+
+        /**
+         * 書き込み側へ渡すページをキューに積みます。キューが一杯の場合は書き込み側が追いつくのを待ちます。
+         * 
+         * @param page ページ、または {@link #END_OF_PAGES}。
+         * @throws IOException 割り込みが発生した場合。
+         */
+        private void putPage(List<Issue> page) throws IOException {
+            try {
+                pageQueue.put(page);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Issueの受け渡し待ちで割り込みが発生しました: " + ex.toString(), ex);
+            }
+        }
+
+        /**
+         * 取得したページをキューから取り出します。しばらく待ってもページが無い場合は null を戻します。
+         * 
+         * @return ページ、または {@link #END_OF_PAGES}。ページが無い場合は null。
+         * @throws IOException 割り込みが発生した場合。
+         */
+        List<Issue> pollPage() throws IOException {
+            try {
+                return pageQueue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Issueの取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+            }
+        }
+
+        int getIssueCount() {
+            return issueCount;
+        }
 
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+        /**
+         * 実際に取得できた課題数を取得します。
+         * 
+         * @return 重複を除いた課題数。
+         */
+        int getFetchedCount() {
+            return fetchedIdSet.size();
         }
     }
 }
@@ -24,8 +24,10 @@ import com.nulabinc.backlog4j.Attachment;
 import com.nulabinc.backlog4j.ResponseList;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2IssueAttachmentDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2IssueDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -54,10 +56,13 @@ public class RsvrBacklogExpIssueAttachment {
         }
 
         // h2 に Issue添付ファイルテーブルを作成します。
-        H2IssueAttachmentDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // Issueコメントをローカルに保管します。
-        toLocal(baseDir);
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal(baseDir);
+        }
     }
 
     /**
@@ -68,26 +73,42 @@ public class RsvrBacklogExpIssueAttachment {
      * @throws IOException
      */
     private void toLocal(File baseDir) throws SQLException, IOException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " IssueId, IssueKey, KeyId" //
-                + " FROM BacklogIssue" //
-                + " ORDER BY KeyId"))) { //
+        // 差分エクスポートの場合は、前回添付ファイルを取得した時点から更新日時が変わった課題のみを対象とします。
+        // ダウンロードが完了していない添付ファイルを持つ課題も対象に含めます。
+        final boolean isIncremental = bklConn.getToolConf().isExpIncremental();
+
+        // 添付ファイル本体はメタデータとは別に並列でダウンロードします。
+        try (RsvrBacklogExpAttachmentDownloader downloader = new RsvrBacklogExpAttachmentDownloader(conn, bklConn,
+                RsvrBacklogExpAttachmentDownloader.AttachmentType.ISSUE, baseDir);
+                RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
+                        + " IssueId, IssueKey, KeyId" //
+                        + " FROM BacklogIssue" //
+                        + (isIncremental
+                                ? " WHERE AttachmentSynced IS NULL OR AttachmentSynced <> COALESCE(Updated, Created)"
+                                        + " OR IssueId IN (SELECT IssueId FROM BacklogIssueAttachment WHERE ContentHash IS NULL)"
+                                : "") //
+                        + " ORDER BY KeyId"))) { //
 
             try (RsvrResultSet rset = stmt.executeQuery()) {
                 for (; rset.next();) {
                     long issueId = rset.getLong();
                     String issueKey = rset.getString();
                     long keyId = rset.getLong();
+                    // API呼び出しのレート制限の枠を確保します。
+                    bklConn.getRateLimiter().acquire();
                     ResponseList<Attachment> respList = bklConn.getClient().getIssueAttachments(issueId);
                     for (Attachment look : respList) {
-                        H2IssueAttachmentDao.store2Local(conn, look, bklConn.getProcessInfo(), issueId, bklConn,
-                                baseDir);
+                        H2IssueAttachmentDao.store2Local(conn, look, bklConn.getProcessInfo(), issueId);
+                        downloader.enqueue(issueId, look);
                     }
 
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    // 次回の差分エクスポートのために、添付ファイルを取得した時点の更新日時を記録します。
+                    H2IssueDao.markAttachmentSynced(conn, issueId);
                 }
             }
+
+            // すべてのダウンロードの完了を待ち合わせます。
+            downloader.finish();
         }
     }
 }
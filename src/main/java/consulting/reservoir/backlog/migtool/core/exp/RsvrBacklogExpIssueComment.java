@@ -18,7 +18,17 @@ package consulting.reservoir.backlog.migtool.core.exp;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.nulabinc.backlog4j.BacklogClient;
 import com.nulabinc.backlog4j.IssueComment;
 import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.api.option.QueryParams;
@@ -26,9 +36,11 @@ import com.nulabinc.backlog4j.api.option.QueryParams.Order;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.dao.H2IssueCommentChangeLogDao;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2IssueCommentDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2IssueDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
@@ -58,68 +70,182 @@ public class RsvrBacklogExpIssueComment {
         }
 
         // h2 に IssueCommentテーブルを作成します。
-        H2IssueCommentDao.createTable(conn);
-
-        H2IssueCommentChangeLogDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
+        if (bklConn.getToolConf().isH2LargeTextAsClob()) {
+            // 大きな文字列の列を CLOB に変更します。
+            H2SchemaManager.ensureLargeTextAsClob(conn);
+        }
 
         // Issueコメントをローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
      * Issueコメントをローカルに格納します。
      * 
-     * @param bklConn Backlog 接続。
-     * @throws SQLException
+     * Backlog API の呼び出しは並列数 (expParallelism) の数だけのワーカースレッドで実施し、h2 database への書き込みは呼び出し元スレッドのみで
+     * KeyId 順に実施します。
+     * 
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
      */
-    private void toLocal() throws SQLException {
+    private void toLocal() throws SQLException, IOException {
+        // 対象となる課題の一覧を先に取得します。
+        final List<IssueCommentFetcher> fetcherList = new ArrayList<>();
+        // 差分エクスポートの場合は、前回コメントを取得した時点から更新日時が変わった課題のみを対象とします。
+        final boolean isIncremental = bklConn.getToolConf().isExpIncremental();
         try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " IssueId, IssueKey, KeyId" //
+                + " IssueId, IssueKey" //
                 + " FROM BacklogIssue" //
+                + (isIncremental
+                        ? " WHERE CommentSynced IS NULL OR CommentSynced <> COALESCE(Updated, Created)"
+                        : "") //
                 + " ORDER BY KeyId"))) { //
 
             try (RsvrResultSet rset = stmt.executeQuery()) {
                 for (; rset.next();) {
                     long issueId = rset.getLong();
                     String issueKey = rset.getString();
-                    long keyId = rset.getLong();
-
-                    final int commentCount = bklConn.getClient().getIssueCommentCount(issueId);
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
-                    int commentCountActual = 0;
-
-                    // ウィンドウを動かしながらデータを取得するための仕組み。
-                    long pastMaxId = 0;
-                    for (;;) {
-                        QueryParams qp = new QueryParams();
-                        qp.count(100); // 100にしたい。
-                        qp.order(Order.Asc);
-                        qp.minId(pastMaxId + 1);
-
-                        ResponseList<IssueComment> respList = bklConn.getClient().getIssueComments(issueId, qp);
-                        // API呼び出しインターバルをsleepします。
-                        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
-                        if (respList.size() == 0) {
-                            // データの終端に到達。終わります。
-                            break;
-                        }
-                        for (IssueComment look : respList) {
-                            H2IssueCommentDao.store2Local(conn, look, bklConn.getProcessInfo(), issueId);
-                            // 検索ウィンドウを次に進める。
-                            pastMaxId = look.getId();
-                        }
-                        // 実際のコメント数をカウント。
-                        commentCountActual += respList.size();
-                    }
-                    if (commentCount != commentCountActual) {
-                        // [BMC1101] 期待したコメント数と、実際に取得できたコメント数とが異なる
-                        RsvrLog.error(BMCMessages.BMC1101 + ": 期待:" + commentCount + ", 実際:" + commentCountActual);
+                    fetcherList.add(new IssueCommentFetcher(bklConn, issueId, issueKey));
+                }
+            }
+        }
+
+        final int parallelism = Math.max(1, bklConn.getToolConf().getExpParallelism());
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            // 先行して取得する課題の数はワーカー数の2倍までとし、メモリ上に保持するコメント数を抑えます。
+            final int maxInFlight = parallelism * 2;
+            final Deque<Future<IssueCommentFetcher>> inFlight = new ArrayDeque<>();
+            int nextIndex = 0;
+            for (;;) {
+                for (; inFlight.size() < maxInFlight && nextIndex < fetcherList.size(); nextIndex++) {
+                    inFlight.addLast(executor.submit(fetcherList.get(nextIndex)));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+
+                // 投入順 (KeyId 順) に結果を受け取り、h2 database へ格納します。
+                final IssueCommentFetcher fetched = waitFor(inFlight.removeFirst());
+                for (IssueComment look : fetched.getCommentList()) {
+                    H2IssueCommentDao.store2Local(conn, look, bklConn.getProcessInfo(), fetched.getIssueId());
+                }
+                if (fetched.getCommentCount() != fetched.getCommentList().size()) {
+                    // [BMC1101] 期待したコメント数と、実際に取得できたコメント数とが異なる
+                    RsvrLog.error(BMCMessages.BMC1101 + ": [" + fetched.getIssueKey() + "] 期待:"
+                            + fetched.getCommentCount() + ", 実際:" + fetched.getCommentList().size());
+                    // 取得が不完全なため取得済みとは記録せず、次回の差分エクスポートで取得し直します。
+                    continue;
+                }
+
+                // 次回の差分エクスポートのために、コメントを取得した時点の更新日時を記録します。
+                H2IssueDao.markCommentSynced(conn, fetched.getIssueId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * ワーカースレッドの処理結果を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ワーカースレッドの処理結果。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static IssueCommentFetcher waitFor(Future<IssueCommentFetcher> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Issueコメントの取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Issueコメントの取得で例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * 1件の課題についてコメント数とコメント一覧を Backlog API から取得するワーカー処理。
+     * 
+     * h2 database には触れず、取得結果をメモリ上に保持します。
+     */
+    static class IssueCommentFetcher implements Callable<IssueCommentFetcher> {
+        private final RsvrBacklogApiConn bklConn;
+        private final long issueId;
+        private final String issueKey;
+
+        private int commentCount = 0;
+        private final List<IssueComment> commentList = new ArrayList<>();
+
+        IssueCommentFetcher(RsvrBacklogApiConn bklConn, long issueId, String issueKey) {
+            this.bklConn = bklConn;
+            this.issueId = issueId;
+            this.issueKey = issueKey;
+        }
+
+        @Override
+        public IssueCommentFetcher call() {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            commentCount = new AbstractRetryableQuery<Integer>() {
+                @Override
+                protected Integer query(BacklogClient client) {
+                    return client.getIssueCommentCount(issueId);
+                }
+            }.executeQuery(bklConn);
+
+            // ウィンドウを動かしながらデータを取得するための仕組み。
+            long pastMaxId = 0;
+            for (;;) {
+                final QueryParams qp = new QueryParams();
+                qp.count(100); // 100にしたい。
+                qp.order(Order.Asc);
+                qp.minId(pastMaxId + 1);
+
+                ResponseList<IssueComment> respList = new AbstractRetryableQuery<ResponseList<IssueComment>>() {
+                    @Override
+                    protected ResponseList<IssueComment> query(BacklogClient client) {
+                        return client.getIssueComments(issueId, qp);
                     }
+                }.executeQuery(bklConn);
+
+                if (respList.size() == 0) {
+                    // データの終端に到達。終わります。
+                    break;
+                }
+                for (IssueComment look : respList) {
+                    commentList.add(look);
+                    // 検索ウィンドウを次に進める。
+                    pastMaxId = look.getId();
                 }
             }
+            return this;
+        }
+
+        long getIssueId() {
+            return issueId;
+        }
+
+        String getIssueKey() {
+            return issueKey;
+        }
+
+        int getCommentCount() {
+            return commentCount;
+        }
+
+        List<IssueComment> getCommentList() {
+            return commentList;
         }
     }
 }
@@ -24,8 +24,9 @@ import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.Status;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2IssueStatusTypeDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 
 /**
  * Backlog API を呼び出して `IssueStatusType` 情報を取得して、ローカルの h2 database
@@ -52,10 +53,13 @@ public class RsvrBacklogExpIssueStatusType {
         }
 
         // h2 にテーブルを作成します。
-        H2IssueStatusTypeDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -67,13 +71,12 @@ public class RsvrBacklogExpIssueStatusType {
      */
     private void toLocal() throws SQLException, IOException {
         try {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<Status> statusList = bklConn.getClient().getStatuses(bklConn.getProjectId());
             for (Status look : statusList) {
                 H2IssueStatusTypeDao.store2Local(conn, look, bklConn.getProcessInfo(), bklConn);
             }
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
         }
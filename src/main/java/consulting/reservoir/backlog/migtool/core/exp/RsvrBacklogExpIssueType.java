@@ -24,8 +24,9 @@ import com.nulabinc.backlog4j.IssueType;
 import com.nulabinc.backlog4j.ResponseList;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2IssueTypeDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 
 /**
  * Backlog API を呼び出して `IssueType` 情報を取得して、ローカルの h2 database のテーブルにエクスポートします。
@@ -51,10 +52,13 @@ public class RsvrBacklogExpIssueType {
         }
 
         // h2 にテーブルを作成します。
-        H2IssueTypeDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -66,13 +70,12 @@ public class RsvrBacklogExpIssueType {
      */
     private void toLocal() throws SQLException, IOException {
         try {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<IssueType> respList = bklConn.getClient().getIssueTypes(bklConn.getProjectId());
             for (IssueType look : respList) {
                 H2IssueTypeDao.store2Local(conn, look, bklConn);
             }
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
         }
@@ -24,7 +24,9 @@ import com.nulabinc.backlog4j.Project;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
 import consulting.reservoir.backlog.migtool.core.dao.H2ProjectDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.log.RsvrLog;
 
 /**
@@ -51,10 +53,13 @@ public class RsvrBacklogExpProject {
         }
 
         // h2 にテーブルを作成します。
-        H2ProjectDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -66,6 +71,8 @@ public class RsvrBacklogExpProject {
      */
     private void toLocal() throws SQLException, IOException {
         try {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             Project proj = bklConn.getClient().getProject(bklConn.getProjectId());
             H2ProjectDao.store2Local(conn, proj, bklConn.getProcessInfo());
 
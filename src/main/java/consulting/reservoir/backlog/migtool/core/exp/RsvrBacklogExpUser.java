@@ -20,7 +20,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.dao.H2UserDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 
 /**
  * ローカルの h2 database のテーブルにエクスポート用の `User` テーブルを作成します。
@@ -48,7 +48,7 @@ public class RsvrBacklogExpUser {
         }
 
         // h2 にテーブルを作成します。
-        H2UserDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // Userでは一括toLocalは実装しない。余分なデータが格納されることを回避するため。
     }
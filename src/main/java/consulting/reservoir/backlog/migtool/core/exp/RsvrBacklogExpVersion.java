@@ -23,8 +23,9 @@ import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.Version;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2VersionDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 
 /**
  * Backlog API を呼び出して `Version` 情報を取得して、ローカルの h2 database のテーブルにエクスポートします。
@@ -50,10 +51,13 @@ public class RsvrBacklogExpVersion {
         }
 
         // h2 にテーブルを作成します。
-        H2VersionDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルに保管します。
-        toLocal();
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal();
+        }
     }
 
     /**
@@ -64,6 +68,8 @@ public class RsvrBacklogExpVersion {
      * @throws IOException
      */
     private void toLocal() throws SQLException, IOException {
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Version> respList = bklConn.getClient().getVersions(bklConn.getProjectId());
         if (respList == null) {
             return;
@@ -71,8 +77,5 @@ public class RsvrBacklogExpVersion {
         for (Version look : respList) {
             H2VersionDao.store2Local(conn, look, bklConn);
         }
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
@@ -19,18 +19,33 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.nulabinc.backlog4j.Attachment;
 import com.nulabinc.backlog4j.BacklogAPIException;
+import com.nulabinc.backlog4j.BacklogClient;
 import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.Wiki;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
-import consulting.reservoir.backlog.migtool.core.dao.H2WikiAttachmentDao;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoBatch;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2WikiDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.log.RsvrLog;
 
 /**
  * Backlog API を呼び出して `Wiki` 情報を取得して、ローカルの h2 database のテーブルにエクスポートします。
+ * 
+ * Wiki の詳細は並列に取得し、差分エクスポート (expIncremental) が有効な場合は更新の無い Wiki をスキップします。
  */
 public class RsvrBacklogExpWiki {
     private Connection conn = null;
@@ -53,37 +68,135 @@ public class RsvrBacklogExpWiki {
         }
 
         // h2 にテーブルを作成します。
-        H2WikiDao.createTable(conn);
-        H2WikiAttachmentDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
+        if (bklConn.getToolConf().isH2LargeTextAsClob()) {
+            // 大きな文字列の列を CLOB に変更します。
+            H2SchemaManager.ensureLargeTextAsClob(conn);
+        }
 
         // ローカルに保管します。
-        toLocal(baseDir);
+        // h2 database への書き込みはバッチでまとめて実施します。
+        try (H2DaoBatch batch = H2DaoBatch.begin(conn, bklConn.getToolConf())) {
+            toLocal(baseDir);
+        }
     }
 
     /**
      * 情報をローカルに格納します。
      * 
-     * @param bklConn Backlog 接続。
-     * @throws SQLException
-     * @throws IOException
+     * Wiki の詳細の取得は並列数 (expParallelism) の数だけのワーカースレッドで実施し、h2 database への書き込みは呼び出し元スレッドのみで
+     * 一覧の順に実施します。添付ファイル本体は {@link RsvrBacklogExpAttachmentDownloader} で別に並列でダウンロードします。
+     * 
+     * 差分エクスポート (expIncremental) が有効な場合は、更新日時が前回のエクスポートから変わっていない Wiki の詳細の取得をスキップします。
+     * 
+     * @param baseDir 添付ファイルを格納するフォルダ。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
      */
     private void toLocal(File baseDir) throws SQLException, IOException {
-        try {
-            ResponseList<Wiki> respList = bklConn.getClient().getWikis(bklConn.getProjectId());
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+        // 添付ファイル本体はメタデータとは別に並列でダウンロードします。
+        final int parallelism = Math.max(1, bklConn.getToolConf().getExpParallelism());
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try (RsvrBacklogExpAttachmentDownloader downloader = new RsvrBacklogExpAttachmentDownloader(conn, bklConn,
+                RsvrBacklogExpAttachmentDownloader.AttachmentType.WIKI, baseDir)) {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            ResponseList<Wiki> respList = new AbstractRetryableQuery<ResponseList<Wiki>>() {
+                @Override
+                protected ResponseList<Wiki> query(BacklogClient client) {
+                    return client.getWikis(bklConn.getProjectId());
+                }
+            }.executeQuery(bklConn);
 
+            // 詳細を取得する Wiki を先に選びます。
+            final boolean isIncremental = bklConn.getToolConf().isExpIncremental();
+            final List<WikiDetailFetcher> fetcherList = new ArrayList<>();
+            int skipCount = 0;
             for (Wiki look : respList) {
-                Wiki detailedWiki = bklConn.getClient().getWiki(look.getId());
+                if (isIncremental && H2WikiDao.isUnchanged(conn, look)) {
+                    skipCount++;
+                    continue;
+                }
+                fetcherList.add(new WikiDetailFetcher(bklConn, look.getId()));
+            }
+            if (skipCount > 0) {
+                RsvrLog.info("差分エクスポート: 更新の無い Wiki をスキップ: " + skipCount + " 件");
+            }
 
-                // API呼び出しインターバルをsleepします。
-                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+            // 先行して取得する Wiki の数はワーカー数の2倍までとし、メモリ上に保持する Wiki の数を抑えます。
+            final int maxInFlight = parallelism * 2;
+            final Deque<Future<Wiki>> inFlight = new ArrayDeque<>();
+            int nextIndex = 0;
+            for (;;) {
+                for (; inFlight.size() < maxInFlight && nextIndex < fetcherList.size(); nextIndex++) {
+                    inFlight.addLast(executor.submit(fetcherList.get(nextIndex)));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
 
-                H2WikiDao.store2Local(conn, detailedWiki, bklConn, baseDir);
+                // 投入順 (一覧の順) に結果を受け取り、h2 database へ格納します。
+                final Wiki detailedWiki = waitFor(inFlight.removeFirst());
+                H2WikiDao.store2Local(conn, detailedWiki, bklConn);
+                for (Attachment lookAttachment : detailedWiki.getAttachments()) {
+                    downloader.enqueue(detailedWiki.getId(), lookAttachment);
+                }
             }
+
+            // すべてのダウンロードの完了を待ち合わせます。
+            downloader.finish();
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * ワーカースレッドの処理結果を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ワーカースレッドの処理結果。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private static Wiki waitFor(Future<Wiki> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Wikiの取得待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Wikiの取得で例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * 1件の Wiki の詳細を Backlog API から取得するワーカー処理。h2 database には触れません。
+     */
+    static class WikiDetailFetcher implements Callable<Wiki> {
+        private final RsvrBacklogApiConn bklConn;
+        private final long wikiId;
+
+        WikiDetailFetcher(RsvrBacklogApiConn bklConn, long wikiId) {
+            this.bklConn = bklConn;
+            this.wikiId = wikiId;
+        }
+
+        @Override
+        public Wiki call() {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            return new AbstractRetryableQuery<Wiki>() {
+                @Override
+                protected Wiki query(BacklogClient client) {
+                    return client.getWiki(wikiId);
+                }
+            }.executeQuery(bklConn);
         }
     }
 }
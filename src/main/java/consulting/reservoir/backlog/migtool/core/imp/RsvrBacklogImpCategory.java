@@ -25,7 +25,9 @@ import com.nulabinc.backlog4j.api.option.AddCategoryParams;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddCategory;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetCategoryDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -61,7 +63,7 @@ public class RsvrBacklogImpCategory {
             return;
         }
 
-        H2TargetCategoryDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
@@ -71,6 +73,9 @@ public class RsvrBacklogImpCategory {
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -112,16 +117,12 @@ public class RsvrBacklogImpCategory {
     }
 
     private void expFromTargetToLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Category> respList = bklConn.getClient().getCategories(bklConn.getProjectId());
         for (Category look : respList) {
             H2TargetCategoryDao.store2Local(conn, look, bklConn);
         }
 
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
     }
 }
@@ -20,34 +20,51 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import com.nulabinc.backlog4j.Attachment;
 import com.nulabinc.backlog4j.BacklogAPIException;
+import com.nulabinc.backlog4j.BacklogClient;
 import com.nulabinc.backlog4j.Issue;
 import com.nulabinc.backlog4j.Issue.PriorityType;
 import com.nulabinc.backlog4j.Issue.ResolutionType;
+import com.nulabinc.backlog4j.IssueComment;
 import com.nulabinc.backlog4j.ResponseList;
 import com.nulabinc.backlog4j.api.option.CreateIssueParams;
 import com.nulabinc.backlog4j.api.option.GetIssuesParams;
 import com.nulabinc.backlog4j.api.option.GetIssuesParams.Order;
+import com.nulabinc.backlog4j.api.option.GetIssuesParams.SortKey;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.apicall.retryable.AbstractRetryableQuery;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddIssueComment;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableCreateIssue;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryablePostAttachment;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableUpdateIssue;
-import consulting.reservoir.backlog.migtool.core.dao.H2MappingUserDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetCategoryDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2DaoUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2ImpAttachmentDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2ImpIssueJournalDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2LargeTextDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssuePriorityTypeDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueStatusTypeDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueTypeDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetMilestoneDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetVersionDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
+import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogBlobStore;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -57,14 +74,71 @@ import consulting.reservoir.log.RsvrLog;
 /**
  * ローカルの h2 database の `Issue` 情報をもとに、Backlog API を呼び出してターゲット Backlog
  * プロジェクトにインポートします。
+ * 
+ * 処理は2段のパイプラインで実施します。先読みのスレッドが h2 database から課題・コメント・変更履歴を KeyId
+ * の順に読み込んで、API 呼び出しのパラメータを組み立てて上限付きのキューに積みます。呼び出し元のスレッドはキューから順に取り出して
+ * API を呼び出すだけとなり、ローカルの処理を待ちません。課題の作成順序 (KeyId の順序) は維持されます。
+ * 
+ * 添付ファイルは、反映する課題より先の課題の分を別のワーカーで並列にアップロードしておき、変更履歴の反映の段階ではアップロードの完了を待つだけとします。
+ * 
+ * API 呼び出しが成功するたびに、その結果を h2 database のジャーナル (BacklogImpIssueJournal) に記録します。中断した場合は、再度実行すると
+ * ジャーナルの記録をもとに中断した箇所から再開し、作成済みの課題やコメントを重複して作成しません。課題の作成の前には作成前の状態でジャーナルに
+ * 記録しておき、再開時にその記録がある場合は、作成済みでジャーナル未記録の課題をターゲットから探して引き継ぎます。
  */
 public class RsvrBacklogImpIssue {
+    /**
+     * 先読みして組み立てておく課題の最大件数。
+     */
+    private static final int PIPELINE_QUEUE_SIZE = 16;
+
+    /**
+     * 先読みの終端を表す目印。
+     */
+    private static final IssuePlan END_OF_PLAN = new IssuePlan();
+
+    /**
+     * アップロード済みで課題に添付していない添付ファイルを再利用する期限 (ミリ秒)。
+     * 
+     * Backlog は課題に添付されないままのアップロード済みファイルを一定時間で削除するため、それより短くします。
+     */
+    private static final long ATTACHMENT_REUSE_EXPIRE_MILLIS = 30 * 60 * 1000L;
+
     private Connection conn = null;
     private RsvrBacklogApiConn bklConn = null;
     private boolean forceProduction = false;
     private boolean forceImport = false;
     private int skipImportIssueCount = 0;
 
+    /**
+     * ターゲットのマスタ情報の名称から Id を引き当てるためのもの。先読みのスレッドからも参照します。
+     */
+    private H2TargetMasterResolver resolver = null;
+
+    /**
+     * 前回の中断時に作成済みでジャーナル未記録の課題。次に作成する課題として引き継ぎます。
+     */
+    private Issue orphanIssue = null;
+
+    /**
+     * 既知であるターゲットの課題の最大の KeyId。課題の作成前のジャーナルに記録して、作成済みでジャーナル未記録の課題を判別するために使用します。
+     */
+    private long lastTargetKeyId = 0;
+
+    /**
+     * 課題の説明・コメントの本文などの大きな文字列を、先読みでは読み込まずに API 呼び出しの直前に読み込むかどうか。
+     */
+    private boolean isLargeTextDeferred = false;
+
+    /**
+     * 添付ファイルを先行してアップロードするワーカー。先行してアップロードしない場合は null。
+     */
+    private ExecutorService uploadExecutor = null;
+
+    /**
+     * 先行してアップロードする際に、-skipimportissuecount によりスキップする残りの課題の件数。
+     */
+    private int preUploadSkipCountLeft = 0;
+
     public RsvrBacklogImpIssue(Connection conn, RsvrBacklogApiConn bklConn) {
         this.conn = conn;
         this.bklConn = bklConn;
@@ -73,14 +147,32 @@ public class RsvrBacklogImpIssue {
     /**
      * インポート対象を処理します。
      * 
+     * 中断したインポートの再開には -skipimportissuecount
+     * の代わりにジャーナルを使用してください。ジャーナルが無い過去のインポートを再開する場合に限り指定します。
+     * 
      * @throws SQLException SQL例外が発生した場合。
      * @throws IOException  IO例外が発生した場合。
+     * @deprecated 中断した箇所からの再開はジャーナルにより自動で実施されます。{@link #process(boolean, boolean)}
+     *             を使用してください。
      */
+    @Deprecated
     public void process(boolean forceProduction, boolean forceImport, int skipImportIssueCount)
             throws SQLException, IOException {
+        this.skipImportIssueCount = skipImportIssueCount;
+        process(forceProduction, forceImport);
+    }
+
+    /**
+     * インポート対象を処理します。
+     * 
+     * ジャーナルに記録がある場合は、中断した箇所から再開します。
+     * 
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    public void process(boolean forceProduction, boolean forceImport) throws SQLException, IOException {
         this.forceProduction = forceProduction;
         this.forceImport = forceImport;
-        this.skipImportIssueCount = skipImportIssueCount;
         if (bklConn.getClient() == null) {
             throw new IllegalArgumentException("Not connected to Backlog. Please login() before process().");
         }
@@ -97,9 +189,15 @@ public class RsvrBacklogImpIssue {
             throw new IOException(BMCMessages.BMC5901);
         }
 
-        H2TargetIssueDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
+
+        // 大きな文字列を CLOB として格納する設定の場合は、先読みする課題には大きな文字列を保持しません。
+        isLargeTextDeferred = bklConn.getToolConf().isH2LargeTextAsClob();
 
         // ローカルからインポートします。
+        // ターゲットのマスタ情報は課題のインポート中には変化しないため、最初に一度だけ読み込みます。
+        resolver = H2TargetMasterResolver.getInstance(conn);
+
         impFromLocal();
     }
 
@@ -111,16 +209,35 @@ public class RsvrBacklogImpIssue {
      * @throws SQLException
      */
     private void impFromLocal() throws SQLException, IOException {
+        final long projectId = bklConn.getProjectId();
+        final long journalLastKeyId = H2ImpIssueJournalDao.getLastKeyId(conn, projectId);
+        final boolean hasPendingEntry = H2ImpIssueJournalDao.hasPendingEntry(conn, projectId);
+        lastTargetKeyId = H2ImpIssueJournalDao.getLastTargetKeyId(conn, projectId);
+
+        if (journalLastKeyId > 0 || hasPendingEntry) {
+            // [BMC5108] Import: Issue: ジャーナルの記録をもとに中断した課題インポートを再開します。記録済みの KeyId:
+            RsvrLog.info(BMCMessages.BMC5108 + journalLastKeyId);
 
-        {
+            if (hasPendingEntry) {
+                // 課題の作成の途中で中断した記録があるため、作成済みでジャーナル未記録の課題が無いか確認します。
+                // 作成済みの課題があるため、-forceimport の指定にかかわらずプロジェクトが空であることの確認は行いません。
+                findOrphanIssue(projectId);
+            }
+        } else {
             RsvrLog.trace("Import: Import先のIssueが空であることを確認.");
 
             List<Long> projectIds = new ArrayList<Long>();
             projectIds.add(bklConn.getProjectId());
-            GetIssuesParams params = new GetIssuesParams(projectIds);
+            final GetIssuesParams params = new GetIssuesParams(projectIds);
             params.order(Order.Asc);
             params.count(100);
-            ResponseList<Issue> issueList = bklConn.getClient().getIssues(params);
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            ResponseList<Issue> issueList = new AbstractRetryableQuery<ResponseList<Issue>>() {
+                @Override
+                protected ResponseList<Issue> query(BacklogClient client) {
+                    return client.getIssues(params);
+                }
+            }.executeQuery(bklConn);
             if (issueList.size() > 0) {
                 if (forceImport == false) {
                     // [BMC5102] Import: Issue: Import cannot proceed because issue(s) already
@@ -131,394 +248,1323 @@ public class RsvrBacklogImpIssue {
                     // [BMC5103] Import: Issue: Warn: Import warn because issue(s) already exists in
                     // the project. Processing will be continued (-forceimp). issue count:
                     RsvrLog.warn(BMCMessages.BMC5103 + issueList.size());
+
+                    // 既存の課題をジャーナル未記録の課題と取り違えないよう、既存の最新の課題の KeyId を既知のものとします。
+                    final Issue latestIssue = getLatestTargetIssue(projectId);
+                    if (latestIssue != null) {
+                        lastTargetKeyId = latestIssue.getKeyId();
+                    }
                 }
             }
         }
 
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
         int skipImportIssueCountLeft = skipImportIssueCount;
-        // 前回の KeyId
-        long lastKeyId = 0;
-
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT IssueId, KeyId, Summary, IssueType, Priority, Description, Resolution, Status, Assignee" //
-                        + ", Category, Version, Milestone, StartDate, DueDate, EstimatedHours, ActualHours" //
-                        + ", ParentIssueId, CreatedUser, Created, UpdatedUser, Updated" //
-                        + " FROM BacklogIssue" //
-                        + " ORDER BY KeyId" //
-        ))) {
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                for (; rset.next();) {
-                    Long origIssueId = rset.getLong();
-                    Long keyId = rset.getLong();
-                    String summary = rset.getString();
-                    String issueType = rset.getString();
-                    String priority = rset.getString();
-                    String description = rset.getString();
-                    String resolution = rset.getString();
-                    String status = rset.getString();
-                    Long assignee = rset.getLong(); // FIXME おりじなるのアサイン
-                    String category = rset.getString();
-                    String version = rset.getString();
-                    String milestone = rset.getString();
-                    String startDate = rset.getString();
-                    String dueDate = rset.getString();
-                    BigDecimal estimatedHours = rset.getBigDecimal();
-                    BigDecimal actualHours = rset.getBigDecimal();
-                    Long origParentIssueId = rset.getLong();
-                    Long origCreatedUser = rset.getLong();
-                    Date created = rset.getTime();
-                    Long origUpdatedUser = rset.getLong();
-                    Date updated = rset.getTime();
-
-                    // 与えられた文字列をもとに IssueTypeId を取得。
-                    long issueTypeId = H2TargetIssueTypeDao.getIssueTypeIdByName(conn, issueType);
-
-                    int issuePriorityTypeId = (int) H2TargetIssuePriorityTypeDao.getIssuePriorityTypeIdByName(conn,
-                            priority);
-
-                    if (keyId - lastKeyId == 1) {
-                        // 順番どおりだった。
-                    } else {
-                        // 飛んだ数だけ「削除」で埋めます。
-                        for (long fillingCount = keyId - lastKeyId - 1; fillingCount > 0; fillingCount--) {
-                            final String deletedMessage = BMCMessages.MBC5107 + ": " + (keyId - fillingCount);
-                            final CreateIssueParams param = new CreateIssueParams(bklConn.getProjectId(),
-                                    deletedMessage, issueTypeId, Issue.PriorityType.Low);
-                            param.description(deletedMessage);
-
-                            RetryableCreateIssue apicallout = new RetryableCreateIssue(param);
-                            apicallout.execute(bklConn);
-                            apicallout.getResult();
-                        }
-                    }
-                    // 前回のIDとして記憶
-                    lastKeyId = keyId;
+        // 前回の KeyId。ジャーナルに記録済みの KeyId までは欠番の埋め合わせも完了しています。
+        long lastKeyId = journalLastKeyId;
 
-                    if (skipImportIssueCountLeft-- > 0) {
-                        RsvrLog.info("[-skipimportissuecount] Skipping issues: (" + keyId + ") " + summary);
-                        continue;
-                    }
+        // 反映が完了していない課題から読み込みます。
+        final Long firstIncompleteKeyId = H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, projectId);
+        final long readAfterKeyId = (firstIncompleteKeyId == null ? journalLastKeyId : firstIncompleteKeyId - 1);
 
-                    CreateIssueParams param = new CreateIssueParams(bklConn.getProjectId(),
-                            (summary == null ? "" : summary), issueTypeId,
-                            Issue.PriorityType.valueOf((int) issuePriorityTypeId));
+        // 先読みのスレッドを開始します。
+        final BlockingQueue<IssuePlan> queue = new ArrayBlockingQueue<IssuePlan>(PIPELINE_QUEUE_SIZE);
+        final IssuePlanReader reader = new IssuePlanReader(queue, readAfterKeyId);
+        final Thread readerThread = new Thread(reader, "RsvrBacklogImpIssue-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
 
-                    // parentIssueId
-                    if (origParentIssueId != null && origParentIssueId != 0) {
-                        RsvrLog.trace("Issue作成のparentIssueId指定があるがこれは次の処理パスで対応");
-                    }
+        // 添付ファイルを先行してアップロードする場合は、その件数分の課題をキューから取り出しておきます。
+        final int uploadParallelism = bklConn.getToolConf().getImpUploadParallelism();
+        final int aheadIssueCount = (uploadParallelism > 0
+                ? Math.max(1, bklConn.getToolConf().getImpUploadAheadIssueCount())
+                : 1);
+        if (uploadParallelism > 0) {
+            uploadExecutor = Executors.newFixedThreadPool(uploadParallelism);
+        }
+        preUploadSkipCountLeft = skipImportIssueCount;
+        final ArrayDeque<IssuePlan> aheadPlanDeque = new ArrayDeque<IssuePlan>();
+        boolean isEndOfPlan = false;
+        // 反映中の課題。中断した場合に先行してアップロード済みの添付ファイルを記録するために保持します。
+        IssuePlan currentPlan = null;
 
-                    // description
-                    if (description != null) {
-                        param.description(description);
+        try {
+            for (;;) {
+                while (isEndOfPlan == false && aheadPlanDeque.size() < aheadIssueCount) {
+                    // 手元に課題が無い場合のみ先読みを待ちます。それ以外は先読み済みの課題だけを取り出します。
+                    final IssuePlan aheadPlan = (aheadPlanDeque.isEmpty() ? takePlan(queue) : queue.poll());
+                    if (aheadPlan == null) {
+                        break;
                     }
-
-                    // startDate
-                    if (startDate != null) {
-                        param.startDate(startDate);
+                    if (aheadPlan == END_OF_PLAN) {
+                        isEndOfPlan = true;
+                        break;
                     }
-
-                    // dueDate
-                    if (dueDate != null) {
-                        param.dueDate(dueDate);
+                    if (uploadExecutor != null) {
+                        submitPreUpload(aheadPlan, projectId, journalLastKeyId);
                     }
+                    aheadPlanDeque.add(aheadPlan);
+                }
+                if (aheadPlanDeque.isEmpty()) {
+                    // 先読みで発生した例外は、ここで呼び出し元に伝えます。
+                    reader.rethrowIfFailed();
+                    break;
+                }
+                final IssuePlan plan = aheadPlanDeque.poll();
+                currentPlan = plan;
 
-                    // estimatedHours
-                    if (estimatedHours != null) {
-                        param.estimatedHours(estimatedHours);
+                // ジャーナルに記録済みの課題は、作成済みのものを使用します。
+                H2ImpIssueJournalDao.Entry journal = null;
+                if (plan.keyId <= journalLastKeyId) {
+                    journal = H2ImpIssueJournalDao.getEntry(conn, projectId, plan.keyId);
+                    if (journal != null && journal.isCompleted()) {
+                        continue;
                     }
+                }
 
-                    // actualHours
-                    if (actualHours != null) {
-                        param.actualHours(actualHours);
-                    }
+                if (plan.keyId > lastKeyId) {
+                    // 飛んだ数だけ「削除」で埋めます。順番どおりの場合は埋めるものはありません。
+                    for (long fillingCount = plan.keyId - lastKeyId - 1; fillingCount > 0; fillingCount--) {
+                        final String deletedMessage = BMCMessages.MBC5107 + ": " + (plan.keyId - fillingCount);
+                        final CreateIssueParams param = new CreateIssueParams(bklConn.getProjectId(), deletedMessage,
+                                plan.issueTypeId, Issue.PriorityType.Low);
+                        param.description(deletedMessage);
 
-                    // categoryIds
-                    if (category != null && category.length() > 0) {
-                        param.categoryIds(H2TargetCategoryDao.getCategoryIdListByNames(conn, category));
-                    }
+                        final H2ImpIssueJournalDao.Entry deletedJournal = new H2ImpIssueJournalDao.Entry(projectId,
+                                plan.keyId - fillingCount);
+                        createIssue(param, deletedJournal);
 
-                    // versionIds
-                    if (version != null && version.length() > 0) {
-                        param.versionIds(H2TargetVersionDao.getVersionIdListByNames(conn, version));
+                        // 欠番を埋めた課題はコメントが無いため、作成した時点で完了とします。
+                        deletedJournal.setStatus(H2ImpIssueJournalDao.STATUS_COMPLETED);
+                        H2ImpIssueJournalDao.store2Local(conn, deletedJournal);
                     }
+                    // 前回のIDとして記憶
+                    lastKeyId = plan.keyId;
+                }
 
-                    // milestoneIds
-                    if (milestone != null && milestone.length() > 0) {
-                        param.milestoneIds(H2TargetMilestoneDao.getMilestoneIdListByNames(conn, milestone));
+                final boolean isResumed = (journal != null);
+                if (journal == null) {
+                    if (skipImportIssueCountLeft-- > 0) {
+                        RsvrLog.info("[-skipimportissuecount] Skipping issues: (" + plan.keyId + ") " + plan.summary);
+                        continue;
                     }
 
-                    // assigneeId
-                    if (assignee != null) {
-                        param.assigneeId(H2MappingUserDao.getTargetUserIdBySourceUserId(conn, assignee));
+                    if (plan.isDescriptionDeferred) {
+                        // 先読みでは読み込んでいない課題の説明を、API 呼び出しの直前に読み込みます。
+                        plan.createIssueParams
+                                .description(H2LargeTextDao.getIssueDescription(conn, plan.origIssueId));
                     }
+                    journal = new H2ImpIssueJournalDao.Entry(projectId, plan.keyId);
+                    journal.setSourceIssueId(plan.origIssueId);
+                    final Issue newIssue = createIssue(plan.createIssueParams, journal);
 
-                    // notifiedUserIds
-                    // IssueCommentにて設定される。
+                    bklConn.getProcessInfo().incrementIns(CounterType.TARGET_ISSUE);
 
-                    // attachmentIds
-                    // IssueCommentにて設定される。
+                    // 新旧の IssueIdの対応を記録。
+                    H2TargetIssueDao.store2Local(conn, newIssue, plan.origIssueId, bklConn);
 
-                    // textCustomField など、以降はカスタムフィールド関連
-                    // TODO カスタム系は手付かず。TBD
+                    // [BMC5101] Import: Issue: created.
+                    RsvrLog.trace(
+                            BMCMessages.BMC5101 + ": [" + newIssue.getIssueKey() + "] " + newIssue.getSummary());
 
-                    RetryableCreateIssue apicallout = new RetryableCreateIssue(param);
-                    apicallout.execute(bklConn);
-                    final Issue newIssue = apicallout.getResult();
+                    journal.setStatus(H2ImpIssueJournalDao.STATUS_CREATED);
+                    H2ImpIssueJournalDao.store2Local(conn, journal);
+                } else {
+                    RsvrLog.info("Import: Issue: ジャーナルをもとに反映を再開: (" + plan.keyId + ") " + plan.summary);
+                }
 
-                    bklConn.getProcessInfo().incrementIns("TargetIssue");
+                // IssueCommentを反映
+                processIssueComment(plan, journal, isResumed);
 
-                    // 新旧の IssueIdの対応を記録。
-                    H2TargetIssueDao.store2Local(conn, newIssue, origIssueId, bklConn);
+                journal.setStatus(H2ImpIssueJournalDao.STATUS_COMPLETED);
+                H2ImpIssueJournalDao.store2Local(conn, journal);
+            }
+        } finally {
+            if (uploadExecutor != null) {
+                // 途中で失敗した場合に備えて、アップロードが完了しているものを再開時に再利用できるよう記録してから、
+                // 先行してアップロードしているワーカーを止めます。
+                storeCompletedPreUpload(currentPlan, aheadPlanDeque);
+                uploadExecutor.shutdownNow();
+                uploadExecutor = null;
+            }
 
-                    // [BMC5101] Import: Issue: created.
-                    RsvrLog.trace(BMCMessages.BMC5101 + ": [" + newIssue.getIssueKey() + "] " + newIssue.getSummary());
+            // 途中で失敗した場合に備えて、先読みのスレッドを止めます。
+            reader.cancel();
+            queue.clear();
+            try {
+                readerThread.join(60000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+    /**
+     * 先読みした課題をキューから取り出します。先読みが追いついていない場合は待ちます。
+     * 
+     * @param queue 先読みした課題のキュー。
+     * @return 先読みした課題。
+     * @throws IOException 割り込みが発生した場合。
+     */
+    private static IssuePlan takePlan(BlockingQueue<IssuePlan> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import: Issue: interrupted.", ex);
+        }
+    }
 
-                    // IssueCommentを反映
-                    processIssueComment(origIssueId, newIssue);
+    /**
+     * 課題の変更履歴に含まれる添付ファイルを、ワーカーで先行してアップロードします。
+     * 
+     * ジャーナルで反映済みの課題・コメントと、-skipimportissuecount によりスキップする課題はアップロードしません。
+     * 同じコメントの中で内容とファイル名が同じ添付ファイルは、1度だけアップロードします。
+     * 
+     * @param plan             課題1件分のインポート内容。
+     * @param projectId        インポート先のプロジェクトId。
+     * @param journalLastKeyId ジャーナルに記録済みの KeyId。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private void submitPreUpload(IssuePlan plan, long projectId, long journalLastKeyId) throws SQLException {
+        H2ImpIssueJournalDao.Entry journal = null;
+        if (plan.keyId <= journalLastKeyId) {
+            journal = H2ImpIssueJournalDao.getEntry(conn, projectId, plan.keyId);
+            if (journal != null && journal.isCompleted()) {
+                return;
+            }
+        }
+        if (journal == null && preUploadSkipCountLeft-- > 0) {
+            return;
+        }
 
+        final int fromIndex = (journal == null ? 0 : journal.getCommentIndex());
+        for (int index = fromIndex; index < plan.commentPlanList.size(); index++) {
+            final Map<String, Future<Long>> uploadFutureMap = new HashMap<String, Future<Long>>();
+            for (AttachmentPlan attachmentPlan : plan.commentPlanList.get(index).attachmentPlanList) {
+                final String uploadKey = attachmentPlan.getUploadKey();
+                if (uploadKey != null && uploadFutureMap.containsKey(uploadKey)) {
+                    attachmentPlan.uploadFuture = uploadFutureMap.get(uploadKey);
+                    continue;
+                }
+                if (findReusableAttachment(attachmentPlan)) {
+                    // アップロード済みで課題に添付していないものを再利用します。
+                    continue;
+                }
+                attachmentPlan.uploadFuture = uploadExecutor
+                        .submit(new AttachmentUploader(bklConn, attachmentPlan.name, attachmentPlan.localFile));
+                if (uploadKey != null) {
+                    uploadFutureMap.put(uploadKey, attachmentPlan.uploadFuture);
                 }
             }
         }
-
     }
 
-    private void processIssueComment(long origIssueId, Issue newIssue) throws SQLException, IOException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " IssueCommentId, Content, uc.Name AS CreatedUserName, Created, Updated" //
-                + " FROM BacklogIssueComment" //
-                + " LEFT OUTER JOIN BacklogUser AS uc ON BacklogIssueComment.CreatedUser = uc.UserId" // TODO FIXME
-                                                                                                      // ターゲットUserに変更
-                + " WHERE IssueId = ?" //
-                + " ORDER BY IssueCommentId"))) { //
-            stmt.setLong(origIssueId);
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                for (; rset.next();) {
-                    final WrappedAddIssueCommentParams addIssueCommentParams = new WrappedAddIssueCommentParams(
-                            newIssue.getId());
-                    long origIssueCommentId = rset.getLong();
-                    String content = rset.getString();
-                    String createdUserName = rset.getString();
-                    Date created = rset.getJavaUtilDate();
-                    Date updated = rset.getJavaUtilDate();
+    /**
+     * 添付ファイルをアップロードして、ターゲットの添付ファイルのIdを取得します。先行してアップロードしている場合は、その完了を待ちます。
+     * 
+     * アップロード済みで課題に添付していないものがある場合は、アップロードせずにそれを使用します。アップロードした場合は再利用のために記録します。
+     * 
+     * @param attachmentPlan アップロードする添付ファイル。
+     * @return ターゲットの添付ファイルのId。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private long uploadAttachment(AttachmentPlan attachmentPlan) throws SQLException, IOException {
+        if (attachmentPlan.uploadFuture == null && attachmentPlan.reusedAttachmentId == null) {
+            findReusableAttachment(attachmentPlan);
+        }
+        if (attachmentPlan.reusedAttachmentId != null) {
+            RsvrLog.trace("添付ファイルはアップロード済みのものを再利用: " + attachmentPlan.name);
+            return attachmentPlan.reusedAttachmentId;
+        }
 
-                    if (content != null) {
-                        addIssueCommentParams.setContent(content);
-                    }
+        final long attachmentId;
+        if (attachmentPlan.uploadFuture != null) {
+            attachmentId = waitFor(attachmentPlan.uploadFuture);
+        } else {
+            RetryablePostAttachment apicallout = new RetryablePostAttachment(attachmentPlan.name,
+                    attachmentPlan.localFile);
+            apicallout.execute(bklConn);
+            attachmentId = apicallout.getResult().getId();
+        }
 
-                    final WrappedUpdateIssueParams updateIssueParams = new WrappedUpdateIssueParams(newIssue.getId());
+        if (attachmentPlan.contentHash != null) {
+            H2ImpAttachmentDao.storePosted(conn, bklConn.getProjectId(), attachmentPlan.sourceAttachmentId,
+                    attachmentPlan.contentHash, attachmentId);
+        }
+        attachmentPlan.isRecorded = true;
+        return attachmentId;
+    }
 
-                    // CommentChangeLogにも行く。むしろこれが本命。
-                    processCommentChangeLog(origIssueCommentId, newIssue, updateIssueParams, addIssueCommentParams);
+    /**
+     * 先行してアップロードが完了していて、まだ記録していない添付ファイルを、再利用のために記録します。
+     * 
+     * 途中で中断した場合に、ワーカーを止める前に呼び出します。記録に失敗しても、中断の原因となった例外を優先するため警告にとどめます。
+     * 
+     * @param currentPlan    反映中の課題。無い場合は null。
+     * @param aheadPlanDeque 先読みして先行してアップロードしている課題。
+     */
+    private void storeCompletedPreUpload(IssuePlan currentPlan, ArrayDeque<IssuePlan> aheadPlanDeque) {
+        final List<IssuePlan> planList = new ArrayList<IssuePlan>();
+        if (currentPlan != null) {
+            planList.add(currentPlan);
+        }
+        planList.addAll(aheadPlanDeque);
 
-                    if (updateIssueParams.isPostDataExists()) {
+        int storedCount = 0;
+        try {
+            for (IssuePlan plan : planList) {
+                for (CommentPlan commentPlan : plan.commentPlanList) {
+                    for (AttachmentPlan attachmentPlan : commentPlan.attachmentPlanList) {
+                        if (attachmentPlan.isRecorded || attachmentPlan.contentHash == null
+                                || attachmentPlan.uploadFuture == null || attachmentPlan.uploadFuture.isDone() == false
+                                || attachmentPlan.uploadFuture.isCancelled()) {
+                            continue;
+                        }
+                        final long attachmentId;
                         try {
-                            RetryableUpdateIssue apicallout = new RetryableUpdateIssue(updateIssueParams.getPostData());
-                            apicallout.execute(bklConn);
-                            apicallout.getResult();
-                        } catch (BacklogAPIException ex) {
-                            if (ex.getStatusCode() == 400 && ex.getMessage().contains("No comment content")) {
-                                // [MBC5105] No comment content occured: 変更コメントに ((移行の結果差分なし)) と加えてリトライ。
-                                RsvrLog.trace(BMCMessages.MBC5105);
-                                // "((移行の結果差分なし))" をコメントとしてセット。
-                                updateIssueParams.setComment(BMCMessages.MBC5106);
-
-                                RetryableUpdateIssue apicallout = new RetryableUpdateIssue(
-                                        updateIssueParams.getPostData());
-                                apicallout.execute(bklConn);
-                                apicallout.getResult();
-                            }
+                            attachmentId = attachmentPlan.uploadFuture.get();
+                        } catch (ExecutionException ex) {
+                            // アップロードに失敗したものは記録しません。
+                            continue;
                         }
-                        // API呼び出しインターバルをsleepします。
-                        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                        H2ImpAttachmentDao.storePosted(conn, bklConn.getProjectId(),
+                                attachmentPlan.sourceAttachmentId, attachmentPlan.contentHash, attachmentId);
+                        attachmentPlan.isRecorded = true;
+                        storedCount++;
                     }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException ex) {
+            RsvrLog.warn("Import: Issue: 先行してアップロードした添付ファイルの記録に失敗しました: " + ex.toString());
+        }
+        if (storedCount > 0) {
+            RsvrLog.info("Import: Issue: 先行してアップロードした添付ファイルを再利用のために記録しました: " + storedCount);
+        }
+    }
+
+    /**
+     * アップロード済みで課題に添付していない添付ファイルを探して、見つかった場合は再利用するものとして設定します。
+     * 
+     * @param attachmentPlan アップロードする添付ファイル。
+     * @return 再利用できるものが見つかった場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private boolean findReusableAttachment(AttachmentPlan attachmentPlan) throws SQLException {
+        if (attachmentPlan.contentHash == null || attachmentPlan.isReuseAllowed == false) {
+            return false;
+        }
+        attachmentPlan.reusedAttachmentId = H2ImpAttachmentDao.getReusableTargetAttachmentId(conn,
+                bklConn.getProjectId(), attachmentPlan.sourceAttachmentId, attachmentPlan.contentHash,
+                new Date(System.currentTimeMillis() - ATTACHMENT_REUSE_EXPIRE_MILLIS));
+        return attachmentPlan.reusedAttachmentId != null;
+    }
+
+    /**
+     * コメント1件分の添付ファイルを、課題に添付済みとして再利用の対象外にします。
+     * 
+     * @param commentPlan コメント1件分のインポート内容。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private void markAttached(CommentPlan commentPlan) throws SQLException {
+        for (AttachmentPlan attachmentPlan : commentPlan.attachmentPlanList) {
+            if (attachmentPlan.contentHash != null) {
+                H2ImpAttachmentDao.markAttached(conn, bklConn.getProjectId(), attachmentPlan.sourceAttachmentId,
+                        attachmentPlan.contentHash);
+            }
+        }
+    }
+
+    /**
+     * ワーカースレッドのアップロードの完了を待ち合わせます。ワーカースレッドで発生した例外は呼び出し元スレッドで再スローします。
+     * 
+     * @param future 待ち合わせ対象。
+     * @return ターゲットの添付ファイルのId。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private static long waitFor(Future<Long> future) throws SQLException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("添付ファイルのアップロード待ちで割り込みが発生しました: " + ex.toString(), ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("添付ファイルのアップロードで例外が発生しました: " + cause.toString(), cause);
+        }
+    }
+
+    /**
+     * ターゲットに課題を作成します。前回の中断時に作成済みでジャーナル未記録の課題がある場合は、作成せずにそれを使用します。
+     * 
+     * 作成の前に、課題の作成前の状態でジャーナルに記録します。作成した課題は与えられたジャーナルに設定しますが、ジャーナルへの記録は呼び出し元で行います。
+     * 
+     * @param param   課題の作成のパラメータ。
+     * @param journal 作成する課題のジャーナル。
+     * @return 作成した課題。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private Issue createIssue(CreateIssueParams param, H2ImpIssueJournalDao.Entry journal)
+            throws SQLException, IOException {
+        // 作成から記録までの間で中断した場合に備えて、作成前の状態と既知の最大の KeyId を記録しておきます。
+        journal.setStatus(H2ImpIssueJournalDao.STATUS_PENDING);
+        journal.setTargetIssueId(0);
+        journal.setTargetKeyId(lastTargetKeyId);
+        H2ImpIssueJournalDao.store2Local(conn, journal);
+
+        final Issue newIssue;
+        if (orphanIssue != null) {
+            newIssue = orphanIssue;
+            orphanIssue = null;
+        } else {
+            RetryableCreateIssue apicallout = new RetryableCreateIssue(param);
+            apicallout.execute(bklConn);
+            newIssue = apicallout.getResult();
+        }
+
+        lastTargetKeyId = Math.max(lastTargetKeyId, newIssue.getKeyId());
+        journal.setTargetIssueId(newIssue.getId());
+        journal.setTargetKeyId(newIssue.getKeyId());
+        return newIssue;
+    }
 
-                    if (addIssueCommentParams.isPostDataExists()) {
-                        RetryableAddIssueComment apicallout = new RetryableAddIssueComment(
-                                addIssueCommentParams.getPostData());
-                        apicallout.execute(bklConn);
-                        apicallout.getResult();
+    /**
+     * ターゲットの最新の課題がジャーナル未記録かどうかを確認します。
+     * 
+     * 課題の作成からジャーナルへの記録までの間で中断した場合に、その課題を次に作成する課題として引き継ぎます。
+     * 
+     * @param projectId インポート先のプロジェクトId。
+     */
+    private void findOrphanIssue(long projectId) {
+        final Issue latestIssue = getLatestTargetIssue(projectId);
+        if (latestIssue == null) {
+            return;
+        }
+
+        if (latestIssue.getKeyId() > lastTargetKeyId) {
+            // [BMC5109] Import: Issue: 前回の中断時に作成済みでジャーナル未記録の課題を引き継ぎます。
+            RsvrLog.warn(BMCMessages.BMC5109 + ": [" + latestIssue.getIssueKey() + "] " + latestIssue.getSummary());
+            orphanIssue = latestIssue;
+        }
+    }
+
+    /**
+     * ターゲットの最新の課題を取得します。
+     * 
+     * @param projectId インポート先のプロジェクトId。
+     * @return 最新の課題。課題が無い場合は null。
+     */
+    private Issue getLatestTargetIssue(long projectId) {
+        List<Long> projectIds = new ArrayList<Long>();
+        projectIds.add(projectId);
+        final GetIssuesParams params = new GetIssuesParams(projectIds);
+        params.sort(SortKey.Created);
+        params.order(Order.Desc);
+        params.count(1);
+        final ResponseList<Issue> issueList = new AbstractRetryableQuery<ResponseList<Issue>>() {
+            @Override
+            protected ResponseList<Issue> query(BacklogClient client) {
+                return client.getIssues(params);
+            }
+        }.executeQuery(bklConn);
+        return (issueList.isEmpty() ? null : issueList.get(0));
+    }
+
+    /**
+     * 組み立て済みのコメントと変更履歴を、作成した課題に対して反映します。
+     * 
+     * 手順ごとにジャーナルに記録し、ジャーナルに記録済みの手順は実施しません。
+     * 
+     * @param plan      課題1件分のインポート内容。
+     * @param journal   作成した課題のジャーナル。
+     * @param isResumed 前回の中断から再開した課題の場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void processIssueComment(IssuePlan plan, H2ImpIssueJournalDao.Entry journal, boolean isResumed)
+            throws SQLException, IOException {
+        final long newIssueId = journal.getTargetIssueId();
+
+        // 再開の場合は、ジャーナルへの記録の直前に中断した手順が無いかをコメントの件数で確認します。
+        boolean isPendingStepDone = false;
+        if (isResumed && journal.getCommentIndex() < plan.commentPlanList.size()) {
+            // 取得系の API 呼び出しはリトライ付きで実施します。
+            final int targetCommentCount = new AbstractRetryableQuery<Integer>() {
+                @Override
+                protected Integer query(BacklogClient client) {
+                    return client.getIssueCommentCount(newIssueId);
+                }
+            }.executeQuery(bklConn);
+            isPendingStepDone = targetCommentCount > journal.getTargetCommentCount();
+        }
+
+        for (int index = journal.getCommentIndex(); index < plan.commentPlanList.size(); index++) {
+            final CommentPlan commentPlan = plan.commentPlanList.get(index);
+            final WrappedAddIssueCommentParams addIssueCommentParams = commentPlan.addIssueCommentParams;
+            final WrappedUpdateIssueParams updateIssueParams = commentPlan.updateIssueParams;
+            addIssueCommentParams.setNewIssueId(newIssueId);
+            updateIssueParams.setNewIssueId(newIssueId);
 
-                        // API呼び出しインターバルをsleepします。
-                        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+            final boolean isUpdateDone = (index == journal.getCommentIndex() && journal.getCommentStep() >= 1);
+            if (isUpdateDone == false && updateIssueParams.isPostDataExists()) {
+                if (isPendingStepDone) {
+                    // [BMC5110] Import: Issue: 前回の中断時に反映済みでジャーナル未記録のコメントを引き継ぎます。
+                    RsvrLog.warn(BMCMessages.BMC5110 + ": (" + plan.keyId + ") " + plan.summary);
+                    isPendingStepDone = false;
+                    journal.setTargetCommentCount(journal.getTargetCommentCount() + 1);
+                    // 添付ファイルも添付済みのため、再利用の対象外にします。
+                    markAttached(commentPlan);
+                } else {
+                    loadDeferredText(commentPlan);
+                    if (processUpdateIssue(commentPlan)) {
+                        journal.setTargetCommentCount(journal.getTargetCommentCount() + 1);
                     }
                 }
+                journal.setCommentIndex(index);
+                journal.setCommentStep(1);
+                H2ImpIssueJournalDao.store2Local(conn, journal);
+            }
+
+            if (addIssueCommentParams.isPostDataExists()) {
+                if (isPendingStepDone) {
+                    // [BMC5110] Import: Issue: 前回の中断時に反映済みでジャーナル未記録のコメントを引き継ぎます。
+                    RsvrLog.warn(BMCMessages.BMC5110 + ": (" + plan.keyId + ") " + plan.summary);
+                    isPendingStepDone = false;
+                } else {
+                    loadDeferredText(commentPlan);
+                    RetryableAddIssueComment apicallout = new RetryableAddIssueComment(
+                            addIssueCommentParams.getPostData());
+                    apicallout.execute(bklConn);
+                    final IssueComment newComment = apicallout.getResult();
+                    journal.setLastTargetCommentId(newComment.getId());
+                }
+                journal.setTargetCommentCount(journal.getTargetCommentCount() + 1);
+                journal.setCommentIndex(index + 1);
+                journal.setCommentStep(0);
+                H2ImpIssueJournalDao.store2Local(conn, journal);
+            } else {
+                // API 呼び出しが無い場合は記録を省略します。再開時に再度実施しても何も作成されません。
+                journal.setCommentIndex(index + 1);
+                journal.setCommentStep(0);
             }
         }
     }
 
-    private void processCommentChangeLog(long origIssueCommentId, Issue newIssue,
-            WrappedUpdateIssueParams updateIssueParams, WrappedAddIssueCommentParams addIssueCommentParams)
-            throws SQLException, IOException {
+    /**
+     * 先読みでは読み込んでいないコメントの本文・変更後の課題の説明を読み込みます。読み込み済みの場合は何もしません。
+     * 
+     * @param commentPlan コメント1件分のインポート内容。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    private void loadDeferredText(CommentPlan commentPlan) throws SQLException {
+        if (commentPlan.isContentDeferred) {
+            commentPlan.addIssueCommentParams
+                    .setContent(H2LargeTextDao.getIssueCommentContent(conn, commentPlan.origIssueCommentId));
+            commentPlan.isContentDeferred = false;
+        }
+        if (commentPlan.isDescriptionDeferred) {
+            commentPlan.updateIssueParams.setDescription(
+                    H2LargeTextDao.getIssueCommentDescriptionNewValue(conn, commentPlan.origIssueCommentId));
+            commentPlan.isDescriptionDeferred = false;
+        }
+    }
 
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " Field, OriginalValue, NewValue, IssueAttachmentId, AttributeInfo, NotificationInfo" //
-                + " FROM BacklogIssueCommentChangeLog" //
-                + " WHERE IssueCommentId = ?" //
-                + " ORDER BY IssueCommentChangeLogId"))) { //
-            stmt.setLong(origIssueCommentId);
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                for (; rset.next();) {
-                    String field = rset.getString();
-                    String originalValue = rset.getString();
-                    String newValue = rset.getString();
-                    Long issueAttachmentId = rset.getLong();
-                    String attributeInfo = rset.getString();
-                    String notificationInfo = rset.getString();
-                    if (notificationInfo != null) {
-                        // TODO 通知を処理
+    /**
+     * 変更履歴を課題の更新として反映します。添付ファイルがある場合は先にアップロードします。
+     * 
+     * @param commentPlan コメント1件分のインポート内容。
+     * @return 課題を更新した場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private boolean processUpdateIssue(CommentPlan commentPlan) throws SQLException, IOException {
+        final WrappedUpdateIssueParams updateIssueParams = commentPlan.updateIssueParams;
+
+        // 添付ファイルをアップロードします。
+        final boolean isReused = applyAttachmentIds(commentPlan);
+
+        try {
+            try {
+                executeUpdateIssue(updateIssueParams);
+            } catch (BacklogAPIException ex) {
+                if (isReused == false || isNoCommentContent(ex)) {
+                    throw ex;
+                }
+                // [BMC5118] Import: Issue: 再利用したアップロード済みの添付ファイルが受け付けられなかったため、アップロードし直します。
+                RsvrLog.warn(BMCMessages.BMC5118 + ": " + ex.toString());
+                for (AttachmentPlan attachmentPlan : commentPlan.attachmentPlanList) {
+                    if (attachmentPlan.reusedAttachmentId != null) {
+                        attachmentPlan.reusedAttachmentId = null;
+                        attachmentPlan.isReuseAllowed = false;
                     }
+                }
+                applyAttachmentIds(commentPlan);
+                executeUpdateIssue(updateIssueParams);
+            }
+            markAttached(commentPlan);
+            return true;
+        } catch (BacklogAPIException ex) {
+            if (isNoCommentContent(ex)) {
+                // [MBC5105] No comment content occured: 変更コメントに ((移行の結果差分なし)) と加えてリトライ。
+                RsvrLog.trace(BMCMessages.MBC5105);
+                // "((移行の結果差分なし))" をコメントとしてセット。
+                updateIssueParams.setComment(BMCMessages.MBC5106);
 
-                    // これはなにだ component
-
-                    if ("parentIssue".equals(field)) {
-                        // これは次のパスで処理 parentIssue
-                        // ここでは実施せず、別のフェーズにて対応します。
-                    } else if ("summary".equals(field)) {
-                        updateIssueParams.setSummary(newValue);
-                    } else if ("description".equals(field)) {
-                        updateIssueParams.setDescription(newValue);
-                    } else if ("notification".equals(field) && newValue != null) {
-                        final String[] notiTarget = newValue.split(",");
-                        List<Long> notiList = new ArrayList<Long>();
-                        for (String look : notiTarget) {
-                            notiList.add(H2MappingUserDao.getTargetUserIdBySourceUserId(conn, Long.valueOf(look)));
-
-                            // 本文コンテンツがない場合は無視する。
-                            addIssueCommentParams.setNotifiedUserIds(notiList);
-
-                            updateIssueParams.setNotifiedUserIds(notiList);
-                        }
-                    } else if ("priority".equals(field)) {
-                        try (RsvrPreparedStatement stmt2 = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                                + " IssuePriorityTypeId FROM BacklogTargetIssuePriorityType WHERE Name=?"))) {
-                            stmt2.setString(newValue);
-                            try (RsvrResultSet rset2 = stmt2.executeQuery()) {
-                                if (rset2.next() == false) {
-                                    RsvrLog.warn("想定外: 指定の名称のPriorityが見つかりません: " + newValue);
-                                } else {
-                                    updateIssueParams.setPriority(PriorityType.valueOf(rset2.getInt()));
-                                }
-                            }
-                        }
-                    } else if ("status".equals(field)) {
-                        try {
-                            long issueStatusTypeId = H2TargetIssueStatusTypeDao.getIssueStatusTypeIdByName(conn,
-                                    newValue);
-                            updateIssueParams.setStatusId((int) issueStatusTypeId);
-                        } catch (IOException ex) {
-                            RsvrLog.warn(
-                                    "過去のある時点では存在した IssueType のセットを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
-                        }
-                    } else if ("assigner".equals(field)) {
-                        updateIssueParams
-                                .setAssigneeId(H2MappingUserDao.getTargetUserIdBySourceUserName(conn, newValue));
-                    } else if ("startDate".equals(field)) {
-                        updateIssueParams.setStartDate(newValue);
-                    } else if ("limitDate".equals(field)) {
-                        updateIssueParams.setDueDate(newValue);
-                    } else if ("estimatedHours".equals(field)) {
-                        updateIssueParams.setEstimatedHours(newValue == null ? null : new BigDecimal(newValue));
-                    } else if ("actualHours".equals(field)) {
-                        updateIssueParams.setActualHours(newValue == null ? null : new BigDecimal(newValue));
-                    } else if ("attachment".equals(field)) {
-                        // 添付ファイル
-                        processAttachment(issueAttachmentId, updateIssueParams);
-                    } else if ("resolution".equals(field)) {
-                        if (newValue == null || newValue.length() == 0) {
-                            // 設定の解除
-                            updateIssueParams.setResolution(null);
-                        } else {
-                            try (RsvrPreparedStatement stmt2 = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                                    + " IssueResolutionTypeId" //
-                                    + " FROM BacklogTargetIssueResolutionType" //
-                                    + " WHERE Name=?"))) {
-                                stmt2.setString(newValue);
-                                try (RsvrResultSet rset2 = stmt2.executeQuery()) {
-                                    if (rset2.next() == false) {
-                                        RsvrLog.warn("想定外: 指定の名称のResolutionが見つかりません: " + newValue);
-                                    } else {
-                                        updateIssueParams.setResolution(ResolutionType.valueOf(rset2.getInt()));
-                                    }
-                                }
+                executeUpdateIssue(updateIssueParams);
+                markAttached(commentPlan);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * コメント1件分の添付ファイルをアップロードして、課題の更新のパラメータに設定します。
+     * 
+     * 同じ更新の中で内容とファイル名が同じ添付ファイルは、1度だけアップロードします。
+     * 
+     * @param commentPlan コメント1件分のインポート内容。
+     * @return アップロード済みのものを再利用した添付ファイルがある場合は true。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private boolean applyAttachmentIds(CommentPlan commentPlan) throws SQLException, IOException {
+        final WrappedUpdateIssueParams updateIssueParams = commentPlan.updateIssueParams;
+        updateIssueParams.clearAttachmentIds();
+
+        boolean isReused = false;
+        final Set<String> uploadedKeySet = new HashSet<String>();
+        for (AttachmentPlan attachmentPlan : commentPlan.attachmentPlanList) {
+            final String uploadKey = attachmentPlan.getUploadKey();
+            if (uploadKey != null && uploadedKeySet.contains(uploadKey)) {
+                RsvrLog.trace("添付ファイルは同じ更新でアップロード済みのためスキップ: " + attachmentPlan.name);
+                continue;
+            }
+
+            updateIssueParams.addAttachmentIds(uploadAttachment(attachmentPlan));
+            if (attachmentPlan.reusedAttachmentId != null) {
+                isReused = true;
+            }
+            if (uploadKey != null) {
+                uploadedKeySet.add(uploadKey);
+            }
+        }
+        return isReused;
+    }
+
+    /**
+     * 課題の更新の API を呼び出します。
+     * 
+     * @param updateIssueParams 課題の更新のパラメータ。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void executeUpdateIssue(WrappedUpdateIssueParams updateIssueParams) throws SQLException, IOException {
+        RetryableUpdateIssue apicallout = new RetryableUpdateIssue(updateIssueParams.getPostData());
+        apicallout.execute(bklConn);
+        apicallout.getResult();
+    }
+
+    /**
+     * 変更内容が無いために課題の更新が失敗したかどうかを判定します。
+     * 
+     * @param ex 課題の更新で発生した例外。
+     * @return 変更内容が無いために失敗した場合は true。
+     */
+    private static boolean isNoCommentContent(BacklogAPIException ex) {
+        return ex.getStatusCode() == 400 && ex.getMessage().contains("No comment content");
+    }
+
+    /**
+     * 課題1件分を読み込んで、インポート内容を組み立てます。先読みのスレッドで実行します。
+     * 
+     * @param rset   BacklogIssue の検索結果。現在の行を読み込みます。
+     * @param cursor コメント・変更履歴・添付ファイルを課題の KeyId の順に読み込むカーソル。
+     * @return 課題1件分のインポート内容。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private IssuePlan readIssue(RsvrResultSet rset, CommentDetailCursor cursor) throws SQLException, IOException {
+        Long origIssueId = rset.getLong();
+        Long keyId = rset.getLong();
+        String summary = rset.getString();
+        String issueType = rset.getString();
+        String priority = rset.getString();
+        String description = rset.getString();
+        String resolution = rset.getString();
+        String status = rset.getString();
+        Long assignee = rset.getLong(); // FIXME おりじなるのアサイン
+        String category = rset.getString();
+        String version = rset.getString();
+        String milestone = rset.getString();
+        String startDate = rset.getString();
+        String dueDate = rset.getString();
+        BigDecimal estimatedHours = rset.getBigDecimal();
+        BigDecimal actualHours = rset.getBigDecimal();
+        Long origParentIssueId = rset.getLong();
+        Long origCreatedUser = rset.getLong();
+        Date created = rset.getTime();
+        Long origUpdatedUser = rset.getLong();
+        Date updated = rset.getTime();
+
+        final IssuePlan plan = new IssuePlan();
+        plan.origIssueId = origIssueId;
+        plan.keyId = keyId;
+        plan.summary = summary;
+
+        // 与えられた文字列をもとに IssueTypeId を取得。
+        long issueTypeId = resolver.getIssueTypeIdByName(issueType);
+        plan.issueTypeId = issueTypeId;
+
+        int issuePriorityTypeId = (int) resolver.getIssuePriorityTypeIdByName(priority);
+
+        CreateIssueParams param = new CreateIssueParams(bklConn.getProjectId(), (summary == null ? "" : summary),
+                issueTypeId, Issue.PriorityType.valueOf((int) issuePriorityTypeId));
+        plan.createIssueParams = param;
+
+        // parentIssueId
+        if (origParentIssueId != null && origParentIssueId != 0) {
+            RsvrLog.trace("Issue作成のparentIssueId指定があるがこれは次の処理パスで対応");
+        }
+
+        // description
+        if (description != null) {
+            if (isLargeTextDeferred) {
+                // API 呼び出しの直前に読み込みます。
+                plan.isDescriptionDeferred = true;
+            } else {
+                param.description(description);
+            }
+        }
+
+        // startDate
+        if (startDate != null) {
+            param.startDate(startDate);
+        }
+
+        // dueDate
+        if (dueDate != null) {
+            param.dueDate(dueDate);
+        }
+
+        // estimatedHours
+        if (estimatedHours != null) {
+            param.estimatedHours(estimatedHours);
+        }
+
+        // actualHours
+        if (actualHours != null) {
+            param.actualHours(actualHours);
+        }
+
+        // categoryIds
+        if (category != null && category.length() > 0) {
+            param.categoryIds(resolver.getCategoryIdListByNames(category));
+        }
+
+        // versionIds
+        if (version != null && version.length() > 0) {
+            param.versionIds(resolver.getVersionIdListByNames(version));
+        }
+
+        // milestoneIds
+        if (milestone != null && milestone.length() > 0) {
+            param.milestoneIds(resolver.getMilestoneIdListByNames(milestone));
+        }
+
+        // assigneeId
+        if (assignee != null) {
+            param.assigneeId(resolver.getTargetUserIdBySourceUserId(assignee));
+        }
+
+        // notifiedUserIds
+        // IssueCommentにて設定される。
+
+        // attachmentIds
+        // IssueCommentにて設定される。
+
+        // textCustomField など、以降はカスタムフィールド関連
+        // TODO カスタム系は手付かず。TBD
+
+        // コメントと変更履歴もあわせて組み立てます。
+        readIssueComment(cursor, plan);
+        return plan;
+    }
+
+    /**
+     * カーソルから課題1件分のコメント・変更履歴を読み込んで、インポート内容を組み立てます。
+     * 
+     * @param cursor コメント・変更履歴・添付ファイルを課題の KeyId の順に読み込むカーソル。
+     * @param plan   課題1件分のインポート内容。
+     * @throws SQLException SQL例外が発生した場合。
+     * @throws IOException  IO例外が発生した場合。
+     */
+    private void readIssueComment(CommentDetailCursor cursor, IssuePlan plan) throws SQLException, IOException {
+        // 課題より前の行は読み飛ばします。
+        for (; cursor.peek() != null && cursor.peek().keyId < plan.keyId;) {
+            cursor.advance();
+        }
+
+        for (; cursor.peek() != null && cursor.peek().keyId == plan.keyId;) {
+            final long origIssueCommentId = cursor.peek().issueCommentId;
+            final CommentPlan commentPlan = new CommentPlan();
+            commentPlan.origIssueCommentId = origIssueCommentId;
+            if (cursor.peek().content != null) {
+                // 読み込みを遅らせる場合は空文字列が得られます。本文は API 呼び出しの直前に読み込みます。
+                commentPlan.addIssueCommentParams.setContent(cursor.peek().content);
+                commentPlan.isContentDeferred = isLargeTextDeferred;
+            }
+
+            // 同じコメントの行が続く間は、変更履歴として反映します。むしろこれが本命。
+            for (; cursor.peek() != null && cursor.peek().keyId == plan.keyId
+                    && cursor.peek().issueCommentId == origIssueCommentId;) {
+                final CommentDetailRow row = cursor.peek();
+                if (row.issueCommentChangeLogId != null) {
+                    readCommentChangeLog(row, commentPlan);
+                }
+                cursor.advance();
+            }
+
+            plan.commentPlanList.add(commentPlan);
+        }
+    }
+
+    /**
+     * 変更履歴1件分をインポート内容に反映します。
+     * 
+     * @param row         変更履歴1件分の行。
+     * @param commentPlan コメント1件分のインポート内容。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private void readCommentChangeLog(CommentDetailRow row, CommentPlan commentPlan) throws IOException {
+        final String field = row.field;
+        final String newValue = row.newValue;
+        if (row.notificationInfo != null) {
+            // TODO 通知を処理
+        }
+
+        // これはなにだ component
+
+        if ("parentIssue".equals(field)) {
+            // これは次のパスで処理 parentIssue
+            // ここでは実施せず、別のフェーズにて対応します。
+        } else if ("summary".equals(field)) {
+            commentPlan.updateIssueParams.setSummary(newValue);
+        } else if ("description".equals(field)) {
+            commentPlan.updateIssueParams.setDescription(newValue);
+            // 読み込みを遅らせる場合は空文字列が得られます。値は API 呼び出しの直前に読み込みます。
+            commentPlan.isDescriptionDeferred = (isLargeTextDeferred && newValue != null);
+        } else if ("notification".equals(field) && newValue != null) {
+            final String[] notiTarget = newValue.split(",");
+            List<Long> notiList = new ArrayList<Long>();
+            for (String look : notiTarget) {
+                notiList.add(resolver.getTargetUserIdBySourceUserId(Long.valueOf(look)));
+
+                // 本文コンテンツがない場合は無視する。
+                commentPlan.addIssueCommentParams.setNotifiedUserIds(notiList);
+
+                commentPlan.updateIssueParams.setNotifiedUserIds(notiList);
+            }
+        } else if ("priority".equals(field)) {
+            try {
+                final long issuePriorityTypeId = resolver.getIssuePriorityTypeIdByName(newValue);
+                commentPlan.updateIssueParams.setPriority(PriorityType.valueOf((int) issuePriorityTypeId));
+            } catch (IOException ex) {
+                RsvrLog.warn("想定外: 指定の名称のPriorityが見つかりません: " + newValue);
+            }
+        } else if ("status".equals(field)) {
+            try {
+                long issueStatusTypeId = resolver.getIssueStatusTypeIdByName(newValue);
+                commentPlan.updateIssueParams.setStatusId((int) issueStatusTypeId);
+            } catch (IOException ex) {
+                RsvrLog.warn(
+                        "過去のある時点では存在した IssueType のセットを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
+            }
+        } else if ("assigner".equals(field)) {
+            commentPlan.updateIssueParams.setAssigneeId(resolver.getTargetUserIdBySourceUserName(newValue));
+        } else if ("startDate".equals(field)) {
+            commentPlan.updateIssueParams.setStartDate(newValue);
+        } else if ("limitDate".equals(field)) {
+            commentPlan.updateIssueParams.setDueDate(newValue);
+        } else if ("estimatedHours".equals(field)) {
+            commentPlan.updateIssueParams.setEstimatedHours(newValue == null ? null : new BigDecimal(newValue));
+        } else if ("actualHours".equals(field)) {
+            commentPlan.updateIssueParams.setActualHours(newValue == null ? null : new BigDecimal(newValue));
+        } else if ("attachment".equals(field)) {
+            // 添付ファイル。アップロードは API 呼び出しの段階で実施します。
+            readAttachment(row, commentPlan);
+        } else if ("resolution".equals(field)) {
+            if (newValue == null || newValue.length() == 0) {
+                // 設定の解除
+                commentPlan.updateIssueParams.setResolution(null);
+            } else {
+                try {
+                    final long issueResolutionTypeId = resolver.getIssueResolutionTypeIdByName(newValue);
+                    commentPlan.updateIssueParams.setResolution(ResolutionType.valueOf((int) issueResolutionTypeId));
+                } catch (IOException ex) {
+                    RsvrLog.warn("想定外: 指定の名称のResolutionが見つかりません: " + newValue);
+                }
+            }
+        } else if ("component".equals(field) || "category".equals(field)) {
+            // categoryはcomponentとして飛んでくるようだ。
+            try {
+                commentPlan.updateIssueParams
+                        .setCategoryIds((resolver.getCategoryIdListByNames(newValue)));
+            } catch (IOException ex) {
+                RsvrLog.warn(
+                        "過去のある時点では存在した Category のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
+            }
+        } else if ("milestone".equals(field)) {
+            try {
+                commentPlan.updateIssueParams
+                        .setMilestoneIds((resolver.getMilestoneIdListByNames(newValue)));
+            } catch (IOException ex) {
+                RsvrLog.warn(
+                        "過去のある時点では存在した Milestone のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
+            }
+        } else if ("version".equals(field)) {
+            try {
+                commentPlan.updateIssueParams
+                        .setVersionIds((resolver.getVersionIdListByNames(newValue)));
+            } catch (IOException ex) {
+                RsvrLog.warn(
+                        "過去のある時点では存在した Version のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
+            }
+        } else if ("issueType".equals(field)) {
+            try {
+                long issueTypeId = resolver.getIssueTypeIdByName(newValue);
+                commentPlan.updateIssueParams.setIssueTypeId(issueTypeId);
+            } catch (IOException ex) {
+                RsvrLog.warn(
+                        "過去のある時点では存在した issueType のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
+            }
+        } else {
+            RsvrLog.warn("警告: updateIssueParams 未実装: " + field + ": [" + newValue + "]");
+        }
+    }
+
+    /**
+     * 変更履歴の添付ファイルをインポート内容に加えます。アップロードは API 呼び出しの段階で実施します。
+     * 
+     * @param row         変更履歴1件分の行。
+     * @param commentPlan コメント1件分のインポート内容。
+     * @throws IOException IO例外が発生した場合。
+     */
+    private void readAttachment(CommentDetailRow row, final CommentPlan commentPlan) throws IOException {
+        if (row.attachmentName == null) {
+            RsvrLog.warn("課題の添付ファイル処理: 与えられた issueAttachmentId:" + row.issueAttachmentId
+                    + " が BacklogIssueAttachment テーブル中に見つからず。これは過去に存在した課題添付ファイルが最新状態では存在しないという可能性が考えられる。");
+            // 処理継続はできないのでここで離脱する。
+            return;
+        }
+
+        File localFile = new File(bklConn.getToolConf().getDirExpAttachment(), row.attachmentLocalFilename);
+        if (localFile.exists() == false && row.attachmentContentHash != null) {
+            // 添付ファイルごとのファイル名が無い場合は、ハッシュ値をキーに格納したファイルを使用します。
+            final File blobFile = new RsvrBacklogBlobStore(new File(bklConn.getToolConf().getDirExpBlob()))
+                    .getBlobFile(row.attachmentContentHash);
+            if (blobFile.exists()) {
+                localFile = blobFile;
+            }
+        }
+        if (localFile.exists() == false) {
+            throw new IOException("Unexpected Local attachment file not exist: " + localFile.getCanonicalPath());
+        }
+
+        commentPlan.attachmentPlanList.add(
+                new AttachmentPlan(row.attachmentName, localFile, row.issueAttachmentId, row.attachmentContentHash));
+    }
+
+    /**
+     * 先読みで読み込む大きな文字列の列の式を取得します。
+     * 
+     * 読み込みを遅らせる場合は、値そのものの代わりに null かどうかだけを表す式 (null または空文字列) とします。
+     * 
+     * @param column 列名。
+     * @return 検索で使用する式。
+     */
+    private String deferrableColumn(String column) {
+        if (isLargeTextDeferred == false) {
+            return column;
+        }
+        return "CASE WHEN " + column + " IS NULL THEN NULL ELSE '' END";
+    }
+
+    /**
+     * h2 database から課題を KeyId の順に読み込み、インポート内容を組み立ててキューに積む先読みの処理。
+     * 
+     * 終端または例外の発生時には END_OF_PLAN を積みます。発生した例外は rethrowIfFailed で呼び出し元のスレッドに伝えます。
+     * 
+     * 呼び出し元のスレッドが書き込むデータベース接続とは別に、専用のデータベース接続で読み込みます。
+     */
+    class IssuePlanReader implements Runnable {
+        private final BlockingQueue<IssuePlan> queue;
+
+        /**
+         * この KeyId より後の課題を読み込みます。
+         */
+        private final long readAfterKeyId;
+
+        /**
+         * 呼び出し元で処理が中断されたかどうか。
+         */
+        private volatile boolean isCancelled = false;
+
+        /**
+         * 先読みで発生した例外。
+         */
+        private volatile Exception failure = null;
+
+        IssuePlanReader(BlockingQueue<IssuePlan> queue, long readAfterKeyId) {
+            this.queue = queue;
+            this.readAfterKeyId = readAfterKeyId;
+        }
+
+        @Override
+        public void run() {
+            Connection readerConn = null;
+            try {
+                readerConn = H2DaoUtil.getConnection(bklConn.getToolConf());
+                read(readerConn);
+            } catch (SQLException | IOException | RuntimeException ex) {
+                failure = ex;
+            } finally {
+                if (readerConn != null) {
+                    try {
+                        readerConn.close();
+                    } catch (SQLException ex) {
+                        RsvrLog.warn("Import: Issue: 先読みのデータベース接続のクローズに失敗: " + ex.toString());
+                    }
+                }
+                put(END_OF_PLAN);
+            }
+        }
+
+        /**
+         * 課題を KeyId の順に読み込んでキューに積みます。
+         * 
+         * @param readerConn 先読み専用のデータベース接続。
+         * @throws SQLException SQL例外が発生した場合。
+         * @throws IOException  IO例外が発生した場合。
+         */
+        private void read(Connection readerConn) throws SQLException, IOException {
+            try (CommentDetailCursor cursor = new CommentDetailCursor(readerConn, readAfterKeyId)) {
+                try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(readerConn.prepareStatement(
+                        "SELECT IssueId, KeyId, Summary, IssueType, Priority, " + deferrableColumn("Description")
+                                + ", Resolution, Status, Assignee" //
+                                + ", Category, Version, Milestone, StartDate, DueDate, EstimatedHours, ActualHours" //
+                                + ", ParentIssueId, CreatedUser, Created, UpdatedUser, Updated" //
+                                + " FROM BacklogIssue" //
+                                + " WHERE KeyId > ?" //
+                                + " ORDER BY KeyId" //
+                ))) {
+                    stmt.setLong(readAfterKeyId);
+                    try (RsvrResultSet rset = stmt.executeQuery()) {
+                        for (; rset.next();) {
+                            if (put(readIssue(rset, cursor)) == false) {
+                                return;
                             }
                         }
-                    } else if ("component".equals(field) || "category".equals(field)) {
-                        // categoryはcomponentとして飛んでくるようだ。
-                        try {
-                            updateIssueParams
-                                    .setCategoryIds((H2TargetCategoryDao.getCategoryIdListByNames(conn, newValue)));
-                        } catch (IOException ex) {
-                            RsvrLog.warn(
-                                    "過去のある時点では存在した Category のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
-                        }
-                    } else if ("milestone".equals(field)) {
-                        try {
-                            updateIssueParams
-                                    .setMilestoneIds((H2TargetMilestoneDao.getMilestoneIdListByNames(conn, newValue)));
-                        } catch (IOException ex) {
-                            RsvrLog.warn(
-                                    "過去のある時点では存在した Milestone のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
-                        }
-                    } else if ("version".equals(field)) {
-                        try {
-                            updateIssueParams
-                                    .setVersionIds((H2TargetVersionDao.getVersionIdListByNames(conn, newValue)));
-                        } catch (IOException ex) {
-                            RsvrLog.warn(
-                                    "過去のある時点では存在した Version のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
-                        }
-                    } else if ("issueType".equals(field)) {
-                        try {
-                            long issueTypeId = H2TargetIssueTypeDao.getIssueTypeIdByName(conn, newValue);
-                            updateIssueParams.setIssueTypeId(issueTypeId);
-                        } catch (IOException ex) {
-                            RsvrLog.warn(
-                                    "過去のある時点では存在した issueType のセットなどを試みた模様: スキップ: " + newValue + ": " + ex.getMessage());
-                        }
-                    } else {
-                        RsvrLog.warn("警告: updateIssueParams 未実装: " + field + ": [" + newValue + "]");
                     }
                 }
+                RsvrLog.trace("Import: Issue: コメント・変更履歴の読み込み行数: " + cursor.getRowCount());
             }
+        }
 
+        /**
+         * キューに積みます。キューに空きが無い場合は待機します。
+         * 
+         * @param plan 課題1件分のインポート内容。
+         * @return 積めた場合は true。呼び出し元で処理が中断された場合は false。
+         */
+        private boolean put(IssuePlan plan) {
+            try {
+                for (; isCancelled == false;) {
+                    if (queue.offer(plan, 500, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        void cancel() {
+            isCancelled = true;
+        }
+
+        void rethrowIfFailed() throws SQLException, IOException {
+            final Exception ex = failure;
+            if (ex == null) {
+                return;
+            }
+            if (ex instanceof SQLException) {
+                throw (SQLException) ex;
+            }
+            if (ex instanceof IOException) {
+                throw (IOException) ex;
+            }
+            throw (RuntimeException) ex;
         }
     }
 
-    private void processAttachment(long issueAttachmentId, final WrappedUpdateIssueParams updateIssueParams)
-            throws SQLException, IOException {
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " Name, LocalFilename" //
-                + " FROM BacklogIssueAttachment" //
-                + " WHERE IssueAttachmentId = " + issueAttachmentId))) { //
-            try (RsvrResultSet rset = stmt.executeQuery()) {
-                if (rset.next() == false) {
-                    RsvrLog.warn("課題の添付ファイル処理: 与えられた issueAttachmentId:" + issueAttachmentId
-                            + " が BacklogIssueAttachment テーブル中に見つからず。これは過去に存在した課題添付ファイルが最新状態では存在しないという可能性が考えられる。");
-                    // 処理継続はできないのでここで離脱する。
-                    return;
-                }
+    /**
+     * コメント・変更履歴・添付ファイルを1本のクエリで課題の KeyId、コメント、変更履歴の順に読み込むカーソル。
+     * 
+     * 課題ごと・コメントごとにクエリを発行する代わりに、課題の検索結果と同じ KeyId の順で1回だけ走査します。1行先読みして、呼び出し側は
+     * {@link #peek()} で KeyId とコメントの区切りを判定します。変更履歴の無いコメントは、変更履歴の列が null の1行となります。
+     */
+    class CommentDetailCursor implements AutoCloseable {
+        private final RsvrPreparedStatement stmt;
+        private final RsvrResultSet rset;
 
-                String name = rset.getString();
-                String localFilename = rset.getString();
-                File localFile = new File(bklConn.getToolConf().getDirExpAttachment(), localFilename);
-                if (localFile.exists() == false) {
-                    throw new IOException(
-                            "Unexpected Local attachment file not exist: " + localFile.getCanonicalPath());
-                }
+        /**
+         * 先読みした行。終端に達した場合は null。
+         */
+        private CommentDetailRow current = null;
 
-                RetryablePostAttachment apicallout = new RetryablePostAttachment(name, localFile);
-                apicallout.execute(bklConn);
-                Attachment attachment = apicallout.getResult();
+        /**
+         * 読み込んだ行数。
+         */
+        private long rowCount = 0;
 
-                updateIssueParams.addAttachmentIds(attachment.getId());
+        CommentDetailCursor(Connection readerConn, long readAfterKeyId) throws SQLException {
+            stmt = RsvrJdbc.wrap(readerConn.prepareStatement("SELECT" //
+                    + " i.KeyId, c.IssueCommentId, " + deferrableColumn("c.Content") //
+                    + ", l.IssueCommentChangeLogId, l.Field" //
+                    + ", " + (isLargeTextDeferred
+                            ? "CASE WHEN l.Field = 'description' THEN " + deferrableColumn("l.NewValue")
+                                    + " ELSE l.NewValue END"
+                            : "l.NewValue") //
+                    + ", l.IssueAttachmentId, l.NotificationInfo" //
+                    + ", a.Name, a.LocalFilename, a.ContentHash" //
+                    + " FROM BacklogIssue AS i" //
+                    + " INNER JOIN BacklogIssueComment AS c ON c.IssueId = i.IssueId" //
+                    + " LEFT OUTER JOIN BacklogIssueCommentChangeLog AS l ON l.IssueCommentId = c.IssueCommentId" //
+                    + " LEFT OUTER JOIN BacklogIssueAttachment AS a ON a.IssueAttachmentId = l.IssueAttachmentId" //
+                    + " WHERE i.KeyId > ?" //
+                    + " ORDER BY i.KeyId, c.IssueCommentId, l.IssueCommentChangeLogId"));
+            stmt.setLong(readAfterKeyId);
+            rset = stmt.executeQuery();
+            advance();
+        }
+
+        /**
+         * 先読みした行を取得します。
+         * 
+         * @return 先読みした行。終端に達した場合は null。
+         */
+        CommentDetailRow peek() {
+            return current;
+        }
+
+        /**
+         * 次の行を先読みします。
+         * 
+         * @throws SQLException SQL例外が発生した場合。
+         */
+        void advance() throws SQLException {
+            if (rset.next() == false) {
+                current = null;
+                return;
+            }
+            final CommentDetailRow row = new CommentDetailRow();
+            row.keyId = rset.getLong();
+            row.issueCommentId = rset.getLong();
+            row.content = rset.getString();
+            row.issueCommentChangeLogId = rset.getString();
+            row.field = rset.getString();
+            row.newValue = rset.getString();
+            row.issueAttachmentId = rset.getLong();
+            row.notificationInfo = rset.getString();
+            row.attachmentName = rset.getString();
+            row.attachmentLocalFilename = rset.getString();
+            row.attachmentContentHash = rset.getString();
+            current = row;
+            rowCount++;
+        }
+
+        long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                rset.close();
+            } finally {
+                stmt.close();
             }
         }
     }
+
+    /**
+     * {@link CommentDetailCursor} の1行分。
+     */
+    static class CommentDetailRow {
+        long keyId;
+        long issueCommentId;
+        String content;
+
+        /**
+         * コメントId と連番からなる変更履歴のId。変更履歴の無いコメントの場合は null。
+         */
+        String issueCommentChangeLogId;
+        String field;
+        String newValue;
+        Long issueAttachmentId;
+        String notificationInfo;
+
+        /**
+         * 添付ファイルが BacklogIssueAttachment に見つからない場合は null。
+         */
+        String attachmentName;
+        String attachmentLocalFilename;
+
+        /**
+         * ダウンロード時に記録した SHA-256 ハッシュ値。記録が無い場合は null。
+         */
+        String attachmentContentHash;
+    }
+
+    /**
+     * 課題1件分のインポート内容。先読みの段階で組み立てます。
+     */
+    static class IssuePlan {
+        long origIssueId;
+        long keyId;
+        String summary;
+
+        /**
+         * 欠番を「削除」で埋める際にも使用する IssueTypeId。
+         */
+        long issueTypeId;
+
+        CreateIssueParams createIssueParams;
+
+        /**
+         * 課題の説明を API 呼び出しの直前に読み込む場合は true。
+         */
+        boolean isDescriptionDeferred = false;
+
+        final List<CommentPlan> commentPlanList = new ArrayList<CommentPlan>();
+    }
+
+    /**
+     * コメント1件分のインポート内容。ターゲットの IssueId は課題の作成後に設定します。
+     */
+    static class CommentPlan {
+        long origIssueCommentId;
+
+        final WrappedAddIssueCommentParams addIssueCommentParams = new WrappedAddIssueCommentParams();
+        final WrappedUpdateIssueParams updateIssueParams = new WrappedUpdateIssueParams();
+
+        /**
+         * 変更履歴に含まれる添付ファイル。アップロードは API 呼び出しの段階で実施します。
+         */
+        final List<AttachmentPlan> attachmentPlanList = new ArrayList<AttachmentPlan>();
+
+        /**
+         * コメントの本文を API 呼び出しの直前に読み込む場合は true。
+         */
+        boolean isContentDeferred = false;
+
+        /**
+         * 変更後の課題の説明を API 呼び出しの直前に読み込む場合は true。
+         */
+        boolean isDescriptionDeferred = false;
+    }
+
+    /**
+     * アップロードする添付ファイル。
+     */
+    static class AttachmentPlan {
+        final String name;
+        final File localFile;
+
+        /**
+         * インポート元の添付ファイルのId。
+         */
+        final long sourceAttachmentId;
+
+        /**
+         * ファイルの SHA-256 ハッシュ値。記録が無い場合は null。
+         */
+        final String contentHash;
+
+        /**
+         * 先行してアップロードしている場合は、そのアップロード結果 (ターゲットの添付ファイルのId)。呼び出し元のスレッドのみが参照します。
+         */
+        Future<Long> uploadFuture = null;
+
+        /**
+         * アップロード済みで課題に添付していないものを再利用する場合は、そのターゲットの添付ファイルのId。
+         */
+        Long reusedAttachmentId = null;
+
+        /**
+         * 再利用したものが受け付けられなかった場合は false。以降はアップロードし直したものを使用します。
+         */
+        boolean isReuseAllowed = true;
+
+        /**
+         * アップロードした結果を再利用のために記録済みの場合は true。
+         */
+        boolean isRecorded = false;
+
+        AttachmentPlan(String name, File localFile, long sourceAttachmentId, String contentHash) {
+            this.name = name;
+            this.localFile = localFile;
+            this.sourceAttachmentId = sourceAttachmentId;
+            this.contentHash = contentHash;
+        }
+
+        /**
+         * 内容とファイル名が同じ添付ファイルを判別するためのキーを取得します。
+         * 
+         * @return キー。ハッシュ値の記録が無い場合は null。
+         */
+        String getUploadKey() {
+            return (contentHash == null ? null : contentHash + "/" + name);
+        }
+    }
+
+    /**
+     * 1件の添付ファイルを Backlog API でアップロードするワーカー処理。h2 database には触れません。
+     */
+    static class AttachmentUploader implements Callable<Long> {
+        private final RsvrBacklogApiConn bklConn;
+        private final String name;
+        private final File localFile;
+
+        AttachmentUploader(RsvrBacklogApiConn bklConn, String name, File localFile) {
+            this.bklConn = bklConn;
+            this.name = name;
+            this.localFile = localFile;
+        }
+
+        @Override
+        public Long call() throws SQLException, IOException {
+            RetryablePostAttachment apicallout = new RetryablePostAttachment(name, localFile);
+            apicallout.execute(bklConn);
+            return apicallout.getResult().getId();
+        }
+    }
 }
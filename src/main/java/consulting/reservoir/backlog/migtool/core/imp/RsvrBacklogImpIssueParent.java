@@ -94,9 +94,6 @@ public class RsvrBacklogImpIssueParent {
                     RetryableUpdateIssue apicallout = new RetryableUpdateIssue(updateIssueParams);
                     apicallout.execute(bklConn);
                     apicallout.getResult();
-
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
                 }
             }
         }
@@ -26,7 +26,9 @@ import com.nulabinc.backlog4j.api.option.AddStatusParams;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddStatus;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueStatusTypeDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -63,7 +65,7 @@ public class RsvrBacklogImpIssueStatusType {
             return;
         }
 
-        H2TargetIssueStatusTypeDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
@@ -73,6 +75,9 @@ public class RsvrBacklogImpIssueStatusType {
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -83,9 +88,6 @@ public class RsvrBacklogImpIssueStatusType {
      * @throws SQLException
      */
     private void impFromLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
         try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
                 + " IssueStatusTypeId, Name" //
                 + " FROM BacklogIssueStatusType" //
@@ -125,15 +127,11 @@ public class RsvrBacklogImpIssueStatusType {
     }
 
     private void expFromTargetToLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Status> respList = bklConn.getClient().getStatuses(bklConn.getProjectId());
         for (Status look : respList) {
             H2TargetIssueStatusTypeDao.store2Local(conn, look, bklConn);
         }
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
@@ -26,7 +26,9 @@ import com.nulabinc.backlog4j.api.option.AddIssueTypeParams;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddIssueType;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueTypeDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -62,7 +64,7 @@ public class RsvrBacklogImpIssueType {
             return;
         }
 
-        H2TargetIssueTypeDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
@@ -72,6 +74,9 @@ public class RsvrBacklogImpIssueType {
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -82,9 +87,6 @@ public class RsvrBacklogImpIssueType {
      * @throws SQLException
      */
     private void impFromLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
         try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
                 + " Name" //
                 + " FROM BacklogIssueType" //
@@ -118,16 +120,12 @@ public class RsvrBacklogImpIssueType {
     }
 
     private void expFromTargetToLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<IssueType> respList = bklConn.getClient().getIssueTypes(bklConn.getProjectId());
         for (IssueType look : respList) {
             H2TargetIssueTypeDao.store2Local(conn, look, bklConn);
         }
 
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
     }
 }
@@ -27,6 +27,8 @@ import com.nulabinc.backlog4j.api.option.AddMilestoneParams;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddMilestone;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetMilestoneDao;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
@@ -63,7 +65,7 @@ public class RsvrBacklogImpMilestone {
             return;
         }
 
-        H2TargetMilestoneDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
@@ -73,6 +75,9 @@ public class RsvrBacklogImpMilestone {
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -131,15 +136,11 @@ public class RsvrBacklogImpMilestone {
     }
 
     private void expFromTargetToLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Milestone> respList = bklConn.getClient().getMilestones(bklConn.getProjectId());
         for (Milestone look : respList) {
             H2TargetMilestoneDao.store2Local(conn, look, bklConn);
         }
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
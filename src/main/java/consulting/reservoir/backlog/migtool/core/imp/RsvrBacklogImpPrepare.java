@@ -28,14 +28,15 @@ import com.nulabinc.backlog4j.Status;
 import com.nulabinc.backlog4j.User;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssuePriorityTypeDao;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueResolutionTypeDao;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueStatusTypeDao;
-import consulting.reservoir.backlog.migtool.core.dao.H2TargetIssueTypeDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetProjectDao;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetUserDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.log.RsvrLog;
 
 /**
@@ -65,6 +66,8 @@ public class RsvrBacklogImpPrepare {
         try {
             // Phase1 におけるチェックはDBに到達せずに確認したい。個別のコードで実現する。
             System.err.println("処理に先立ち、ターゲット Backlog の Project情報を取得.");
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             Project proj = bklConn.getClient().getProject(bklConn.getProjectId());
             RsvrLog.info("Target Project Name: " + proj.getName() + " (" + proj.getId() + ")");
 
@@ -74,9 +77,6 @@ public class RsvrBacklogImpPrepare {
                 RsvrLog.error(BMCMessages.BMC5204 + ": [" + proj.getProjectKey() + "] " + proj.getName());
                 throw new IOException(BMCMessages.BMC5204);
             }
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
         }
@@ -84,15 +84,13 @@ public class RsvrBacklogImpPrepare {
         // MIGTEST のチェックが終わって初めて h2 database テーブルを作成する。
 
         // h2 にテーブルを作成します。
-        H2TargetProjectDao.createTable(conn);
-        H2TargetUserDao.createTable(conn);
-        H2TargetIssueTypeDao.createTable(conn);
-        H2TargetIssuePriorityTypeDao.createTable(conn);
-        H2TargetIssueResolutionTypeDao.createTable(conn);
-        H2TargetIssueStatusTypeDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // 情報を取得します。
         toLocal(forceProduction);
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -104,69 +102,64 @@ public class RsvrBacklogImpPrepare {
      */
     private void toLocal(boolean forceProduction) throws SQLException, IOException {
         try {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             Project proj = bklConn.getClient().getProject(bklConn.getProjectId());
             H2TargetProjectDao.store2Local(conn, proj, bklConn.getProcessInfo());
             RsvrLog.info("Target Project Name: " + proj.getName() + " (" + proj.getId() + ")");
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetProject"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_PROJECT));
         } catch (BacklogAPIException ex) {
             throw new IOException("Login Failed:" + ex.toString(), ex);
         }
 
         {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<User> userList = bklConn.getClient().getProjectUsers(bklConn.getProjectId());
             for (User look : userList) {
                 H2TargetUserDao.store2Local(conn, look, bklConn.getProcessInfo());
             }
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetUser"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_USER));
         }
 
         {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<Priority> priorities = bklConn.getClient().getPriorities();
             for (Priority look : priorities) {
                 H2TargetIssuePriorityTypeDao.store2Local(conn, look, bklConn.getProcessInfo(), bklConn);
             }
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetIssuePriorityType"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_ISSUE_PRIORITY_TYPE));
         }
 
         {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<Resolution> resolutionList = bklConn.getClient().getResolutions();
             for (Resolution look : resolutionList) {
                 H2TargetIssueResolutionTypeDao.store2Local(conn, look, bklConn.getProcessInfo(), bklConn);
             }
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetIssueResolutionType"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_ISSUE_RESOLUTION_TYPE));
         }
 
         {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<Status> statusList = bklConn.getClient().getStatuses(bklConn.getProjectId());
             for (Status look : statusList) {
                 H2TargetIssueStatusTypeDao.store2Local(conn, look, bklConn);
             }
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetIssueStatusType"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_ISSUE_STATUS_TYPE));
         }
     }
 }
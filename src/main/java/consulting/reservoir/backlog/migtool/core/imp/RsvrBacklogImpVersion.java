@@ -27,6 +27,8 @@ import com.nulabinc.backlog4j.api.option.AddVersionParams;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddVersion;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetVersionDao;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
@@ -63,7 +65,7 @@ public class RsvrBacklogImpVersion {
             return;
         }
 
-        H2TargetVersionDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
@@ -73,6 +75,9 @@ public class RsvrBacklogImpVersion {
 
         // ターゲットの最新情報をゲット。
         expFromTargetToLocal();
+
+        // ターゲットのマスタ情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -132,15 +137,11 @@ public class RsvrBacklogImpVersion {
     }
 
     private void expFromTargetToLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
+        // API呼び出しのレート制限の枠を確保します。
+        bklConn.getRateLimiter().acquire();
         ResponseList<Version> respList = bklConn.getClient().getVersions(bklConn.getProjectId());
         for (Version look : respList) {
             H2TargetVersionDao.store2Local(conn, look, bklConn);
         }
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
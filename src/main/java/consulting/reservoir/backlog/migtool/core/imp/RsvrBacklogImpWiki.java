@@ -31,11 +31,15 @@ import com.nulabinc.backlog4j.api.option.AddWikiAttachmentParams;
 import com.nulabinc.backlog4j.api.option.CreateWikiParams;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableAddWikiAttachment;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryableCreateWiki;
 import consulting.reservoir.backlog.migtool.core.apicall.retryable.RetryablePostAttachment;
+import consulting.reservoir.backlog.migtool.core.dao.H2LargeTextDao;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
 import consulting.reservoir.backlog.migtool.core.dao.H2TargetWikiDao;
+import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogBlobStore;
 import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -92,30 +96,30 @@ public class RsvrBacklogImpWiki {
      * @throws SQLException
      */
     private void impFromLocal() throws SQLException, IOException {
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
         // target
-        H2TargetWikiDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // そもそもの現状のWiki状態を取得。
         {
+            // API呼び出しのレート制限の枠を確保します。
+            bklConn.getRateLimiter().acquire();
             ResponseList<Wiki> respList = bklConn.getClient().getWikis(bklConn.getProjectId());
             for (Wiki look : respList) {
                 H2TargetWikiDao.store2Local(conn, look, bklConn);
             }
 
             RsvrLog.info("Target Export (Prepare): " //
-                    + bklConn.getProcessInfo().getDisplayString("TargetWiki"));
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
+                    + bklConn.getProcessInfo().getDisplayString(CounterType.TARGET_WIKI));
         }
 
-        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(
-                "SELECT WikiId, Name, Content, Tags, SharedFile, CreatedUser, Created, UpdatedUser, Updated" //
-                        + " FROM BacklogWiki" //
-                        + " ORDER BY WikiId"))) {
+        // 大きな文字列を CLOB として格納する設定の場合は、本文を作成の直前に読み込みます。
+        final boolean isContentDeferred = bklConn.getToolConf().isH2LargeTextAsClob();
+
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT WikiId, Name, " //
+                + (isContentDeferred ? "NULL" : "Content") //
+                + ", Tags, SharedFile, CreatedUser, Created, UpdatedUser, Updated" //
+                + " FROM BacklogWiki" //
+                + " ORDER BY WikiId"))) {
             try (RsvrResultSet rset = stmt.executeQuery()) {
                 for (; rset.next();) {
                     Long origWikiId = rset.getLong();
@@ -138,26 +142,23 @@ public class RsvrBacklogImpWiki {
                                 RsvrLog.trace("Wiki: すでにあるWikiです。スキップします: " + name);
                             } else {
                                 RsvrLog.trace("Wiki: 新しいWikiを追加します: " + name);
+                                if (isContentDeferred) {
+                                    content = H2LargeTextDao.getWikiContent(conn, origWikiId);
+                                }
                                 CreateWikiParams params = new CreateWikiParams(bklConn.getProjectId(), name, content);
 
                                 RetryableCreateWiki apicallout = new RetryableCreateWiki(params);
                                 apicallout.execute(bklConn);
                                 final Wiki newWiki = apicallout.getResult();
 
-                                bklConn.getProcessInfo().incrementIns("TargetWiki");
+                                bklConn.getProcessInfo().incrementIns(CounterType.TARGET_WIKI);
                                 RsvrLog.trace("Wiki: 新規Wiki: " + newWiki.getId());
 
-                                // API呼び出しインターバルをsleepします。
-                                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
-
                                 // 添付ファイルもここで処理。
                                 processAttachment(origWikiId, newWiki.getId());
 
                                 // [BMC5801] Import: Wiki: created.
                                 RsvrLog.info(BMCMessages.BMC5801 + ": " + newWiki.getName());
-
-                                // API呼び出しインターバルをsleepします。
-                                RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
                             }
                         }
                     }
@@ -170,7 +171,7 @@ public class RsvrBacklogImpWiki {
     private void processAttachment(long origWikiId, long newWikiId) throws SQLException, IOException {
         final List<Long> attachmentIds = new ArrayList<Long>();
         try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT" //
-                + " Name, LocalFilename" //
+                + " Name, LocalFilename, ContentHash" //
                 + " FROM BacklogWikiAttachment" //
                 + " WHERE WikiId=?"))) {
             stmt.setLong(origWikiId);
@@ -178,7 +179,16 @@ public class RsvrBacklogImpWiki {
                 for (; rset.next();) {
                     String name = rset.getString();
                     String localFilename = rset.getString();
+                    String contentHash = rset.getString();
                     File localFile = new File(bklConn.getToolConf().getDirExpWikiAttachment(), localFilename);
+                    if (localFile.exists() == false && contentHash != null) {
+                        // 添付ファイルごとのファイル名が無い場合は、ハッシュ値をキーに格納したファイルを使用します。
+                        final File blobFile = new RsvrBacklogBlobStore(
+                                new File(bklConn.getToolConf().getDirExpBlob())).getBlobFile(contentHash);
+                        if (blobFile.exists()) {
+                            localFile = blobFile;
+                        }
+                    }
                     if (localFile.exists() == false) {
                         throw new IOException(
                                 "Unexpected Local attachment file not exist: " + localFile.getCanonicalPath());
@@ -190,9 +200,6 @@ public class RsvrBacklogImpWiki {
 
                     // 新規のWiki添付ファイル。
                     attachmentIds.add(attachment.getId());
-
-                    // API呼び出しインターバルをsleepします。
-                    RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
                 }
             }
         }
@@ -211,9 +218,6 @@ public class RsvrBacklogImpWiki {
                     System.err.println("Wikiへのファイル添付に失敗. フリープランの場合これが発生する. ファイルを添付せずに次に進む。:" + ex.getMessage());
                 }
             }
-
-            // API呼び出しインターバルをsleepします。
-            RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
         }
     }
 }
@@ -25,9 +25,19 @@ import com.nulabinc.backlog4j.api.option.AddIssueCommentParams;
 class WrappedAddIssueCommentParams {
     private static final boolean IS_DEBUG = false;
 
-    private long newIssueId;
+    /**
+     * ターゲットの IssueId。課題の作成前に値を組み立てる場合は、後から設定します。
+     */
+    private long newIssueId = -1;
 
-    private AddIssueCommentParams addIssueCommentParam = null;
+    /**
+     * コメントの本文。setContent で設定されるまでは null。
+     */
+    private String content = null;
+
+    private List<Long> notifiedUserIds = null;
+
+    private List<Long> attachmentIds = null;
 
     private boolean isUpdated = false;
 
@@ -37,21 +47,37 @@ class WrappedAddIssueCommentParams {
         this.newIssueId = newIssueId;
     }
 
+    /**
+     * ターゲットの IssueId を指定せずに作成します。課題の作成前に値を組み立てておく場合に使用します。getPostData の前に
+     * setNewIssueId を呼び出してください。
+     */
+    public WrappedAddIssueCommentParams() {
+    }
+
+    /**
+     * ターゲットの IssueId を設定します。
+     * 
+     * @param newIssueId ターゲットの IssueId。
+     */
+    public void setNewIssueId(long newIssueId) {
+        this.newIssueId = newIssueId;
+    }
+
     public void setContent(String content) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedAddIssueCommentParams#setContent: " + content);
-        addIssueCommentParam = new AddIssueCommentParams(newIssueId, content);
+        this.content = content;
         isUpdated = true;
     }
 
     public void setNotifiedUserIds(List<Long> notiList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedAddIssueCommentParams#setNotifiedUserIds: " + notiList);
-        if (addIssueCommentParam == null) {
+        if (content == null) {
             System.err.println("警告: addIssueCommentParam が null なのに notifiedUserIds がセットされました。もう一方の処理で使用されることを期待する");
         } else {
             // 本文コンテンツがない場合は無視する。
-            addIssueCommentParam.notifiedUserIds(notiList);
+            notifiedUserIds = notiList;
             isUpdated = true;
         }
     }
@@ -59,11 +85,11 @@ class WrappedAddIssueCommentParams {
     public void setAttachmentIds(List<Long> argList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedAddIssueCommentParams#setAttachmentIds: " + argList);
-        if (addIssueCommentParam == null) {
+        if (content == null) {
             System.err.println("想定外: addIssueCommentParam が null なのに attachmentIds がセットされました。");
         } else {
             // 本文コンテンツがない場合は無視する。
-            addIssueCommentParam.attachmentIds(argList);
+            attachmentIds = argList;
             isUpdated = true;
         }
     }
@@ -73,6 +99,19 @@ class WrappedAddIssueCommentParams {
     }
 
     public AddIssueCommentParams getPostData() {
+        if (content == null) {
+            return null;
+        }
+        if (newIssueId < 0) {
+            throw new IllegalStateException("Unexpected: newIssueId is not set.");
+        }
+        final AddIssueCommentParams addIssueCommentParam = new AddIssueCommentParams(newIssueId, content);
+        if (notifiedUserIds != null) {
+            addIssueCommentParam.notifiedUserIds(notifiedUserIds);
+        }
+        if (attachmentIds != null) {
+            addIssueCommentParam.attachmentIds(attachmentIds);
+        }
         return addIssueCommentParam;
     }
 }
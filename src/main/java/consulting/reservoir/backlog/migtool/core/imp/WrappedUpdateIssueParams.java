@@ -2,7 +2,9 @@ package consulting.reservoir.backlog.migtool.core.imp;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.nulabinc.backlog4j.Issue;
 import com.nulabinc.backlog4j.Issue.ResolutionType;
@@ -16,7 +18,15 @@ class WrappedUpdateIssueParams {
 
     private boolean isUpdated = false;
 
-    private UpdateIssueParams updateIssueParams = null;
+    /**
+     * ターゲットの IssueId。課題の作成前に値を組み立てる場合は、後から設定します。
+     */
+    private long newIssueId = -1;
+
+    /**
+     * 設定された値。項目名をキーとし、設定の順序を保持します。UpdateIssueParams への反映は getPostData で実施します。
+     */
+    private final Map<String, Object> valueMap = new LinkedHashMap<String, Object>();
 
     private List<Long> internalAttachmentIds = new ArrayList<Long>();
 
@@ -45,118 +55,134 @@ class WrappedUpdateIssueParams {
     public WrappedUpdateIssueParams(long newIssueId) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#Constructor: " + newIssueId);
-        updateIssueParams = new UpdateIssueParams(newIssueId);
+        this.newIssueId = newIssueId;
+    }
+
+    /**
+     * ターゲットの IssueId を指定せずに作成します。課題の作成前に値を組み立てておく場合に使用します。getPostData の前に
+     * setNewIssueId を呼び出してください。
+     */
+    public WrappedUpdateIssueParams() {
+    }
+
+    /**
+     * ターゲットの IssueId を設定します。
+     * 
+     * @param newIssueId ターゲットの IssueId。
+     */
+    public void setNewIssueId(long newIssueId) {
+        this.newIssueId = newIssueId;
     }
 
     public void setSummary(String arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setSummary: " + arg);
-        updateIssueParams.summary(arg);
+        valueMap.put("summary", arg);
         isUpdated = true;
     }
 
     public void setParentIssueId(long arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setParentIssueId: " + arg);
-        updateIssueParams.parentIssueId(arg);
+        valueMap.put("parentIssueId", arg);
         isUpdated = true;
     }
 
     public void setDescription(String arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setDescription: " + arg);
-        updateIssueParams.description(arg);
+        valueMap.put("description", arg);
         isUpdated = true;
     }
 
     public void setStatusId(int arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setStatusId: " + arg);
-        updateIssueParams.statusId(arg);
+        valueMap.put("statusId", arg);
         isUpdated = true;
     }
 
     public void setResolution(ResolutionType arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setResolution: " + arg);
-        updateIssueParams.resolution(arg);
+        valueMap.put("resolution", arg);
         isUpdated = true;
     }
 
     public void setStartDate(String arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setStartDate: " + arg);
-        updateIssueParams.startDate(arg);
+        valueMap.put("startDate", arg);
         isUpdated = true;
     }
 
     public void setDueDate(String arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setDueDate: " + arg);
-        updateIssueParams.dueDate(arg);
+        valueMap.put("dueDate", arg);
         isUpdated = true;
     }
 
     public void setEstimatedHours(BigDecimal arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setEstimatedHours: " + arg);
-        updateIssueParams.estimatedHours(arg);
+        valueMap.put("estimatedHours", arg);
         isUpdated = true;
     }
 
     public void setActualHours(BigDecimal arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setActualHours: " + arg);
-        updateIssueParams.actualHours(arg);
+        valueMap.put("actualHours", arg);
         isUpdated = true;
     }
 
     public void setIssueTypeId(long arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setIssueTypeId: " + arg);
-        updateIssueParams.issueTypeId(arg);
+        valueMap.put("issueTypeId", arg);
         isUpdated = true;
     }
 
     public void setCategoryIds(List<Long> argList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setCategoryIds: " + argList);
-        updateIssueParams.categoryIds(argList);
+        valueMap.put("categoryIds", argList);
         isUpdated = true;
     }
 
     public void setVersionIds(List<Long> argList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setVersionIds: " + argList);
-        updateIssueParams.versionIds(argList);
+        valueMap.put("versionIds", argList);
         isUpdated = true;
     }
 
     public void setMilestoneIds(List<Long> argList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setMilestoneIds: " + argList);
-        updateIssueParams.milestoneIds(argList);
+        valueMap.put("milestoneIds", argList);
         isUpdated = true;
     }
 
     public void setPriority(Issue.PriorityType arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setIssueTypeId: " + arg);
-        updateIssueParams.priority(arg);
+        valueMap.put("priority", arg);
         isUpdated = true;
     }
 
     public void setAssigneeId(long arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setAssigneeId: " + arg);
-        updateIssueParams.assigneeId(arg);
+        valueMap.put("assigneeId", arg);
         isUpdated = true;
     }
 
     public void setNotifiedUserIds(List<Long> argList) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setNotifiedUserIds: " + argList);
-        updateIssueParams.notifiedUserIds(argList);
+        valueMap.put("notifiedUserIds", argList);
         // (通知については、主体的には更新フラグセットしない) isUpdated = true;
     }
 
@@ -167,10 +193,17 @@ class WrappedUpdateIssueParams {
         isUpdated = true;
     }
 
+    /**
+     * 設定済みの添付ファイルのIdを取り除きます。添付ファイルを設定し直す場合に使用します。
+     */
+    public void clearAttachmentIds() {
+        internalAttachmentIds.clear();
+    }
+
     public void setComment(String arg) {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#setComment: " + arg);
-        updateIssueParams.comment(arg);
+        valueMap.put("comment", arg);
         isUpdated = true;
     }
 
@@ -181,6 +214,14 @@ class WrappedUpdateIssueParams {
     public UpdateIssueParams getPostData() {
         if (IS_DEBUG)
             System.err.println("TRACE: WrappedUpdateIssueParams#getPostData");
+        if (newIssueId < 0) {
+            throw new IllegalStateException("Unexpected: newIssueId is not set.");
+        }
+
+        final UpdateIssueParams updateIssueParams = new UpdateIssueParams(newIssueId);
+        for (Map.Entry<String, Object> entry : valueMap.entrySet()) {
+            applyValue(updateIssueParams, entry.getKey(), entry.getValue());
+        }
 
         if (internalAttachmentIds.size() > 0) {
             updateIssueParams.attachmentIds(internalAttachmentIds);
@@ -188,4 +229,63 @@ class WrappedUpdateIssueParams {
 
         return updateIssueParams;
     }
+
+    @SuppressWarnings("unchecked")
+    private static void applyValue(UpdateIssueParams updateIssueParams, String name, Object value) {
+        switch (name) {
+        case "summary":
+            updateIssueParams.summary((String) value);
+            break;
+        case "parentIssueId":
+            updateIssueParams.parentIssueId((Long) value);
+            break;
+        case "description":
+            updateIssueParams.description((String) value);
+            break;
+        case "statusId":
+            updateIssueParams.statusId((Integer) value);
+            break;
+        case "resolution":
+            updateIssueParams.resolution((ResolutionType) value);
+            break;
+        case "startDate":
+            updateIssueParams.startDate((String) value);
+            break;
+        case "dueDate":
+            updateIssueParams.dueDate((String) value);
+            break;
+        case "estimatedHours":
+            updateIssueParams.estimatedHours((BigDecimal) value);
+            break;
+        case "actualHours":
+            updateIssueParams.actualHours((BigDecimal) value);
+            break;
+        case "issueTypeId":
+            updateIssueParams.issueTypeId((Long) value);
+            break;
+        case "categoryIds":
+            updateIssueParams.categoryIds((List<Long>) value);
+            break;
+        case "versionIds":
+            updateIssueParams.versionIds((List<Long>) value);
+            break;
+        case "milestoneIds":
+            updateIssueParams.milestoneIds((List<Long>) value);
+            break;
+        case "priority":
+            updateIssueParams.priority((Issue.PriorityType) value);
+            break;
+        case "assigneeId":
+            updateIssueParams.assigneeId((Long) value);
+            break;
+        case "notifiedUserIds":
+            updateIssueParams.notifiedUserIds((List<Long>) value);
+            break;
+        case "comment":
+            updateIssueParams.comment((String) value);
+            break;
+        default:
+            throw new IllegalArgumentException("Unexpected: unknown name: " + name);
+        }
+    }
 }
@@ -21,7 +21,8 @@ import java.sql.SQLException;
 
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.backlog.migtool.core.dao.H2MappingUserDao;
-import consulting.reservoir.backlog.migtool.core.util.RsvrBacklogMigToolUtil;
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
+import consulting.reservoir.backlog.migtool.core.dao.H2TargetMasterResolver;
 
 /**
  * ローカルの h2 database 上にある User 情報をもとにマッピングテーブルを構築します。
@@ -47,10 +48,13 @@ public class RsvrBacklogMapExpUser {
         }
 
         // h2 にテーブルを作成します。
-        H2MappingUserDao.createTable(conn);
+        H2SchemaManager.ensureSchema(conn);
 
         // ローカルで処理します。
         mapping();
+
+        // ユーザのマッピング情報が更新されたため、読み込み済みの引き当て情報を破棄します。
+        H2TargetMasterResolver.invalidate(conn);
     }
 
     /**
@@ -62,8 +66,5 @@ public class RsvrBacklogMapExpUser {
     private void mapping() throws SQLException, IOException {
         // 現状の User 情報をもとに、まずはプレーンなユーザ一覧を作成。
         H2MappingUserDao.setupInitialData(conn, bklConn);
-
-        // API呼び出しインターバルをsleepします。
-        RsvrBacklogMigToolUtil.sleepApiInterval(bklConn.getToolConf());
     }
 }
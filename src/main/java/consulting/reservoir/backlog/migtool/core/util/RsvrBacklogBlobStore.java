@@ -0,0 +1,134 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.backlog.migtool.core.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 添付ファイルの内容を SHA-256 ハッシュ値をキーに格納するクラス。
+ * 
+ * 同じ内容のファイルはディスク上に1つだけ格納し、添付ファイルごとのファイル名 (添付ファイルのId +
+ * 拡張子) からはハードリンクで参照します。ハードリンクが作成できないファイルシステムの場合はコピーします。
+ * 
+ * 格納したファイルはハードリンクを介して共有されるため、変更しないでください。複数のスレッドから同時に呼び出しても問題ありません。
+ */
+public class RsvrBacklogBlobStore {
+    /**
+     * 一時ファイルに付与する拡張子。
+     */
+    private static final String TEMP_SUFFIX = ".part";
+
+    /**
+     * 格納先のディレクトリ。
+     */
+    private final File blobDir;
+
+    /**
+     * 格納先のディレクトリを指定して作成します。
+     * 
+     * @param blobDir 格納先のディレクトリ。
+     */
+    public RsvrBacklogBlobStore(File blobDir) {
+        this.blobDir = blobDir;
+    }
+
+    /**
+     * ハッシュ値に対応する格納先のファイルを取得します。ディレクトリあたりのファイル数を抑えるため、ハッシュ値の先頭2文字のサブディレクトリに格納します。
+     * 
+     * @param contentHash SHA-256 ハッシュ値の16進数文字列。
+     * @return 格納先のファイル。まだ格納されていない場合もあります。
+     */
+    public File getBlobFile(String contentHash) {
+        return new File(new File(blobDir, contentHash.substring(0, 2)), contentHash);
+    }
+
+    /**
+     * ハッシュ値に対応するファイルが、指定のサイズで格納済みかどうかを取得します。
+     * 
+     * @param contentHash SHA-256 ハッシュ値の16進数文字列。
+     * @param size        ファイルのサイズ。
+     * @return 格納済みの場合は true。
+     */
+    public boolean exists(String contentHash, long size) {
+        final File blobFile = getBlobFile(contentHash);
+        return blobFile.isFile() && blobFile.length() == size;
+    }
+
+    /**
+     * ダウンロードした一時ファイルを格納して、添付ファイルごとのファイル名から参照できるようにします。
+     * 
+     * 同じ内容のファイルが格納済みの場合は一時ファイルを削除して、格納済みのファイルを参照します。
+     * 
+     * @param tempFile    ダウンロードした一時ファイル。呼び出し後には存在しません。
+     * @param contentHash 一時ファイルの SHA-256 ハッシュ値の16進数文字列。
+     * @param targetFile  添付ファイルごとのファイル名。
+     * @return 同じ内容のファイルが格納済みだった場合は true。
+     * @throws IOException IO例外が発生した場合。
+     */
+    public boolean store(File tempFile, String contentHash, File targetFile) throws IOException {
+        final File blobFile = getBlobFile(contentHash);
+        blobFile.getParentFile().mkdirs();
+        boolean isDeduplicated = blobFile.exists();
+        if (isDeduplicated == false) {
+            try {
+                // 置き換えずに移動することで、同時に格納しようとした場合も先に格納したものが残ります。
+                Files.move(tempFile.toPath(), blobFile.toPath());
+            } catch (FileAlreadyExistsException ex) {
+                isDeduplicated = true;
+            }
+        }
+        if (isDeduplicated) {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        link(contentHash, targetFile);
+        return isDeduplicated;
+    }
+
+    /**
+     * 格納済みのファイルを、添付ファイルごとのファイル名から参照できるようにします。既にファイルがある場合は置き換えます。
+     * 
+     * @param contentHash SHA-256 ハッシュ値の16進数文字列。
+     * @param targetFile  添付ファイルごとのファイル名。
+     * @throws IOException IO例外が発生した場合。
+     */
+    public void link(String contentHash, File targetFile) throws IOException {
+        final File blobFile = getBlobFile(contentHash);
+        targetFile.getParentFile().mkdirs();
+
+        // 一時的な名前で作成してから移動し、途中で中断しても不完全なファイルが残らないようにします。
+        final File tempLink = new File(targetFile.getParentFile(), targetFile.getName() + TEMP_SUFFIX);
+        Files.deleteIfExists(tempLink.toPath());
+        try {
+            Files.createLink(tempLink.toPath(), blobFile.toPath());
+        } catch (UnsupportedOperationException | IOException ex) {
+            // ハードリンクが作成できない場合 (別のファイルシステムなど) はコピーします。
+            Files.copy(blobFile.toPath(), tempLink.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        try {
+            Files.move(tempLink.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempLink.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
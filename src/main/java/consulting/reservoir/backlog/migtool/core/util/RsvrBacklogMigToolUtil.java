@@ -20,7 +20,6 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import consulting.reservoir.backlog.migtool.core.BMCMessages;
-import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
 import consulting.reservoir.backlog.migtool.core.apicall.RsvrBacklogApiConn;
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
@@ -31,25 +30,6 @@ import consulting.reservoir.log.RsvrLog;
  * `RsvrBacklogMigTool` の待機やロギングを担うユーティリティクラス。
  */
 public class RsvrBacklogMigToolUtil {
-    /**
-     * API呼び出しインターバルをsleepします。
-     */
-    public static final void sleepApiInterval(RsvrBacklogMigToolConf toolConf) {
-        try {
-            Thread.sleep(toolConf.getApiInterval());
-        } catch (InterruptedException ex) {
-            System.err.println("Unexpected case: " + ex.toString());
-        }
-    }
-
-    public static final void sleepApiRateLimitExceedRetryInterval() {
-        try {
-            Thread.sleep(60000);
-        } catch (InterruptedException ex) {
-            System.err.println("Unexpected case: " + ex.toString());
-        }
-    }
-
     /**
      * ターゲットのBacklogのプロジェクト名が非本番モードの場合にはMIGTESTである事の確認。
      * 
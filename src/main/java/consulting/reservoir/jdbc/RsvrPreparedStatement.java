@@ -90,6 +90,7 @@ try (RsvrPreparedStatement stmtMod = RsvrJdbc.wrap(conn.prepareStatement("UPDATE
  * 以下のメソッド呼び出しのタイミングで RsvrPreparedStatement 内部の parameterIndex のリセットはおこなわれます。
  * 
  * <ul>
+ * <li>RsvrPreparedStatement#addBatch</li>
  * <li>RsvrPreparedStatement#clearParameters</li>
  * <li>RsvrPreparedStatement#close</li>
  * <li>RsvrPreparedStatement#execute</li>
@@ -157,6 +158,7 @@ public class RsvrPreparedStatement extends RsvrStatement {
      * parameterIndex のリセットはおこなわれます。（以下のメソッドがこのメソッドを呼び出します）
      * 
      * <ul>
+     * <li>RsvrPreparedStatement#addBatch</li>
      * <li>RsvrPreparedStatement#clearParameters</li>
      * <li>RsvrPreparedStatement#close</li>
      * <li>RsvrPreparedStatement#execute</li>
@@ -624,13 +626,16 @@ public class RsvrPreparedStatement extends RsvrStatement {
     }
 
     /**
-     * [Passing] java.sql.PreparedStatement に由来するメソッドであり、内包する PreparedStatement
+     * [Passing][index=1] java.sql.PreparedStatement に由来するメソッドであり、内包する PreparedStatement
      * の該当メソッドをそのまま呼び出して連携します。
      * 
+     * 内包する parameterIndex の値をリセットします。続けて次の行のパラメータを先頭から設定できます。
+     * 
      * @throws SQLException SQL例外が発生した場合。
      */
     public void addBatch() throws SQLException {
         getInternalPreparedStatement().addBatch();
+        resetParameterIndex();
     }
 
     /**
@@ -773,6 +773,38 @@ public class RsvrResultSet implements AutoCloseable {
         return rset.getCharacterStream(columnLabel);
     }
 
+    /**
+     * [Rsvr][index++] RsvrJdbc により columnIndex 引数の省略を実現した、結果セットから文字列を Reader
+     * 経由で取得するメソッドです。省略された columnIndex はクラス内部で保持した値を使用たうえで呼び出し後にインクリメントします。
+     * 
+     * CLOB 型の列を getString で取得する代わりに使用します。値はこのメソッドの呼び出し時に初めて読み込まれます。
+     * 
+     * 内包する columnIndex の値をインクリメントします。
+     * 
+     * @return 取得した値。データベース値が null だった場合は null を返却。
+     * @throws SQLException SQL例外が発生した場合。読み込み中に IO例外が発生した場合も含みます。
+     */
+    public String getStringFromCharacterStream() throws SQLException {
+        final Reader reader = getCharacterStream();
+        if (reader == null) {
+            return null;
+        }
+        final StringBuilder result = new StringBuilder();
+        final char[] buf = new char[8192];
+        try {
+            try {
+                for (int len; (len = reader.read(buf)) >= 0;) {
+                    result.append(buf, 0, len);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (java.io.IOException ex) {
+            throw new SQLException("Fail to read character stream: " + ex.getMessage(), ex);
+        }
+        return result.toString();
+    }
+
     /**
      * [Rsvr][index++] RsvrJdbc により columnIndex 引数の省略を実現した、結果セットから値を取得するメソッドです。省略された
      * columnIndex はクラス内部で保持した値を使用たうえで呼び出し後にインクリメントします。
@@ -15,12 +15,6 @@
  */
 package consulting.reservoir.log;
 
-import java.sql.Connection;
-import java.sql.SQLException;
-
-import consulting.reservoir.log.dao.H2RsvrLogDao;
-import consulting.reservoir.log.dao.RsvrLogH2ConnUtil;
-
 public class RsvrLog {
     /**
      * 同期ロック用のオブジェクト。
@@ -28,9 +22,70 @@ public class RsvrLog {
     private static final Object lockObj = new Object();
 
     /**
-     * データベース接続は開きっぱなしとします。
+     * ログDBへの書き込みを待つバッファに蓄積できる件数の初期値。
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 8192;
+
+    /**
+     * ログDBへの書き込みを待つバッファに蓄積できる件数。
+     */
+    private static int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+
+    /**
+     * バッファが満杯の場合の扱い。
+     */
+    private static RsvrLogAsyncWriter.OverflowPolicy overflowPolicy = RsvrLogAsyncWriter.OverflowPolicy.BLOCK;
+
+    /**
+     * ログDBへの書き込みは非同期にまとめて実施します。最初のログ出力の際に作成します。
+     */
+    private static RsvrLogAsyncWriter asyncWriter = null;
+
+    /**
+     * ログDBへの書き込みを待つバッファの件数と、バッファが満杯の場合の扱いを設定します。最初のログ出力より前に呼び出してください。
+     * 
+     * @param capacity バッファに蓄積できる件数。
+     * @param policy   バッファが満杯の場合の扱い。
+     */
+    public static void configure(int capacity, RsvrLogAsyncWriter.OverflowPolicy policy) {
+        synchronized (lockObj) {
+            if (asyncWriter != null) {
+                System.err.println("log [warn ] ログ出力の開始後のため、ログの設定は反映されません。");
+                return;
+            }
+            bufferCapacity = capacity;
+            overflowPolicy = policy;
+        }
+    }
+
+    /**
+     * ログDBへの書き込みを待っているログがすべて書き込まれるまで待機します。
+     * 
+     * @param timeoutMillis 待機する最大の時間 (ミリ秒)。
+     * @return すべて書き込まれた場合は true。
      */
-    private static Connection connLogDb = null;
+    public static boolean flush(long timeoutMillis) {
+        final RsvrLogAsyncWriter writer;
+        synchronized (lockObj) {
+            writer = asyncWriter;
+        }
+        return (writer == null ? true : writer.flush(timeoutMillis));
+    }
+
+    /**
+     * ログDBへの書き込みを待っているログを書き込んでから、ログDBへの書き込みを停止します。以降のログは標準エラー出力にのみ表示します。
+     * 
+     * JVM の終了時には自動的に呼び出されます。
+     */
+    public static void shutdown() {
+        final RsvrLogAsyncWriter writer;
+        synchronized (lockObj) {
+            writer = asyncWriter;
+        }
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
 
     /**
      * トレースレベルのログを出力。
@@ -94,21 +149,14 @@ public class RsvrLog {
             System.err.println("log [" + displayLevel + "] " + message);
         }
 
-        // ログDBに書込
-        try {
-            synchronized (lockObj) {
-                if (connLogDb == null) {
-                    connLogDb = RsvrLogH2ConnUtil.getLogDbConnection();
-                }
-
-                H2RsvrLogDao.createTable(connLogDb);
-            }
-
-            synchronized (lockObj) {
-                H2RsvrLogDao.log(connLogDb, level, message);
+        // ログDBへの書込はバッファに登録し、バックグラウンドでまとめて実施します。
+        final RsvrLogAsyncWriter writer;
+        synchronized (lockObj) {
+            if (asyncWriter == null) {
+                asyncWriter = new RsvrLogAsyncWriter(bufferCapacity, overflowPolicy);
             }
-        } catch (SQLException ex) {
-            System.err.println("想定外: ログ出力で問題: " + ex.getMessage());
+            writer = asyncWriter;
         }
+        writer.enqueue(new RsvrLogEntry(new java.util.Date(), level, message));
     }
 }
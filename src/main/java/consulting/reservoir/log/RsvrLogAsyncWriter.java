@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import consulting.reservoir.log.dao.H2RsvrLogDao;
+import consulting.reservoir.log.dao.RsvrLogH2ConnUtil;
+
+/**
+ * ログDBへの書き込みを非同期にまとめて実施するクラス。
+ * 
+ * ログは上限のあるバッファに蓄積し、バックグラウンドのスレッドがまとめて1回のトランザクションでログDBに書き込みます。
+ * テーブルの作成は最初の書き込みの際に一度だけ実施します。
+ * 
+ * バッファが満杯の場合は、{@link OverflowPolicy} に従って空きを待つか、ログDBへの書き込みを諦めます。いずれの場合も標準エラー出力への表示は
+ * {@link RsvrLog} で実施済みです。
+ * 
+ * {@link #shutdown()} でバッファに残ったログを書き込んでから停止します。JVM の終了時にも同様に停止します。
+ */
+public class RsvrLogAsyncWriter {
+    /**
+     * バッファが満杯の場合の扱い。
+     */
+    public enum OverflowPolicy {
+        /**
+         * バッファに空きができるまで待機します。ログは失われません。
+         */
+        BLOCK,
+        /**
+         * ログDBへの書き込みを諦めます。諦めた件数は停止時に標準エラー出力に表示します。
+         */
+        DROP
+    }
+
+    /**
+     * バックグラウンドのスレッドが1回のトランザクションで書き込む最大件数。
+     */
+    private static final int WRITE_BATCH_SIZE = 256;
+
+    /**
+     * バッファが空の場合に、停止の確認のために待機する時間 (ミリ秒)。
+     */
+    private static final long POLL_MILLIS = 500;
+
+    /**
+     * 書き込み待ちのログを蓄積するバッファ。
+     */
+    private final BlockingQueue<RsvrLogEntry> queue;
+
+    /**
+     * バッファが満杯の場合の扱い。
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * 書き込み待ち件数の管理と停止の待ち合わせのためのオブジェクト。
+     */
+    private final Object lockObj = new Object();
+
+    /**
+     * バッファに登録されて、まだログDBへの書き込みが終わっていない件数。
+     */
+    private long pendingCount = 0;
+
+    /**
+     * バッファが満杯のため書き込みを諦めた件数。
+     */
+    private long droppedCount = 0;
+
+    /**
+     * 停止が要求されたかどうか。
+     */
+    private volatile boolean isShutdown = false;
+
+    /**
+     * データベース接続は開きっぱなしとします。バックグラウンドのスレッドのみが使用します。
+     */
+    private Connection connLogDb = null;
+
+    private final Thread flusherThread;
+
+    /**
+     * 非同期の書き込みクラスを作成して、バックグラウンドのスレッドを開始します。
+     * 
+     * @param capacity       バッファに蓄積できる件数。
+     * @param overflowPolicy バッファが満杯の場合の扱い。
+     */
+    RsvrLogAsyncWriter(int capacity, OverflowPolicy overflowPolicy) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.overflowPolicy = overflowPolicy;
+
+        flusherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flusherLoop();
+            }
+        }, "RsvrLog-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "RsvrLog-shutdown"));
+    }
+
+    /**
+     * ログをバッファに登録します。
+     * 
+     * @param entry 1件分のログ。
+     * @return バッファに登録できた場合は true。停止済みの場合やバッファが満杯で諦めた場合は false。
+     */
+    boolean enqueue(RsvrLogEntry entry) {
+        // 停止の確認と件数の加算を同じロックの中で実施し、停止の要求と競合した場合も件数から漏れないようにします。
+        synchronized (lockObj) {
+            if (isShutdown) {
+                return false;
+            }
+            pendingCount++;
+        }
+        boolean isAccepted = false;
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                // バックグラウンドのスレッドが終了している場合は、空きを待ち続けずに諦めます。
+                for (; isAccepted == false && flusherThread.isAlive();) {
+                    isAccepted = queue.offer(entry, POLL_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            isAccepted = queue.offer(entry);
+        }
+        if (isAccepted == false) {
+            synchronized (lockObj) {
+                pendingCount--;
+                droppedCount++;
+                lockObj.notifyAll();
+            }
+        }
+        return isAccepted;
+    }
+
+    /**
+     * バッファに登録済みのログがすべてログDBに書き込まれるまで待機します。
+     * 
+     * @param timeoutMillis 待機する最大の時間 (ミリ秒)。
+     * @return すべて書き込まれた場合は true。
+     */
+    boolean flush(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lockObj) {
+            for (; pendingCount > 0;) {
+                final long waitMillis = deadline - System.currentTimeMillis();
+                if (waitMillis <= 0 || flusherThread.isAlive() == false) {
+                    return false;
+                }
+                try {
+                    lockObj.wait(waitMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * バッファに残ったログを書き込んでから停止します。複数回呼び出しても問題ありません。
+     */
+    void shutdown() {
+        // 以後の登録を止めてから、登録済みのログの書き込みを待ちます。
+        synchronized (lockObj) {
+            if (isShutdown) {
+                return;
+            }
+            isShutdown = true;
+        }
+        flush(10000);
+        try {
+            flusherThread.join(10000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lockObj) {
+            if (droppedCount > 0) {
+                System.err.println("log [warn ] バッファが満杯のためログDBへの書き込みを諦めた件数: " + droppedCount);
+            }
+        }
+    }
+
+    /**
+     * バッファが満杯のため書き込みを諦めた件数を取得します。
+     * 
+     * @return 書き込みを諦めた件数。
+     */
+    long getDroppedCount() {
+        synchronized (lockObj) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * バックグラウンドのスレッドの処理。停止が要求されて、登録中のものも含めて書き込み待ちのログが無くなるまで書き込みを続けます。
+     */
+    private void flusherLoop() {
+        final List<RsvrLogEntry> entryList = new ArrayList<>(WRITE_BATCH_SIZE);
+        for (;;) {
+            try {
+                final RsvrLogEntry first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    synchronized (lockObj) {
+                        if (isShutdown && pendingCount == 0) {
+                            break;
+                        }
+                    }
+                    continue;
+                }
+                entryList.add(first);
+                queue.drainTo(entryList, WRITE_BATCH_SIZE - 1);
+                write(entryList);
+            } catch (InterruptedException ex) {
+                // 停止の指示とみなし、残りを書き込んでから終了します。
+                break;
+            } finally {
+                completeWrite(entryList);
+            }
+        }
+
+        // 終了の判定と競合してバッファに登録されたログを書き込みます。
+        queue.drainTo(entryList);
+        write(entryList);
+        completeWrite(entryList);
+        closeConnection();
+    }
+
+    /**
+     * 書き込みを終えたログを書き込み待ちの件数から除き、待機中のスレッドに通知します。
+     * 
+     * @param entryList 書き込みを終えたログ。
+     */
+    private void completeWrite(List<RsvrLogEntry> entryList) {
+        synchronized (lockObj) {
+            pendingCount -= entryList.size();
+            lockObj.notifyAll();
+        }
+        entryList.clear();
+    }
+
+    private void write(List<RsvrLogEntry> entryList) {
+        if (entryList.isEmpty()) {
+            return;
+        }
+        try {
+            if (connLogDb == null) {
+                connLogDb = RsvrLogH2ConnUtil.getLogDbConnection();
+                // テーブルの作成は最初に一度だけ実施します。
+                H2RsvrLogDao.createTable(connLogDb);
+                connLogDb.setAutoCommit(false);
+            }
+            H2RsvrLogDao.logBatch(connLogDb, entryList);
+            connLogDb.commit();
+        } catch (SQLException | RuntimeException ex) {
+            // バックグラウンドのスレッドを止めないよう、例外は表示のみとします。
+            System.err.println("想定外: ログ出力で問題: " + ex.getMessage());
+            try {
+                if (connLogDb != null) {
+                    connLogDb.rollback();
+                }
+            } catch (SQLException ex2) {
+                System.err.println("想定外: ログ出力で問題: " + ex2.getMessage());
+            }
+        }
+    }
+
+    private void closeConnection() {
+        if (connLogDb == null) {
+            return;
+        }
+        try {
+            connLogDb.close();
+        } catch (SQLException ex) {
+            System.err.println("想定外: ログ出力で問題: " + ex.getMessage());
+        }
+        connLogDb = null;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2022 Reservoir Consulting - Toshiki Iga
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package consulting.reservoir.log;
+
+/**
+ * ログDBへの書き込みを待っている1件分のログ。
+ */
+public class RsvrLogEntry {
+    /**
+     * ログが出力された日時。
+     */
+    private final java.util.Date datetime;
+
+    /**
+     * ログレベル。
+     */
+    private final String level;
+
+    /**
+     * ログのメッセージ。
+     */
+    private final String message;
+
+    /**
+     * 1件分のログを作成します。
+     * 
+     * @param datetime ログが出力された日時。
+     * @param level    ログレベル。
+     * @param message  ログのメッセージ。
+     */
+    public RsvrLogEntry(java.util.Date datetime, String level, String message) {
+        this.datetime = datetime;
+        this.level = level;
+        this.message = message;
+    }
+
+    /**
+     * ログが出力された日時を取得します。
+     * 
+     * @return ログが出力された日時。
+     */
+    public java.util.Date getDatetime() {
+        return datetime;
+    }
+
+    /**
+     * ログレベルを取得します。
+     * 
+     * @return ログレベル。
+     */
+    public String getLevel() {
+        return level;
+    }
+
+    /**
+     * ログのメッセージを取得します。
+     * 
+     * @return ログのメッセージ。
+     */
+    public String getMessage() {
+        return message;
+    }
+}
@@ -18,10 +18,12 @@ package consulting.reservoir.log.dao;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.List;
 
 import consulting.reservoir.jdbc.RsvrJdbc;
 import consulting.reservoir.jdbc.RsvrPreparedStatement;
 import consulting.reservoir.jdbc.RsvrResultSet;
+import consulting.reservoir.log.RsvrLogEntry;
 
 /**
  * h2 database に対する RsvrBacklogMigTool の ログデータ に関する DAO クラス。
@@ -55,6 +57,26 @@ public class H2RsvrLogDao {
         }
     }
 
+    /**
+     * 複数件のログをまとめて格納します。コミットは呼び出し元で実施します。
+     * 
+     * @param connLogDb データベース接続。
+     * @param entryList 格納したいログの一覧。
+     * @throws SQLException SQL例外が発生した場合。
+     */
+    public static void logBatch(Connection connLogDb, List<RsvrLogEntry> entryList) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc
+                .wrap(connLogDb.prepareStatement("INSERT INTO RsvrLog (Datetime, Level, Message) VALUES (?,?,?)"))) {
+            for (RsvrLogEntry look : entryList) {
+                stmt.setJavaUtilDate(look.getDatetime());
+                stmt.setString(look.getLevel());
+                stmt.setString(look.getMessage());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
     public static void dumpLogAll(Connection connLogDb) throws SQLException {
         H2RsvrLogDao.createTable(connLogDb);
 
@@ -0,0 +1,59 @@
+package consulting.reservoir.backlog.migtool.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
+
+class RsvrBacklogMigToolProcessInfoTest {
+
+    @Test
+    void test() {
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        processInfo.incrementIns(CounterType.ISSUE);
+        processInfo.incrementIns("Issue");
+        processInfo.incrementUpd(CounterType.ISSUE);
+        assertEquals(2, processInfo.getIns(CounterType.ISSUE));
+        assertEquals(1, processInfo.getUpd("Issue"));
+        // 名称による取得は従来どおり int で戻す。
+        final int insByName = processInfo.getIns("Issue");
+        assertEquals(2, insByName);
+        assertEquals(0, processInfo.getIns(CounterType.WIKI));
+        assertEquals("`Issue`: ins:2, upd:1", processInfo.getDisplayString(CounterType.ISSUE));
+
+        assertThrows(IllegalArgumentException.class, () -> processInfo.incrementIns("NoSuchCounter"));
+    }
+
+    @Test
+    void testSnapshot() {
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        processInfo.incrementIns(CounterType.USER);
+        RsvrBacklogMigToolProcessInfo.Snapshot snapshot = processInfo.snapshot();
+        processInfo.incrementUpd(CounterType.USER);
+
+        // 写しは取得した時点の件数のまま変わりません。
+        assertEquals(1, snapshot.getTotal(CounterType.USER));
+        assertEquals(2, processInfo.snapshot().getTotal(CounterType.USER));
+        assertEquals(0.0, snapshot.getRateSince(snapshot, CounterType.USER));
+    }
+
+    @Test
+    void testConcurrentIncrement() throws InterruptedException {
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        Thread[] threads = new Thread[4];
+        for (int index = 0; index < threads.length; index++) {
+            threads[index] = new Thread(() -> {
+                for (int count = 0; count < 10000; count++) {
+                    processInfo.incrementIns(CounterType.ISSUE_COMMENT);
+                }
+            });
+            threads[index].start();
+        }
+        for (Thread look : threads) {
+            look.join();
+        }
+        assertEquals(40000, processInfo.getIns(CounterType.ISSUE_COMMENT));
+    }
+}
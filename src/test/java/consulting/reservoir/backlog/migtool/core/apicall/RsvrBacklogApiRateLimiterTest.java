@@ -0,0 +1,45 @@
+package consulting.reservoir.backlog.migtool.core.apicall;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RsvrBacklogApiRateLimiterTest {
+
+    @Test
+    void testBurstWithinBudget() {
+        RsvrBacklogApiRateLimiter limiter = new RsvrBacklogApiRateLimiter(3);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals(3, limiter.getAcquireCount());
+        assertEquals(0, limiter.getTotalWaitMillis());
+    }
+
+    @Test
+    void testBlock() {
+        RsvrBacklogApiRateLimiter limiter = new RsvrBacklogApiRateLimiter(60000);
+        assertEquals(60000, limiter.getLimitPerMinute());
+
+        // レート制限超えが通知されたので、指定の時間は待機が発生。
+        long blockMillis = limiter.block(50);
+        assertTrue(blockMillis > 0 && blockMillis <= 50, "block:" + blockMillis);
+        limiter.acquire();
+        assertTrue(limiter.getTotalWaitMillis() >= 1);
+
+        // 待機させる時間は 1分が上限。
+        limiter = new RsvrBacklogApiRateLimiter(60000);
+        blockMillis = limiter.block(Long.MAX_VALUE);
+        assertTrue(blockMillis <= 60000, "block:" + blockMillis);
+
+        // 既により長く待機させている場合はそちらを優先。
+        assertTrue(limiter.block(10) > 10);
+    }
+
+    @Test
+    void testIllegalLimit() {
+        assertThrows(IllegalArgumentException.class, () -> new RsvrBacklogApiRateLimiter(0));
+    }
+}
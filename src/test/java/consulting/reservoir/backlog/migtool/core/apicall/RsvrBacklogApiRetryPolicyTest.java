@@ -0,0 +1,77 @@
+package consulting.reservoir.backlog.migtool.core.apicall;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+import com.nulabinc.backlog4j.BacklogAPIException;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+
+class RsvrBacklogApiRetryPolicyTest {
+
+    @Test
+    void testBackoff() {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setApiRetryInitialBackoff(1000);
+        conf.setApiRetryMaxBackoff(8000);
+        RsvrBacklogApiRetryPolicy policy = new RsvrBacklogApiRetryPolicy(conf);
+
+        for (int retry = 0; retry < 10; retry++) {
+            long expected = Math.min(8000, 1000L << retry);
+            long wait = policy.computeBackoffMillis(retry);
+            assertTrue(wait >= expected / 2, "retry:" + retry + " wait:" + wait);
+            assertTrue(wait <= expected, "retry:" + retry + " wait:" + wait);
+        }
+    }
+
+    @Test
+    void testSleepBeforeRetryWithRateLimiter() {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setApiRetryInitialBackoff(20);
+        conf.setApiRetryMaxBackoff(20);
+        RsvrBacklogApiRetryPolicy policy = new RsvrBacklogApiRetryPolicy(conf);
+        RsvrBacklogApiRateLimiter limiter = new RsvrBacklogApiRateLimiter(60000);
+
+        // レート制限超えの場合は、既に止めている期限まで待機。
+        limiter.block(100);
+        long wait = policy.sleepBeforeRetry(0, limiter);
+        assertTrue(wait > 20, "wait:" + wait);
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    void testRetryable() {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        RsvrBacklogApiRetryPolicy policy = new RsvrBacklogApiRetryPolicy(conf);
+        assertEquals(10, policy.getMaxRetry());
+        assertTrue(policy.isRetryable(new RuntimeException(new SocketTimeoutException("timeout")), true));
+        assertFalse(policy.isRetryable(new RuntimeException(new IOException("file not found")), true));
+
+        // 冪等でない呼び出しはレート制限超えの場合のみリトライ可能。
+        assertFalse(policy.isRetryable(new RuntimeException(new SocketTimeoutException("timeout")), false));
+        assertTrue(policy.isRetryable(newApiException(429), false));
+        assertFalse(policy.isRetryable(newApiException(503), false));
+        assertTrue(policy.isRetryable(newApiException(503), true));
+
+        conf.setApiRetryOnIoError(false);
+        policy = new RsvrBacklogApiRetryPolicy(conf);
+        assertFalse(policy.isRetryable(new RuntimeException(new SocketTimeoutException("timeout")), true));
+    }
+
+    private static BacklogAPIException newApiException(final int statusCode) {
+        return new BacklogAPIException("status:" + statusCode) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public int getStatusCode() {
+                return statusCode;
+            }
+        };
+    }
+}
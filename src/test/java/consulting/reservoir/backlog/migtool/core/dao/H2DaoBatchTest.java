@@ -0,0 +1,210 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo;
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolProcessInfo.CounterType;
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+class H2DaoBatchTest {
+
+    @Test
+    void testGetTableName() {
+        assertEquals("BACKLOGISSUE",
+                H2DaoBatch.getTableName("MERGE INTO BacklogIssue (IssueId, IssueKey) KEY (IssueId) VALUES (?,?)"));
+        assertEquals("BACKLOGISSUE", H2DaoBatch.getTableName("UPDATE BacklogIssue SET CommentSynced = ?"));
+        assertThrows(IllegalArgumentException.class,
+                () -> H2DaoBatch.getTableName("INSERT INTO BacklogIssue (IssueId) VALUES (?)"));
+    }
+
+    @Test
+    void testToKey() {
+        // 数値は型が違っても同じキーとして扱う。
+        assertEquals(H2DaoBatch.toKey(Long.valueOf(123)), H2DaoBatch.toKey(Integer.valueOf(123)));
+        assertEquals("abc", H2DaoBatch.toKey("abc"));
+        assertEquals(Arrays.asList(Long.valueOf(1), Long.valueOf(2)), H2DaoBatch.toKey(1, 2L));
+    }
+
+    @Test
+    void testBatchAndCommitChunk() throws SQLException {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setH2BatchSize(3);
+        conf.setH2CommitChunkSize(6);
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        try (Connection conn = getConnection("daoBatchChunk");
+                Connection other = getConnection("daoBatchChunk")) {
+            createTable(conn);
+            store(conn, processInfo, 100, "existing");
+            assertEquals(1, processInfo.getIns(CounterType.ISSUE));
+
+            try (H2DaoBatch batch = H2DaoBatch.begin(conn, conf)) {
+                store(conn, processInfo, 1, "a");
+                store(conn, processInfo, 2, "b");
+                // h2BatchSize 行に達するまでは実行しない。件数の計上も実行まで遅れる。
+                assertEquals(1, countRows(conn));
+                assertEquals(1, processInfo.getIns(CounterType.ISSUE));
+
+                store(conn, processInfo, 3, "c");
+                // 実行済みでもコミット前は他の接続からは見えない。
+                assertEquals(4, countRows(conn));
+                assertEquals(1, countRows(other));
+
+                store(conn, processInfo, 4, "d");
+                store(conn, processInfo, 5, "e");
+                store(conn, processInfo, 6, "f");
+                // h2CommitChunkSize 行に達したところでコミットする。
+                assertEquals(7, countRows(other));
+
+                store(conn, processInfo, 7, "g");
+                store(conn, processInfo, 100, "updated");
+                store(conn, processInfo, 1, "a2");
+            }
+            // バッチの終了時に残りを実行してコミットする。
+            assertEquals(8, countRows(other));
+            assertEquals("updated", getName(other, 100));
+            assertEquals("a2", getName(other, 1));
+            assertTrue(conn.getAutoCommit());
+
+            // 新規か更新かの判定は、バッチの範囲内では蓄積した主キーをまとめてデータベースで確認し、同じ主キーの2回目以降は更新とする。
+            assertEquals(1 + 7, processInfo.getIns(CounterType.ISSUE));
+            assertEquals(2, processInfo.getUpd(CounterType.ISSUE));
+        }
+    }
+
+    @Test
+    void testIncrementInsOrUpdWithCompositeKey() throws SQLException {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setH2BatchSize(100);
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        try (Connection conn = getConnection("daoBatchCompositeKey")) {
+            try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE TestPair (" //
+                    + "ParentId BIGINT NOT NULL, ChildId BIGINT NOT NULL, PRIMARY KEY(ParentId, ChildId))"))) {
+                stmt.executeUpdate();
+            }
+            storePair(conn, processInfo, 1, 1);
+
+            try (H2DaoBatch batch = H2DaoBatch.begin(conn, conf)) {
+                storePair(conn, processInfo, 1, 1);
+                storePair(conn, processInfo, 1, 2);
+                storePair(conn, processInfo, 2, 1);
+                storePair(conn, processInfo, 1, 2);
+            }
+            assertEquals(1 + 2, processInfo.getIns(CounterType.ISSUE_CUSTOM_FIELD));
+            assertEquals(2, processInfo.getUpd(CounterType.ISSUE_CUSTOM_FIELD));
+        }
+    }
+
+    @Test
+    void testFlushOnStatementSwitch() throws SQLException {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setH2BatchSize(100);
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        try (Connection conn = getConnection("daoBatchSwitch")) {
+            createTable(conn);
+            store(conn, processInfo, 1, "initial");
+
+            try (H2DaoBatch batch = H2DaoBatch.begin(conn, conf)) {
+                // 同じテーブルに対する別の SQL 文に切り替わる際に、蓄積中の行を先に実行して実行順を保つ。
+                update(conn, 1, "update1");
+                store(conn, processInfo, 1, "merge");
+                assertEquals("update1", getName(conn, 1));
+                update(conn, 1, "update2");
+                assertEquals("merge", getName(conn, 1));
+
+                H2DaoBatch.flush(conn);
+                assertEquals("update2", getName(conn, 1));
+            }
+        }
+    }
+
+    @Test
+    void testIsNewKeyOutsideBatch() throws SQLException {
+        RsvrBacklogMigToolProcessInfo processInfo = new RsvrBacklogMigToolProcessInfo();
+        try (Connection conn = getConnection("daoBatchNewKey")) {
+            createTable(conn);
+            assertTrue(H2DaoBatch.isNewKey(conn, "TestItem", "ItemId", 1L));
+            store(conn, processInfo, 1, "a");
+            // バッチの範囲外では1件ずつデータベースを確認する。
+            assertFalse(H2DaoBatch.isNewKey(conn, "TestItem", "ItemId", 1L));
+            assertEquals(1, countRows(conn));
+        }
+    }
+
+    private static Connection getConnection(String name) throws SQLException {
+        return DriverManager.getConnection("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void createTable(Connection conn) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("CREATE TABLE TestItem (" //
+                + "ItemId BIGINT NOT NULL, Name VARCHAR(80), PRIMARY KEY(ItemId))"))) {
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * 各 Dao の store2Local と同じ手順で格納する。
+     */
+    private static void store(Connection conn, RsvrBacklogMigToolProcessInfo processInfo, long itemId, String name)
+            throws SQLException {
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE, "TestItem", "ItemId", itemId);
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn,
+                "MERGE INTO TestItem (ItemId, Name) KEY (ItemId) VALUES (?,?)")) {
+            stmt.setLong(itemId);
+            stmt.setString(name);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
+
+    private static void storePair(Connection conn, RsvrBacklogMigToolProcessInfo processInfo, long parentId,
+            long childId) throws SQLException {
+        H2DaoBatch.incrementInsOrUpd(conn, processInfo, CounterType.ISSUE_CUSTOM_FIELD, "TestPair",
+                "ParentId, ChildId", parentId, childId);
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn,
+                "MERGE INTO TestPair (ParentId, ChildId) KEY (ParentId, ChildId) VALUES (?,?)")) {
+            stmt.setLong(parentId);
+            stmt.setLong(childId);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
+
+    private static void update(Connection conn, long itemId, String name) throws SQLException {
+        try (RsvrPreparedStatement stmt = H2DaoBatch.prepare(conn, "UPDATE TestItem SET Name = ? WHERE ItemId = ?")) {
+            stmt.setString(name);
+            stmt.setLong(itemId);
+            H2DaoBatch.addBatch(conn, stmt);
+        }
+    }
+
+    private static long countRows(Connection conn) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT COUNT(*) FROM TestItem"))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getLong();
+            }
+        }
+    }
+
+    private static String getName(Connection conn, long itemId) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc
+                .wrap(conn.prepareStatement("SELECT Name FROM TestItem WHERE ItemId = ?"))) {
+            stmt.setLong(itemId);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getString();
+            }
+        }
+    }
+}
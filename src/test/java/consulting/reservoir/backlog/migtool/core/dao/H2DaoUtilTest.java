@@ -0,0 +1,68 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.backlog.migtool.core.RsvrBacklogMigToolConf;
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+class H2DaoUtilTest {
+
+    @Test
+    void testGetJdbcConnStr() {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        assertEquals(
+                "jdbc:h2:file:/tmp/backlogDb;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE",
+                H2DaoUtil.getJdbcConnStr("/tmp/backlogDb", conf, false));
+
+        // 一括読み込みモードではキャッシュサイズと古いデータの保持の設定が加わる。
+        conf.setH2BulkLoad(true);
+        conf.setH2BulkLoadCacheSizeKb(1024);
+        assertEquals(
+                "jdbc:h2:file:/tmp/backlogDb;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE"
+                        + ";CACHE_SIZE=1024;RETENTION_TIME=0",
+                H2DaoUtil.getJdbcConnStr("/tmp/backlogDb", conf, true));
+
+        // 一括読み込みモードが有効でも、エクスポート以外の接続には設定が加わらない。
+        assertEquals(
+                "jdbc:h2:file:/tmp/backlogDb;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE;CASE_INSENSITIVE_IDENTIFIERS=TRUE",
+                H2DaoUtil.getJdbcConnStr("/tmp/backlogDb", conf, false));
+    }
+
+    @Test
+    void testBulkLoadConnection() throws IOException, SQLException {
+        RsvrBacklogMigToolConf conf = new RsvrBacklogMigToolConf();
+        conf.setDirDb("./target/h2DaoUtilTest");
+        conf.setH2BulkLoad(true);
+        try (Connection bulkConn = H2DaoUtil.getConnection(conf, true);
+                Connection otherConn = H2DaoUtil.getConnection(conf)) {
+            // 一括読み込みモードかどうかは接続ごとに判定する。
+            assertTrue(H2DaoUtil.isBulkLoadConnection(bulkConn));
+            assertFalse(H2DaoUtil.isBulkLoadConnection(otherConn));
+
+            // 一括読み込みモードを終了しても h2 database は閉じず、どちらの接続も引き続き使用できる。
+            H2DaoUtil.endBulkLoad(bulkConn, conf);
+            assertFalse(H2DaoUtil.isBulkLoadConnection(bulkConn));
+            assertEquals(1, selectOne(bulkConn));
+            assertEquals(1, selectOne(otherConn));
+        }
+    }
+
+    private static long selectOne(Connection conn) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT 1"))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getLong();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+class H2ImpAttachmentDaoTest {
+    private static final long PROJECT_ID = 123;
+
+    private static final String HASH = "ab0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcd";
+
+    private static final long EXPIRE_MILLIS = 30 * 60 * 1000L;
+
+    @Test
+    void testReuse() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:impAttachmentReuse;DB_CLOSE_DELAY=-1", "sa",
+                "")) {
+            H2SchemaManager.ensureSchema(conn);
+            final Date uploadedAfter = new Date(System.currentTimeMillis() - EXPIRE_MILLIS);
+            assertNull(H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, uploadedAfter));
+
+            H2ImpAttachmentDao.storePosted(conn, PROJECT_ID, 1, HASH, 9001);
+            assertEquals(9001L,
+                    H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, uploadedAfter));
+            // 添付ファイルのId、内容、プロジェクトのいずれかが異なるものは再利用しない。
+            assertNull(H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 2, HASH, uploadedAfter));
+            assertNull(H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1,
+                    HASH.replace('a', 'b'), uploadedAfter));
+            assertNull(
+                    H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID + 1, 1, HASH, uploadedAfter));
+
+            // 課題に添付したものは再利用しない。
+            H2ImpAttachmentDao.markAttached(conn, PROJECT_ID, 1, HASH);
+            assertNull(H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, uploadedAfter));
+
+            // アップロードし直した場合は、その記録で上書きする。
+            H2ImpAttachmentDao.storePosted(conn, PROJECT_ID, 1, HASH, 9002);
+            assertEquals(9002L,
+                    H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, uploadedAfter));
+        }
+    }
+
+    @Test
+    void testExpire() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:impAttachmentExpire;DB_CLOSE_DELAY=-1", "sa",
+                "")) {
+            H2SchemaManager.ensureSchema(conn);
+            final Date beforeUpload = new Date(System.currentTimeMillis() - 1000);
+            H2ImpAttachmentDao.storePosted(conn, PROJECT_ID, 1, HASH, 9001);
+
+            assertEquals(9001L,
+                    H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, beforeUpload));
+            // 再利用できる期間より前にアップロードしたものは再利用しない。
+            final Date afterUpload = new Date(System.currentTimeMillis() + EXPIRE_MILLIS);
+            assertNull(H2ImpAttachmentDao.getReusableTargetAttachmentId(conn, PROJECT_ID, 1, HASH, afterUpload));
+        }
+    }
+}
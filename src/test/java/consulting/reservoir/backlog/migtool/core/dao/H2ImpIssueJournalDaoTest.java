@@ -0,0 +1,101 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+class H2ImpIssueJournalDaoTest {
+    private static final long PROJECT_ID = 123;
+
+    @Test
+    void testResume() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:journalResume;DB_CLOSE_DELAY=-1", "sa", "")) {
+            H2SchemaManager.ensureSchema(conn);
+            assertEquals(0, H2ImpIssueJournalDao.getLastKeyId(conn, PROJECT_ID));
+            assertNull(H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertFalse(H2ImpIssueJournalDao.hasPendingEntry(conn, PROJECT_ID));
+
+            store(conn, 1, 1001, 11, H2ImpIssueJournalDao.STATUS_COMPLETED);
+            store(conn, 2, 1002, 12, H2ImpIssueJournalDao.STATUS_CREATED);
+            store(conn, 3, 1003, 13, H2ImpIssueJournalDao.STATUS_COMPLETED);
+            // 他のプロジェクトの記録は対象外。
+            H2ImpIssueJournalDao.Entry otherProject = new H2ImpIssueJournalDao.Entry(PROJECT_ID + 1, 9);
+            otherProject.setTargetIssueId(9009);
+            otherProject.setTargetKeyId(99L);
+            H2ImpIssueJournalDao.store2Local(conn, otherProject);
+
+            assertEquals(3, H2ImpIssueJournalDao.getLastKeyId(conn, PROJECT_ID));
+            // 課題を作成済みで反映が完了していないものから再開する。
+            assertEquals(2L, H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertEquals(13, H2ImpIssueJournalDao.getLastTargetKeyId(conn, PROJECT_ID));
+
+            // 途中まで反映した状態を上書きで記録する。
+            H2ImpIssueJournalDao.Entry entry = H2ImpIssueJournalDao.getEntry(conn, PROJECT_ID, 2);
+            assertFalse(entry.isCompleted());
+            assertEquals(1002, entry.getTargetIssueId());
+            entry.setCommentIndex(4);
+            entry.setCommentStep(1);
+            entry.setTargetCommentCount(5);
+            entry.setLastTargetCommentId(50005L);
+            H2ImpIssueJournalDao.store2Local(conn, entry);
+            entry = H2ImpIssueJournalDao.getEntry(conn, PROJECT_ID, 2);
+            assertEquals(4, entry.getCommentIndex());
+            assertEquals(1, entry.getCommentStep());
+            assertEquals(5, entry.getTargetCommentCount());
+            assertEquals(50005L, entry.getLastTargetCommentId());
+
+            entry.setStatus(H2ImpIssueJournalDao.STATUS_COMPLETED);
+            H2ImpIssueJournalDao.store2Local(conn, entry);
+            assertNull(H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertNull(H2ImpIssueJournalDao.getEntry(conn, PROJECT_ID, 4));
+        }
+    }
+
+    @Test
+    void testPendingEntry() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:journalPending;DB_CLOSE_DELAY=-1", "sa", "")) {
+            H2SchemaManager.ensureSchema(conn);
+
+            // 最初の課題の作成中に中断した場合。既存の最新の課題の KeyId を記録しておく。
+            store(conn, 1, 0, 40, H2ImpIssueJournalDao.STATUS_PENDING);
+            assertTrue(H2ImpIssueJournalDao.hasPendingEntry(conn, PROJECT_ID));
+            // 作成前の記録は再開位置の判定の対象外。作成済みでジャーナル未記録の課題の判別に既知の KeyId を使う。
+            assertEquals(0, H2ImpIssueJournalDao.getLastKeyId(conn, PROJECT_ID));
+            assertNull(H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertEquals(40, H2ImpIssueJournalDao.getLastTargetKeyId(conn, PROJECT_ID));
+
+            // 作成済みの課題を引き継いで記録する。
+            store(conn, 1, 1001, 41, H2ImpIssueJournalDao.STATUS_CREATED);
+            assertFalse(H2ImpIssueJournalDao.hasPendingEntry(conn, PROJECT_ID));
+            assertEquals(1, H2ImpIssueJournalDao.getLastKeyId(conn, PROJECT_ID));
+            assertEquals(1L, H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertEquals(41, H2ImpIssueJournalDao.getLastTargetKeyId(conn, PROJECT_ID));
+
+            // 続く課題の作成中に中断した場合。
+            store(conn, 2, 0, 41, H2ImpIssueJournalDao.STATUS_PENDING);
+            assertTrue(H2ImpIssueJournalDao.hasPendingEntry(conn, PROJECT_ID));
+            assertEquals(1, H2ImpIssueJournalDao.getLastKeyId(conn, PROJECT_ID));
+            assertEquals(1L, H2ImpIssueJournalDao.getFirstIncompleteKeyId(conn, PROJECT_ID));
+            assertEquals(41, H2ImpIssueJournalDao.getLastTargetKeyId(conn, PROJECT_ID));
+            assertEquals(H2ImpIssueJournalDao.STATUS_PENDING,
+                    H2ImpIssueJournalDao.getEntry(conn, PROJECT_ID, 2).getStatus());
+        }
+    }
+
+    private static void store(Connection conn, long sourceKeyId, long targetIssueId, long targetKeyId, String status)
+            throws SQLException {
+        H2ImpIssueJournalDao.Entry entry = new H2ImpIssueJournalDao.Entry(PROJECT_ID, sourceKeyId);
+        entry.setSourceIssueId(sourceKeyId * 100);
+        entry.setTargetIssueId(targetIssueId);
+        entry.setTargetKeyId(targetKeyId);
+        entry.setStatus(status);
+        H2ImpIssueJournalDao.store2Local(conn, entry);
+    }
+}
@@ -0,0 +1,122 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+
+class H2SchemaManagerTest {
+
+    @Test
+    void testEnsureSchema() throws SQLException {
+        final String url = "jdbc:h2:mem:schemaManager;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            assertEquals(0, H2SchemaManager.getSchemaVersion(conn));
+            H2SchemaManager.ensureSchema(conn);
+            assertEquals(H2SchemaManager.CURRENT_VERSION, H2SchemaManager.getSchemaVersion(conn));
+            assertEquals(H2SchemaManager.CURRENT_VERSION, count(conn, "SELECT COUNT(*) FROM BacklogSchemaVersion"));
+        }
+
+        // 別の接続で確認しても、適用済みの手順は繰り返さない。
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            H2SchemaManager.ensureSchema(conn);
+            H2SchemaManager.ensureSchema(conn);
+            assertEquals(H2SchemaManager.CURRENT_VERSION, H2SchemaManager.getSchemaVersion(conn));
+            assertEquals(H2SchemaManager.CURRENT_VERSION, count(conn, "SELECT COUNT(*) FROM BacklogSchemaVersion"));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES"
+                    + " WHERE UPPER(INDEX_NAME) = 'IDXBACKLOGISSUEKEYID'"));
+        }
+    }
+
+    @Test
+    void testEnsureSchemaWithExistingTables() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:schemaManagerExisting;DB_CLOSE_DELAY=-1", "sa",
+                "")) {
+            // バージョン管理の導入前に作成されたデータベース。既存のデータは残し、後から追加した項目を補う。
+            execute(conn, "CREATE TABLE BacklogIssue (IssueId BIGINT NOT NULL, IssueKey VARCHAR(80) NOT NULL"
+                    + ", KeyId BIGINT NOT NULL, Updated TIMESTAMP, PRIMARY KEY(IssueId))");
+            execute(conn, "CREATE TABLE BacklogIssueAttachment (IssueAttachmentId BIGINT NOT NULL, IssueId BIGINT"
+                    + ", LocalFilename VARCHAR(8192), PRIMARY KEY(IssueAttachmentId))");
+            execute(conn, "INSERT INTO BacklogIssue (IssueId, IssueKey, KeyId) VALUES (1, 'P-1', 1)");
+            H2SchemaManager.ensureSchema(conn);
+            assertEquals(H2SchemaManager.CURRENT_VERSION, H2SchemaManager.getSchemaVersion(conn));
+            assertEquals(1, count(conn, "SELECT COUNT(*) FROM BacklogIssue"));
+            assertEquals("TIMESTAMP", getDataType(conn, "BACKLOGISSUE", "COMMENTSYNCED"));
+            assertEquals("BIGINT", getDataType(conn, "BACKLOGISSUEATTACHMENT", "CONTENTSIZE"));
+            assertEquals("BIGINT", getDataType(conn, "BACKLOGWIKIATTACHMENT", "CONTENTSIZE"));
+        }
+    }
+
+    @Test
+    void testEnsureSchemaFromOlderVersion() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:schemaManagerOlder;DB_CLOSE_DELAY=-1", "sa",
+                "")) {
+            H2SchemaManager.ensureSchema(conn);
+            // バージョン3 までを適用済みのデータベース。以降の手順のみを適用する。
+            execute(conn, "DROP TABLE BacklogImpIssueJournal");
+            execute(conn, "DROP TABLE BacklogExpWatermark");
+            execute(conn, "ALTER TABLE BacklogIssue DROP COLUMN CommentSynced");
+            execute(conn, "DELETE FROM BacklogSchemaVersion WHERE Version > 3");
+        }
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:schemaManagerOlder;DB_CLOSE_DELAY=-1", "sa",
+                "")) {
+            assertEquals(3, H2SchemaManager.getSchemaVersion(conn));
+            H2SchemaManager.ensureSchema(conn);
+            assertEquals(H2SchemaManager.CURRENT_VERSION, H2SchemaManager.getSchemaVersion(conn));
+            assertEquals("TIMESTAMP", getDataType(conn, "BACKLOGISSUE", "COMMENTSYNCED"));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM BacklogImpIssueJournal"));
+            assertEquals(0, count(conn, "SELECT COUNT(*) FROM BacklogExpWatermark"));
+        }
+    }
+
+    @Test
+    void testEnsureLargeTextAsClob() throws SQLException {
+        final String url = "jdbc:h2:mem:schemaManagerClob;DB_CLOSE_DELAY=-1";
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            H2SchemaManager.ensureSchema(conn);
+            H2SchemaManager.ensureLargeTextAsClob(conn);
+            assertEquals("CHARACTER LARGE OBJECT", getDataType(conn, "BACKLOGISSUE", "DESCRIPTION"));
+        }
+
+        // CLOB に変更済みの列はそのままとする。
+        try (Connection conn = DriverManager.getConnection(url, "sa", "")) {
+            H2SchemaManager.ensureLargeTextAsClob(conn);
+            assertEquals("CHARACTER LARGE OBJECT", getDataType(conn, "BACKLOGISSUECOMMENT", "CONTENT"));
+        }
+    }
+
+    private static long count(Connection conn, String sql) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getLong();
+            }
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            stmt.executeUpdate();
+        }
+    }
+
+    private static String getDataType(Connection conn, String table, String column) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement("SELECT DATA_TYPE" //
+                + " FROM INFORMATION_SCHEMA.COLUMNS" //
+                + " WHERE UPPER(TABLE_NAME) = ? AND UPPER(COLUMN_NAME) = ?"))) {
+            stmt.setString(table);
+            stmt.setString(column);
+            try (RsvrResultSet rset = stmt.executeQuery()) {
+                rset.next();
+                return rset.getString();
+            }
+        }
+    }
+}
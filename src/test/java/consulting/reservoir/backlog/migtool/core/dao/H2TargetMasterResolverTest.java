@@ -0,0 +1,34 @@
+package consulting.reservoir.backlog.migtool.core.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class H2TargetMasterResolverTest {
+
+    @Test
+    void testLongLongMap() {
+        H2TargetMasterResolver.LongLongMap map = new H2TargetMasterResolver.LongLongMap();
+        // 拡張が発生する件数を格納。
+        for (long key = 1; key <= 1000; key++) {
+            map.put(key * 1000003L, key);
+        }
+        map.put(-1L, 123L);
+        map.put(0L, 456L);
+        assertEquals(1002, map.size());
+        for (long key = 1; key <= 1000; key++) {
+            assertTrue(map.containsKey(key * 1000003L));
+            assertEquals(key, map.get(key * 1000003L));
+        }
+        assertEquals(123L, map.get(-1L));
+        assertEquals(456L, map.get(0L));
+        assertFalse(map.containsKey(2L));
+
+        // 上書き。
+        map.put(0L, 789L);
+        assertEquals(789L, map.get(0L));
+        assertEquals(1002, map.size());
+    }
+}
@@ -0,0 +1,71 @@
+package consulting.reservoir.backlog.migtool.core.imp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.backlog.migtool.core.dao.H2SchemaManager;
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+
+class RsvrBacklogImpIssueTest {
+
+    @Test
+    void testCommentDetailCursor() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:impIssueCursor;DB_CLOSE_DELAY=-1", "sa", "")) {
+            H2SchemaManager.ensureSchema(conn);
+
+            // IssueId の順と KeyId の順が異なる課題。KeyId 1 は読み込み済みとする。
+            execute(conn, "INSERT INTO BacklogIssue (IssueId, IssueKey, KeyId) VALUES (30, 'P-1', 1)");
+            execute(conn, "INSERT INTO BacklogIssue (IssueId, IssueKey, KeyId) VALUES (10, 'P-3', 3)");
+            execute(conn, "INSERT INTO BacklogIssue (IssueId, IssueKey, KeyId) VALUES (20, 'P-2', 2)");
+            execute(conn, "INSERT INTO BacklogIssueComment (IssueCommentId, IssueId, Content)"
+                    + " VALUES (300, 30, 'c300')");
+            execute(conn, "INSERT INTO BacklogIssueComment (IssueCommentId, IssueId, Content)"
+                    + " VALUES (102, 10, 'c102')");
+            execute(conn, "INSERT INTO BacklogIssueComment (IssueCommentId, IssueId, Content)"
+                    + " VALUES (101, 10, 'c101')");
+            execute(conn, "INSERT INTO BacklogIssueComment (IssueCommentId, IssueId, Content)"
+                    + " VALUES (201, 20, 'c201')");
+            execute(conn, "INSERT INTO BacklogIssueCommentChangeLog (IssueCommentChangeLogId, IssueCommentId, Field)"
+                    + " VALUES ('101-2', 101, 'status')");
+            execute(conn, "INSERT INTO BacklogIssueCommentChangeLog (IssueCommentChangeLogId, IssueCommentId, Field)"
+                    + " VALUES ('101-1', 101, 'summary')");
+            execute(conn, "INSERT INTO BacklogIssueCommentChangeLog (IssueCommentChangeLogId, IssueCommentId, Field)"
+                    + " VALUES ('201-1', 201, 'assigner')");
+
+            final RsvrBacklogImpIssue impIssue = new RsvrBacklogImpIssue(conn, null);
+            final List<String> actual = new ArrayList<>();
+            try (RsvrBacklogImpIssue.CommentDetailCursor cursor = impIssue.new CommentDetailCursor(conn, 1)) {
+                for (; cursor.peek() != null; cursor.advance()) {
+                    final RsvrBacklogImpIssue.CommentDetailRow row = cursor.peek();
+                    actual.add(row.keyId + ":" + row.issueCommentId + ":" + row.content + ":"
+                            + row.issueCommentChangeLogId + ":" + row.field);
+                }
+                assertEquals(4, cursor.getRowCount());
+                assertNull(cursor.peek());
+            }
+
+            // KeyId、コメント、変更履歴の順。変更履歴の無いコメントは変更履歴の列が null の1行となる。
+            final List<String> expected = new ArrayList<>();
+            expected.add("2:201:c201:201-1:assigner");
+            expected.add("3:101:c101:101-1:summary");
+            expected.add("3:101:c101:101-2:status");
+            expected.add("3:102:c102:null:null");
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (RsvrPreparedStatement stmt = RsvrJdbc.wrap(conn.prepareStatement(sql))) {
+            stmt.executeUpdate();
+        }
+    }
+}
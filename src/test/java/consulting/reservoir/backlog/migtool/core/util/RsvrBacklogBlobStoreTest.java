@@ -0,0 +1,49 @@
+package consulting.reservoir.backlog.migtool.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RsvrBacklogBlobStoreTest {
+    private static final String HASH = "ab0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcd";
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testGetBlobFile() {
+        RsvrBacklogBlobStore store = new RsvrBacklogBlobStore(new File(tempDir, "blob"));
+        assertEquals(new File(new File(new File(tempDir, "blob"), "ab"), HASH), store.getBlobFile(HASH));
+    }
+
+    @Test
+    void testStore() throws IOException {
+        RsvrBacklogBlobStore store = new RsvrBacklogBlobStore(new File(tempDir, "blob"));
+        byte[] content = "content".getBytes("UTF-8");
+
+        File temp1 = new File(tempDir, "1.part");
+        Files.write(temp1.toPath(), content);
+        File target1 = new File(new File(tempDir, "attachment"), "1.txt");
+        assertFalse(store.store(temp1, HASH, target1));
+        assertFalse(temp1.exists());
+        assertArrayEquals(content, Files.readAllBytes(target1.toPath()));
+        assertTrue(store.exists(HASH, content.length));
+        assertFalse(store.exists(HASH, content.length + 1));
+
+        // 同じ内容のファイルは格納済みのものを参照する。
+        File temp2 = new File(tempDir, "2.part");
+        Files.write(temp2.toPath(), content);
+        File target2 = new File(new File(tempDir, "attachment"), "2.txt");
+        assertTrue(store.store(temp2, HASH, target2));
+        assertFalse(temp2.exists());
+        assertArrayEquals(content, Files.readAllBytes(target2.toPath()));
+    }
+}
@@ -0,0 +1,110 @@
+package consulting.reservoir.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import consulting.reservoir.jdbc.RsvrJdbc;
+import consulting.reservoir.jdbc.RsvrPreparedStatement;
+import consulting.reservoir.jdbc.RsvrResultSet;
+import consulting.reservoir.log.dao.RsvrLogH2ConnUtil;
+
+class RsvrLogAsyncWriterTest {
+
+    @Test
+    void testBlock() throws SQLException {
+        final String marker = "testBlock-" + System.nanoTime();
+        final RsvrLogAsyncWriter writer = new RsvrLogAsyncWriter(2, RsvrLogAsyncWriter.OverflowPolicy.BLOCK);
+        try {
+            // バッファより多く登録しても、空きを待つためすべて書き込まれる。
+            for (int index = 0; index < 300; index++) {
+                assertTrue(writer.enqueue(new RsvrLogEntry(new Date(), "trace", marker + ": " + index)));
+            }
+            assertTrue(writer.flush(10000));
+            assertEquals(0, writer.getDroppedCount());
+            assertEquals(300, countLog(marker));
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void testDrop() throws SQLException {
+        final String marker = "testDrop-" + System.nanoTime();
+        final RsvrLogAsyncWriter writer = new RsvrLogAsyncWriter(1, RsvrLogAsyncWriter.OverflowPolicy.DROP);
+        try {
+            // バッファが満杯の場合は待たずに諦める。諦めた件数を数え、受け付けたものはすべて書き込まれる。
+            int acceptedCount = 0;
+            for (int index = 0; index < 300; index++) {
+                if (writer.enqueue(new RsvrLogEntry(new Date(), "trace", marker + ": " + index))) {
+                    acceptedCount++;
+                }
+            }
+            assertTrue(writer.flush(10000));
+            assertEquals(300 - acceptedCount, writer.getDroppedCount());
+            assertEquals(acceptedCount, countLog(marker));
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void testShutdown() throws SQLException {
+        final String marker = "testShutdown-" + System.nanoTime();
+        final RsvrLogAsyncWriter writer = new RsvrLogAsyncWriter(100, RsvrLogAsyncWriter.OverflowPolicy.BLOCK);
+        for (int index = 0; index < 50; index++) {
+            assertTrue(writer.enqueue(new RsvrLogEntry(new Date(), "trace", marker + ": " + index)));
+        }
+        // 停止時にはバッファに残ったログを書き込む。停止後は受け付けない。
+        writer.shutdown();
+        writer.shutdown();
+        assertEquals(50, countLog(marker));
+        assertFalse(writer.enqueue(new RsvrLogEntry(new Date(), "trace", marker + ": after shutdown")));
+        assertEquals(50, countLog(marker));
+    }
+
+    @Test
+    void testShutdownWhileEnqueue() throws SQLException, InterruptedException {
+        final String marker = "testShutdownWhileEnqueue-" + System.nanoTime();
+        final RsvrLogAsyncWriter writer = new RsvrLogAsyncWriter(2, RsvrLogAsyncWriter.OverflowPolicy.BLOCK);
+        final AtomicLong acceptedCount = new AtomicLong();
+        final Thread[] producers = new Thread[4];
+        for (int index = 0; index < producers.length; index++) {
+            producers[index] = new Thread(() -> {
+                for (int count = 0; count < 200; count++) {
+                    if (writer.enqueue(new RsvrLogEntry(new Date(), "trace", marker + ": " + count))) {
+                        acceptedCount.incrementAndGet();
+                    }
+                }
+            });
+            producers[index].start();
+        }
+        // 登録の途中で停止しても、登録側は待ち続けず、受け付けたものはすべて書き込まれる。
+        writer.shutdown();
+        for (Thread look : producers) {
+            look.join(10000);
+            assertFalse(look.isAlive());
+        }
+        assertEquals(acceptedCount.get(), countLog(marker));
+    }
+
+    private static long countLog(String marker) throws SQLException {
+        try (Connection conn = RsvrLogH2ConnUtil.getLogDbConnection()) {
+            try (RsvrPreparedStatement stmt = RsvrJdbc
+                    .wrap(conn.prepareStatement("SELECT COUNT(*) FROM RsvrLog WHERE Message LIKE ?"))) {
+                stmt.setString(marker + ": %");
+                try (RsvrResultSet rset = stmt.executeQuery()) {
+                    rset.next();
+                    return rset.getLong();
+                }
+            }
+        }
+    }
+}